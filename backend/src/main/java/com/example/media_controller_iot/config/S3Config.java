@@ -5,8 +5,17 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
 import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
 import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3Configuration;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 @Configuration
 public class S3Config {
@@ -20,13 +29,72 @@ public class S3Config {
     @Value("${aws.region}")
     private String region;
 
+    // Optional S3-compatible endpoint (e.g. MinIO); empty means AWS
+    @Value("${aws.s3.endpoint:}")
+    private String endpoint;
+
+    // Endpoint clients use for presigned URLs, when they reach the store under a different host than the backend
+    @Value("${aws.s3.public-endpoint:}")
+    private String publicEndpoint;
+
     @Bean
     public S3Client s3Client() {
         AwsBasicCredentials awsCredentials = AwsBasicCredentials.create(accessKeyId, secretKey);
-        
-        return S3Client.builder()
+        var builder = S3Client.builder()
+                .region(Region.of(region))
+                .credentialsProvider(StaticCredentialsProvider.create(awsCredentials));
+        if (!endpoint.isBlank()) {
+            // S3-compatible stores are usually addressed by path, not by bucket subdomain
+            builder.endpointOverride(URI.create(endpoint)).forcePathStyle(true);
+        }
+        return builder.build();
+    }
+
+    @Bean(destroyMethod = "close")
+    public S3Presigner s3Presigner() {
+        AwsBasicCredentials awsCredentials = AwsBasicCredentials.create(accessKeyId, secretKey);
+        var builder = S3Presigner.builder()
+                .region(Region.of(region))
+                .credentialsProvider(StaticCredentialsProvider.create(awsCredentials));
+        String presignEndpoint = publicEndpoint.isBlank() ? endpoint : publicEndpoint;
+        if (!presignEndpoint.isBlank()) {
+            builder.endpointOverride(URI.create(presignEndpoint))
+                    .serviceConfiguration(S3Configuration.builder().pathStyleAccessEnabled(true).build());
+        }
+        return builder.build();
+    }
+
+    /**
+     * Non-blocking client for upload bodies: parts are sent over a shared pool of Netty connections
+     * without holding a thread per request. Requests beyond max-concurrency wait for a free connection.
+     */
+    @Bean(destroyMethod = "close")
+    public S3AsyncClient s3AsyncClient(@Value("${aws.s3.async.max-concurrency:64}") int maxConcurrency,
+                                       @Value("${aws.s3.async.acquire-timeout:60s}") Duration acquireTimeout,
+                                       @Value("${aws.s3.async.read-timeout:60s}") Duration readTimeout) {
+        AwsBasicCredentials awsCredentials = AwsBasicCredentials.create(accessKeyId, secretKey);
+        var builder = S3AsyncClient.builder()
                 .region(Region.of(region))
                 .credentialsProvider(StaticCredentialsProvider.create(awsCredentials))
-                .build();
+                .httpClientBuilder(NettyNioAsyncHttpClient.builder()
+                        .maxConcurrency(maxConcurrency)
+                        // Every upload caps its own parts in flight, so waiting acquires stay bounded
+                        .maxPendingConnectionAcquires(10_000)
+                        .connectionAcquisitionTimeout(acquireTimeout)
+                        .readTimeout(readTimeout)
+                        .tcpKeepAlive(true));
+        if (!endpoint.isBlank()) {
+            builder.endpointOverride(URI.create(endpoint)).forcePathStyle(true);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Runs each upload on its own virtual thread: reading the body blocks cheaply, and the parts it
+     * sends go through the async client, so concurrent uploads do not tie up request or platform threads.
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService s3UploadExecutor() {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("s3-upload-", 0).factory());
     }
 }
@@ -0,0 +1,53 @@
+package com.example.media_controller_iot.controller;
+
+import com.example.media_controller_iot.models.Songs;
+import com.example.media_controller_iot.repository.SongsRepo;
+import com.example.media_controller_iot.service.ThumbnailService;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.net.URI;
+
+/**
+ * Size-selecting cover URLs, so list views can load a thumbnail instead of the full image.
+ * Public because img elements cannot send an Authorization header.
+ */
+@RestController
+@RequestMapping("/api/covers")
+public class CoverController {
+
+    private static final int DEFAULT_SIZE = 256;
+
+    private final SongsRepo songsRepo;
+    private final ThumbnailService thumbnailService;
+
+    public CoverController(SongsRepo songsRepo, ThumbnailService thumbnailService) {
+        this.songsRepo = songsRepo;
+        this.thumbnailService = thumbnailService;
+    }
+
+    /**
+     * GET /api/covers/{songId}?size=256 - Redirect to the song's smallest cover thumbnail at least size pixels wide
+     * (WebP if the browser accepts it and one exists), or to the original cover while thumbnails are not ready
+     */
+    @GetMapping("/{songId}")
+    public ResponseEntity<Void> getCover(@PathVariable Long songId,
+                                         @RequestParam(defaultValue = "" + DEFAULT_SIZE) int size,
+                                         @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        Songs song = songsRepo.findById(songId).orElse(null);
+        if (song == null || song.getCoverUrl() == null || song.getCoverUrl().isBlank()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+        boolean acceptsWebp = accept != null && accept.contains("image/webp");
+        String url = thumbnailService.thumbnailUrl(song.getCoverUrl(), size, acceptsWebp);
+        boolean thumbnail = !url.equals(song.getCoverUrl());
+        return ResponseEntity.status(HttpStatus.FOUND)
+                .location(URI.create(url))
+                // Short-lived while falling back to the original, so browsers pick up the thumbnail once it exists
+                .header(HttpHeaders.CACHE_CONTROL, thumbnail ? "public, max-age=86400" : "public, max-age=300")
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT)
+                .build();
+    }
+}
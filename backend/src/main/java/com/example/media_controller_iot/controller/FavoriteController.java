@@ -18,6 +18,8 @@ import java.util.Map;
 @RequestMapping("/api/favorites")
 public class FavoriteController {
     
+    private static final int MAX_CHECK_SIZE = 1000;
+    
     @Autowired
     private FavoriteService favoriteService;
     
@@ -117,6 +119,29 @@ public class FavoriteController {
         }
     }
     
+    /**
+     * POST /api/favorites/check - Check a whole page of songs at once
+     * Body: {"songIds": [1, 2, 3]}
+     */
+    @PostMapping("/check")
+    public ResponseEntity<Map<String, Object>> checkFavorites(@RequestBody Map<String, List<Long>> body) {
+        try {
+            List<Long> songIds = body.get("songIds");
+            if (songIds == null || songIds.size() > MAX_CHECK_SIZE) {
+                return ResponseEntity.badRequest()
+                        .body(Map.of("error", "songIds must be a list of at most " + MAX_CHECK_SIZE + " IDs"));
+            }
+            String userId = getCurrentUserId();
+            
+            Map<String, Object> response = new HashMap<>();
+            response.put("favorites", favoriteService.areFavorites(userId, songIds));
+            
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+    
     /**
      * GET /api/favorites/count - Get count of user's favorites
      */
@@ -1,64 +1,150 @@
 package com.example.media_controller_iot.controller;
 
+import com.example.media_controller_iot.service.AudioMetadataService;
+import com.example.media_controller_iot.service.DirectUploadService;
+import com.example.media_controller_iot.service.OrphanCleanupService;
 import com.example.media_controller_iot.service.S3Service;
+import com.example.media_controller_iot.service.ThumbnailService;
+import com.example.media_controller_iot.service.UploadProgressService;
+import com.example.media_controller_iot.util.AudioMetadataReader;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
 import java.util.HashMap;
+import java.util.HexFormat;
 import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 @RestController
 @RequestMapping("/api/files")
 public class FileUploadController {
 
     private final S3Service s3Service;
+    private final UploadProgressService uploadProgressService;
+    private final DirectUploadService directUploadService;
+    private final ThumbnailService thumbnailService;
+    private final AudioMetadataService audioMetadataService;
+    private final OrphanCleanupService orphanCleanupService;
 
-    public FileUploadController(S3Service s3Service) {
+    @Value("${uploads.max-size:2GB}")
+    private DataSize maxUploadSize;
+
+    public FileUploadController(S3Service s3Service,
+                                UploadProgressService uploadProgressService,
+                                DirectUploadService directUploadService,
+                                ThumbnailService thumbnailService,
+                                AudioMetadataService audioMetadataService,
+                                OrphanCleanupService orphanCleanupService) {
         this.s3Service = s3Service;
+        this.uploadProgressService = uploadProgressService;
+        this.directUploadService = directUploadService;
+        this.thumbnailService = thumbnailService;
+        this.audioMetadataService = audioMetadataService;
+        this.orphanCleanupService = orphanCleanupService;
+    }
+
+    private String getCurrentUserId(Authentication authentication) {
+        if (authentication != null && authentication.getPrincipal() instanceof Jwt jwt) {
+            return jwt.getSubject();
+        }
+        return null;
+    }
+
+    /**
+     * @return an error message, or null if contentType fits the upload type (music or cover)
+     */
+    private String checkContentType(String type, String contentType) {
+        String expectedType;
+        if ("music".equals(type)) {
+            expectedType = "audio/";
+        } else if ("cover".equals(type)) {
+            expectedType = "image/";
+        } else {
+            return "Upload type must be music or cover";
+        }
+        if (contentType == null || !contentType.startsWith(expectedType)) {
+            return "music".equals(type) ? "File must be an audio file" : "File must be an image file";
+        }
+        return null;
+    }
+
+    /**
+     * Add a music upload's metadata to the response and to songs that already use the file
+     */
+    private void addAudioMetadata(Map<String, Object> response, String fileUrl, AudioMetadataReader.Metadata metadata) {
+        if (metadata == null) return;
+        audioMetadataService.uploaded(fileUrl, metadata);
+        response.put("metadata", metadata.toMap());
+    }
+
+    /**
+     * Map a failed upload to an error response: 413 for bodies over the limit, 500 for I/O failures.
+     * Anything else is rethrown to the default error handling.
+     */
+    private ResponseEntity<Map<String, Object>> uploadError(String message, Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof MaxUploadSizeExceededException) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE)
+                    .body(Map.of("error", "File exceeds the maximum upload size of " + maxUploadSize.toMegabytes() + "MB"));
+        }
+        if (cause instanceof IOException) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", message + cause.getMessage()));
+        }
+        throw error instanceof CompletionException completion ? completion : new CompletionException(cause);
     }
 
     /**
      * Upload a music file to S3
      * POST /api/files/upload/music
+     * The upload runs on its own virtual thread; the request thread is released while it is sent to S3.
      * @param file - The music file to upload (multipart/form-data)
      * @param description - Optional description for the file
-     * @return JSON with the S3 URL and metadata
+     * @return JSON with the S3 URL and metadata, including duration, bitrate and tags read from the file
      */
     @PostMapping("/upload/music")
-    public ResponseEntity<Map<String, String>> uploadMusicFile(
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> uploadMusicFile(
             @RequestParam("file") MultipartFile file,
-            @RequestParam(value = "description", required = false) String description) {
-        try {
-            if (file.isEmpty()) {
-                return ResponseEntity.badRequest()
-                        .body(Map.of("error", "File is empty"));
-            }
-
-            // Validate file type (optional)
-            String contentType = file.getContentType();
-            if (contentType == null || !contentType.startsWith("audio/")) {
-                return ResponseEntity.badRequest()
-                        .body(Map.of("error", "File must be an audio file"));
-            }
-
-            String fileUrl = s3Service.uploadFile(file, "music", description);
-            
-            Map<String, String> response = new HashMap<>();
-            response.put("url", fileUrl);
-            response.put("originalFilename", file.getOriginalFilename());
-            if (description != null && !description.isBlank()) {
-                response.put("description", description);
-            }
-            response.put("message", "File uploaded successfully");
+            @RequestParam(value = "description", required = false) String description,
+            Authentication authentication) {
+        if (file.isEmpty()) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest()
+                    .body(Map.of("error", "File is empty")));
+        }
 
-            return ResponseEntity.ok(response);
-        } catch (IOException e) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body(Map.of("error", "Failed to upload file: " + e.getMessage()));
+        // Validate file type (optional)
+        String contentType = file.getContentType();
+        if (contentType == null || !contentType.startsWith("audio/")) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest()
+                    .body(Map.of("error", "File must be an audio file")));
         }
+
+        AudioMetadataReader.Capture capture = new AudioMetadataReader.Capture();
+        return s3Service.uploadFileAsync(file, "music", description, getCurrentUserId(authentication), capture)
+                .thenApply(fileUrl -> {
+                    Map<String, Object> response = new HashMap<>();
+                    response.put("url", fileUrl);
+                    response.put("originalFilename", file.getOriginalFilename());
+                    if (description != null && !description.isBlank()) {
+                        response.put("description", description);
+                    }
+                    addAudioMetadata(response, fileUrl, audioMetadataService.read(capture));
+                    response.put("message", "File uploaded successfully");
+                    return ResponseEntity.ok(response);
+                })
+                .exceptionally(e -> uploadError("Failed to upload file: ", e));
     }
 
     /**
@@ -69,56 +155,304 @@ public class FileUploadController {
      * @return JSON with the S3 URL and metadata
      */
     @PostMapping("/upload/cover")
-    public ResponseEntity<Map<String, String>> uploadCoverFile(
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> uploadCoverFile(
             @RequestParam("file") MultipartFile file,
-            @RequestParam(value = "description", required = false) String description) {
-        try {
-            if (file.isEmpty()) {
-                return ResponseEntity.badRequest()
-                        .body(Map.of("error", "File is empty"));
-            }
+            @RequestParam(value = "description", required = false) String description,
+            Authentication authentication) {
+        if (file.isEmpty()) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest()
+                    .body(Map.of("error", "File is empty")));
+        }
 
-            // Validate file type (optional)
-            String contentType = file.getContentType();
-            if (contentType == null || !contentType.startsWith("image/")) {
-                return ResponseEntity.badRequest()
-                        .body(Map.of("error", "File must be an image file"));
-            }
+        // Validate file type (optional)
+        String contentType = file.getContentType();
+        if (contentType == null || !contentType.startsWith("image/")) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest()
+                    .body(Map.of("error", "File must be an image file")));
+        }
+
+        return s3Service.uploadFileAsync(file, "cover", description, getCurrentUserId(authentication), null)
+                .thenApply(fileUrl -> {
+                    thumbnailService.submit(fileUrl);
 
-            String fileUrl = s3Service.uploadFile(file, "cover", description);
-            
-            Map<String, String> response = new HashMap<>();
-            response.put("url", fileUrl);
-            response.put("originalFilename", file.getOriginalFilename());
-            if (description != null && !description.isBlank()) {
-                response.put("description", description);
+                    Map<String, Object> response = new HashMap<>();
+                    response.put("url", fileUrl);
+                    response.put("originalFilename", file.getOriginalFilename());
+                    if (description != null && !description.isBlank()) {
+                        response.put("description", description);
+                    }
+                    response.put("message", "Cover art uploaded successfully");
+                    return ResponseEntity.ok(response);
+                })
+                .exceptionally(e -> uploadError("Failed to upload cover art: ", e));
+    }
+
+    /**
+     * Stream a music or cover file straight to S3
+     * PUT /api/files/stream/{type}?filename=song.mp3&description=...&uploadId=...
+     * The request body is the raw file with its own Content-Type (e.g. audio/mpeg). Unlike the multipart
+     * endpoints it is never buffered whole, so it is limited by uploads.max-size instead of the multipart limits.
+     * The body is read and sent on the upload's own virtual thread, not on a request thread.
+     * @param type - "music" or "cover"
+     * @param uploadId - Optional client-chosen UUID, so progress can be polled while the upload runs
+     * @return JSON with the S3 URL, size and upload ID
+     */
+    @PutMapping("/stream/{type}")
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> streamUpload(
+            @PathVariable String type,
+            @RequestParam("filename") String filename,
+            @RequestParam(value = "description", required = false) String description,
+            @RequestParam(value = "uploadId", required = false) String uploadId,
+            HttpServletRequest request,
+            Authentication authentication) throws IOException {
+        String contentType = request.getContentType();
+        String typeError = checkContentType(type, contentType);
+        if (typeError != null) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(Map.of("error", typeError)));
+        }
+        long contentLength = request.getContentLengthLong();
+        if (contentLength == 0) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(Map.of("error", "File is empty")));
+        }
+        if (contentLength > maxUploadSize.toBytes()) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE)
+                    .body(Map.of("error", "File exceeds the maximum upload size of " + maxUploadSize.toMegabytes() + "MB")));
+        }
+        if (uploadId == null) {
+            uploadId = UUID.randomUUID().toString();
+        } else {
+            try {
+                uploadId = UUID.fromString(uploadId).toString();
+            } catch (IllegalArgumentException e) {
+                return CompletableFuture.completedFuture(ResponseEntity.badRequest()
+                        .body(Map.of("error", "uploadId must be a UUID")));
             }
-            response.put("message", "Cover art uploaded successfully");
+        }
 
+        UploadProgressService.Progress progress = uploadProgressService.start(
+                uploadId, getCurrentUserId(authentication), filename, contentLength);
+        if (progress == null) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(Map.of("error", "Upload ID is already in use")));
+        }
+        String id = uploadId;
+        AudioMetadataReader.Capture capture = "music".equals(type) ? new AudioMetadataReader.Capture() : null;
+        return s3Service.uploadStreamAsync(request.getInputStream(), filename, contentType, type, description,
+                        progress.getUserId(), progress, capture)
+                .thenApply(fileUrl -> {
+                    progress.completed();
+                    if ("cover".equals(type)) {
+                        thumbnailService.submit(fileUrl);
+                    }
+
+                    Map<String, Object> response = new HashMap<>();
+                    response.put("url", fileUrl);
+                    response.put("originalFilename", filename);
+                    if (description != null && !description.isBlank()) {
+                        response.put("description", description);
+                    }
+                    response.put("uploadId", id);
+                    response.put("size", progress.getReceivedBytes());
+                    if (capture != null) {
+                        addAudioMetadata(response, fileUrl, audioMetadataService.read(capture));
+                    }
+                    response.put("message", "File uploaded successfully");
+                    return ResponseEntity.ok(response);
+                })
+                .exceptionally(e -> {
+                    Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                    progress.failed(cause instanceof MaxUploadSizeExceededException ? "File too large" : cause.getMessage());
+                    return uploadError("Failed to upload file: ", e);
+                });
+    }
+
+    /**
+     * Upload throughput and transfers in progress
+     * GET /api/files/transfers
+     * @return JSON with active uploads, parts in flight, total bytes uploaded and mean bytes/s per upload
+     */
+    @GetMapping("/transfers")
+    public Map<String, Object> getTransferStats() {
+        return Map.of(
+                "activeUploads", s3Service.activeUploads(),
+                "partsInFlight", s3Service.partsInFlight(),
+                "uploadedBytes", s3Service.uploadedBytes(),
+                "meanThroughput", s3Service.meanUploadThroughput()
+        );
+    }
+
+    /**
+     * Progress of a streaming upload
+     * GET /api/files/uploads/{uploadId}/progress
+     * @return JSON with received/uploaded bytes and status (RECEIVING, COMPLETED or FAILED)
+     */
+    @GetMapping("/uploads/{uploadId}/progress")
+    public ResponseEntity<Map<String, Object>> getUploadProgress(@PathVariable String uploadId,
+                                                                 Authentication authentication) {
+        UploadProgressService.Progress progress = uploadProgressService.get(uploadId);
+        if (progress == null || !Objects.equals(progress.getUserId(), getCurrentUserId(authentication))) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "Upload not found"));
+        }
+        return ResponseEntity.ok(progress.toMap());
+    }
+
+    /**
+     * Start an upload that goes from the client straight to S3
+     * POST /api/files/direct
+     * Body: {"type": "music" | "cover", "filename": "...", "contentType": "audio/mpeg", "size": 12345,
+     *        "sha256": "<hex>", "description": "..."}
+     * @return {"uploadId", "method": "PUT", "url", "headers", "expiresAt"} for a single PUT, or
+     *         {"uploadId", "method": "MULTIPART", "partSize", "parts": [{"partNumber", "url", "size"}], "expiresAt"}.
+     *         The client sends the file (or each part) to the URLs with the listed headers, then calls complete.
+     *         If the file is already stored, {"method": "EXISTS", "url"} is returned and nothing needs to be sent.
+     */
+    @PostMapping("/direct")
+    public ResponseEntity<Map<String, Object>> startDirectUpload(@RequestBody Map<String, Object> body,
+                                                                 Authentication authentication) {
+        String type = body.get("type") instanceof String s ? s : null;
+        String filename = body.get("filename") instanceof String s ? s : null;
+        String contentType = body.get("contentType") instanceof String s ? s : null;
+        String description = body.get("description") instanceof String s ? s : null;
+        String sha256 = body.get("sha256") instanceof String s ? s.toLowerCase() : null;
+        if (filename == null || filename.isBlank() || !(body.get("size") instanceof Number size)) {
+            return ResponseEntity.badRequest().body(Map.of("error", "filename and size are required"));
+        }
+        if (sha256 == null || !sha256.matches("[0-9a-f]{64}")) {
+            return ResponseEntity.badRequest().body(Map.of("error", "sha256 must be the hex SHA-256 of the file"));
+        }
+        String typeError = checkContentType(type, contentType);
+        if (typeError != null) {
+            return ResponseEntity.badRequest().body(Map.of("error", typeError));
+        }
+        if (size.longValue() <= 0) {
+            return ResponseEntity.badRequest().body(Map.of("error", "File is empty"));
+        }
+        try {
+            return ResponseEntity.ok(directUploadService.start(getCurrentUserId(authentication), type, filename,
+                    contentType, size.longValue(), description, HexFormat.of().parseHex(sha256)));
+        } catch (MaxUploadSizeExceededException e) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE)
+                    .body(Map.of("error", "File exceeds the maximum upload size of " + maxUploadSize.toMegabytes() + "MB"));
+        } catch (DirectUploadService.SessionLimitException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(Map.of("error", e.getMessage()));
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Failed to start upload: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Finish a direct upload once the client has sent all bytes to S3
+     * POST /api/files/direct/{uploadId}/complete
+     * @return JSON with the S3 URL, like the upload endpoints
+     */
+    @PostMapping("/direct/{uploadId}/complete")
+    public ResponseEntity<Map<String, Object>> completeDirectUpload(@PathVariable String uploadId,
+                                                                    Authentication authentication) {
+        try {
+            DirectUploadService.CompletedUpload upload =
+                    directUploadService.complete(uploadId, getCurrentUserId(authentication));
+            if (upload == null) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "Upload not found"));
+            }
+            if ("cover".equals(upload.folder())) {
+                thumbnailService.submit(upload.url());
+            }
+            Map<String, Object> response = new HashMap<>();
+            response.put("url", upload.url());
+            response.put("originalFilename", upload.fileName());
+            response.put("uploadId", uploadId);
+            response.put("size", upload.size());
+            if ("music".equals(upload.folder())) {
+                // The bytes never passed through us, so read the headers back from S3
+                try {
+                    addAudioMetadata(response, upload.url(), audioMetadataService.read(upload.url()));
+                } catch (IOException e) {
+                    // The upload itself succeeded; the backfill sweep reads the headers later
+                }
+            }
+            response.put("message", "File uploaded successfully");
             return ResponseEntity.ok(response);
+        } catch (DirectUploadService.SessionStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", e.getMessage()));
         } catch (IOException e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body(Map.of("error", "Failed to upload cover art: " + e.getMessage()));
+                    .body(Map.of("error", "Failed to complete upload: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Abandon a direct upload
+     * DELETE /api/files/direct/{uploadId}
+     */
+    @DeleteMapping("/direct/{uploadId}")
+    public ResponseEntity<Map<String, Object>> cancelDirectUpload(@PathVariable String uploadId,
+                                                                  Authentication authentication) {
+        if (!directUploadService.cancel(uploadId, getCurrentUserId(authentication))) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "Upload not found"));
         }
+        return ResponseEntity.ok(Map.of("message", "Upload cancelled"));
     }
 
     /**
      * Delete a file from S3
      * DELETE /api/files/delete
+     * Only the user who uploaded a file may delete it, and only while no song uses it.
      * @param fileUrl - The S3 URL of the file to delete
-     * @return Success message
+     * @return Success message; 404 if the file is unknown or already deleted, 403 if it is not the user's
+     * and 409 if a song uses it
      */
     @DeleteMapping("/delete")
-    public ResponseEntity<Map<String, String>> deleteFile(@RequestParam("fileUrl") String fileUrl) {
+    public ResponseEntity<Map<String, String>> deleteFile(@RequestParam("fileUrl") String fileUrl,
+                                                          Authentication authentication) {
         try {
-            s3Service.deleteFile(fileUrl);
-            return ResponseEntity.ok(Map.of("message", "File deleted successfully"));
+            return switch (s3Service.deleteFile(fileUrl, getCurrentUserId(authentication))) {
+                case DELETED -> {
+                    thumbnailService.deleteVariants(fileUrl);
+                    yield ResponseEntity.ok(Map.of("message", "File deleted successfully"));
+                }
+                case NOT_FOUND -> ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "File not found"));
+                case NOT_OWNER -> ResponseEntity.status(HttpStatus.FORBIDDEN)
+                        .body(Map.of("error", "Only the user who uploaded the file can delete it"));
+                case IN_USE -> ResponseEntity.status(HttpStatus.CONFLICT)
+                        .body(Map.of("error", "The file is used by a song"));
+            };
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body(Map.of("error", "Failed to delete file: " + e.getMessage()));
         }
     }
 
+    /**
+     * Start removing S3 objects no song uses any more (past the grace period), like the nightly run.
+     * Admins only; the run continues in the background, see GET /api/files/cleanup for its report.
+     * POST /api/files/cleanup?dryRun=true
+     * @param dryRun - Only report what would be deleted (the default)
+     * @return 202 once started, 409 if a run is already in progress
+     */
+    @PostMapping("/cleanup")
+    public ResponseEntity<Map<String, Object>> cleanupOrphans(
+            @RequestParam(value = "dryRun", defaultValue = "true") boolean dryRun) {
+        if (!orphanCleanupService.start(dryRun)) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", "Cleanup is already running"));
+        }
+        return ResponseEntity.accepted().body(Map.of("started", true, "dryRun", dryRun));
+    }
+
+    /**
+     * Report of the last orphan cleanup run (admins only)
+     * GET /api/files/cleanup
+     * @return JSON with running, and the scanned/orphan/deleted counts and a sample of orphaned keys of the last run
+     */
+    @GetMapping("/cleanup")
+    public ResponseEntity<Map<String, Object>> getCleanupReport() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("running", orphanCleanupService.isRunning());
+        OrphanCleanupService.Report report = orphanCleanupService.getLastReport();
+        if (report != null) response.put("lastRun", report.toMap());
+        return ResponseEntity.ok(response);
+    }
+
     /**
      * Check if S3 bucket exists
      * GET /api/files/bucket/status
@@ -0,0 +1,133 @@
+package com.example.media_controller_iot.controller;
+
+import com.example.media_controller_iot.models.IngestionJob;
+import com.example.media_controller_iot.repository.IngestionJobRepository;
+import com.example.media_controller_iot.service.IngestionService;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Bulk catalog imports: create a job from a manifest or a server-side directory, then follow,
+ * pause and resume it. Admins only (see SecurityConfig).
+ */
+@RestController
+@RequestMapping("/api/ingest")
+public class IngestionController {
+
+    private final IngestionService ingestionService;
+    private final IngestionJobRepository ingestionJobRepository;
+
+    public IngestionController(IngestionService ingestionService,
+                               IngestionJobRepository ingestionJobRepository) {
+        this.ingestionService = ingestionService;
+        this.ingestionJobRepository = ingestionJobRepository;
+    }
+
+    private String getCurrentUserId(Authentication authentication) {
+        if (authentication != null && authentication.getPrincipal() instanceof Jwt jwt) {
+            return jwt.getSubject();
+        }
+        return null;
+    }
+
+    /**
+     * Start a job from a CSV or JSON manifest sent as the request body
+     * POST /api/ingest/jobs?format=csv&name=catalog.csv
+     */
+    @PostMapping("/jobs")
+    public ResponseEntity<Map<String, Object>> createFromManifest(@RequestParam(defaultValue = IngestionService.FORMAT_CSV) String format,
+                                                                  @RequestParam(required = false) String name,
+                                                                  HttpServletRequest request,
+                                                                  Authentication authentication) {
+        if (!IngestionService.isSupportedFormat(format)) {
+            return ResponseEntity.badRequest().body(Map.of("error", "format must be csv or json"));
+        }
+        try {
+            IngestionJob job = ingestionService.createFromManifest(getCurrentUserId(authentication), format, name,
+                    request.getInputStream());
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(Map.of(
+                    "success", true,
+                    "job", ingestionService.toMap(job)
+            ));
+        } catch (IOException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Could not read manifest: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Start a job for the audio files under a directory of ingest.base-dir
+     * POST /api/ingest/jobs/directory {"path": "albums/2024"}
+     */
+    @PostMapping("/jobs/directory")
+    public ResponseEntity<Map<String, Object>> createFromDirectory(@RequestBody Map<String, String> body,
+                                                                   Authentication authentication) {
+        try {
+            IngestionJob job = ingestionService.createFromDirectory(getCurrentUserId(authentication), body.get("path"));
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(Map.of(
+                    "success", true,
+                    "job", ingestionService.toMap(job)
+            ));
+        } catch (IOException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Could not read directory: " + e.getMessage()));
+        }
+    }
+
+    @GetMapping("/jobs")
+    public ResponseEntity<List<Map<String, Object>>> getJobs(Authentication authentication) {
+        return ResponseEntity.ok(ingestionJobRepository.findByUserIdOrderByCreatedAtDesc(getCurrentUserId(authentication))
+                .stream().map(ingestionService::toMap).toList());
+    }
+
+    /**
+     * Progress and throughput of a job, with a sample of failed tracks
+     */
+    @GetMapping("/jobs/{jobId}")
+    public ResponseEntity<Map<String, Object>> getJob(@PathVariable Long jobId, Authentication authentication) {
+        Optional<IngestionJob> job = findOwnJob(jobId, authentication);
+        if (job.isEmpty()) return ResponseEntity.notFound().build();
+        Map<String, Object> response = ingestionService.toMap(job.get());
+        response.put("failures", ingestionService.failureSample(jobId));
+        return ResponseEntity.ok(response);
+    }
+
+    @PostMapping("/jobs/{jobId}/pause")
+    public ResponseEntity<Map<String, Object>> pauseJob(@PathVariable Long jobId, Authentication authentication) {
+        if (findOwnJob(jobId, authentication).isEmpty()) return ResponseEntity.notFound().build();
+        if (!ingestionService.pause(jobId)) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", "Job is not running"));
+        }
+        return ResponseEntity.ok(Map.of("success", true, "jobId", jobId));
+    }
+
+    /**
+     * Continue a job with its pending tracks; retryFailed=true also retries the tracks that failed
+     */
+    @PostMapping("/jobs/{jobId}/resume")
+    public ResponseEntity<Map<String, Object>> resumeJob(@PathVariable Long jobId,
+                                                         @RequestParam(defaultValue = "false") boolean retryFailed,
+                                                         Authentication authentication) {
+        Optional<IngestionJob> job = findOwnJob(jobId, authentication);
+        if (job.isEmpty()) return ResponseEntity.notFound().build();
+        if (!ingestionService.resume(job.get(), retryFailed)) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", "Job is already running"));
+        }
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(Map.of("success", true, "jobId", jobId));
+    }
+
+    // Jobs of other users are reported as missing
+    private Optional<IngestionJob> findOwnJob(Long jobId, Authentication authentication) {
+        String userId = getCurrentUserId(authentication);
+        return ingestionJobRepository.findById(Objects.requireNonNull(jobId))
+                .filter(job -> job.getUserId().equals(userId));
+    }
+}
@@ -1,6 +1,12 @@
 package com.example.media_controller_iot.controller;
 
+import com.example.media_controller_iot.models.Playlist;
+import com.example.media_controller_iot.repository.PlaylistRepository;
 import com.example.media_controller_iot.service.PlayerService;
+import com.example.media_controller_iot.service.QueueSourceService;
+import com.example.media_controller_iot.util.QueueList;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.lang.NonNull;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.oauth2.jwt.Jwt;
@@ -9,15 +15,24 @@ import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/api/player")
 public class PlayerController {
 
+    private static final int MAX_APPEND_SIZE = 10_000;
+
     private final PlayerService playerService;
+    private final QueueSourceService queueSourceService;
+    private final PlaylistRepository playlistRepository;
 
-    public PlayerController(PlayerService playerService) {
+    public PlayerController(PlayerService playerService,
+                            QueueSourceService queueSourceService,
+                            PlaylistRepository playlistRepository) {
         this.playerService = playerService;
+        this.queueSourceService = queueSourceService;
+        this.playlistRepository = playlistRepository;
     }
 
     @PostMapping("/command")
@@ -58,16 +73,124 @@ public class PlayerController {
     @PostMapping("/playlist-queue")
     public void setPlaylistQueue(@RequestBody Map<String, Object> body, Authentication authentication) {
         String userId = getCurrentUserId(authentication);
-        @SuppressWarnings("unchecked")
-        List<Integer> songIdsInt = (List<Integer>) body.get("songIds");
-        
-        if (songIdsInt == null) {
-            playerService.setPlaylistQueue(null, userId);
+        List<?> songIds = (List<?>) body.get("songIds");
+
+        if (songIds == null) {
+            playerService.setQueue(null, 0, userId);
+        } else {
+            playerService.setQueue(songIds.stream().mapToLong(id -> ((Number) id).longValue()).toArray(), 0, userId);
+        }
+    }
+
+    /**
+     * Build the queue on the server from a playlist, category or search instead of a list of IDs
+     * POST /api/player/queue {"source": "playlist", "playlistId": 1, "startSongId": 5}
+     */
+    @PostMapping("/queue")
+    public ResponseEntity<Map<String, Object>> setQueue(@RequestBody Map<String, Object> body, Authentication authentication) {
+        String userId = getCurrentUserId(authentication);
+        Object source = body.get("source");
+
+        long[] songIds;
+        if (QueueSourceService.SOURCE_PLAYLIST.equals(source)) {
+            if (!(body.get("playlistId") instanceof Number playlistId)) {
+                return ResponseEntity.badRequest().body(Map.of("error", "playlistId is required"));
+            }
+            Optional<Playlist> playlist = playlistRepository.findById(playlistId.longValue());
+            if (playlist.isEmpty()) {
+                return ResponseEntity.notFound().build();
+            }
+            if (!playlist.get().getUserId().equals(userId)) {
+                return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+            }
+            songIds = queueSourceService.playlistSongIds(playlistId.longValue());
+        } else if (QueueSourceService.SOURCE_CATEGORY.equals(source)) {
+            if (!(body.get("category") instanceof String category)) {
+                return ResponseEntity.badRequest().body(Map.of("error", "category is required"));
+            }
+            songIds = queueSourceService.categorySongIds(category);
+        } else if (QueueSourceService.SOURCE_SEARCH.equals(source)) {
+            if (!(body.get("query") instanceof String query) || query.isBlank()) {
+                return ResponseEntity.badRequest().body(Map.of("error", "query is required"));
+            }
+            songIds = queueSourceService.searchSongIds(query.trim());
         } else {
-            List<Long> songIds = songIdsInt.stream()
-                    .map(Integer::longValue)
-                    .toList();
-            playerService.setPlaylistQueue(songIds, userId);
+            return ResponseEntity.badRequest().body(Map.of("error", "source must be playlist, category or search"));
+        }
+
+        if (songIds.length == 0) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "No songs found for this source"));
+        }
+
+        int startIndex = 0;
+        if (body.get("startSongId") instanceof Number startSongId) {
+            for (int i = 0; i < songIds.length; i++) {
+                if (songIds[i] == startSongId.longValue()) {
+                    startIndex = i;
+                    break;
+                }
+            }
+        }
+
+        playerService.setQueue(songIds, startIndex, userId);
+        return ResponseEntity.ok(Map.of("success", true, "size", songIds.length, "startIndex", startIndex));
+    }
+
+    /**
+     * Page through the queue in play order
+     * GET /api/player/queue?after={entryId}&limit=50
+     */
+    @GetMapping("/queue")
+    public ResponseEntity<Map<String, Object>> getQueue(@RequestParam(required = false) Long after,
+                                                        @RequestParam(defaultValue = "50") int limit) {
+        try {
+            return ResponseEntity.ok(playerService.getQueue(after != null ? after : QueueList.NONE,
+                    Math.min(Math.max(limit, 1), 500)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    // Play a song right after the current one
+    @PostMapping("/queue/next")
+    public ResponseEntity<Map<String, Object>> playNext(@RequestBody Map<String, Long> body) {
+        Long songId = body.get("songId");
+        if (songId == null) {
+            return ResponseEntity.badRequest().body(Map.of("error", "songId is required"));
+        }
+        long entryId = playerService.playNext(songId);
+        if (entryId == QueueList.NONE) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(Map.of("success", true, "entryId", entryId));
+    }
+
+    // Add songs to the end of the queue
+    @PostMapping("/queue/append")
+    public ResponseEntity<Map<String, Object>> appendToQueue(@RequestBody Map<String, List<Long>> body) {
+        List<Long> songIds = body.get("songIds");
+        if (songIds == null || songIds.size() > MAX_APPEND_SIZE) {
+            return ResponseEntity.badRequest().body(Map.of("error", "songIds must be a list of at most " + MAX_APPEND_SIZE + " IDs"));
+        }
+        return ResponseEntity.ok(Map.of("success", true, "entryIds", playerService.enqueue(songIds)));
+    }
+
+    @DeleteMapping("/queue/{entryId}")
+    public ResponseEntity<Map<String, Boolean>> removeFromQueue(@PathVariable long entryId) {
+        if (!playerService.removeFromQueue(entryId)) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(Map.of("success", true));
+    }
+
+    // Move a queue entry after another one; afterEntryId null moves it to the front
+    @PutMapping("/queue/{entryId}/position")
+    public ResponseEntity<Map<String, Boolean>> moveInQueue(@PathVariable long entryId,
+                                                            @RequestBody Map<String, Long> body) {
+        Long afterEntryId = body.get("afterEntryId");
+        if (!playerService.moveInQueue(entryId, afterEntryId != null ? afterEntryId : QueueList.NONE)) {
+            return ResponseEntity.notFound().build();
         }
+        return ResponseEntity.ok(Map.of("success", true));
     }
 }
@@ -1,42 +1,64 @@
 package com.example.media_controller_iot.controller;
 
+import com.example.media_controller_iot.dto.PlaylistTrack;
+import com.example.media_controller_iot.dto.SmartPlaylistRules;
 import com.example.media_controller_iot.models.Playlist;
 import com.example.media_controller_iot.models.PlaylistSong;
-import com.example.media_controller_iot.models.Songs;
 import com.example.media_controller_iot.repository.PlaylistRepository;
 import com.example.media_controller_iot.repository.PlaylistSongRepository;
 import com.example.media_controller_iot.repository.SongsRepo;
 import com.example.media_controller_iot.service.PlaylistEventService;
+import com.example.media_controller_iot.service.PlaylistService;
+import com.example.media_controller_iot.service.PlaylistTransferService;
+import com.example.media_controller_iot.service.SmartPlaylistService;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/api/playlists")
 public class PlaylistController {
 
+    private static final int MAX_BATCH_SIZE = 10_000;
+
     private final PlaylistRepository playlistRepository;
     private final PlaylistSongRepository playlistSongRepository;
     private final SongsRepo songsRepository;
     private final PlaylistEventService playlistEventService;
+    private final PlaylistService playlistService;
+    private final PlaylistTransferService playlistTransferService;
+    private final SmartPlaylistService smartPlaylistService;
 
     public PlaylistController(PlaylistRepository playlistRepository,
                               PlaylistSongRepository playlistSongRepository,
                               SongsRepo songsRepository,
-                              PlaylistEventService playlistEventService) {
+                              PlaylistEventService playlistEventService,
+                              PlaylistService playlistService,
+                              PlaylistTransferService playlistTransferService,
+                              SmartPlaylistService smartPlaylistService) {
         this.playlistRepository = playlistRepository;
         this.playlistSongRepository = playlistSongRepository;
         this.songsRepository = songsRepository;
         this.playlistEventService = playlistEventService;
+        this.playlistService = playlistService;
+        this.playlistTransferService = playlistTransferService;
+        this.smartPlaylistService = smartPlaylistService;
     }
 
     // SSE stream for playlist updates
@@ -96,6 +118,7 @@ public class PlaylistController {
                     playlistSongRepository.deleteByPlaylistId(Objects.requireNonNull(playlistId));
                     // Delete playlist
                     playlistRepository.delete(Objects.requireNonNull(playlist));
+                    smartPlaylistService.forget(playlistId);
                     playlistEventService.broadcastPlaylistDeleted(playlistId);
 
                     return ResponseEntity.ok(Map.of("success", true));
@@ -103,24 +126,58 @@ public class PlaylistController {
                 .orElse(ResponseEntity.notFound().build());
     }
 
-    // Get songs in a playlist
+    // Get songs in a playlist, in playlist order
     @GetMapping("/{playlistId}/songs")
-    public ResponseEntity<List<Songs>> getPlaylistSongs(@PathVariable Long playlistId,
-                                                         Authentication authentication) {
+    public ResponseEntity<List<PlaylistTrack>> getPlaylistSongs(@PathVariable Long playlistId,
+                                                                Authentication authentication) {
         String userId = getCurrentUserId(authentication);
 
-        return playlistRepository.findById(Objects.requireNonNull(playlistId))
-                .map(playlist -> {
-                    if (!playlist.getUserId().equals(userId)) {
-                        return ResponseEntity.status(HttpStatus.FORBIDDEN).<List<Songs>>build();
-                    }
+        List<PlaylistTrack> tracks = playlistSongRepository.findTracks(playlistId, userId, Limit.unlimited());
+        if (!tracks.isEmpty()) {
+            return ResponseEntity.ok(tracks);
+        }
+        // Only an empty result needs a second look to tell empty apart from missing or not owned
+        return this.<List<PlaylistTrack>>checkOwnership(playlistId, userId).orElse(ResponseEntity.ok(tracks));
+    }
 
-                    List<Long> songIds = playlistSongRepository.findSongIdsByPlaylistId(playlistId);
-                    List<Songs> songs = songsRepository.findAllById(Objects.requireNonNull(songIds));
+    // Get one page of songs in a playlist; pass the returned nextCursor to continue
+    @GetMapping("/{playlistId}/songs/page")
+    public ResponseEntity<Map<String, Object>> getPlaylistSongsPage(@PathVariable Long playlistId,
+                                                                    @RequestParam(required = false) String cursor,
+                                                                    @RequestParam(defaultValue = "100") int size,
+                                                                    Authentication authentication) {
+        String userId = getCurrentUserId(authentication);
+        int pageSize = Math.min(Math.max(size, 1), 1000);
+
+        List<PlaylistTrack> tracks;
+        if (cursor != null && !cursor.isBlank()) {
+            int separator = cursor.lastIndexOf('_');
+            try {
+                String afterSortKey = cursor.substring(0, separator);
+                long afterId = Long.parseLong(cursor.substring(separator + 1));
+                tracks = playlistSongRepository.findTracksAfter(
+                        playlistId, userId, afterSortKey, afterId, Limit.of(pageSize));
+            } catch (RuntimeException e) {
+                return ResponseEntity.badRequest().body(Map.of("error", "Invalid cursor"));
+            }
+        } else {
+            tracks = playlistSongRepository.findTracks(playlistId, userId, Limit.of(pageSize));
+        }
 
-                    return ResponseEntity.ok(songs);
-                })
-                .orElse(ResponseEntity.notFound().build());
+        if (tracks.isEmpty() && cursor == null) {
+            Optional<ResponseEntity<Map<String, Object>>> failure = checkOwnership(playlistId, userId);
+            if (failure.isPresent()) return failure.get();
+        }
+
+        Map<String, Object> page = new HashMap<>();
+        page.put("tracks", tracks);
+        if (tracks.size() == pageSize) {
+            PlaylistTrack last = tracks.get(tracks.size() - 1);
+            page.put("nextCursor", last.sortKey() + "_" + last.entryId());
+        } else {
+            page.put("nextCursor", null);
+        }
+        return ResponseEntity.ok(page);
     }
 
     // Add song to playlist
@@ -136,6 +193,9 @@ public class PlaylistController {
                     if (!playlist.getUserId().equals(userId)) {
                         return ResponseEntity.status(HttpStatus.FORBIDDEN).<Map<String, Boolean>>build();
                     }
+                    if (playlist.isSmart()) {
+                        return ResponseEntity.status(HttpStatus.CONFLICT).<Map<String, Boolean>>build();
+                    }
 
                     // Check if song exists
                     if (!songsRepository.existsById(Objects.requireNonNull(songId))) {
@@ -152,9 +212,11 @@ public class PlaylistController {
                     PlaylistSong playlistSong = PlaylistSong.builder()
                             .playlistId(playlistId)
                             .songId(songId)
+                            .sortKey(playlistService.nextHeadSortKey(playlistId))
                             .build();
 
                     playlistSongRepository.save(Objects.requireNonNull(playlistSong));
+                    playlistRepository.adjustSongCount(playlistId, 1);
                     playlistEventService.broadcastSongAdded(playlistId, songId);
 
                     return ResponseEntity.ok(Map.of("success", true));
@@ -162,6 +224,170 @@ public class PlaylistController {
                 .orElse(ResponseEntity.notFound().build());
     }
 
+    // Add many songs at once, e.g. a whole album
+    @PostMapping("/{playlistId}/songs/batch")
+    public ResponseEntity<Map<String, Object>> addSongsToPlaylist(@PathVariable Long playlistId,
+                                                                  @RequestBody Map<String, List<Long>> body,
+                                                                  Authentication authentication) {
+        String userId = getCurrentUserId(authentication);
+        List<Long> songIds = body.get("songIds");
+        if (songIds == null || songIds.size() > MAX_BATCH_SIZE) {
+            return ResponseEntity.badRequest().body(Map.of("error", "songIds must be a list of at most " + MAX_BATCH_SIZE + " IDs"));
+        }
+
+        Optional<ResponseEntity<Map<String, Object>>> failure = checkEditable(playlistId, userId);
+        if (failure.isPresent()) return failure.get();
+
+        PlaylistService.BatchAddResult result = playlistService.addSongs(playlistId, songIds);
+        if (!result.added().isEmpty()) {
+            playlistEventService.broadcastSongsAdded(playlistId, result.added());
+        }
+
+        return ResponseEntity.ok(Map.of(
+                "success", true,
+                "added", result.added(),
+                "alreadyExists", result.alreadyPresent(),
+                "notFound", result.notFound()
+        ));
+    }
+
+    // Remove many songs at once
+    @PostMapping("/{playlistId}/songs/batch-remove")
+    public ResponseEntity<Map<String, Object>> removeSongsFromPlaylist(@PathVariable Long playlistId,
+                                                                       @RequestBody Map<String, List<Long>> body,
+                                                                       Authentication authentication) {
+        String userId = getCurrentUserId(authentication);
+        List<Long> songIds = body.get("songIds");
+        if (songIds == null || songIds.size() > MAX_BATCH_SIZE) {
+            return ResponseEntity.badRequest().body(Map.of("error", "songIds must be a list of at most " + MAX_BATCH_SIZE + " IDs"));
+        }
+
+        Optional<ResponseEntity<Map<String, Object>>> failure = checkEditable(playlistId, userId);
+        if (failure.isPresent()) return failure.get();
+
+        List<Long> removed = playlistService.removeSongs(playlistId, songIds);
+        if (!removed.isEmpty()) {
+            playlistEventService.broadcastSongsRemoved(playlistId, removed);
+        }
+
+        return ResponseEntity.ok(Map.of("success", true, "removed", removed.size(), "removedSongIds", removed));
+    }
+
+    // Download a playlist as M3U or JSON; rows are streamed straight from the database
+    @GetMapping("/{playlistId}/export")
+    public ResponseEntity<StreamingResponseBody> exportPlaylist(@PathVariable Long playlistId,
+                                                                @RequestParam(defaultValue = PlaylistTransferService.FORMAT_M3U) String format,
+                                                                Authentication authentication) {
+        String userId = getCurrentUserId(authentication);
+        if (!PlaylistTransferService.isSupportedFormat(format)) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        Optional<Playlist> found = playlistRepository.findById(Objects.requireNonNull(playlistId));
+        if (found.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        Playlist playlist = found.get();
+        if (!playlist.getUserId().equals(userId)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+
+        boolean m3u = PlaylistTransferService.FORMAT_M3U.equals(format);
+        String fileName = playlist.getName().replaceAll("[^A-Za-z0-9._ -]", "_") + (m3u ? ".m3u" : ".json");
+        StreamingResponseBody body = m3u
+                ? output -> playlistTransferService.exportM3u(playlist, output)
+                : output -> playlistTransferService.exportJson(playlist, output);
+
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"")
+                .contentType(m3u ? MediaType.parseMediaType("audio/x-mpegurl") : MediaType.APPLICATION_JSON)
+                .body(body);
+    }
+
+    // Create a new playlist from an uploaded M3U or JSON file (raw request body)
+    @PostMapping("/import")
+    public ResponseEntity<Map<String, Object>> importPlaylist(@RequestParam String name,
+                                                              @RequestParam(defaultValue = PlaylistTransferService.FORMAT_M3U) String format,
+                                                              HttpServletRequest request,
+                                                              Authentication authentication) {
+        String userId = getCurrentUserId(authentication);
+        if (name.trim().isEmpty() || !PlaylistTransferService.isSupportedFormat(format)) {
+            return ResponseEntity.badRequest().body(Map.of("error", "name is required and format must be m3u or json"));
+        }
+
+        PlaylistTransferService.ImportResult result;
+        try {
+            result = playlistTransferService.importNew(userId, name.trim(), format, request.getInputStream());
+        } catch (IOException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Could not read playlist file: " + e.getMessage()));
+        }
+        playlistEventService.broadcastPlaylistCreated(result.playlistId(), name.trim());
+
+        return importResponse(result, HttpStatus.CREATED);
+    }
+
+    // Append the entries of an uploaded M3U or JSON file to an existing playlist
+    @PostMapping("/{playlistId}/import")
+    public ResponseEntity<Map<String, Object>> importIntoPlaylist(@PathVariable Long playlistId,
+                                                                  @RequestParam(defaultValue = PlaylistTransferService.FORMAT_M3U) String format,
+                                                                  HttpServletRequest request,
+                                                                  Authentication authentication) {
+        String userId = getCurrentUserId(authentication);
+        if (!PlaylistTransferService.isSupportedFormat(format)) {
+            return ResponseEntity.badRequest().body(Map.of("error", "format must be m3u or json"));
+        }
+
+        Optional<ResponseEntity<Map<String, Object>>> failure = checkEditable(playlistId, userId);
+        if (failure.isPresent()) return failure.get();
+
+        PlaylistTransferService.ImportResult result;
+        try {
+            result = playlistTransferService.importInto(playlistId, format, request.getInputStream());
+        } catch (IOException e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                    "error", "Could not read playlist file: " + e.getMessage(),
+                    "playlistId", playlistId
+            ));
+        }
+
+        return importResponse(result, HttpStatus.OK);
+    }
+
+    private ResponseEntity<Map<String, Object>> importResponse(PlaylistTransferService.ImportResult result,
+                                                               HttpStatus status) {
+        if (result.imported() > 0) {
+            playlistEventService.broadcastPlaylistImported(result.playlistId(), result.imported());
+        }
+
+        return ResponseEntity.status(status).body(Map.of(
+                "success", true,
+                "playlistId", result.playlistId(),
+                "imported", result.imported(),
+                "unmatched", result.unmatched(),
+                "unmatchedSamples", result.unmatchedSamples()
+        ));
+    }
+
+    // Move a song within a playlist; afterSongId null moves it to the top
+    @PutMapping("/{playlistId}/songs/{songId}/position")
+    public ResponseEntity<Map<String, Object>> moveSongInPlaylist(@PathVariable Long playlistId,
+                                                                  @PathVariable Long songId,
+                                                                  @RequestBody Map<String, Long> body,
+                                                                  Authentication authentication) {
+        String userId = getCurrentUserId(authentication);
+
+        Optional<ResponseEntity<Map<String, Object>>> failure = checkEditable(playlistId, userId);
+        if (failure.isPresent()) return failure.get();
+
+        Long afterSongId = body.get("afterSongId");
+        return playlistService.moveSong(playlistId, songId, afterSongId)
+                .map(sortKey -> {
+                    playlistEventService.broadcastSongMoved(playlistId, songId, afterSongId);
+                    return ResponseEntity.ok(Map.<String, Object>of("success", true, "sortKey", sortKey));
+                })
+                .orElse(ResponseEntity.notFound().build());
+    }
+
     // Remove song from playlist
     @DeleteMapping("/{playlistId}/songs/{songId}")
     @Transactional
@@ -175,10 +401,16 @@ public class PlaylistController {
                     if (!playlist.getUserId().equals(userId)) {
                         return ResponseEntity.status(HttpStatus.FORBIDDEN).<Map<String, Boolean>>build();
                     }
+                    if (playlist.isSmart()) {
+                        return ResponseEntity.status(HttpStatus.CONFLICT).<Map<String, Boolean>>build();
+                    }
 
-                    playlistSongRepository.deleteByPlaylistIdAndSongId(
+                    long removed = playlistSongRepository.deleteByPlaylistIdAndSongId(
                             Objects.requireNonNull(playlistId), 
                             Objects.requireNonNull(songId));
+                    if (removed > 0) {
+                        playlistRepository.adjustSongCount(playlistId, (int) -removed);
+                    }
                     playlistEventService.broadcastSongRemoved(playlistId, songId);
 
                     return ResponseEntity.ok(Map.of("success", true));
@@ -186,6 +418,46 @@ public class PlaylistController {
                 .orElse(ResponseEntity.notFound().build());
     }
 
+    // Make a playlist smart (or change its rules); its songs are rebuilt from the rules
+    @PutMapping("/{playlistId}/rules")
+    public ResponseEntity<Object> setPlaylistRules(@PathVariable Long playlistId,
+                                                   @RequestBody String rulesJson,
+                                                   Authentication authentication) {
+        String userId = getCurrentUserId(authentication);
+
+        Optional<Playlist> playlist = playlistRepository.findById(Objects.requireNonNull(playlistId));
+        if (playlist.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        if (!playlist.get().getUserId().equals(userId)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+
+        SmartPlaylistRules rules;
+        try {
+            rules = smartPlaylistService.parse(rulesJson);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+        return ResponseEntity.ok(smartPlaylistService.setRules(playlist.get(), rules));
+    }
+
+    // Turn a smart playlist back into a regular one, keeping its current songs
+    @DeleteMapping("/{playlistId}/rules")
+    public ResponseEntity<Playlist> clearPlaylistRules(@PathVariable Long playlistId,
+                                                       Authentication authentication) {
+        String userId = getCurrentUserId(authentication);
+
+        return playlistRepository.findById(Objects.requireNonNull(playlistId))
+                .map(playlist -> {
+                    if (!playlist.getUserId().equals(userId)) {
+                        return ResponseEntity.status(HttpStatus.FORBIDDEN).<Playlist>build();
+                    }
+                    return ResponseEntity.ok(smartPlaylistService.clearRules(playlist));
+                })
+                .orElse(ResponseEntity.notFound().build());
+    }
+
     // Get playlist with song count
     @GetMapping("/with-counts")
     public ResponseEntity<List<Map<String, Object>>> getPlaylistsWithCounts(Authentication authentication) {
@@ -199,9 +471,7 @@ public class PlaylistController {
                     playlistData.put("name", playlist.getName());
                     playlistData.put("userId", playlist.getUserId());
                     playlistData.put("createdAt", playlist.getCreatedAt());
-
-                    int songCount = playlistSongRepository.findByPlaylistId(playlist.getId()).size();
-                    playlistData.put("songCount", songCount);
+                    playlistData.put("songCount", playlist.getSongCount());
 
                     return playlistData;
                 })
@@ -210,6 +480,33 @@ public class PlaylistController {
         return ResponseEntity.ok(playlistsWithCounts);
     }
 
+    // Returns the error response when the playlist is missing or belongs to someone else
+    private <T> Optional<ResponseEntity<T>> checkOwnership(Long playlistId, String userId) {
+        Optional<Playlist> playlist = playlistRepository.findById(Objects.requireNonNull(playlistId));
+        if (playlist.isEmpty()) {
+            return Optional.of(ResponseEntity.notFound().build());
+        }
+        if (!playlist.get().getUserId().equals(userId)) {
+            return Optional.of(ResponseEntity.status(HttpStatus.FORBIDDEN).build());
+        }
+        return Optional.empty();
+    }
+
+    // Like checkOwnership, but also rejects smart playlists, whose songs come from their rules
+    private <T> Optional<ResponseEntity<T>> checkEditable(Long playlistId, String userId) {
+        Optional<Playlist> playlist = playlistRepository.findById(Objects.requireNonNull(playlistId));
+        if (playlist.isEmpty()) {
+            return Optional.of(ResponseEntity.notFound().build());
+        }
+        if (!playlist.get().getUserId().equals(userId)) {
+            return Optional.of(ResponseEntity.status(HttpStatus.FORBIDDEN).build());
+        }
+        if (playlist.get().isSmart()) {
+            return Optional.of(ResponseEntity.status(HttpStatus.CONFLICT).build());
+        }
+        return Optional.empty();
+    }
+
     private String getCurrentUserId(Authentication authentication) {
         if (authentication != null && authentication.getPrincipal() instanceof Jwt jwt) {
             return jwt.getSubject();
@@ -1,24 +1,31 @@
 package com.example.media_controller_iot.controller;
 
 import com.example.media_controller_iot.models.Songs;
-import com.example.media_controller_iot.repository.PlayerCommandLogRepo;
 import com.example.media_controller_iot.repository.SongsRepo;
+import com.example.media_controller_iot.service.ChartsService;
+import com.example.media_controller_iot.service.RecentlyPlayedService;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/player")
 public class SongController {
 
     private final SongsRepo songRepository;
-    private final PlayerCommandLogRepo commandLogRepository;
+    private final RecentlyPlayedService recentlyPlayedService;
+    private final ChartsService chartsService;
 
-    public SongController(SongsRepo songRepository, PlayerCommandLogRepo commandLogRepository) {
+    public SongController(SongsRepo songRepository,
+                          RecentlyPlayedService recentlyPlayedService,
+                          ChartsService chartsService) {
         this.songRepository = songRepository;
-        this.commandLogRepository = commandLogRepository;
+        this.recentlyPlayedService = recentlyPlayedService;
+        this.chartsService = chartsService;
     }
 
     @GetMapping("/songs")
@@ -42,7 +49,21 @@ public class SongController {
     @GetMapping("/recently-played")
     public List<Songs> getRecentlyPlayed(Authentication authentication) {
         String userId = getCurrentUserId(authentication);
-        return commandLogRepository.findRecentlyPlayedSongsByUserId(userId);
+        return recentlyPlayedService.getRecentlyPlayed(userId);
+    }
+
+    @GetMapping("/charts")
+    public ResponseEntity<Map<String, Object>> getCharts(@RequestParam(defaultValue = "24h") String window,
+                                                         @RequestParam(defaultValue = "10") int limit) {
+        if (!chartsService.isSupportedWindow(window)) {
+            return ResponseEntity.badRequest().body(Map.of("error", "window must be one of 1h, 24h, 7d"));
+        }
+        int size = Math.min(Math.max(limit, 1), 50);
+        return ResponseEntity.ok(Map.of(
+                "window", window,
+                "songs", chartsService.topSongs(window, size),
+                "artists", chartsService.topArtists(window, size)
+        ));
     }
 
     private String getCurrentUserId(Authentication authentication) {
@@ -0,0 +1,119 @@
+package com.example.media_controller_iot.controller;
+
+import com.example.media_controller_iot.models.HourlyListeningStats;
+import com.example.media_controller_iot.models.SongListeningStats;
+import com.example.media_controller_iot.models.Songs;
+import com.example.media_controller_iot.models.UserListeningStats;
+import com.example.media_controller_iot.repository.HourlyListeningStatsRepository;
+import com.example.media_controller_iot.repository.SongListeningStatsRepository;
+import com.example.media_controller_iot.repository.SongsRepo;
+import com.example.media_controller_iot.repository.UserListeningStatsRepository;
+import com.example.media_controller_iot.service.VolumeSeriesService;
+import org.springframework.data.domain.Limit;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+
+/**
+ * Read-only listening statistics served from the pre-aggregated stats tables
+ */
+@RestController
+@RequestMapping("/api/stats")
+public class StatsController {
+
+    private static final long MAX_RAW_VOLUME_RANGE_MILLIS = 7L * 24 * 60 * 60 * 1000;
+
+    private final SongListeningStatsRepository songStatsRepository;
+    private final UserListeningStatsRepository userStatsRepository;
+    private final HourlyListeningStatsRepository hourlyStatsRepository;
+    private final SongsRepo songsRepository;
+    private final VolumeSeriesService volumeSeriesService;
+
+    public StatsController(SongListeningStatsRepository songStatsRepository,
+                           UserListeningStatsRepository userStatsRepository,
+                           HourlyListeningStatsRepository hourlyStatsRepository,
+                           SongsRepo songsRepository,
+                           VolumeSeriesService volumeSeriesService) {
+        this.songStatsRepository = songStatsRepository;
+        this.userStatsRepository = userStatsRepository;
+        this.hourlyStatsRepository = hourlyStatsRepository;
+        this.songsRepository = songsRepository;
+        this.volumeSeriesService = volumeSeriesService;
+    }
+
+    /**
+     * GET /api/stats/songs/top - Most played songs of all time
+     */
+    @GetMapping("/songs/top")
+    public List<Map<String, Object>> getTopSongs(@RequestParam(defaultValue = "10") int limit) {
+        List<SongListeningStats> stats = songStatsRepository.findAllByOrderByPlaysDesc(Limit.of(Math.min(Math.max(limit, 1), 100)));
+
+        Map<Long, Songs> songsById = new HashMap<>();
+        songsRepository.findAllById(stats.stream().map(SongListeningStats::getSongId).toList())
+                .forEach(song -> songsById.put(song.getId(), song));
+
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (SongListeningStats stat : stats) {
+            Songs song = songsById.get(stat.getSongId());
+            if (song == null) continue;
+            Map<String, Object> entry = new HashMap<>();
+            entry.put("song", song);
+            entry.put("plays", stat.getPlays());
+            entry.put("skips", stat.getSkips());
+            result.add(entry);
+        }
+        return result;
+    }
+
+    /**
+     * GET /api/stats/hourly - Player activity per hour for the last N hours
+     */
+    @GetMapping("/hourly")
+    public List<HourlyListeningStats> getHourlyStats(@RequestParam(defaultValue = "24") int hours) {
+        LocalDateTime from = LocalDateTime.now().truncatedTo(ChronoUnit.HOURS).minusHours(Math.max(hours, 1) - 1L);
+        return hourlyStatsRepository.findByBucketHourGreaterThanEqualOrderByBucketHourAsc(from);
+    }
+
+    /**
+     * GET /api/stats/me - Listening counters for the current user
+     */
+    @GetMapping("/me")
+    public Map<String, Long> getMyStats(Authentication authentication) {
+        String userId = getCurrentUserId(authentication);
+        UserListeningStats stats = userStatsRepository.findById(userId)
+                .orElse(new UserListeningStats(userId, 0, 0));
+        return Map.of("plays", stats.getPlays(), "skips", stats.getSkips());
+    }
+
+    /**
+     * GET /api/stats/volume - Downsampled volume history (epoch millis, defaults to the last 24h)
+     */
+    @GetMapping("/volume")
+    public List<Map<String, Object>> getVolumeHistory(@RequestParam(required = false) Long from,
+                                                      @RequestParam(required = false) Long to,
+                                                      @RequestParam(defaultValue = "300") int points) {
+        long end = to != null ? to : System.currentTimeMillis();
+        long start = from != null ? from : end - 24L * 60 * 60 * 1000;
+        return volumeSeriesService.downsample(start, end, Math.min(Math.max(points, 1), 5000));
+    }
+
+    /**
+     * GET /api/stats/volume/raw - Raw volume points as [time, volume] pairs (epoch millis).
+     * Ranges longer than 7 days are cut to the 7 days ending at to.
+     */
+    @GetMapping("/volume/raw")
+    public List<long[]> getRawVolumeHistory(@RequestParam long from, @RequestParam long to) {
+        return volumeSeriesService.range(Math.max(from, to - MAX_RAW_VOLUME_RANGE_MILLIS), to);
+    }
+
+    private String getCurrentUserId(Authentication authentication) {
+        if (authentication != null && authentication.getPrincipal() instanceof Jwt jwt) {
+            return jwt.getSubject();
+        }
+        throw new IllegalStateException("User is not authenticated");
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.media_controller_iot.controller;
+
+import com.example.media_controller_iot.models.Songs;
+import com.example.media_controller_iot.repository.SongsRepo;
+import com.example.media_controller_iot.service.MediaCacheService;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.ResourceRegion;
+import org.springframework.http.*;
+import org.springframework.web.bind.annotation.*;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Audio streaming through the local disk cache, so seeks and replays of hot tracks do not go to S3.
+ * Cached files are handed to Tomcat's sendfile where it is available, otherwise Spring writes the
+ * requested ranges; a miss is answered from S3 while the file is cached in the background.
+ * Public like the player SSE stream, because an audio element cannot send an Authorization header;
+ * S3 fetches are therefore rate limited per client.
+ */
+@RestController
+@RequestMapping("/api/stream")
+public class StreamController {
+
+    // Request attributes of Tomcat's sendfile support (see its DefaultServlet)
+    private static final String SENDFILE_SUPPORTED = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+    // Smaller responses are written through the buffer, like the DefaultServlet does
+    private static final long SENDFILE_MIN_SIZE = 48 * 1024;
+    private static final CacheControl CACHE_CONTROL = CacheControl.maxAge(Duration.ofHours(1)).cachePublic();
+
+    private final SongsRepo songsRepo;
+    private final MediaCacheService mediaCacheService;
+
+    public StreamController(SongsRepo songsRepo, MediaCacheService mediaCacheService) {
+        this.songsRepo = songsRepo;
+        this.mediaCacheService = mediaCacheService;
+    }
+
+    /**
+     * GET /api/stream/{songId} - The song's audio file, honoring Range headers (206 Partial Content).
+     * Songs whose file is not in our bucket, or is too large to cache, are redirected to their srcUrl.
+     * @return 429 if the client has made too many requests for uncached files in the last minute
+     */
+    @GetMapping("/{songId}")
+    public ResponseEntity<Resource> stream(@PathVariable Long songId,
+                                           @RequestHeader(value = HttpHeaders.RANGE, required = false) String range,
+                                           HttpServletRequest request) throws IOException {
+        Songs song = songsRepo.findById(songId).orElse(null);
+        if (song == null || song.getSrcUrl() == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+        String key = mediaCacheService.keyForUrl(song.getSrcUrl());
+        if (key == null) {
+            return redirect(song);
+        }
+        MediaType contentType = MediaTypeFactory.getMediaType(key).orElse(MediaType.APPLICATION_OCTET_STREAM);
+        MediaCacheService.CachedFile file = mediaCacheService.lookup(key);
+        if (file != null) {
+            return fromCache(file, contentType, range, request);
+        }
+        if (mediaCacheService.isUncacheable(key)) {
+            return redirect(song);
+        }
+        if (!mediaCacheService.allowColdFetch(request.getRemoteAddr())) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).header(HttpHeaders.RETRY_AFTER, "60").build();
+        }
+        return fromS3(key, contentType, range, request);
+    }
+
+    /**
+     * GET /api/stream/cache/stats - Hit ratio and size of the stream cache
+     */
+    @GetMapping("/cache/stats")
+    public Map<String, Object> getCacheStats() {
+        return Map.of(
+                "hits", mediaCacheService.hits(),
+                "misses", mediaCacheService.misses(),
+                "hitRatio", mediaCacheService.hitRatio(),
+                "entries", mediaCacheService.entryCount(),
+                "bytes", mediaCacheService.totalBytes()
+        );
+    }
+
+    private static ResponseEntity<Resource> redirect(Songs song) {
+        return ResponseEntity.status(HttpStatus.FOUND).location(URI.create(song.getSrcUrl())).build();
+    }
+
+    private static ResponseEntity<Resource> fromCache(MediaCacheService.CachedFile file, MediaType contentType,
+                                                      String range, HttpServletRequest request) {
+        Resource resource = new FileSystemResource(file.path());
+        List<HttpRange> ranges;
+        try {
+            ranges = HttpRange.parseRanges(range);
+        } catch (IllegalArgumentException e) {
+            return rangeNotSatisfiable(file.size());
+        }
+        // Several ranges become a multipart body, which sendfile cannot send
+        if (!Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED)) || "HEAD".equals(request.getMethod())
+                || ranges.size() > 1 || file.size() < SENDFILE_MIN_SIZE) {
+            // Spring answers Range requests for a Resource body itself
+            return ResponseEntity.ok().contentType(contentType).cacheControl(CACHE_CONTROL).body(resource);
+        }
+
+        ResourceRegion region;
+        try {
+            region = ranges.isEmpty() ? new ResourceRegion(resource, 0, file.size())
+                    : ranges.get(0).toResourceRegion(resource);
+        } catch (IllegalArgumentException e) {
+            return rangeNotSatisfiable(file.size());
+        }
+        long end = region.getPosition() + region.getCount();
+        request.setAttribute(SENDFILE_FILENAME, file.path().toAbsolutePath().toString());
+        request.setAttribute(SENDFILE_START, region.getPosition());
+        request.setAttribute(SENDFILE_END, end);
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(ranges.isEmpty() ? HttpStatus.OK : HttpStatus.PARTIAL_CONTENT);
+        if (!ranges.isEmpty()) {
+            response.header(HttpHeaders.CONTENT_RANGE, "bytes " + region.getPosition() + "-" + (end - 1) + "/" + file.size());
+        }
+        return response.contentType(contentType)
+                .contentLength(region.getCount())
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                .cacheControl(CACHE_CONTROL)
+                .build();
+    }
+
+    private ResponseEntity<Resource> fromS3(String key, MediaType contentType, String range,
+                                            HttpServletRequest request) throws IOException {
+        if ("HEAD".equals(request.getMethod())) {
+            Long size = mediaCacheService.objectSize(key);
+            if (size == null) return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+            return ResponseEntity.ok().contentType(contentType).contentLength(size)
+                    .header(HttpHeaders.ACCEPT_RANGES, "bytes").cacheControl(CACHE_CONTROL).build();
+        }
+        String s3Range = null;
+        try {
+            List<HttpRange> ranges = HttpRange.parseRanges(range);
+            // S3 serves a single range; for several the whole file is sent
+            if (ranges.size() == 1) s3Range = HttpRange.toString(ranges);
+        } catch (IllegalArgumentException e) {
+            // An invalid Range header is ignored
+        }
+
+        ResponseInputStream<GetObjectResponse> in;
+        try {
+            in = mediaCacheService.fetch(key, s3Range);
+        } catch (IOException e) {
+            if (e.getCause() instanceof S3Exception s3 && s3.statusCode() == HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value()) {
+                return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE).build();
+            }
+            throw e;
+        }
+        GetObjectResponse object = in.response();
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(
+                object.contentRange() != null ? HttpStatus.PARTIAL_CONTENT : HttpStatus.OK);
+        if (object.contentRange() != null) {
+            response.header(HttpHeaders.CONTENT_RANGE, object.contentRange());
+        }
+        return response.contentType(contentType)
+                .contentLength(object.contentLength())
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                .cacheControl(CACHE_CONTROL)
+                .body(new InputStreamResource(in));
+    }
+
+    private static ResponseEntity<Resource> rangeNotSatisfiable(long size) {
+        return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                .header(HttpHeaders.CONTENT_RANGE, "bytes */" + size)
+                .build();
+    }
+}
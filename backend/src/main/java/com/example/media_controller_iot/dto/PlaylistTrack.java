@@ -0,0 +1,20 @@
+package com.example.media_controller_iot.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * A song as it appears in a playlist. Carries the same fields as Songs so clients can
+ * treat it as one, plus the playlist entry id, when it was added and its rank key.
+ */
+public record PlaylistTrack(
+        Long entryId,
+        Long id,
+        String title,
+        String artist,
+        String srcUrl,
+        String coverUrl,
+        String category,
+        LocalDateTime addedAt,
+        String sortKey
+) {
+}
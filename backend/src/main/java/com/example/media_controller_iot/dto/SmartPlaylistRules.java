@@ -0,0 +1,23 @@
+package com.example.media_controller_iot.dto;
+
+import java.util.List;
+
+/**
+ * Rules of a smart playlist, stored as JSON on the playlist. Example:
+ * {"match": "all", "conditions": [
+ *   {"field": "category", "op": "eq", "value": "Rock"},
+ *   {"field": "artist", "op": "in", "values": ["A", "B"]},
+ *   {"field": "plays", "op": "gt", "count": 5, "days": 30}]}
+ */
+public record SmartPlaylistRules(String match, List<Condition> conditions) {
+
+    public static final String MATCH_ALL = "all";
+    public static final String MATCH_ANY = "any";
+
+    /**
+     * One condition. Text fields (title, artist, category) support eq, ne, in and contains;
+     * plays supports gt and gte over the last {@code days} days.
+     */
+    public record Condition(String field, String op, String value, List<String> values, Long count, Integer days) {
+    }
+}
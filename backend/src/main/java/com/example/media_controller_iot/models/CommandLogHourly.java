@@ -0,0 +1,40 @@
+package com.example.media_controller_iot.models;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Hourly rollup of command_log rows that have aged out of the hot table
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "command_log_hourly", indexes = {
+    @Index(name = "idx_command_log_hourly_hour", columnList = "bucket_hour"),
+    @Index(name = "idx_command_log_hourly_song_hour", columnList = "song_id, bucket_hour")
+})
+public class CommandLogHourly {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "bucket_hour", nullable = false)
+    private LocalDateTime bucketHour;
+
+    private String command;
+
+    @Column(name = "song_id")
+    private Long songId;
+
+    @Column(name = "user_id")
+    private String userId;
+
+    @Column(name = "command_count", nullable = false)
+    private long commandCount;
+}
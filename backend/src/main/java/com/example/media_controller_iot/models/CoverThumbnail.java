@@ -0,0 +1,57 @@
+package com.example.media_controller_iot.models;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Thumbnail variants generated for a cover image, stored next to it under derived S3 keys
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "cover_thumbnails", uniqueConstraints = {
+    @UniqueConstraint(name = "unique_cover_thumbnail_source", columnNames = {"source_key"})
+})
+public class CoverThumbnail {
+
+    public enum Status { PENDING, READY, FAILED }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // S3 key of the original cover
+    @Column(name = "source_key", nullable = false)
+    private String sourceKey;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 16)
+    private Status status;
+
+    // Comma-separated edge lengths in pixels, e.g. "64,256,512"
+    @Column(name = "sizes", length = 64)
+    private String sizes;
+
+    // Whether WebP variants exist next to the JPEG ones
+    @Column(name = "webp", nullable = false)
+    private boolean webp;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+
+    @PrePersist
+    @PreUpdate
+    protected void onUpdate() {
+        updatedAt = LocalDateTime.now();
+    }
+
+    public CoverThumbnail(String sourceKey) {
+        this.sourceKey = sourceKey;
+        this.status = Status.PENDING;
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.media_controller_iot.models;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Player activity per hour, maintained by ListeningAnalyticsService
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "hourly_listening_stats")
+public class HourlyListeningStats {
+
+    @Id
+    @Column(name = "bucket_hour")
+    private LocalDateTime bucketHour;
+
+    @Column(nullable = false)
+    private long commands;
+
+    @Column(nullable = false)
+    private long plays;
+
+    @Column(nullable = false)
+    private long skips;
+
+    @Column(name = "muted_commands", nullable = false)
+    private long mutedCommands;
+
+    @Column(name = "volume_sum", nullable = false)
+    private long volumeSum;
+
+    @Column(name = "volume_samples", nullable = false)
+    private long volumeSamples;
+
+    public double getAverageVolume() {
+        return volumeSamples == 0 ? 0 : (double) volumeSum / volumeSamples;
+    }
+
+    public double getMuteRatio() {
+        return commands == 0 ? 0 : (double) mutedCommands / commands;
+    }
+}
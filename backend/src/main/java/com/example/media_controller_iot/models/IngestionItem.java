@@ -0,0 +1,53 @@
+package com.example.media_controller_iot.models;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+/**
+ * One track of an ingestion job. Written and read in bulk with JDBC; the entity only defines the table.
+ * An item becomes DONE in the same transaction that inserts its song, so a resumed job neither skips
+ * nor duplicates tracks.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "ingestion_items", indexes = {
+    @Index(name = "idx_ingestion_items_job_status_seq", columnList = "job_id, status, seq")
+})
+public class IngestionItem {
+
+    public enum Status { PENDING, DONE, FAILED }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "job_id", nullable = false)
+    private Long jobId;
+
+    // Position in the manifest or directory listing; items are processed in this order
+    @Column(name = "seq", nullable = false)
+    private long seq;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 16)
+    private Status status;
+
+    private String title;
+    private String artist;
+    private String category;
+
+    // Path under ingest.base-dir, or the URL of a file that is already hosted
+    @Column(name = "audio", length = 1024)
+    private String audio;
+
+    @Column(name = "cover", length = 1024)
+    private String cover;
+
+    @Column(name = "song_id")
+    private Long songId;
+
+    @Column(name = "error", length = 512)
+    private String error;
+}
@@ -0,0 +1,74 @@
+package com.example.media_controller_iot.models;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * A bulk catalog import; its tracks are the ingestion_items rows, which double as the checkpoint.
+ * The instance creating or running a job holds a lease on it, renewed while it works, so other instances
+ * leave the job alone until the lease expires.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Entity
+@Table(name = "ingestion_jobs", indexes = {
+    @Index(name = "idx_ingestion_jobs_user", columnList = "user_id")
+})
+public class IngestionJob {
+
+    public enum Status { CREATING, RUNNING, PAUSED, COMPLETED, FAILED }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private String userId;
+
+    // "manifest.csv", "manifest.json" or "directory"
+    @Column(name = "source_type", nullable = false, length = 16)
+    private String sourceType;
+
+    // Manifest name or directory under ingest.base-dir
+    @Column(name = "source", length = 1024)
+    private String source;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 16)
+    private Status status;
+
+    @Column(name = "total_items", nullable = false)
+    private long totalItems;
+
+    // Maintained in the same transactions that check items off
+    @Column(name = "done_items", nullable = false)
+    private long doneItems;
+
+    @Column(name = "failed_items", nullable = false)
+    private long failedItems;
+
+    @Column(name = "error", length = 512)
+    private String error;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    @Column(name = "finished_at")
+    private LocalDateTime finishedAt;
+
+    // Instance holding the lease, and until when; both null once released
+    @Column(name = "lease_owner", length = 36)
+    private String leaseOwner;
+
+    @Column(name = "lease_until")
+    private LocalDateTime leaseUntil;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+    }
+}
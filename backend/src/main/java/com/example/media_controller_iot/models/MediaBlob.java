@@ -0,0 +1,69 @@
+package com.example.media_controller_iot.models;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * A stored S3 object, identified by the SHA-256 of its content.
+ * refCount is the number of songs whose src_url or cover_url points at it (one song_blobs row each);
+ * an upload that no song uses yet has none, and unused objects are left to the orphan cleanup.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "media_blobs", uniqueConstraints = {
+    @UniqueConstraint(name = "unique_media_blob_sha256", columnNames = {"sha256"}),
+    @UniqueConstraint(name = "unique_media_blob_key", columnNames = {"object_key"})
+})
+public class MediaBlob {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // Hex encoded
+    @Column(name = "sha256", nullable = false, length = 64)
+    private String sha256;
+
+    @Column(name = "object_key", nullable = false)
+    private String objectKey;
+
+    @Column(name = "size", nullable = false)
+    private long size;
+
+    @Column(name = "content_type")
+    private String contentType;
+
+    @Column(name = "ref_count", nullable = false)
+    private int refCount;
+
+    // User who uploaded it; null once another user has uploaded the same content, so neither can delete it
+    @Column(name = "uploaded_by")
+    private String uploadedBy;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    // Last time it was registered, uploaded again or attached to a song; the orphan cleanup's grace period counts from here
+    @Column(name = "last_referenced_at")
+    private LocalDateTime lastReferencedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+        if (lastReferencedAt == null) lastReferencedAt = createdAt;
+    }
+
+    public MediaBlob(String sha256, String objectKey, long size, String contentType, String uploadedBy) {
+        this.sha256 = sha256;
+        this.objectKey = objectKey;
+        this.size = size;
+        this.contentType = contentType;
+        this.uploadedBy = uploadedBy;
+    }
+}
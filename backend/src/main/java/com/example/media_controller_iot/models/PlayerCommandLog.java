@@ -11,7 +11,9 @@ import java.time.LocalDateTime;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
-@Table(name = "command_log")
+@Table(name = "command_log", indexes = {
+    @Index(name = "idx_command_log_timestamp", columnList = "timestamp")
+})
 public class PlayerCommandLog {
 
     @Id
@@ -1,5 +1,6 @@
 package com.example.media_controller_iot.models;
 
+import com.fasterxml.jackson.annotation.JsonRawValue;
 import jakarta.persistence.*;
 import lombok.*;
 
@@ -26,6 +27,21 @@ public class Playlist {
     @Column(name = "created_at")
     private LocalDateTime createdAt;
 
+    // Kept in sync with playlist_songs by the add/remove endpoints
+    @Builder.Default
+    @Column(name = "song_count", nullable = false, columnDefinition = "INT NOT NULL DEFAULT 0")
+    private int songCount = 0;
+
+    // JSON rules of a smart playlist (see SmartPlaylistRules); null for regular playlists
+    @JsonRawValue
+    @Column(columnDefinition = "TEXT")
+    private String rules;
+
+    // Smart playlist songs are maintained from the rules, not edited by hand
+    public boolean isSmart() {
+        return rules != null;
+    }
+
     @PrePersist
     protected void onCreate() {
         createdAt = LocalDateTime.now();
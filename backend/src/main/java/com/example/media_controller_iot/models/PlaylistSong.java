@@ -10,7 +10,9 @@ import java.time.LocalDateTime;
 @AllArgsConstructor
 @Builder
 @Entity
-@Table(name = "playlist_songs")
+@Table(name = "playlist_songs", indexes = {
+    @Index(name = "idx_playlist_songs_playlist_rank", columnList = "playlist_id, sort_key")
+})
 public class PlaylistSong {
 
     @Id
@@ -26,6 +28,10 @@ public class PlaylistSong {
     @Column(name = "added_at")
     private LocalDateTime addedAt;
 
+    // Fractional rank key (see RankKeys); the playlist is ordered by it ascending
+    @Column(name = "sort_key", length = 64)
+    private String sortKey;
+
     @PrePersist
     protected void onCreate() {
         addedAt = LocalDateTime.now();
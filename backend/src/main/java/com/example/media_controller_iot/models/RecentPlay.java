@@ -0,0 +1,32 @@
+package com.example.media_controller_iot.models;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Entity
+@Table(name = "recent_plays", uniqueConstraints = {
+    @UniqueConstraint(name = "unique_recent_user_song", columnNames = {"user_id", "song_id"})
+}, indexes = {
+    @Index(name = "idx_recent_plays_user_played", columnList = "user_id, played_at")
+})
+public class RecentPlay {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private String userId;
+
+    @Column(name = "song_id", nullable = false)
+    private Long songId;
+
+    @Column(name = "played_at", nullable = false)
+    private LocalDateTime playedAt;
+}
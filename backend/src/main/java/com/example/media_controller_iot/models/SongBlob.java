@@ -0,0 +1,36 @@
+package com.example.media_controller_iot.models;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A song's reference to a blob it uses as audio or cover; each row counts once in the blob's refCount
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "song_blobs", uniqueConstraints = {
+    @UniqueConstraint(name = "unique_song_blob", columnNames = {"song_id", "blob_id"})
+}, indexes = {
+    @Index(name = "idx_song_blobs_blob", columnList = "blob_id")
+})
+public class SongBlob {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "song_id", nullable = false)
+    private Long songId;
+
+    @Column(name = "blob_id", nullable = false)
+    private Long blobId;
+
+    public SongBlob(Long songId, Long blobId) {
+        this.songId = songId;
+        this.blobId = blobId;
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.media_controller_iot.models;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * All-time listening counters per song, maintained by ListeningAnalyticsService
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "song_listening_stats", indexes = {
+    @Index(name = "idx_song_listening_stats_plays", columnList = "plays")
+})
+public class SongListeningStats {
+
+    @Id
+    @Column(name = "song_id")
+    private Long songId;
+
+    @Column(nullable = false)
+    private long plays;
+
+    @Column(nullable = false)
+    private long skips;
+}
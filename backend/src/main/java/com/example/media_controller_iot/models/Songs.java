@@ -26,4 +26,17 @@ public class Songs {
     
     @Column(name = "category")
     private String category;
+
+    // Read from the audio file's headers; codec is "unknown" if the file could not be read
+    @Column(name = "duration_ms")
+    private Long durationMs;
+
+    // Average kbit/s
+    private Integer bitrate;
+
+    @Column(name = "sample_rate")
+    private Integer sampleRate;
+
+    @Column(length = 16)
+    private String codec;
 }
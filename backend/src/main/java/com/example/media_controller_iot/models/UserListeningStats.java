@@ -0,0 +1,27 @@
+package com.example.media_controller_iot.models;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * All-time listening counters per user, maintained by ListeningAnalyticsService
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "user_listening_stats")
+public class UserListeningStats {
+
+    @Id
+    @Column(name = "user_id")
+    private String userId;
+
+    @Column(nullable = false)
+    private long plays;
+
+    @Column(nullable = false)
+    private long skips;
+}
@@ -0,0 +1,47 @@
+package com.example.media_controller_iot.models;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A block of up to VolumeSeriesService.BLOCK_SIZE encoded volume points.
+ * Times are epoch milliseconds; the aggregates let downsampled reads skip decoding.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "volume_series_blocks", indexes = {
+    @Index(name = "idx_volume_series_start", columnList = "start_time"),
+    @Index(name = "idx_volume_series_end", columnList = "end_time")
+})
+public class VolumeSeriesBlock {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "start_time", nullable = false)
+    private long startTime;
+
+    @Column(name = "end_time", nullable = false)
+    private long endTime;
+
+    @Column(name = "point_count", nullable = false)
+    private int pointCount;
+
+    @Column(name = "min_volume", nullable = false)
+    private int minVolume;
+
+    @Column(name = "max_volume", nullable = false)
+    private int maxVolume;
+
+    @Column(name = "volume_sum", nullable = false)
+    private long volumeSum;
+
+    @Lob
+    @Column(nullable = false)
+    private byte[] data;
+}
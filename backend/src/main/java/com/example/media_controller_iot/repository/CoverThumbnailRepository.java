@@ -0,0 +1,22 @@
+package com.example.media_controller_iot.repository;
+
+import com.example.media_controller_iot.models.CoverThumbnail;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface CoverThumbnailRepository extends JpaRepository<CoverThumbnail, Long> {
+
+    Optional<CoverThumbnail> findBySourceKey(String sourceKey);
+
+    List<CoverThumbnail> findByStatus(CoverThumbnail.Status status);
+
+    @Query("SELECT t.sourceKey FROM CoverThumbnail t")
+    List<String> findAllSourceKeys();
+
+    void deleteBySourceKey(String sourceKey);
+}
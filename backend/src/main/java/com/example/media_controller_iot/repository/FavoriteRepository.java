@@ -3,6 +3,7 @@ package com.example.media_controller_iot.repository;
 import com.example.media_controller_iot.models.Favorite;
 import com.example.media_controller_iot.models.Songs;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -28,10 +29,27 @@ public interface FavoriteRepository extends JpaRepository<Favorite, Long> {
      */
     boolean existsByUserIdAndSongId(String userId, Long songId);
     
+    /**
+     * IDs of all songs favorited by a user
+     */
+    @Query("SELECT f.song.id FROM Favorite f WHERE f.userId = :userId")
+    List<Long> findSongIdsByUserId(@Param("userId") String userId);
+    
+    /**
+     * Add a favorite in one statement; returns 0 if the song does not exist or is already a favorite
+     */
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO favorites (user_id, song_id, created_at) " +
+                   "SELECT :userId, s.id, NOW() FROM songs s WHERE s.id = :songId",
+           nativeQuery = true)
+    int insertIfSongExists(@Param("userId") String userId, @Param("songId") Long songId);
+    
     /**
      * Delete a favorite by user and song
      */
-    void deleteByUserIdAndSongId(String userId, Long songId);
+    @Modifying
+    @Query("DELETE FROM Favorite f WHERE f.userId = :userId AND f.song.id = :songId")
+    int deleteByUserIdAndSongId(@Param("userId") String userId, @Param("songId") Long songId);
     
     /**
      * Get all songs favorited by a user (with song details)
@@ -47,5 +65,7 @@ public interface FavoriteRepository extends JpaRepository<Favorite, Long> {
     /**
      * Delete all favorites for a user
      */
-    void deleteByUserId(String userId);
+    @Modifying
+    @Query("DELETE FROM Favorite f WHERE f.userId = :userId")
+    int deleteByUserId(@Param("userId") String userId);
 }
@@ -0,0 +1,13 @@
+package com.example.media_controller_iot.repository;
+
+import com.example.media_controller_iot.models.HourlyListeningStats;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface HourlyListeningStatsRepository extends JpaRepository<HourlyListeningStats, LocalDateTime> {
+    List<HourlyListeningStats> findByBucketHourGreaterThanEqualOrderByBucketHourAsc(LocalDateTime from);
+}
@@ -0,0 +1,24 @@
+package com.example.media_controller_iot.repository;
+
+import com.example.media_controller_iot.models.IngestionJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface IngestionJobRepository extends JpaRepository<IngestionJob, Long> {
+
+    List<IngestionJob> findByUserIdOrderByCreatedAtDesc(String userId);
+
+    /**
+     * Jobs in one of these states that no instance holds a lease on
+     */
+    @Query("SELECT j FROM IngestionJob j WHERE j.status IN :statuses AND (j.leaseUntil IS NULL OR j.leaseUntil < :now)")
+    List<IngestionJob> findUnleased(@Param("statuses") Collection<IngestionJob.Status> statuses,
+                                    @Param("now") LocalDateTime now);
+}
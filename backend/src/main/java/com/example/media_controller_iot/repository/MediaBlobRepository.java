@@ -0,0 +1,49 @@
+package com.example.media_controller_iot.repository;
+
+import com.example.media_controller_iot.models.MediaBlob;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface MediaBlobRepository extends JpaRepository<MediaBlob, Long> {
+
+    /**
+     * Find a blob by content hash, locking its row until the transaction ends
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT b FROM MediaBlob b WHERE b.sha256 = :sha256")
+    Optional<MediaBlob> lockBySha256(@Param("sha256") String sha256);
+
+    /**
+     * Find a blob by object key, locking its row until the transaction ends
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT b FROM MediaBlob b WHERE b.objectKey = :objectKey")
+    Optional<MediaBlob> lockByObjectKey(@Param("objectKey") String objectKey);
+
+    /**
+     * Find the blobs stored under any of these keys, locking their rows until the transaction ends
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT b FROM MediaBlob b WHERE b.objectKey IN :objectKeys")
+    List<MediaBlob> lockByObjectKeyIn(@Param("objectKeys") Collection<String> objectKeys);
+
+    /**
+     * Find blobs by ID, locking their rows until the transaction ends
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT b FROM MediaBlob b WHERE b.id IN :ids")
+    List<MediaBlob> lockByIdIn(@Param("ids") Collection<Long> ids);
+
+    Optional<MediaBlob> findBySha256(String sha256);
+
+    boolean existsByObjectKey(String objectKey);
+}
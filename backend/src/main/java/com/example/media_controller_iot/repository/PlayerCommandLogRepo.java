@@ -1,24 +1,47 @@
 package com.example.media_controller_iot.repository;
 
 import com.example.media_controller_iot.models.PlayerCommandLog;
-import com.example.media_controller_iot.models.Songs;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 public interface PlayerCommandLogRepo extends JpaRepository<PlayerCommandLog, Long> {
-    
-    // Find recently played songs for a specific user (most recent play of each unique song)
-    // Include PLAY, NEXT, and PREV commands to capture all song changes
-    @Query("SELECT c.song FROM PlayerCommandLog c " +
-           "WHERE c.userId = :userId AND c.command IN ('PLAY', 'NEXT', 'PREV') AND c.song IS NOT NULL " +
-           "AND c.timestamp = (SELECT MAX(c2.timestamp) FROM PlayerCommandLog c2 " +
-           "                   WHERE c2.userId = :userId AND c2.song = c.song " +
-           "                   AND c2.command IN ('PLAY', 'NEXT', 'PREV')) " +
-           "ORDER BY c.timestamp DESC")
-    List<Songs> findRecentlyPlayedSongsByUserId(@Param("userId") String userId);
+
+    /**
+     * [songId, plays] for every song the given user played since the given time
+     */
+    @Query(value = "SELECT t.song_id, SUM(t.plays) FROM (" +
+                   "SELECT song_id, COUNT(*) AS plays FROM command_log " +
+                   "WHERE command IN ('PLAY', 'NEXT', 'PREV') AND timestamp >= :since AND user_id = :userId " +
+                   "AND song_id IS NOT NULL GROUP BY song_id " +
+                   "UNION ALL " +
+                   "SELECT song_id, SUM(command_count) AS plays FROM command_log_hourly " +
+                   "WHERE command IN ('PLAY', 'NEXT', 'PREV') AND bucket_hour >= :since AND user_id = :userId " +
+                   "AND song_id IS NOT NULL GROUP BY song_id" +
+                   ") t GROUP BY t.song_id",
+           nativeQuery = true)
+    List<Object[]> countPlaysSince(@Param("since") LocalDateTime since, @Param("userId") String userId);
+
+    /**
+     * [userId, songId, plays] for the given users and songs since the given time
+     */
+    @Query(value = "SELECT t.user_id, t.song_id, SUM(t.plays) FROM (" +
+                   "SELECT user_id, song_id, COUNT(*) AS plays FROM command_log " +
+                   "WHERE command IN ('PLAY', 'NEXT', 'PREV') AND timestamp >= :since AND user_id IN :userIds " +
+                   "AND song_id IN :songIds GROUP BY user_id, song_id " +
+                   "UNION ALL " +
+                   "SELECT user_id, song_id, SUM(command_count) AS plays FROM command_log_hourly " +
+                   "WHERE command IN ('PLAY', 'NEXT', 'PREV') AND bucket_hour >= :since AND user_id IN :userIds " +
+                   "AND song_id IN :songIds GROUP BY user_id, song_id" +
+                   ") t GROUP BY t.user_id, t.song_id",
+           nativeQuery = true)
+    List<Object[]> countPlaysByUserSince(@Param("since") LocalDateTime since,
+                                         @Param("userIds") Collection<String> userIds,
+                                         @Param("songIds") Collection<Long> songIds);
 }
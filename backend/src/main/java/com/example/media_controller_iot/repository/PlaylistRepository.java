@@ -1,12 +1,44 @@
 package com.example.media_controller_iot.repository;
 
 import com.example.media_controller_iot.models.Playlist;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface PlaylistRepository extends JpaRepository<Playlist, Long> {
     List<Playlist> findByUserIdOrderByCreatedAtDesc(String userId);
+
+    List<Playlist> findByRulesIsNotNull();
+
+    /**
+     * Lock a playlist row until the transaction ends; taken before reading or rewriting rank keys
+     * so a rebalance and a concurrent move or insert cannot interleave
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT p FROM Playlist p WHERE p.id = :playlistId")
+    Optional<Playlist> lockById(@Param("playlistId") Long playlistId);
+
+    @Modifying
+    @Query("UPDATE Playlist p SET p.songCount = p.songCount + :delta WHERE p.id = :playlistId")
+    void adjustSongCount(@Param("playlistId") Long playlistId, @Param("delta") int delta);
+
+    /**
+     * Set song_count from playlist_songs on the playlists where it is off
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE playlists p " +
+                   "SET song_count = (SELECT COUNT(*) FROM playlist_songs s WHERE s.playlist_id = p.id) " +
+                   "WHERE song_count <> (SELECT COUNT(*) FROM playlist_songs s WHERE s.playlist_id = p.id)",
+           nativeQuery = true)
+    int recalculateSongCounts();
 }
@@ -1,23 +1,90 @@
 package com.example.media_controller_iot.repository;
 
+import com.example.media_controller_iot.dto.PlaylistTrack;
 import com.example.media_controller_iot.models.PlaylistSong;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface PlaylistSongRepository extends JpaRepository<PlaylistSong, Long> {
     List<PlaylistSong> findByPlaylistId(Long playlistId);
     
-    @Query("SELECT ps.songId FROM PlaylistSong ps WHERE ps.playlistId = :playlistId ORDER BY ps.addedAt DESC")
+    @Query("SELECT ps.songId FROM PlaylistSong ps WHERE ps.playlistId = :playlistId ORDER BY ps.sortKey ASC, ps.id ASC")
     List<Long> findSongIdsByPlaylistId(@Param("playlistId") Long playlistId);
     
-    void deleteByPlaylistIdAndSongId(Long playlistId, Long songId);
+    long deleteByPlaylistIdAndSongId(Long playlistId, Long songId);
     
     void deleteByPlaylistId(Long playlistId);
+
+    // Tracks of a playlist owned by userId in playlist order; empty when the playlist is missing or not owned
+    @Query("SELECT new com.example.media_controller_iot.dto.PlaylistTrack(" +
+           "ps.id, s.id, s.title, s.artist, s.srcUrl, s.coverUrl, s.category, ps.addedAt, ps.sortKey) " +
+           "FROM PlaylistSong ps JOIN Songs s ON s.id = ps.songId JOIN Playlist p ON p.id = ps.playlistId " +
+           "WHERE ps.playlistId = :playlistId AND p.userId = :userId " +
+           "ORDER BY ps.sortKey ASC, ps.id ASC")
+    List<PlaylistTrack> findTracks(@Param("playlistId") Long playlistId,
+                                   @Param("userId") String userId,
+                                   Limit limit);
+
+    // Keyset page of findTracks, continuing after the (sortKey, id) of the last entry seen
+    @Query("SELECT new com.example.media_controller_iot.dto.PlaylistTrack(" +
+           "ps.id, s.id, s.title, s.artist, s.srcUrl, s.coverUrl, s.category, ps.addedAt, ps.sortKey) " +
+           "FROM PlaylistSong ps JOIN Songs s ON s.id = ps.songId JOIN Playlist p ON p.id = ps.playlistId " +
+           "WHERE ps.playlistId = :playlistId AND p.userId = :userId " +
+           "AND (ps.sortKey > :afterSortKey OR (ps.sortKey = :afterSortKey AND ps.id > :afterId)) " +
+           "ORDER BY ps.sortKey ASC, ps.id ASC")
+    List<PlaylistTrack> findTracksAfter(@Param("playlistId") Long playlistId,
+                                        @Param("userId") String userId,
+                                        @Param("afterSortKey") String afterSortKey,
+                                        @Param("afterId") Long afterId,
+                                        Limit limit);
     
     boolean existsByPlaylistIdAndSongId(Long playlistId, Long songId);
+
+    @Query("SELECT ps.songId FROM PlaylistSong ps WHERE ps.playlistId = :playlistId AND ps.songId IN :songIds")
+    List<Long> findSongIdsInPlaylist(@Param("playlistId") Long playlistId, @Param("songIds") Collection<Long> songIds);
+
+    /**
+     * [playlistId, songId] for the given songs that are in any of the given playlists
+     */
+    @Query("SELECT ps.playlistId, ps.songId FROM PlaylistSong ps WHERE ps.playlistId IN :playlistIds AND ps.songId IN :songIds")
+    List<Object[]> findMemberships(@Param("playlistIds") Collection<Long> playlistIds, @Param("songIds") Collection<Long> songIds);
+
+    @Modifying
+    @Query("DELETE FROM PlaylistSong ps WHERE ps.playlistId = :playlistId AND ps.songId IN :songIds")
+    int deleteSongsFromPlaylist(@Param("playlistId") Long playlistId, @Param("songIds") Collection<Long> songIds);
+
+    Optional<PlaylistSong> findFirstByPlaylistIdAndSongId(Long playlistId, Long songId);
+
+    Optional<PlaylistSong> findFirstByPlaylistIdOrderBySortKeyAscIdAsc(Long playlistId);
+
+    Optional<PlaylistSong> findFirstByPlaylistIdOrderBySortKeyDescIdDesc(Long playlistId);
+
+    Optional<PlaylistSong> findFirstByPlaylistIdAndIdNotOrderBySortKeyAscIdAsc(Long playlistId, Long excludedId);
+
+    Optional<PlaylistSong> findFirstByPlaylistIdAndSortKeyGreaterThanAndIdNotOrderBySortKeyAscIdAsc(
+            Long playlistId, String sortKey, Long excludedId);
+
+    // Entry ids of a playlist in current order, for rebalancing
+    @Query("SELECT ps.id FROM PlaylistSong ps WHERE ps.playlistId = :playlistId ORDER BY ps.sortKey ASC, ps.id ASC")
+    List<Long> findEntryIdsInOrder(@Param("playlistId") Long playlistId);
+
+    @Query("SELECT DISTINCT ps.playlistId FROM PlaylistSong ps WHERE ps.sortKey IS NULL")
+    List<Long> findPlaylistIdsWithoutSortKeys();
+
+    // Playlists due for a rebalance; scans the (playlist_id, sort_key) index only
+    @Query("SELECT DISTINCT ps.playlistId FROM PlaylistSong ps WHERE LENGTH(ps.sortKey) > :maxLength")
+    List<Long> findPlaylistIdsWithSortKeysLongerThan(@Param("maxLength") int maxLength);
+
+    // Entry ids in the legacy newest-first order, for the one-off sort key backfill
+    @Query("SELECT ps.id FROM PlaylistSong ps WHERE ps.playlistId = :playlistId ORDER BY ps.addedAt DESC, ps.id DESC")
+    List<Long> findEntryIdsByAddedAtDesc(@Param("playlistId") Long playlistId);
 }
@@ -0,0 +1,62 @@
+package com.example.media_controller_iot.repository;
+
+import com.example.media_controller_iot.models.RecentPlay;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface RecentPlayRepository extends JpaRepository<RecentPlay, Long> {
+
+    /**
+     * Most recent plays for a user, newest first
+     */
+    List<RecentPlay> findByUserIdOrderByPlayedAtDesc(String userId, Limit limit);
+
+    /**
+     * Insert or refresh the (user, song) row
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO recent_plays (user_id, song_id, played_at) VALUES (:userId, :songId, :playedAt) " +
+                   "ON DUPLICATE KEY UPDATE played_at = GREATEST(played_at, VALUES(played_at))",
+           nativeQuery = true)
+    void upsert(@Param("userId") String userId,
+                @Param("songId") Long songId,
+                @Param("playedAt") LocalDateTime playedAt);
+
+    @Modifying
+    @Transactional
+    void deleteByUserIdAndSongId(String userId, Long songId);
+
+    /**
+     * Delete a user's rows beyond their newest keep rows
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "DELETE FROM recent_plays WHERE user_id = :userId AND played_at <= (" +
+                   "SELECT played_at FROM (SELECT played_at FROM recent_plays WHERE user_id = :userId " +
+                   "ORDER BY played_at DESC LIMIT 1 OFFSET :keep) newest)",
+           nativeQuery = true)
+    int trimToNewest(@Param("userId") String userId, @Param("keep") int keep);
+
+    /**
+     * One-off backfill from the raw command log (latest PLAY/NEXT/PREV per user and song)
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO recent_plays (user_id, song_id, played_at) " +
+                   "SELECT c.user_id, c.song_id, MAX(c.timestamp) FROM command_log c " +
+                   "WHERE c.user_id IS NOT NULL AND c.song_id IS NOT NULL AND c.command IN ('PLAY', 'NEXT', 'PREV') " +
+                   "GROUP BY c.user_id, c.song_id " +
+                   "ON DUPLICATE KEY UPDATE played_at = GREATEST(recent_plays.played_at, VALUES(played_at))",
+           nativeQuery = true)
+    int backfillFromCommandLog();
+}
@@ -0,0 +1,28 @@
+package com.example.media_controller_iot.repository;
+
+import com.example.media_controller_iot.models.SongBlob;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface SongBlobRepository extends JpaRepository<SongBlob, Long> {
+
+    List<SongBlob> findBySongIdIn(Collection<Long> songIds);
+
+    /**
+     * References held by songs whose row has been deleted
+     */
+    @Query("SELECT l FROM SongBlob l WHERE NOT EXISTS (SELECT s.id FROM Songs s WHERE s.id = l.songId)")
+    List<SongBlob> findOfDeletedSongs(Pageable pageable);
+
+    @Modifying
+    @Query("DELETE FROM SongBlob l WHERE l.id = :id")
+    int deleteLink(@Param("id") Long id);
+}
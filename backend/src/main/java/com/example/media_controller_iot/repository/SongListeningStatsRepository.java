@@ -0,0 +1,13 @@
+package com.example.media_controller_iot.repository;
+
+import com.example.media_controller_iot.models.SongListeningStats;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface SongListeningStatsRepository extends JpaRepository<SongListeningStats, Long> {
+    List<SongListeningStats> findAllByOrderByPlaysDesc(Limit limit);
+}
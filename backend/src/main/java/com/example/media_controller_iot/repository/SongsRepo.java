@@ -6,12 +6,40 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface SongsRepo extends JpaRepository<Songs, Long> {
     List<Songs> findByCategory(String category);
+
+    Optional<Songs> findFirstByOrderByIdAsc();
+
+    Optional<Songs> findFirstByOrderByIdDesc();
+
+    Optional<Songs> findFirstByIdGreaterThanOrderByIdAsc(Long id);
+
+    Optional<Songs> findFirstByIdLessThanOrderByIdDesc(Long id);
+
+    /**
+     * ID of the song at the given position in ID order, without a count query for paging
+     */
+    @Query(value = "SELECT id FROM songs ORDER BY id LIMIT 1 OFFSET :offset", nativeQuery = true)
+    Optional<Long> findIdAtOffset(@Param("offset") int offset);
     
     @Query("SELECT s FROM Songs s WHERE LOWER(s.title) LIKE LOWER(CONCAT('%', :query, '%')) OR LOWER(s.artist) LIKE LOWER(CONCAT('%', :query, '%'))")
     List<Songs> searchByTitleOrArtist(@Param("query") String query);
+
+    @Query("SELECT s.id FROM Songs s WHERE s.id IN :ids")
+    List<Long> findExistingIds(@Param("ids") Collection<Long> ids);
+
+    @Query("SELECT COUNT(s) > 0 FROM Songs s WHERE s.srcUrl = :url OR s.coverUrl = :url")
+    boolean existsByUrl(@Param("url") String url);
+
+    @Query("SELECT COALESCE(MAX(s.id), 0) FROM Songs s")
+    long findMaxId();
+
+    @Query("SELECT s.id FROM Songs s WHERE s.id > :afterId ORDER BY s.id")
+    List<Long> findIdsAfter(@Param("afterId") long afterId);
 }
\ No newline at end of file
@@ -1,9 +1,9 @@
 package com.example.media_controller_iot.repository;
 
-import com.example.media_controller_iot.models.VolumeLog;
+import com.example.media_controller_iot.models.UserListeningStats;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
 @Repository
-public interface VolumeLogRepo extends JpaRepository<VolumeLog, Long> {
+public interface UserListeningStatsRepository extends JpaRepository<UserListeningStats, String> {
 }
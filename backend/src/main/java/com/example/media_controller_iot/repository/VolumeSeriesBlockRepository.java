@@ -0,0 +1,19 @@
+package com.example.media_controller_iot.repository;
+
+import com.example.media_controller_iot.models.VolumeSeriesBlock;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface VolumeSeriesBlockRepository extends JpaRepository<VolumeSeriesBlock, Long> {
+
+    @Query("SELECT b FROM VolumeSeriesBlock b WHERE b.startTime <= :to AND b.endTime >= :from ORDER BY b.startTime")
+    List<VolumeSeriesBlock> findOverlapping(@Param("from") long from, @Param("to") long to);
+
+    Optional<VolumeSeriesBlock> findTopByOrderByStartTimeDesc();
+}
@@ -1,22 +1,34 @@
 package com.example.media_controller_iot.security;
 
 import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKMatcher;
+import com.nimbusds.jose.jwk.JWKSelector;
 import com.nimbusds.jose.jwk.source.JWKSource;
 import com.nimbusds.jose.jwk.source.JWKSourceBuilder;
 import com.nimbusds.jose.proc.JWSKeySelector;
 import com.nimbusds.jose.proc.JWSVerificationKeySelector;
 import com.nimbusds.jose.proc.SecurityContext;
 import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
 import com.nimbusds.jwt.proc.ConfigurableJWTProcessor;
 import com.nimbusds.jwt.proc.DefaultJWTProcessor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
 import java.net.URI;
+import java.util.List;
 
 @Component
 public class CognitoJwtValidator {
 
+    private static final Logger log = LoggerFactory.getLogger(CognitoJwtValidator.class);
+
+    private final JWKSource<SecurityContext> keySource;
     private final ConfigurableJWTProcessor<SecurityContext> jwtProcessor;
 
     public CognitoJwtValidator(
@@ -31,9 +43,10 @@ public class CognitoJwtValidator {
         );
 
         // Create JWK source using the new builder pattern
-        JWKSource<SecurityContext> keySource = JWKSourceBuilder
+        keySource = JWKSourceBuilder
             .create(URI.create(jwkSetUrl).toURL())
             .cache(true)  // Enable caching for better performance
+            .refreshAheadCache(true)  // Refresh the cached keys in the background before they expire
             .retrying(true)  // Enable retries on failure
             .build();
 
@@ -44,7 +57,25 @@ public class CognitoJwtValidator {
         jwtProcessor.setJWSKeySelector(keySelector);
     }
 
-    public JWTClaimsSet validateToken(String token) throws Exception {
+    /**
+     * Fetch the JWK set once the application is up, so the first authenticated request does not wait for it
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void prefetchKeys() {
+        Thread.ofVirtual().name("jwks-prefetch").start(() -> {
+            try {
+                List<JWK> keys = keySource.get(new JWKSelector(new JWKMatcher.Builder().build()), null);
+                log.info("Fetched {} Cognito signing keys", keys.size());
+            } catch (Exception e) {
+                log.warn("Could not prefetch Cognito signing keys: {}", e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * @param token - Already parsed, so the caller can also read its header
+     */
+    public JWTClaimsSet validateToken(SignedJWT token) throws Exception {
         return jwtProcessor.process(token, null);
     }
 }
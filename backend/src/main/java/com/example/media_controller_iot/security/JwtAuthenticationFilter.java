@@ -1,12 +1,16 @@
 package com.example.media_controller_iot.security;
 
 import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.lang.NonNull;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
@@ -14,18 +18,43 @@ import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.Instant;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+/**
+ * Authenticates requests that carry a Cognito bearer token.
+ * A token's signature is verified once; the Jwt built from it is then kept, keyed by the token's SHA-256,
+ * until the token expires, so the many requests of a session skip the RS256 verification.
+ * Lookups do not lock; once the cache outgrows its limit, one request prunes it (expired tokens first).
+ * Members of the configured Cognito admin group get ROLE_ADMIN.
+ */
 @Component
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
+    private static final List<GrantedAuthority> ADMIN = List.of(new SimpleGrantedAuthority("ROLE_ADMIN"));
+
     private final CognitoJwtValidator jwtValidator;
+    private final String adminGroup;
+    private final WebAuthenticationDetailsSource detailsSource = new WebAuthenticationDetailsSource();
+    // Verified tokens by SHA-256
+    private final Map<String, Jwt> verified = new ConcurrentHashMap<>();
+    private final int maxEntries;
+    private final AtomicBoolean pruning = new AtomicBoolean();
 
-    public JwtAuthenticationFilter(CognitoJwtValidator jwtValidator) {
+    public JwtAuthenticationFilter(CognitoJwtValidator jwtValidator,
+                                   @Value("${aws.cognito.token-cache.max-entries:10000}") int maxEntries,
+                                   @Value("${aws.cognito.admin-group:admin}") String adminGroup) {
         this.jwtValidator = jwtValidator;
+        this.adminGroup = adminGroup;
+        this.maxEntries = Math.max(1, maxEntries);
     }
 
     @Override
@@ -38,30 +67,14 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
             String token = authHeader.substring(7);
 
             try {
-                JWTClaimsSet claims = jwtValidator.validateToken(token);
+                Jwt jwt = verify(token);
                 
-                if (claims != null) {
-                    // Convert Nimbus JWTClaimsSet to Spring Security Jwt
-                    Map<String, Object> headers = new HashMap<>();
-                    headers.put("alg", "RS256");
-                    headers.put("typ", "JWT");
-                    
-                    Instant issuedAt = claims.getIssueTime() != null ? claims.getIssueTime().toInstant() : Instant.now();
-                    Instant expiresAt = claims.getExpirationTime() != null ? claims.getExpirationTime().toInstant() : Instant.now().plusSeconds(3600);
-                    
-                    Jwt jwt = new Jwt(
-                        token,
-                        issuedAt,
-                        expiresAt,
-                        headers,
-                        claims.getClaims()
-                    );
-
-                    // Create authentication token with Jwt as principal
+                if (jwt != null) {
+                    // Create authentication token with Jwt as principal; details differ per request
                     UsernamePasswordAuthenticationToken authentication = 
-                        new UsernamePasswordAuthenticationToken(jwt, null, new ArrayList<>());
+                        new UsernamePasswordAuthenticationToken(jwt, null, authorities(jwt));
                     
-                    authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+                    authentication.setDetails(detailsSource.buildDetails(request));
                     
                     // Set authentication in security context
                     SecurityContextHolder.getContext().setAuthentication(authentication);
@@ -73,4 +86,64 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
         filterChain.doFilter(request, response);
     }
+
+    /**
+     * The Jwt for a token, from the cache while the token is unexpired, otherwise verified by the validator
+     * @return null if the validator rejects the token without an exception
+     */
+    private Jwt verify(String token) throws Exception {
+        String key = sha256(token);
+        Jwt cached = verified.get(key);
+        if (cached != null) {
+            if (cached.getExpiresAt().isAfter(Instant.now())) return cached;
+            verified.remove(key, cached);
+        }
+
+        SignedJWT signedJwt = SignedJWT.parse(token);
+        JWTClaimsSet claims = jwtValidator.validateToken(signedJwt);
+        if (claims == null) return null;
+
+        // Convert Nimbus JWTClaimsSet to Spring Security Jwt
+        Instant issuedAt = claims.getIssueTime() != null ? claims.getIssueTime().toInstant() : Instant.now();
+        Instant expiresAt = claims.getExpirationTime() != null ? claims.getExpirationTime().toInstant() : Instant.now().plusSeconds(3600);
+        // The token's own header (kid, alg, ...) is kept with the claims
+        Jwt jwt = new Jwt(token, issuedAt, expiresAt, signedJwt.getHeader().toJSONObject(), claims.getClaims());
+
+        // Tokens without an expiry are verified on every request
+        if (claims.getExpirationTime() != null) {
+            verified.put(key, jwt);
+            if (verified.size() > maxEntries) prune();
+        }
+        return jwt;
+    }
+
+    /**
+     * Drop expired tokens, then arbitrary ones until the cache is down to 3/4 of its limit,
+     * so pruning runs once per many inserts. Dropped tokens are simply verified again.
+     */
+    private void prune() {
+        if (!pruning.compareAndSet(false, true)) return;
+        try {
+            Instant now = Instant.now();
+            verified.values().removeIf(jwt -> !jwt.getExpiresAt().isAfter(now));
+            int target = maxEntries - maxEntries / 4;
+            Iterator<String> keys = verified.keySet().iterator();
+            while (verified.size() > target && keys.hasNext()) {
+                keys.next();
+                keys.remove();
+            }
+        } finally {
+            pruning.set(false);
+        }
+    }
+
+    private List<GrantedAuthority> authorities(Jwt jwt) {
+        List<String> groups = jwt.getClaimAsStringList("cognito:groups");
+        return groups != null && groups.contains(adminGroup) ? ADMIN : List.of();
+    }
+
+    private static String sha256(String token) throws NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        return HexFormat.of().formatHex(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+    }
 }
@@ -1,5 +1,6 @@
 package com.example.media_controller_iot.security;
 
+import jakarta.servlet.DispatcherType;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
@@ -31,12 +32,21 @@ public class SecurityConfig {
             .csrf(csrf -> csrf.disable())
             .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
             .authorizeHttpRequests(auth -> auth
+                // Async results (uploads, exports) were authorized on the original request; the redispatch
+                // carries no Authorization-derived context of its own
+                .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
+
                 // Public endpoints (health checks, SSE, nginx health)
                 .requestMatchers("/").permitAll()  // Allow nginx health checks
                 .requestMatchers("/actuator/**").permitAll()
                 .requestMatchers("/api/health/**").permitAll()
                 .requestMatchers("/api/player/stream").permitAll()  // Player SSE endpoint (EventSource can't send auth headers)
-                
+                .requestMatchers("/api/stream/*").permitAll()  // Audio streams (audio elements can't send auth headers either)
+                .requestMatchers("/api/covers/*").permitAll()  // Cover thumbnails (same for img elements)
+
+                // Maintenance endpoints for members of the Cognito admin group
+                .requestMatchers("/api/files/cleanup", "/api/ingest/**").hasRole("ADMIN")
+
                 // All other endpoints require authentication
                 .anyRequest().authenticated()
             )
@@ -12,8 +12,6 @@ import org.springframework.stereotype.Component;
 import java.time.LocalDateTime;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.event.EventListener;
-import com.example.media_controller_iot.models.VolumeLog;
-import com.example.media_controller_iot.repository.VolumeLogRepo;
 
 @Component
 public class BluetoothListener {
@@ -22,14 +20,10 @@ public class BluetoothListener {
     private final PlayerCommandLogRepo playerCommandLogRepo;
     private final ObjectMapper objectMapper = new ObjectMapper();
 
-    private final VolumeLogRepo volumeLogRepo;
-
     public BluetoothListener(PlayerService playerService,
-                             PlayerCommandLogRepo playerCommandLogRepo,
-                             VolumeLogRepo volumeLogRepo) {
+                             PlayerCommandLogRepo playerCommandLogRepo) {
         this.playerService = playerService;
         this.playerCommandLogRepo = playerCommandLogRepo;
-        this.volumeLogRepo = volumeLogRepo;
     }
 
 
@@ -76,15 +70,6 @@ public class BluetoothListener {
             }
         }).start();
     }
-    private void saveVolume(int value) {
-        try {
-            VolumeLog volumeLog = new VolumeLog(value);
-            volumeLogRepo.save(volumeLog);
-        } catch (Exception e) {
-            log.error("Failed to save volume: {}", value, e);
-        }
-    }
-
     private void handleJson(String line) {
         try {
             // Clean up data
@@ -102,8 +87,7 @@ public class BluetoothListener {
                 if (value >= 0) {
                     log.info("Volume changed: {}", value);
                     saveCommand("VOLUME:" + value);
-                    saveVolume(value);
-                    playerService.mediaCommands("VOLUME:" + value); //update backend state
+                    playerService.mediaCommands("VOLUME:" + value); //update backend state and volume history
                 }
             } else {
                 log.info("Command: {}", command);
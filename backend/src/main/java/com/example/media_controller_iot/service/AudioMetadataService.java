@@ -0,0 +1,167 @@
+package com.example.media_controller_iot.service;
+
+import com.example.media_controller_iot.util.AudioMetadataReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Duration, bitrate, sample rate, codec and title/artist tags of songs, read from their audio headers.
+ * Uploads are read from the bytes captured on their way to S3; songs whose file was stored earlier
+ * (or that reference an upload before the song existed) are backfilled by a periodic sweep that reads
+ * only the headers with ranged GETs.
+ */
+@Service
+public class AudioMetadataService {
+
+    private static final Logger log = LoggerFactory.getLogger(AudioMetadataService.class);
+    // Set on songs whose file is not in our bucket or not a format we can read, so the sweep skips them
+    public static final String UNKNOWN_CODEC = "unknown";
+    // Ranged reads fetch whole blocks, so the few small header reads of a file cost one or two requests
+    private static final int BLOCK_SIZE = 64 * 1024;
+
+    // Title and artist are only filled in where the catalog has none
+    private static final String UPDATE_SQL =
+            "UPDATE songs SET codec = ?, duration_ms = ?, bitrate = ?, sample_rate = ?, " +
+            "title = COALESCE(NULLIF(title, ''), ?), artist = COALESCE(NULLIF(artist, ''), ?) WHERE id = ?";
+
+    private final S3Service s3Service;
+    private final JdbcTemplate jdbcTemplate;
+    private final SmartPlaylistService smartPlaylistService;
+    private final int batchSize;
+
+    // Songs whose file could not be fetched; retried after a restart rather than on every sweep
+    private final Set<Long> failed = Collections.synchronizedSet(new HashSet<>());
+
+    public AudioMetadataService(S3Service s3Service,
+                                JdbcTemplate jdbcTemplate,
+                                SmartPlaylistService smartPlaylistService,
+                                @Value("${metadata.backfill-batch-size:50}") int batchSize) {
+        this.s3Service = s3Service;
+        this.jdbcTemplate = jdbcTemplate;
+        this.smartPlaylistService = smartPlaylistService;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Metadata of an uploaded file from the bytes captured while it was stored
+     * @return the metadata, or null if the file is not a format we can read
+     */
+    public AudioMetadataReader.Metadata read(AudioMetadataReader.Capture capture) {
+        try {
+            return AudioMetadataReader.read(capture);
+        } catch (IOException e) {
+            // A capture never fails to read
+            return null;
+        }
+    }
+
+    /**
+     * Metadata of a file in our bucket, read with ranged GETs
+     * @return the metadata, or null if the URL is not in our bucket or the file is not a format we can read
+     */
+    public AudioMetadataReader.Metadata read(String url) throws IOException {
+        String key = s3Service.keyForUrl(url);
+        if (key == null) return null;
+        return AudioMetadataReader.read(new RangedSource(key));
+    }
+
+    /**
+     * Store an upload's metadata on songs that already point at it (identical content shares one URL)
+     */
+    public void uploaded(String url, AudioMetadataReader.Metadata metadata) {
+        if (metadata == null) return;
+        List<Long> songIds = jdbcTemplate.queryForList(
+                "SELECT id FROM songs WHERE src_url = ? AND codec IS NULL", Long.class, url);
+        for (Long songId : songIds) {
+            update(songId, metadata);
+        }
+        if (!songIds.isEmpty()) smartPlaylistService.songsChanged(songIds);
+    }
+
+    /**
+     * Read the headers of songs that have no metadata yet, a batch at a time
+     */
+    @Scheduled(fixedDelayString = "${metadata.backfill-interval-ms:300000}", initialDelay = 60_000)
+    public void backfill() {
+        try {
+            List<Map<String, Object>> songs = jdbcTemplate.queryForList(
+                    "SELECT id, src_url FROM songs WHERE codec IS NULL ORDER BY id LIMIT ?",
+                    batchSize + failed.size());
+            List<Long> changed = new ArrayList<>();
+            for (Map<String, Object> song : songs) {
+                Long songId = ((Number) song.get("id")).longValue();
+                if (failed.contains(songId)) continue;
+                if (changed.size() >= batchSize) break;
+                try {
+                    AudioMetadataReader.Metadata metadata = read((String) song.get("src_url"));
+                    update(songId, metadata != null ? metadata
+                            : new AudioMetadataReader.Metadata(UNKNOWN_CODEC, null, null, null, null, null));
+                    changed.add(songId);
+                } catch (IOException | RuntimeException e) {
+                    failed.add(songId);
+                    log.warn("Failed to read audio metadata of song {}: {}", songId, e.getMessage());
+                }
+            }
+            if (!changed.isEmpty()) {
+                smartPlaylistService.songsChanged(changed);
+                log.info("Read audio metadata of {} songs", changed.size());
+            }
+        } catch (Exception e) {
+            log.error("Audio metadata backfill failed", e);
+        }
+    }
+
+    private void update(Long songId, AudioMetadataReader.Metadata metadata) {
+        jdbcTemplate.update(UPDATE_SQL, metadata.codec(), metadata.durationMs(), metadata.bitrate(),
+                metadata.sampleRate(), metadata.title(), metadata.artist(), songId);
+    }
+
+    /**
+     * An S3 object read in aligned blocks on demand
+     */
+    private class RangedSource implements AudioMetadataReader.Source {
+
+        private final String key;
+        private final long size;
+        private final Map<Long, byte[]> blocks = new HashMap<>();
+
+        RangedSource(String key) throws IOException {
+            this.key = key;
+            HeadObjectResponse head = s3Service.headObject(key);
+            if (head == null) throw new IOException("File not found: " + key);
+            this.size = head.contentLength();
+        }
+
+        @Override
+        public long size() {
+            return size;
+        }
+
+        @Override
+        public int read(long position, byte[] buffer, int offset, int length) throws IOException {
+            int read = 0;
+            while (read < length && position + read < size) {
+                long p = position + read;
+                long blockStart = p - p % BLOCK_SIZE;
+                byte[] block = blocks.get(blockStart);
+                if (block == null) {
+                    block = s3Service.readRange(key, blockStart, (int) Math.min(BLOCK_SIZE, size - blockStart));
+                    blocks.put(blockStart, block);
+                }
+                int n = (int) Math.min(length - read, block.length - (p - blockStart));
+                if (n <= 0) break;
+                System.arraycopy(block, (int) (p - blockStart), buffer, offset + read, n);
+                read += n;
+            }
+            return read;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.example.media_controller_iot.service;
+
+import com.example.media_controller_iot.models.Songs;
+import com.example.media_controller_iot.repository.SongsRepo;
+import com.example.media_controller_iot.util.SlidingWindowTopK;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Most played songs and artists over sliding 1h / 24h / 7d windows, answered from
+ * in-memory heavy-hitter sketches instead of scanning command_log.
+ */
+@Service
+public class ChartsService {
+
+    private static final Logger log = LoggerFactory.getLogger(ChartsService.class);
+
+    private static final int SNAPSHOT_MAGIC = 0x43485254; // "CHRT"
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final int CANDIDATES_PER_BUCKET = 200;
+
+    private final SongsRepo songsRepo;
+    private final Path snapshotPath;
+
+    private final Map<String, SlidingWindowTopK> songWindows = new LinkedHashMap<>();
+    private final Map<String, SlidingWindowTopK> artistWindows = new LinkedHashMap<>();
+    // Names of the artists that can still appear in a chart; pruned to the sketches' candidates
+    private final Map<Long, String> artistNames = new ConcurrentHashMap<>();
+    // Whether plays were recorded since the last snapshot
+    private volatile boolean dirty;
+
+    public ChartsService(SongsRepo songsRepo,
+                         @Value("${charts.snapshot-path:charts-snapshot.bin}") String snapshotPath) {
+        this.songsRepo = songsRepo;
+        this.snapshotPath = Paths.get(snapshotPath);
+
+        defineWindow("1h", Duration.ofMinutes(5), 12);
+        defineWindow("24h", Duration.ofHours(1), 24);
+        defineWindow("7d", Duration.ofHours(6), 28);
+    }
+
+    private void defineWindow(String name, Duration bucket, int buckets) {
+        songWindows.put(name, new SlidingWindowTopK(bucket.toMillis(), buckets, CANDIDATES_PER_BUCKET));
+        artistWindows.put(name, new SlidingWindowTopK(bucket.toMillis(), buckets, CANDIDATES_PER_BUCKET));
+    }
+
+    public boolean isSupportedWindow(String window) {
+        return songWindows.containsKey(window);
+    }
+
+    /**
+     * Count one play of a song in every window
+     */
+    public void recordPlay(Songs song) {
+        if (song == null || song.getId() == null) return;
+        long now = System.currentTimeMillis();
+        dirty = true;
+
+        for (SlidingWindowTopK window : songWindows.values()) {
+            window.add(song.getId(), now);
+        }
+
+        String artist = song.getArtist();
+        if (artist != null && !artist.isBlank()) {
+            long artistKey = artistKey(artist);
+            // Under the lock so a concurrent prune can't drop the name of a key it hasn't seen yet
+            synchronized (artistNames) {
+                for (SlidingWindowTopK window : artistWindows.values()) {
+                    window.add(artistKey, now);
+                }
+                artistNames.putIfAbsent(artistKey, artist);
+            }
+        }
+    }
+
+    /**
+     * Top songs in a window, as {song, plays} entries
+     */
+    public List<Map<String, Object>> topSongs(String window, int limit) {
+        List<long[]> top = songWindows.get(window).top(limit, System.currentTimeMillis());
+
+        Map<Long, Songs> songsById = new HashMap<>();
+        songsRepo.findAllById(top.stream().map(entry -> entry[0]).toList())
+                .forEach(song -> songsById.put(song.getId(), song));
+
+        List<Map<String, Object>> result = new ArrayList<>(top.size());
+        for (long[] entry : top) {
+            Songs song = songsById.get(entry[0]);
+            if (song == null) continue;
+            result.add(Map.of("song", song, "plays", entry[1]));
+        }
+        return result;
+    }
+
+    /**
+     * Top artists in a window, as {artist, plays} entries
+     */
+    public List<Map<String, Object>> topArtists(String window, int limit) {
+        List<long[]> top = artistWindows.get(window).top(limit, System.currentTimeMillis());
+
+        List<Map<String, Object>> result = new ArrayList<>(top.size());
+        for (long[] entry : top) {
+            String artist = artistNames.get(entry[0]);
+            if (artist == null) continue;
+            result.add(Map.of("artist", artist, "plays", entry[1]));
+        }
+        return result;
+    }
+
+    @PostConstruct
+    public void loadSnapshot() {
+        if (!Files.exists(snapshotPath)) return;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotPath)))) {
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) {
+                log.warn("Ignoring charts snapshot {} with unknown format", snapshotPath);
+                return;
+            }
+            for (SlidingWindowTopK window : songWindows.values()) window.read(in);
+            for (SlidingWindowTopK window : artistWindows.values()) window.read(in);
+            int names = in.readInt();
+            for (int i = 0; i < names; i++) {
+                artistNames.put(in.readLong(), in.readUTF());
+            }
+            log.info("Restored charts snapshot from {}", snapshotPath);
+        } catch (IOException e) {
+            log.warn("Failed to restore charts snapshot {}: {}", snapshotPath, e.getMessage());
+        }
+    }
+
+    /**
+     * Drop names of artists that no window tracks any more, then write the snapshot if anything was played since the last one
+     */
+    @Scheduled(fixedDelayString = "${charts.snapshot-interval-ms:300000}")
+    @PreDestroy
+    public void saveSnapshot() {
+        pruneArtistNames();
+        if (!dirty) return;
+        dirty = false;
+        try {
+            Path parent = snapshotPath.toAbsolutePath().getParent();
+            if (parent != null) Files.createDirectories(parent);
+            Path tmp = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(SNAPSHOT_MAGIC);
+                out.writeInt(SNAPSHOT_VERSION);
+                for (SlidingWindowTopK window : songWindows.values()) window.write(out);
+                for (SlidingWindowTopK window : artistWindows.values()) window.write(out);
+                Map<Long, String> names = new HashMap<>(artistNames);
+                out.writeInt(names.size());
+                for (Map.Entry<Long, String> entry : names.entrySet()) {
+                    out.writeLong(entry.getKey());
+                    out.writeUTF(entry.getValue());
+                }
+            }
+            Files.move(tmp, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            dirty = true;
+            log.error("Failed to write charts snapshot {}", snapshotPath, e);
+        }
+    }
+
+    private void pruneArtistNames() {
+        synchronized (artistNames) {
+            Set<Long> candidates = new HashSet<>();
+            for (SlidingWindowTopK window : artistWindows.values()) {
+                window.collectCandidates(candidates);
+            }
+            artistNames.keySet().retainAll(candidates);
+        }
+    }
+
+    // 64-bit FNV-1a over the artist name, so artists can share the long-keyed sketches
+    private static long artistKey(String artist) {
+        long hash = 0xCBF29CE484222325L;
+        for (byte b : artist.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001B3L;
+        }
+        return hash;
+    }
+}
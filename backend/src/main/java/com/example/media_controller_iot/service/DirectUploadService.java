@@ -0,0 +1,284 @@
+package com.example.media_controller_iot.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.presigner.model.PresignedPutObjectRequest;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Uploads that go from the client straight to S3 through presigned URLs.
+ * The backend only hands out URLs and, once the client reports completion, checks the object with a
+ * HEAD request before registering it; the bytes never pass through it.
+ * Small files get one presigned PUT, larger ones a multipart upload with a presigned URL per part.
+ * Each user may have a bounded number of sessions open; sessions are dropped some time after their URLs expire.
+ */
+@Service
+public class DirectUploadService {
+
+    private static final long MIN_PART_SIZE = 5L * 1024 * 1024;
+    private static final int MAX_PARTS = 10_000;
+    // Presigned URLs are only checked when a request starts, so a slow upload can finish after they expire
+    private static final Duration SESSION_GRACE = Duration.ofHours(1);
+
+    public record PresignedPart(int partNumber, String url, long size) {
+    }
+
+    /**
+     * @param sha256 - Content hash for single PUT uploads, which S3 verifies; null for multipart uploads
+     */
+    public record Session(String uploadId, String userId, String key, String folder, String fileName,
+                          String contentType, long size, byte[] sha256, String multipartUploadId, int partCount,
+                          Instant expiresAt) {
+    }
+
+    public record CompletedUpload(String url, String folder, String fileName, long size) {
+    }
+
+    /**
+     * The user already has uploads.presign.max-sessions-per-user sessions open
+     */
+    public static class SessionLimitException extends RuntimeException {
+        public SessionLimitException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * The uploaded object does not (yet) match its session, so the upload cannot be completed
+     */
+    public static class SessionStateException extends RuntimeException {
+        public SessionStateException(String message) {
+            super(message);
+        }
+    }
+
+    private final S3Service s3Service;
+    private final MediaBlobService mediaBlobService;
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    // userId -> open sessions, so start can enforce the per-user cap without scanning
+    private final Map<String, Integer> sessionsPerUser = new ConcurrentHashMap<>();
+
+    @Value("${uploads.max-size:2GB}")
+    private DataSize maxUploadSize;
+
+    @Value("${uploads.part-size:8MB}")
+    private DataSize partSize;
+
+    @Value("${uploads.presign.multipart-threshold:64MB}")
+    private DataSize multipartThreshold;
+
+    @Value("${uploads.presign.expiry:15m}")
+    private Duration expiry;
+
+    @Value("${uploads.presign.max-sessions-per-user:10}")
+    private int maxSessionsPerUser;
+
+    public DirectUploadService(S3Service s3Service, MediaBlobService mediaBlobService) {
+        this.s3Service = s3Service;
+        this.mediaBlobService = mediaBlobService;
+    }
+
+    /**
+     * Start a direct upload and presign the URL(s) the client sends the file to.
+     * If content with this hash is already stored, nothing needs to be uploaded and method is EXISTS.
+     * Single PUTs are stored under their content-addressed key, with the hash signed so S3 rejects other content.
+     * Multipart uploads cannot be verified that way, so they get a unique key and are not deduplicated.
+     * @param sha256 - SHA-256 of the file, computed by the client
+     * @return the response for the client: uploadId, method, url or parts, headers to send and expiresAt
+     * @throws MaxUploadSizeExceededException if size is above uploads.max-size
+     * @throws SessionLimitException if the user already has uploads.presign.max-sessions-per-user sessions open
+     */
+    public Map<String, Object> start(String userId, String folder, String fileName, String contentType, long size,
+                                     String description, byte[] sha256) throws IOException {
+        if (size > maxUploadSize.toBytes()) {
+            throw new MaxUploadSizeExceededException(maxUploadSize.toBytes());
+        }
+        // Nothing is recorded here, since the hash is unverified: the song created with the URL takes the reference
+        Optional<String> existingKey = mediaBlobService.findKey(sha256);
+        // Registered but not stored yet (or its upload failed): upload it like new content
+        if (existingKey.isPresent() && s3Service.headObject(existingKey.get()) != null) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("method", "EXISTS");
+            response.put("url", s3Service.getPublicUrl(existingKey.get()));
+            response.put("originalFilename", fileName);
+            response.put("size", size);
+            return response;
+        }
+
+        if (!reserveSession(userId)) {
+            throw new SessionLimitException("Too many uploads in progress; finish or cancel one first");
+        }
+        try {
+            return startSession(userId, folder, fileName, contentType, size, description, sha256);
+        } catch (IOException | RuntimeException e) {
+            releaseSession(userId);
+            throw e;
+        }
+    }
+
+    private Map<String, Object> startSession(String userId, String folder, String fileName, String contentType,
+                                             long size, String description, byte[] sha256) throws IOException {
+        String uploadId = UUID.randomUUID().toString();
+        Map<String, String> metadata = S3Service.buildMetadata(fileName, description);
+        Instant expiresAt = Instant.now().plus(expiry);
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("uploadId", uploadId);
+        response.put("expiresAt", expiresAt.toString());
+
+        if (size <= multipartThreshold.toBytes()) {
+            String key = S3Service.contentKey(folder, sha256, fileName);
+            PresignedPutObjectRequest presigned = s3Service.presignPut(key, contentType, size, metadata, sha256, expiry);
+            sessions.put(uploadId, new Session(uploadId, userId, key, folder, fileName, contentType, size,
+                    sha256, null, 0, expiresAt));
+            response.put("method", "PUT");
+            response.put("url", presigned.url().toString());
+            response.put("headers", clientHeaders(presigned.signedHeaders()));
+            return response;
+        }
+
+        long partBytes = Math.max(Math.max(partSize.toBytes(), MIN_PART_SIZE), (size + MAX_PARTS - 1) / MAX_PARTS);
+        int partCount = (int) ((size + partBytes - 1) / partBytes);
+        String key = S3Service.uniqueKey(folder, fileName);
+        String multipartUploadId = s3Service.createMultipartUpload(key, contentType, metadata);
+        sessions.put(uploadId, new Session(uploadId, userId, key, folder, fileName, contentType, size,
+                null, multipartUploadId, partCount, expiresAt));
+        List<PresignedPart> parts = new ArrayList<>();
+        int partNumber = 0;
+        for (long offset = 0; offset < size; offset += partBytes) {
+            long length = Math.min(partBytes, size - offset);
+            parts.add(new PresignedPart(++partNumber,
+                    s3Service.presignPart(key, multipartUploadId, partNumber, length, expiry).toString(), length));
+        }
+        response.put("method", "MULTIPART");
+        response.put("partSize", partBytes);
+        response.put("parts", parts);
+        return response;
+    }
+
+    /**
+     * Finish a direct upload: complete the multipart upload if there is one, then HEAD the object and check
+     * that its size and content type match what was presigned. A mismatching object is deleted.
+     * Content-addressed uploads are then registered as a reference to their blob.
+     * @return the stored file, or null if the upload ID is unknown or belongs to someone else
+     * @throws SessionStateException if the object is missing, incomplete or does not match
+     */
+    public CompletedUpload complete(String uploadId, String userId) throws IOException {
+        Session session = sessions.get(uploadId);
+        if (session == null || !Objects.equals(session.userId(), userId)) {
+            return null;
+        }
+        if (session.multipartUploadId() != null) {
+            List<CompletedPart> parts = s3Service.listUploadedParts(session.key(), session.multipartUploadId());
+            if (parts.size() != session.partCount()) {
+                throw new SessionStateException("Not all parts have been uploaded");
+            }
+            s3Service.completeMultipartUpload(session.key(), session.multipartUploadId(), parts);
+        }
+
+        HeadObjectResponse head = s3Service.headObject(session.key());
+        if (head == null) {
+            throw new SessionStateException("File has not been uploaded");
+        }
+        if (sessions.remove(uploadId) != null) releaseSession(session.userId());
+        if (head.contentLength() != session.size() || !session.contentType().equals(head.contentType())) {
+            // A content-addressed key may be shared with an existing blob, which must stay
+            if (!mediaBlobService.isRegistered(session.key())) {
+                s3Service.deleteObject(session.key());
+            }
+            throw new SessionStateException("Uploaded file does not match the declared size or content type");
+        }
+
+        String key = session.key();
+        if (session.sha256() != null) {
+            key = mediaBlobService.register(session.sha256(), key, session.size(), session.contentType(),
+                    session.userId()).objectKey();
+            if (!key.equals(session.key()) && !mediaBlobService.isRegistered(session.key())) {
+                // The same content was registered under another key in the meantime
+                s3Service.deleteObject(session.key());
+            }
+        }
+        return new CompletedUpload(s3Service.getPublicUrl(key), session.folder(), session.fileName(), session.size());
+    }
+
+    /**
+     * @return false if the upload ID is unknown or belongs to someone else
+     */
+    public boolean cancel(String uploadId, String userId) {
+        Session session = sessions.get(uploadId);
+        if (session == null || !Objects.equals(session.userId(), userId)) {
+            return false;
+        }
+        if (sessions.remove(uploadId) == null) return false;
+        releaseSession(session.userId());
+        if (session.multipartUploadId() != null) {
+            s3Service.abortMultipartUpload(session.key(), session.multipartUploadId());
+        }
+        return true;
+    }
+
+    /**
+     * Drop sessions whose URLs expired long enough ago, aborting their multipart uploads so S3 discards the parts
+     */
+    @Scheduled(fixedDelay = 60_000)
+    public void expireSessions() {
+        Instant cutoff = Instant.now().minus(SESSION_GRACE);
+        sessions.values().removeIf(session -> {
+            if (session.expiresAt().isAfter(cutoff)) return false;
+            if (session.multipartUploadId() != null) {
+                s3Service.abortMultipartUpload(session.key(), session.multipartUploadId());
+            }
+            releaseSession(session.userId());
+            return true;
+        });
+    }
+
+    /**
+     * Number of sessions the user has open
+     */
+    public int openSessions(String userId) {
+        return sessionsPerUser.getOrDefault(String.valueOf(userId), 0);
+    }
+
+    private boolean reserveSession(String userId) {
+        boolean[] reserved = {false};
+        sessionsPerUser.compute(String.valueOf(userId), (user, count) -> {
+            int open = count == null ? 0 : count;
+            if (open >= maxSessionsPerUser) return count;
+            reserved[0] = true;
+            return open + 1;
+        });
+        return reserved[0];
+    }
+
+    private void releaseSession(String userId) {
+        sessionsPerUser.computeIfPresent(String.valueOf(userId), (user, count) -> count > 1 ? count - 1 : null);
+    }
+
+    // Headers the client must send with the presigned PUT; Host and Content-Length are set by the client itself
+    private static Map<String, String> clientHeaders(Map<String, List<String>> signedHeaders) {
+        Map<String, String> headers = new HashMap<>();
+        signedHeaders.forEach((name, values) -> {
+            if (!name.equalsIgnoreCase("host") && !name.equalsIgnoreCase("content-length")) {
+                headers.put(name, String.join(",", values));
+            }
+        });
+        return headers;
+    }
+}
@@ -1,6 +1,5 @@
 package com.example.media_controller_iot.service;
 
-import com.example.media_controller_iot.models.Favorite;
 import com.example.media_controller_iot.models.Songs;
 import com.example.media_controller_iot.repository.FavoriteRepository;
 import com.example.media_controller_iot.repository.SongsRepo;
@@ -9,7 +8,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
 
 @Service
 public class FavoriteService {
@@ -20,6 +19,9 @@ public class FavoriteService {
     @Autowired
     private SongsRepo songsRepo;
     
+    @Autowired
+    private FavoritesCache favoritesCache;
+    
     /**
      * Get all favorite songs for a user
      */
@@ -29,27 +31,31 @@ public class FavoriteService {
     
     /**
      * Add a song to user's favorites
+     * @return true if it was not a favorite before
      */
     @Transactional
-    public Favorite addFavorite(String userId, Long songId) {
+    public boolean addFavorite(String userId, Long songId) {
         // Validate parameters
         if (songId == null) {
             throw new IllegalArgumentException("Song ID cannot be null");
         }
         
-        // Check if song exists
-        Songs song = songsRepo.findById(songId)
-                .orElseThrow(() -> new RuntimeException("Song not found with id: " + songId));
-        
         // Check if already favorited
-        Optional<Favorite> existing = favoriteRepository.findByUserIdAndSongId(userId, songId);
-        if (existing.isPresent()) {
-            return existing.get();
+        if (favoritesCache.contains(userId, songId)) {
+            return false;
         }
         
-        // Create new favorite
-        Favorite favorite = new Favorite(userId, song);
-        return favoriteRepository.save(favorite);
+        // Insert only if the song exists, in one statement
+        if (favoriteRepository.insertIfSongExists(userId, songId) == 0) {
+            if (!songsRepo.existsById(songId)) {
+                throw new RuntimeException("Song not found with id: " + songId);
+            }
+            // Added concurrently by another request
+            favoritesCache.added(userId, songId);
+            return false;
+        }
+        favoritesCache.added(userId, songId);
+        return true;
     }
     
     /**
@@ -58,13 +64,21 @@ public class FavoriteService {
     @Transactional
     public void removeFavorite(String userId, Long songId) {
         favoriteRepository.deleteByUserIdAndSongId(userId, songId);
+        favoritesCache.removed(userId, songId);
     }
     
     /**
      * Check if a song is in user's favorites
      */
     public boolean isFavorite(String userId, Long songId) {
-        return favoriteRepository.existsByUserIdAndSongId(userId, songId);
+        return songId != null && favoritesCache.contains(userId, songId);
+    }
+    
+    /**
+     * Check many songs at once, e.g. a page of search results
+     */
+    public Map<Long, Boolean> areFavorites(String userId, List<Long> songIds) {
+        return favoritesCache.containsAll(userId, songIds);
     }
     
     /**
@@ -85,7 +99,7 @@ public class FavoriteService {
      * Get count of user's favorites
      */
     public long getFavoriteCount(String userId) {
-        return favoriteRepository.countByUserId(userId);
+        return favoritesCache.count(userId);
     }
     
     /**
@@ -94,5 +108,6 @@ public class FavoriteService {
     @Transactional
     public void clearAllFavorites(String userId) {
         favoriteRepository.deleteByUserId(userId);
+        favoritesCache.cleared(userId);
     }
 }
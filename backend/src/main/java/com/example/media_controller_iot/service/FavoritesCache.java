@@ -0,0 +1,126 @@
+package com.example.media_controller_iot.service;
+
+import com.example.media_controller_iot.repository.FavoriteRepository;
+import com.example.media_controller_iot.util.SongIdBitmap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.*;
+
+/**
+ * Per-user bitmaps of favorited song IDs, loaded on first use and kept for the most
+ * recently active users. Writes update a cached bitmap only after their transaction
+ * commits; a load that overlaps a write is used once but not cached, so a bitmap never
+ * misses a committed change.
+ */
+@Service
+public class FavoritesCache {
+
+    private final FavoriteRepository favoriteRepository;
+    private final LinkedHashMap<String, SongIdBitmap> bitmaps;
+    // Bumped by every write, to detect loads that raced with one
+    private long writeEpoch;
+
+    public FavoritesCache(FavoriteRepository favoriteRepository,
+                          @Value("${favorites.cache.max-users:10000}") int maxUsers) {
+        this.favoriteRepository = favoriteRepository;
+        this.bitmaps = new LinkedHashMap<>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SongIdBitmap> eldest) {
+                return size() > maxUsers;
+            }
+        };
+    }
+
+    public boolean contains(String userId, long songId) {
+        SongIdBitmap bitmap = bitmap(userId);
+        synchronized (this) {
+            return bitmap.contains(songId);
+        }
+    }
+
+    /**
+     * Membership of every given song, in the order given
+     */
+    public Map<Long, Boolean> containsAll(String userId, Collection<Long> songIds) {
+        SongIdBitmap bitmap = bitmap(userId);
+        Map<Long, Boolean> result = new LinkedHashMap<>();
+        synchronized (this) {
+            for (Long songId : songIds) {
+                if (songId != null) result.put(songId, bitmap.contains(songId));
+            }
+        }
+        return result;
+    }
+
+    public long count(String userId) {
+        SongIdBitmap bitmap = bitmap(userId);
+        synchronized (this) {
+            return bitmap.cardinality();
+        }
+    }
+
+    public void added(String userId, long songId) {
+        afterCommit(() -> {
+            synchronized (this) {
+                writeEpoch++;
+                SongIdBitmap bitmap = bitmaps.get(userId);
+                if (bitmap != null) bitmap.add(songId);
+            }
+        });
+    }
+
+    public void removed(String userId, long songId) {
+        afterCommit(() -> {
+            synchronized (this) {
+                writeEpoch++;
+                SongIdBitmap bitmap = bitmaps.get(userId);
+                if (bitmap != null) bitmap.remove(songId);
+            }
+        });
+    }
+
+    public void cleared(String userId) {
+        afterCommit(() -> {
+            synchronized (this) {
+                writeEpoch++;
+                bitmaps.put(userId, new SongIdBitmap());
+            }
+        });
+    }
+
+    private SongIdBitmap bitmap(String userId) {
+        long epoch;
+        synchronized (this) {
+            SongIdBitmap cached = bitmaps.get(userId);
+            if (cached != null) return cached;
+            epoch = writeEpoch;
+        }
+
+        // Load outside the lock so one slow query doesn't block other users
+        long[] songIds = favoriteRepository.findSongIdsByUserId(userId).stream().mapToLong(Long::longValue).toArray();
+        SongIdBitmap loaded = SongIdBitmap.of(songIds);
+
+        synchronized (this) {
+            SongIdBitmap cached = bitmaps.get(userId);
+            if (cached != null) return cached;
+            if (epoch == writeEpoch) bitmaps.put(userId, loaded);
+            return loaded;
+        }
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
@@ -0,0 +1,961 @@
+package com.example.media_controller_iot.service;
+
+import com.example.media_controller_iot.models.IngestionJob;
+import com.example.media_controller_iot.repository.IngestionJobRepository;
+import com.example.media_controller_iot.util.AudioMetadataReader;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Bulk catalog import from a CSV/JSON manifest or a directory of audio files and covers.
+ * Creating a job writes one ingestion_items row per track; a run then uploads the pending items with
+ * bounded concurrency on virtual threads and inserts their songs in JDBC batches, checking the items off in
+ * the same transaction. Progress therefore survives a restart: a resumed job picks up the items that are
+ * still pending, and a track is never inserted twice.
+ * An instance works on a job only while it holds the job's lease (lease_owner, lease_until), and checks an
+ * item off only if it is still pending, so with several instances a job runs on one of them at a time and
+ * an item that another run got to first is not inserted again.
+ */
+@Service
+public class IngestionService {
+
+    private static final Logger log = LoggerFactory.getLogger(IngestionService.class);
+
+    public static final String FORMAT_CSV = "csv";
+    public static final String FORMAT_JSON = "json";
+    public static final String SOURCE_DIRECTORY = "directory";
+
+    private static final Set<String> AUDIO_EXTENSIONS = Set.of("mp3", "flac", "ogg", "oga", "opus", "wav", "m4a", "aac");
+    private static final List<String> IMAGE_EXTENSIONS = List.of("jpg", "jpeg", "png", "webp");
+    // Album art shared by every track of a directory
+    private static final List<String> FOLDER_COVER_NAMES = List.of("cover", "folder", "front");
+
+    private static final int ITEM_INSERT_CHUNK_SIZE = 1000;
+    private static final int ITEM_PAGE_SIZE = 1000;
+    private static final int FAILURE_SAMPLE_SIZE = 20;
+    private static final long MAX_FLUSH_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(5);
+    private static final long PROGRESS_LOG_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private static final String INSERT_ITEM_SQL =
+            "INSERT INTO ingestion_items (job_id, seq, status, title, artist, category, audio, cover, error) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String PENDING_ITEMS_SQL =
+            "SELECT id, seq, title, artist, category, audio, cover FROM ingestion_items " +
+            "WHERE job_id = ? AND status = 'PENDING' AND seq > ? ORDER BY seq LIMIT ?";
+    private static final String INSERT_SONG_SQL =
+            "INSERT INTO songs (title, artist, src_url, cover_url, category, codec, duration_ms, bitrate, sample_rate) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String UPDATE_ITEM_SQL =
+            "UPDATE ingestion_items SET status = ?, song_id = ?, error = ? WHERE id = ? AND status = 'PENDING'";
+    private static final String CLAIM_JOB_SQL =
+            "UPDATE ingestion_jobs SET lease_owner = ?, lease_until = ? " +
+            "WHERE id = ? AND (lease_owner IS NULL OR lease_owner = ? OR lease_until IS NULL OR lease_until < ?)";
+
+    private final IngestionJobRepository ingestionJobRepository;
+    private final S3Service s3Service;
+    private final MediaBlobService mediaBlobService;
+    private final ThumbnailService thumbnailService;
+    private final SmartPlaylistService smartPlaylistService;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final Path baseDir;
+
+    // Jobs being processed by this instance
+    private final Map<Long, Run> runs = new ConcurrentHashMap<>();
+    // Jobs this instance holds the lease on (being created or run)
+    private final Set<Long> leased = ConcurrentHashMap.newKeySet();
+    private final String instanceId = UUID.randomUUID().toString();
+    private volatile boolean shuttingDown;
+
+    @Value("${ingest.concurrency:8}")
+    private int concurrency;
+
+    @Value("${ingest.batch-size:200}")
+    private int batchSize;
+
+    @Value("${ingest.max-consecutive-failures:50}")
+    private int maxConsecutiveFailures;
+
+    @Value("${ingest.resume-on-startup:true}")
+    private boolean resumeOnStartup;
+
+    @Value("${ingest.lease-duration:2m}")
+    private Duration leaseDuration;
+
+    public IngestionService(IngestionJobRepository ingestionJobRepository,
+                            S3Service s3Service,
+                            MediaBlobService mediaBlobService,
+                            ThumbnailService thumbnailService,
+                            SmartPlaylistService smartPlaylistService,
+                            JdbcTemplate jdbcTemplate,
+                            TransactionTemplate transactionTemplate,
+                            ObjectMapper objectMapper,
+                            @Value("${ingest.base-dir:ingest}") String baseDir) {
+        this.ingestionJobRepository = ingestionJobRepository;
+        this.s3Service = s3Service;
+        this.mediaBlobService = mediaBlobService;
+        this.thumbnailService = thumbnailService;
+        this.smartPlaylistService = smartPlaylistService;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.objectMapper = objectMapper;
+        this.baseDir = Paths.get(baseDir).toAbsolutePath().normalize();
+    }
+
+    public static boolean isSupportedFormat(String format) {
+        return FORMAT_CSV.equals(format) || FORMAT_JSON.equals(format);
+    }
+
+    /**
+     * Continue the jobs that were running when the server stopped
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeInterruptedJobs() {
+        try {
+            adoptAbandonedJobs();
+        } catch (Exception e) {
+            log.error("Failed to resume ingestion jobs", e);
+        }
+    }
+
+    /**
+     * Renew the leases of this instance's jobs, and take over jobs whose instance stopped without releasing them.
+     * A run whose lease was taken over in the meantime (e.g. after a long stall) stops.
+     */
+    @Scheduled(fixedDelayString = "${ingest.lease-renew-interval-ms:30000}")
+    public void renewLeases() {
+        LocalDateTime until = LocalDateTime.now().plus(leaseDuration);
+        for (Long jobId : leased) {
+            if (jdbcTemplate.update("UPDATE ingestion_jobs SET lease_until = ? WHERE id = ? AND lease_owner = ?",
+                    until, jobId, instanceId) > 0) {
+                continue;
+            }
+            leased.remove(jobId);
+            Run run = runs.get(jobId);
+            if (run != null) {
+                log.warn("Ingestion job {}: lost its lease to another instance, stopping", jobId);
+                run.requestPause(null);
+            }
+        }
+        if (shuttingDown) return;
+        try {
+            adoptAbandonedJobs();
+        } catch (Exception e) {
+            log.error("Failed to take over ingestion jobs", e);
+        }
+    }
+
+    private void adoptAbandonedJobs() {
+        List<IngestionJob> jobs = ingestionJobRepository.findUnleased(
+                List.of(IngestionJob.Status.CREATING, IngestionJob.Status.RUNNING), LocalDateTime.now());
+        for (IngestionJob job : jobs) {
+            // A run of ours that missed a renewal stops by itself
+            if (runs.containsKey(job.getId())) continue;
+            if (job.getStatus() == IngestionJob.Status.CREATING) {
+                if (claim(job.getId())) finish(job.getId(), IngestionJob.Status.FAILED, "Interrupted while reading the source");
+            } else if (resumeOnStartup) {
+                if (launch(job)) {
+                    log.info("Resuming ingestion job {} ({}/{} tracks done)",
+                            job.getId(), job.getDoneItems(), job.getTotalItems());
+                }
+            } else if (claim(job.getId())) {
+                finish(job.getId(), IngestionJob.Status.PAUSED, null);
+            }
+        }
+    }
+
+    /**
+     * Stop taking new tracks; jobs stay RUNNING so they continue after the restart
+     */
+    @PreDestroy
+    public void shutdown() {
+        shuttingDown = true;
+        runs.values().forEach(run -> run.requestPause(null));
+    }
+
+    /**
+     * Create a job from a manifest with title, artist, category, audio (or src) and cover per track and start it.
+     * audio and cover are paths under ingest.base-dir, or URLs of files that are already hosted.
+     * CSV needs a header row; JSON is an array of tracks or an object with a "tracks" array (a playlist export).
+     */
+    public IngestionJob createFromManifest(String userId, String format, String name, InputStream input)
+            throws IOException {
+        IngestionJob job = newJob(userId, "manifest." + format, name);
+        ItemWriter writer = new ItemWriter(job.getId());
+        try {
+            if (FORMAT_CSV.equals(format)) {
+                readCsv(input, writer);
+            } else {
+                readJson(input, writer);
+            }
+            writer.flush();
+        } catch (IOException | RuntimeException e) {
+            discard(job.getId());
+            throw e;
+        }
+        return start(job, writer);
+    }
+
+    /**
+     * Create a job for every audio file under a directory of ingest.base-dir and start it.
+     * A track's cover is an image with the same name next to it, or else cover/folder/front.jpg|png in its directory;
+     * title and artist come from the file's tags, falling back to an "Artist - Title" file name.
+     */
+    public IngestionJob createFromDirectory(String userId, String directory) throws IOException {
+        Path root = resolve(directory == null ? "" : directory);
+        if (!Files.isDirectory(root)) throw new FileNotFoundException("Not a directory: " + directory);
+
+        IngestionJob job = newJob(userId, SOURCE_DIRECTORY, baseDir.relativize(root).toString());
+        ItemWriter writer = new ItemWriter(job.getId());
+        try (Stream<Path> files = Files.walk(root)) {
+            Path folder = null;
+            Path folderCover = null;
+            // Sorted so tracks of an album are uploaded together and their shared cover only once
+            Iterator<Path> audioFiles = files.filter(IngestionService::isAudioFile).sorted().iterator();
+            while (audioFiles.hasNext()) {
+                Path audio = audioFiles.next();
+                if (!audio.getParent().equals(folder)) {
+                    folder = audio.getParent();
+                    folderCover = findImage(folder, FOLDER_COVER_NAMES);
+                }
+                Path cover = findImage(folder, List.of(stem(audio)));
+                if (cover == null) cover = folderCover;
+                writer.add(null, null, null, relative(audio), cover != null ? relative(cover) : null);
+            }
+            writer.flush();
+        } catch (IOException | RuntimeException e) {
+            discard(job.getId());
+            throw e;
+        }
+        return start(job, writer);
+    }
+
+    /**
+     * Stop a running job after the tracks in flight; it can be resumed later
+     * @return false if the job is not running
+     */
+    public boolean pause(Long jobId) {
+        Run run = runs.get(jobId);
+        if (run == null) return false;
+        run.requestPause(null);
+        return true;
+    }
+
+    /**
+     * Continue a paused, failed or completed job with its pending items
+     * @param retryFailed - Also retry the items that failed
+     * @return false if the job is running (here or on another instance) or still being created
+     */
+    public boolean resume(IngestionJob job, boolean retryFailed) {
+        if (job.getStatus() == IngestionJob.Status.CREATING) return false;
+        return launch(job, () -> {
+            if (retryFailed) {
+                jdbcTemplate.update("UPDATE ingestion_items SET status = 'PENDING', error = NULL " +
+                        "WHERE job_id = ? AND status = 'FAILED'", job.getId());
+                jdbcTemplate.update("UPDATE ingestion_jobs SET failed_items = 0 WHERE id = ?", job.getId());
+            }
+            jdbcTemplate.update("UPDATE ingestion_jobs SET status = 'RUNNING', error = NULL, finished_at = NULL " +
+                    "WHERE id = ?", job.getId());
+        });
+    }
+
+    public Map<String, Object> toMap(IngestionJob job) {
+        Map<String, Object> map = new HashMap<>();
+        map.put("id", job.getId());
+        map.put("status", job.getStatus());
+        map.put("sourceType", job.getSourceType());
+        map.put("source", job.getSource());
+        map.put("totalItems", job.getTotalItems());
+        map.put("doneItems", job.getDoneItems());
+        map.put("failedItems", job.getFailedItems());
+        map.put("pendingItems", Math.max(0, job.getTotalItems() - job.getDoneItems() - job.getFailedItems()));
+        map.put("error", job.getError());
+        map.put("createdAt", job.getCreatedAt());
+        map.put("finishedAt", job.getFinishedAt());
+        Run run = runs.get(job.getId());
+        if (run != null) map.put("throughput", run.throughput(job));
+        return map;
+    }
+
+    /**
+     * Up to 20 failed items of a job with their errors
+     */
+    public List<Map<String, Object>> failureSample(Long jobId) {
+        return jdbcTemplate.queryForList("SELECT seq, audio, error FROM ingestion_items " +
+                "WHERE job_id = ? AND status = 'FAILED' ORDER BY seq LIMIT ?", jobId, FAILURE_SAMPLE_SIZE);
+    }
+
+    private IngestionJob newJob(String userId, String sourceType, String source) {
+        IngestionJob job = ingestionJobRepository.save(IngestionJob.builder()
+                .userId(userId)
+                .sourceType(sourceType)
+                .source(truncate(source, 1024))
+                .status(IngestionJob.Status.CREATING)
+                .leaseOwner(instanceId)
+                .leaseUntil(LocalDateTime.now().plus(leaseDuration))
+                .build());
+        leased.add(job.getId());
+        return job;
+    }
+
+    private IngestionJob start(IngestionJob job, ItemWriter writer) {
+        jdbcTemplate.update("UPDATE ingestion_jobs SET status = 'RUNNING', total_items = ?, failed_items = ? WHERE id = ?",
+                writer.count, writer.rejected, job.getId());
+        log.info("Created ingestion job {} with {} tracks", job.getId(), writer.count);
+        launch(job);
+        return ingestionJobRepository.findById(job.getId()).orElseThrow();
+    }
+
+    private void discard(Long jobId) {
+        leased.remove(jobId);
+        jdbcTemplate.update("DELETE FROM ingestion_items WHERE job_id = ?", jobId);
+        ingestionJobRepository.deleteById(jobId);
+    }
+
+    /**
+     * Take (or extend) the lease on a job unless another instance holds it
+     */
+    private boolean claim(Long jobId) {
+        LocalDateTime now = LocalDateTime.now();
+        if (jdbcTemplate.update(CLAIM_JOB_SQL, instanceId, now.plus(leaseDuration), jobId, instanceId, now) == 0) {
+            return false;
+        }
+        leased.add(jobId);
+        return true;
+    }
+
+    private boolean launch(IngestionJob job) {
+        return launch(job, null);
+    }
+
+    /**
+     * Start a run of the job unless one is running here or another instance holds its lease.
+     * The run's slot in runs is taken before the lease and given up only after the run has finished or
+     * released the job, so a job never has two runs on this instance.
+     * @param prepare - Optional changes to make in the transaction that takes the lease
+     */
+    private boolean launch(IngestionJob job, Runnable prepare) {
+        Run run = new Run(job.getId(), job.getUserId());
+        if (runs.putIfAbsent(job.getId(), run) != null) return false;
+        boolean claimed = false;
+        try {
+            claimed = Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+                if (!claim(job.getId())) return false;
+                if (prepare != null) prepare.run();
+                return true;
+            }));
+        } finally {
+            if (!claimed) runs.remove(job.getId(), run);
+        }
+        if (!claimed) return false;
+        Thread.ofVirtual().name("ingest-" + job.getId()).start(run);
+        return true;
+    }
+
+    /**
+     * Set the status of a job this instance holds the lease on, and release the lease
+     */
+    private void finish(Long jobId, IngestionJob.Status status, String error) {
+        boolean finished = status == IngestionJob.Status.COMPLETED || status == IngestionJob.Status.FAILED;
+        leased.remove(jobId);
+        jdbcTemplate.update("UPDATE ingestion_jobs SET status = ?, error = ?, finished_at = ?, " +
+                        "lease_owner = NULL, lease_until = NULL WHERE id = ? AND lease_owner = ?",
+                status.name(), truncate(error, 512), finished ? LocalDateTime.now() : null, jobId, instanceId);
+    }
+
+    /**
+     * Give up the lease on a job without changing its status, so another instance may take it over at once
+     */
+    private void release(Long jobId) {
+        leased.remove(jobId);
+        jdbcTemplate.update("UPDATE ingestion_jobs SET lease_owner = NULL, lease_until = NULL " +
+                "WHERE id = ? AND lease_owner = ?", jobId, instanceId);
+    }
+
+    // --- Sources ---
+
+    private void readCsv(InputStream input, ItemWriter writer) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        String header = reader.readLine();
+        if (header == null) throw new IOException("The manifest is empty");
+        if (header.startsWith("\uFEFF")) header = header.substring(1);
+
+        List<String> columns = parseCsvLine(header).stream().map(c -> c.strip().toLowerCase(Locale.ROOT)).toList();
+        int audio = columns.indexOf("audio") >= 0 ? columns.indexOf("audio") : columns.indexOf("src");
+        if (audio < 0) throw new IOException("The manifest needs an audio (or src) column");
+        int title = columns.indexOf("title");
+        int artist = columns.indexOf("artist");
+        int category = columns.indexOf("category");
+        int cover = columns.indexOf("cover");
+
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isBlank()) continue;
+            List<String> fields = parseCsvLine(line);
+            writer.add(field(fields, title), field(fields, artist), field(fields, category),
+                    field(fields, audio), field(fields, cover));
+        }
+    }
+
+    private void readJson(InputStream input, ItemWriter writer) throws IOException {
+        try (JsonParser parser = objectMapper.getFactory().createParser(input)) {
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.START_OBJECT) {
+                while ((token = parser.nextToken()) != null && token != JsonToken.END_OBJECT) {
+                    if (token == JsonToken.FIELD_NAME && "tracks".equals(parser.currentName())) {
+                        token = parser.nextToken();
+                        break;
+                    }
+                    parser.nextToken();
+                    parser.skipChildren();
+                }
+            }
+            if (token != JsonToken.START_ARRAY) {
+                throw new IOException("Expected a JSON array of tracks or an object with a \"tracks\" array");
+            }
+
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                JsonNode track = objectMapper.readTree(parser);
+                String audio = text(track, "audio");
+                writer.add(text(track, "title"), text(track, "artist"), text(track, "category"),
+                        audio != null ? audio : text(track, "src"), text(track, "cover"));
+            }
+        }
+    }
+
+    /**
+     * Fields of one CSV record; quoted fields may contain commas and doubled quotes but not line breaks
+     */
+    static List<String> parseCsvLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    /**
+     * Writes a job's items in chunks of ITEM_INSERT_CHUNK_SIZE rows
+     */
+    private class ItemWriter {
+        final Long jobId;
+        final List<Object[]> chunk = new ArrayList<>(ITEM_INSERT_CHUNK_SIZE);
+        long count;
+        // Items without an audio file, stored as failed right away
+        long rejected;
+
+        ItemWriter(Long jobId) {
+            this.jobId = jobId;
+        }
+
+        void add(String title, String artist, String category, String audio, String cover) {
+            String status = "PENDING";
+            String error = null;
+            if (audio == null) {
+                status = "FAILED";
+                error = "No audio file";
+                rejected++;
+            }
+            chunk.add(new Object[]{jobId, count++, status, truncate(title, 255), truncate(artist, 255),
+                    truncate(category, 255), truncate(audio, 1024), truncate(cover, 1024), error});
+            if (chunk.size() == ITEM_INSERT_CHUNK_SIZE) flush();
+        }
+
+        void flush() {
+            if (chunk.isEmpty()) return;
+            jdbcTemplate.batchUpdate(INSERT_ITEM_SQL, chunk);
+            chunk.clear();
+        }
+    }
+
+    // --- Runs ---
+
+    private record Item(long id, long seq, String title, String artist, String category, String audio, String cover) {
+    }
+
+    private record Result(long itemId, String title, String artist, String category, String srcUrl, String coverUrl,
+                          AudioMetadataReader.Metadata metadata, String error) {
+    }
+
+    /**
+     * One pass over a job's pending items
+     */
+    private class Run implements Runnable {
+        final Long jobId;
+        // Owner of the job, recorded as the uploader of its files
+        final String userId;
+        final long startedNanos = System.nanoTime();
+        final AtomicLong tracks = new AtomicLong();
+        final AtomicLong bytes = new AtomicLong();
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger consecutiveFailures = new AtomicInteger();
+        // Local cover path -> URL, so a cover shared by an album is uploaded once (each song still takes its
+        // own blob reference when its item is checked off)
+        final Map<String, CompletableFuture<String>> covers = new ConcurrentHashMap<>();
+        final List<Result> buffer = new ArrayList<>();
+        long lastFlushNanos = System.nanoTime();
+        long lastLogNanos = System.nanoTime();
+        volatile boolean pauseRequested;
+        volatile String pauseReason;
+
+        Run(Long jobId, String userId) {
+            this.jobId = jobId;
+            this.userId = userId;
+        }
+
+        void requestPause(String reason) {
+            pauseReason = reason;
+            pauseRequested = true;
+        }
+
+        @Override
+        public void run() {
+            IngestionJob.Status outcome = IngestionJob.Status.COMPLETED;
+            String error = null;
+            try {
+                processPendingItems();
+            } catch (InterruptedException e) {
+                pauseRequested = true;
+            } catch (Exception e) {
+                log.error("Ingestion job {} failed", jobId, e);
+                outcome = IngestionJob.Status.FAILED;
+                error = e.getMessage();
+            } finally {
+                try {
+                    flush(drain());
+                } catch (Exception e) {
+                    log.error("Failed to save the progress of ingestion job {}", jobId, e);
+                    outcome = IngestionJob.Status.FAILED;
+                    error = e.getMessage();
+                }
+                if (outcome == IngestionJob.Status.COMPLETED && pauseRequested) {
+                    outcome = IngestionJob.Status.PAUSED;
+                    error = pauseReason;
+                }
+                // On shutdown the job stays RUNNING and continues after the restart, or on another instance
+                try {
+                    if (shuttingDown) {
+                        release(jobId);
+                    } else {
+                        finish(jobId, outcome, error);
+                    }
+                } catch (RuntimeException e) {
+                    // The lease expires and another run picks the job up
+                    log.error("Failed to update the status of ingestion job {}", jobId, e);
+                } finally {
+                    // Only now may the job be launched again
+                    runs.remove(jobId, this);
+                }
+                double seconds = Math.max(1e-9, (System.nanoTime() - startedNanos) / 1e9);
+                log.info("Ingestion job {} {}: {} tracks in {}s ({} tracks/s, {} MB/s)", jobId,
+                        outcome.name().toLowerCase(Locale.ROOT), tracks.get(), Math.round(seconds),
+                        String.format("%.1f", tracks.get() / seconds),
+                        String.format("%.1f", bytes.get() / seconds / 1_000_000));
+            }
+        }
+
+        private void processPendingItems() throws InterruptedException {
+            Semaphore permits = new Semaphore(Math.max(1, concurrency));
+            try (ExecutorService workers = Executors.newThreadPerTaskExecutor(
+                    Thread.ofVirtual().name("ingest-" + jobId + "-", 0).factory())) {
+                long after = -1;
+                List<Item> page;
+                while (!pauseRequested && !(page = pendingItems(after)).isEmpty()) {
+                    for (Item item : page) {
+                        if (pauseRequested) break;
+                        permits.acquire();
+                        inFlight.incrementAndGet();
+                        workers.execute(() -> {
+                            try {
+                                completed(ingest(item));
+                            } finally {
+                                inFlight.decrementAndGet();
+                                permits.release();
+                            }
+                        });
+                        after = item.seq();
+                    }
+                }
+            }
+        }
+
+        private List<Item> pendingItems(long after) {
+            return jdbcTemplate.query(PENDING_ITEMS_SQL, (rs, rowNum) -> new Item(
+                    rs.getLong("id"), rs.getLong("seq"), rs.getString("title"), rs.getString("artist"),
+                    rs.getString("category"), rs.getString("audio"), rs.getString("cover")),
+                    jobId, after, ITEM_PAGE_SIZE);
+        }
+
+        private Result ingest(Item item) {
+            try {
+                String srcUrl;
+                AudioMetadataReader.Metadata metadata = null;
+                String nameTitle = null;
+                String nameArtist = null;
+                if (item.audio() == null) {
+                    throw new IOException("No audio file");
+                } else if (isUrl(item.audio())) {
+                    // Hosted elsewhere (or already ours); the metadata sweep reads it if it is in our bucket
+                    srcUrl = item.audio();
+                } else {
+                    Path path = resolve(item.audio());
+                    metadata = readMetadata(path);
+                    String fileName = path.getFileName().toString();
+                    try (InputStream in = Files.newInputStream(path)) {
+                        srcUrl = s3Service.uploadStream(in, fileName, contentType(fileName, "audio/mpeg"),
+                                "music", null, userId, null, null);
+                    }
+                    bytes.addAndGet(Files.size(path));
+                    String name = stem(path);
+                    int dash = name.indexOf(" - ");
+                    nameTitle = dash >= 0 ? name.substring(dash + 3) : name;
+                    nameArtist = dash >= 0 ? name.substring(0, dash) : null;
+                }
+                String coverUrl = item.cover() == null || isUrl(item.cover()) ? item.cover() : uploadCover(item.cover());
+
+                consecutiveFailures.set(0);
+                tracks.incrementAndGet();
+                return new Result(item.id(),
+                        firstNonBlank(item.title(), metadata != null ? metadata.title() : null, nameTitle),
+                        firstNonBlank(item.artist(), metadata != null ? metadata.artist() : null, nameArtist),
+                        item.category(), srcUrl, coverUrl, metadata, null);
+            } catch (Exception e) {
+                if (consecutiveFailures.incrementAndGet() == maxConsecutiveFailures) {
+                    requestPause("Paused after " + maxConsecutiveFailures + " tracks in a row failed, last: " + e.getMessage());
+                }
+                log.warn("Ingestion job {}: failed to ingest {}: {}", jobId, item.audio(), e.getMessage());
+                String message = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+                return new Result(item.id(), null, null, null, null, null, null, message);
+            }
+        }
+
+        private String uploadCover(String cover) throws IOException {
+            CompletableFuture<String> upload = new CompletableFuture<>();
+            CompletableFuture<String> existing = covers.putIfAbsent(cover, upload);
+            if (existing == null) {
+                try {
+                    Path path = resolve(cover);
+                    String fileName = path.getFileName().toString();
+                    String url;
+                    try (InputStream in = Files.newInputStream(path)) {
+                        url = s3Service.uploadStream(in, fileName, contentType(fileName, "image/jpeg"),
+                                "cover", null, userId, null, null);
+                    }
+                    bytes.addAndGet(Files.size(path));
+                    thumbnailService.submit(url);
+                    upload.complete(url);
+                } catch (IOException | RuntimeException e) {
+                    // Let the next track that uses it try again
+                    covers.remove(cover);
+                    upload.completeExceptionally(e);
+                }
+                existing = upload;
+            }
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+            }
+        }
+
+        private void completed(Result result) {
+            List<Result> batch = null;
+            synchronized (buffer) {
+                buffer.add(result);
+                if (buffer.size() >= batchSize || System.nanoTime() - lastFlushNanos >= MAX_FLUSH_INTERVAL_NANOS) {
+                    batch = drain();
+                }
+            }
+            if (batch != null) {
+                try {
+                    flush(batch);
+                } catch (RuntimeException e) {
+                    // The items stay pending and are retried when the job is resumed
+                    log.error("Failed to save the progress of ingestion job {}", jobId, e);
+                    requestPause("Could not save progress: " + e.getMessage());
+                }
+            }
+        }
+
+        private List<Result> drain() {
+            synchronized (buffer) {
+                List<Result> batch = new ArrayList<>(buffer);
+                buffer.clear();
+                lastFlushNanos = System.nanoTime();
+                return batch;
+            }
+        }
+
+        /**
+         * Insert the songs of a batch and check its items off in one transaction.
+         * Items are locked first; those no longer pending (another run checked them off) are left out,
+         * so their songs are not inserted and take no blob references.
+         */
+        private synchronized void flush(List<Result> batch) {
+            if (batch.isEmpty()) return;
+            List<Long> songIds = new ArrayList<>();
+            transactionTemplate.executeWithoutResult(status -> {
+                Set<Long> pending = lockPendingItems(batch);
+                List<Result> claimed = batch.stream().filter(r -> pending.contains(r.itemId())).toList();
+                if (claimed.size() < batch.size()) {
+                    log.warn("Ingestion job {}: {} tracks were already checked off by another run, discarding them",
+                            jobId, batch.size() - claimed.size());
+                }
+                List<Result> ingested = claimed.stream().filter(r -> r.error() == null).toList();
+                if (!ingested.isEmpty()) {
+                    KeyHolder keys = new GeneratedKeyHolder();
+                    jdbcTemplate.batchUpdate(connection -> connection.prepareStatement(INSERT_SONG_SQL,
+                            Statement.RETURN_GENERATED_KEYS), new SongSetter(ingested), keys);
+                    for (Map<String, Object> key : keys.getKeyList()) {
+                        songIds.add(((Number) key.values().iterator().next()).longValue());
+                    }
+                    if (songIds.size() != ingested.size()) {
+                        throw new IllegalStateException("Expected " + ingested.size() + " song IDs, got " + songIds.size());
+                    }
+                    // Each new song takes its own reference to the blobs it points at, a shared cover included
+                    Map<Long, List<String>> blobKeys = new HashMap<>();
+                    for (int i = 0; i < ingested.size(); i++) {
+                        List<String> songKeys = new ArrayList<>(2);
+                        addKey(songKeys, ingested.get(i).srcUrl());
+                        addKey(songKeys, ingested.get(i).coverUrl());
+                        if (!songKeys.isEmpty()) blobKeys.put(songIds.get(i), songKeys);
+                    }
+                    mediaBlobService.attach(blobKeys);
+                }
+                List<Object[]> updates = new ArrayList<>(claimed.size());
+                int ingestedIndex = 0;
+                for (Result result : claimed) {
+                    if (result.error() == null) {
+                        updates.add(new Object[]{"DONE", songIds.get(ingestedIndex++), null, result.itemId()});
+                    } else {
+                        updates.add(new Object[]{"FAILED", null, truncate(result.error(), 512), result.itemId()});
+                    }
+                }
+                for (int count : jdbcTemplate.batchUpdate(UPDATE_ITEM_SQL, updates)) {
+                    // The rows are locked, so this only happens if they were changed without locking them
+                    if (count == 0) throw new IllegalStateException("An item was checked off concurrently");
+                }
+                jdbcTemplate.update("UPDATE ingestion_jobs SET done_items = done_items + ?, " +
+                        "failed_items = failed_items + ? WHERE id = ?",
+                        ingested.size(), claimed.size() - ingested.size(), jobId);
+            });
+            if (!songIds.isEmpty()) smartPlaylistService.songsChanged(songIds);
+
+            long now = System.nanoTime();
+            if (now - lastLogNanos >= PROGRESS_LOG_INTERVAL_NANOS) {
+                lastLogNanos = now;
+                double seconds = (now - startedNanos) / 1e9;
+                log.info("Ingestion job {}: {} tracks this run ({} tracks/s, {} MB/s), {} uploading", jobId,
+                        tracks.get(), String.format("%.1f", tracks.get() / seconds),
+                        String.format("%.1f", bytes.get() / seconds / 1_000_000), inFlight.get());
+            }
+        }
+
+        /**
+         * IDs of the batch's items that are still pending, locking their rows until the transaction ends
+         */
+        private Set<Long> lockPendingItems(List<Result> batch) {
+            List<Object> ids = batch.stream().<Object>map(Result::itemId).toList();
+            String placeholders = String.join(",", Collections.nCopies(ids.size(), "?"));
+            return new HashSet<>(jdbcTemplate.queryForList("SELECT id FROM ingestion_items WHERE id IN (" +
+                    placeholders + ") AND status = 'PENDING' FOR UPDATE", Long.class, ids.toArray()));
+        }
+
+        private void addKey(List<String> keys, String url) {
+            String key = s3Service.keyForUrl(url);
+            if (key != null) keys.add(key);
+        }
+
+        Map<String, Object> throughput(IngestionJob job) {
+            double seconds = Math.max(1e-9, (System.nanoTime() - startedNanos) / 1e9);
+            double tracksPerSecond = tracks.get() / seconds;
+            long pending = Math.max(0, job.getTotalItems() - job.getDoneItems() - job.getFailedItems());
+            Map<String, Object> map = new HashMap<>();
+            map.put("tracksThisRun", tracks.get());
+            map.put("bytesThisRun", bytes.get());
+            map.put("tracksPerSecond", tracksPerSecond);
+            map.put("bytesPerSecond", bytes.get() / seconds);
+            map.put("inFlight", inFlight.get());
+            map.put("etaSeconds", tracksPerSecond > 0 ? Math.round(pending / tracksPerSecond) : null);
+            return map;
+        }
+    }
+
+    private static class SongSetter implements BatchPreparedStatementSetter {
+        private final List<Result> results;
+
+        SongSetter(List<Result> results) {
+            this.results = results;
+        }
+
+        @Override
+        public void setValues(PreparedStatement ps, int i) throws SQLException {
+            Result r = results.get(i);
+            AudioMetadataReader.Metadata m = r.metadata();
+            new ArgumentPreparedStatementSetter(new Object[]{
+                    truncate(r.title(), 255), truncate(r.artist(), 255), r.srcUrl(), r.coverUrl(), r.category(),
+                    m != null ? m.codec() : null, m != null ? m.durationMs() : null,
+                    m != null ? m.bitrate() : null, m != null ? m.sampleRate() : null
+            }).setValues(ps);
+        }
+
+        @Override
+        public int getBatchSize() {
+            return results.size();
+        }
+    }
+
+    // --- Files ---
+
+    /**
+     * A path under ingest.base-dir; anything that resolves outside of it is refused
+     */
+    private Path resolve(String relative) throws IOException {
+        Path path = baseDir.resolve(relative).normalize();
+        if (!path.startsWith(baseDir)) throw new IOException("Not under the ingest directory: " + relative);
+        return path;
+    }
+
+    private String relative(Path path) {
+        return baseDir.relativize(path).toString();
+    }
+
+    /**
+     * Metadata read straight from the file; unreadable formats are marked unknown so the sweep skips them
+     */
+    private static AudioMetadataReader.Metadata readMetadata(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path)) {
+            long size = channel.size();
+            AudioMetadataReader.Metadata metadata = AudioMetadataReader.read(new AudioMetadataReader.Source() {
+                @Override
+                public long size() {
+                    return size;
+                }
+
+                @Override
+                public int read(long position, byte[] buffer, int offset, int length) throws IOException {
+                    ByteBuffer target = ByteBuffer.wrap(buffer, offset, length);
+                    while (target.hasRemaining()) {
+                        if (channel.read(target, position + target.position() - offset) < 0) break;
+                    }
+                    return target.position() - offset;
+                }
+            });
+            return metadata != null ? metadata
+                    : new AudioMetadataReader.Metadata(AudioMetadataService.UNKNOWN_CODEC, null, null, null, null, null);
+        }
+    }
+
+    private static boolean isAudioFile(Path path) {
+        return Files.isRegularFile(path) && AUDIO_EXTENSIONS.contains(extension(path));
+    }
+
+    private static Path findImage(Path folder, List<String> names) {
+        for (String name : names) {
+            for (String extension : IMAGE_EXTENSIONS) {
+                Path image = folder.resolve(name + "." + extension);
+                if (Files.isRegularFile(image)) return image;
+            }
+        }
+        return null;
+    }
+
+    private static String extension(Path path) {
+        String name = path.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? "" : name.substring(dot + 1).toLowerCase(Locale.ROOT);
+    }
+
+    private static String stem(Path path) {
+        String name = path.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? name : name.substring(0, dot);
+    }
+
+    private static String contentType(String fileName, String fallback) {
+        return MediaTypeFactory.getMediaType(fileName).map(MediaType::toString).orElse(fallback);
+    }
+
+    private static boolean isUrl(String value) {
+        return value.startsWith("http://") || value.startsWith("https://");
+    }
+
+    private static String field(List<String> fields, int index) {
+        if (index < 0 || index >= fields.size()) return null;
+        String value = fields.get(index).strip();
+        return value.isEmpty() ? null : value;
+    }
+
+    private static String text(JsonNode node, String field) {
+        JsonNode value = node.get(field);
+        return value == null || value.isNull() || value.asText().isBlank() ? null : value.asText().strip();
+    }
+
+    private static String firstNonBlank(String... values) {
+        for (String value : values) {
+            if (value != null && !value.isBlank()) return value.strip();
+        }
+        return null;
+    }
+
+    private static String truncate(String value, int length) {
+        return value == null || value.length() <= length ? value : value.substring(0, length);
+    }
+}
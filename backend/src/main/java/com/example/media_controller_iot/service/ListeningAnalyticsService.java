@@ -0,0 +1,196 @@
+package com.example.media_controller_iot.service;
+
+import com.example.media_controller_iot.models.Songs;
+import com.example.media_controller_iot.util.LongKeyedCounters;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Aggregates player commands in memory as they happen and periodically flushes the
+ * deltas as upserts into the song/user/hourly listening stats tables. All three tables are
+ * written in one transaction, so a failed flush leaves none of its deltas behind and they can
+ * safely be merged back for the next run.
+ */
+@Service
+public class ListeningAnalyticsService {
+
+    private static final Logger log = LoggerFactory.getLogger(ListeningAnalyticsService.class);
+
+    // Per-song / per-user row layout
+    private static final int PLAYS = 0;
+    private static final int SKIPS = 1;
+    private static final int SONG_WIDTH = 2;
+
+    // Per-hour row layout
+    private static final int H_COMMANDS = 0;
+    private static final int H_PLAYS = 1;
+    private static final int H_SKIPS = 2;
+    private static final int H_MUTED = 3;
+    private static final int H_VOLUME_SUM = 4;
+    private static final int H_VOLUME_SAMPLES = 5;
+    private static final int HOUR_WIDTH = 6;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final long skipThresholdMillis;
+
+    private LongKeyedCounters songCounters = new LongKeyedCounters(SONG_WIDTH);
+    private LongKeyedCounters hourCounters = new LongKeyedCounters(HOUR_WIDTH);
+    private Map<String, long[]> userCounters = new HashMap<>();
+
+    // When the currently playing song started, used for skip detection
+    private Long playingSongId;
+    private long playingSince;
+
+    public ListeningAnalyticsService(JdbcTemplate jdbcTemplate,
+                                     TransactionTemplate transactionTemplate,
+                                     @Value("${analytics.skip-threshold-seconds:30}") int skipThresholdSeconds) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.skipThresholdMillis = skipThresholdSeconds * 1000L;
+    }
+
+    /**
+     * Feed one processed player command into the aggregates
+     * @param command - The command as processed by PlayerService
+     * @param previousSongId - Song that was current before the command ran
+     * @param currentSong - Song that is current after the command ran
+     * @param userId - Issuing user, or null for device commands
+     * @param volume - Player volume after the command
+     * @param muted - Whether the player is muted after the command
+     */
+    public synchronized void recordCommand(String command, Long previousSongId, Songs currentSong,
+                                           String userId, int volume, boolean muted) {
+        long now = System.currentTimeMillis();
+        long hour = currentHourKey();
+
+        hourCounters.add(hour, H_COMMANDS, 1);
+        if (muted) hourCounters.add(hour, H_MUTED, 1);
+        if (command.startsWith("VOLUME:")) {
+            hourCounters.add(hour, H_VOLUME_SUM, volume);
+            hourCounters.add(hour, H_VOLUME_SAMPLES, 1);
+        }
+
+        boolean songChange = command.equals("NEXT") || command.equals("PREV");
+        if (!songChange && !command.equals("PLAY")) return;
+
+        if (command.equals("NEXT") && previousSongId != null && previousSongId.equals(playingSongId)
+                && now - playingSince < skipThresholdMillis) {
+            songCounters.add(previousSongId, SKIPS, 1);
+            hourCounters.add(hour, H_SKIPS, 1);
+            if (userId != null) userRow(userId)[SKIPS]++;
+        }
+
+        if (currentSong == null || currentSong.getId() == null) return;
+
+        songCounters.add(currentSong.getId(), PLAYS, 1);
+        hourCounters.add(hour, H_PLAYS, 1);
+        if (userId != null) userRow(userId)[PLAYS]++;
+
+        if (songChange || !currentSong.getId().equals(playingSongId)) {
+            playingSongId = currentSong.getId();
+            playingSince = now;
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${analytics.flush-interval-ms:60000}")
+    public void flush() {
+        LongKeyedCounters songs;
+        LongKeyedCounters hours;
+        Map<String, long[]> users;
+        synchronized (this) {
+            if (songCounters.isEmpty() && hourCounters.isEmpty() && userCounters.isEmpty()) return;
+            songs = songCounters;
+            hours = hourCounters;
+            users = userCounters;
+            songCounters = new LongKeyedCounters(SONG_WIDTH);
+            hourCounters = new LongKeyedCounters(HOUR_WIDTH);
+            userCounters = new HashMap<>();
+        }
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                flushSongs(songs);
+                flushUsers(users);
+                flushHours(hours);
+            });
+        } catch (Exception e) {
+            log.error("Failed to flush listening analytics, keeping deltas for the next run", e);
+            // The transaction rolled back, so none of the deltas were written
+            synchronized (this) {
+                songCounters.addAll(songs);
+                users.forEach((userId, row) -> {
+                    long[] target = userRow(userId);
+                    target[PLAYS] += row[PLAYS];
+                    target[SKIPS] += row[SKIPS];
+                });
+                hourCounters.addAll(hours);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    private void flushSongs(LongKeyedCounters songs) {
+        List<Object[]> rows = new ArrayList<>(songs.size());
+        songs.forEach((songId, c, o) -> rows.add(new Object[]{songId, c[o + PLAYS], c[o + SKIPS]}));
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO song_listening_stats (song_id, plays, skips) VALUES (?, ?, ?) " +
+                "ON DUPLICATE KEY UPDATE plays = plays + VALUES(plays), skips = skips + VALUES(skips)",
+                rows);
+    }
+
+    private void flushUsers(Map<String, long[]> users) {
+        List<Object[]> rows = new ArrayList<>(users.size());
+        users.forEach((userId, row) -> rows.add(new Object[]{userId, row[PLAYS], row[SKIPS]}));
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO user_listening_stats (user_id, plays, skips) VALUES (?, ?, ?) " +
+                "ON DUPLICATE KEY UPDATE plays = plays + VALUES(plays), skips = skips + VALUES(skips)",
+                rows);
+    }
+
+    private void flushHours(LongKeyedCounters hours) {
+        List<Object[]> rows = new ArrayList<>(hours.size());
+        hours.forEach((hour, c, o) -> rows.add(new Object[]{
+                hourFromKey(hour), c[o + H_COMMANDS], c[o + H_PLAYS], c[o + H_SKIPS],
+                c[o + H_MUTED], c[o + H_VOLUME_SUM], c[o + H_VOLUME_SAMPLES]}));
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO hourly_listening_stats " +
+                "(bucket_hour, commands, plays, skips, muted_commands, volume_sum, volume_samples) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE " +
+                "commands = commands + VALUES(commands), plays = plays + VALUES(plays), " +
+                "skips = skips + VALUES(skips), muted_commands = muted_commands + VALUES(muted_commands), " +
+                "volume_sum = volume_sum + VALUES(volume_sum), volume_samples = volume_samples + VALUES(volume_samples)",
+                rows);
+    }
+
+    private long[] userRow(String userId) {
+        return userCounters.computeIfAbsent(userId, id -> new long[SONG_WIDTH]);
+    }
+
+    // Hours are keyed in local wall-clock time to match the LocalDateTime columns elsewhere
+    private static long currentHourKey() {
+        return LocalDateTime.now().truncatedTo(ChronoUnit.HOURS).toEpochSecond(ZoneOffset.UTC) / 3600;
+    }
+
+    private static LocalDateTime hourFromKey(long hour) {
+        return LocalDateTime.ofEpochSecond(hour * 3600, 0, ZoneOffset.UTC);
+    }
+}
@@ -0,0 +1,211 @@
+package com.example.media_controller_iot.service;
+
+import com.example.media_controller_iot.util.VolumeBlockCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps command_log small by rotating out one day at a time: each expired day is archived to a gzipped CSV,
+ * rolled up into command_log_hourly and then deleted from the hot table.
+ * Volume history (volume_series_blocks) already carries per-block aggregates, so expired blocks are only
+ * archived as decoded points and deleted.
+ */
+@Service
+public class LogLifecycleService {
+
+    private static final Logger log = LoggerFactory.getLogger(LogLifecycleService.class);
+
+    private static final String COMMAND_ROLLUP_SQL =
+            "INSERT INTO command_log_hourly (bucket_hour, command, song_id, user_id, command_count) " +
+            "SELECT DATE_FORMAT(timestamp, '%Y-%m-%d %H:00:00'), command, song_id, user_id, COUNT(*) " +
+            "FROM command_log WHERE timestamp >= ? AND timestamp < ? " +
+            "GROUP BY DATE_FORMAT(timestamp, '%Y-%m-%d %H:00:00'), command, song_id, user_id";
+
+    // Only full blocks expire: the newest, partial one may still be open in VolumeSeriesService
+    private static final String EXPIRED_VOLUME_BLOCKS_WHERE = "WHERE point_count = ? AND end_time < ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JdbcTemplate streamingJdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${logs.lifecycle.enabled:true}")
+    private boolean enabled;
+
+    @Value("${logs.retention.hot-days:14}")
+    private int hotDays;
+
+    @Value("${logs.archive.dir:log-archive}")
+    private String archiveDir;
+
+    @Value("${logs.archive.retention-days:365}")
+    private int archiveRetentionDays;
+
+    @Value("${volume-series.retention-days:365}")
+    private int volumeRetentionDays;
+
+    public LogLifecycleService(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate, DataSource dataSource) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        // Integer.MIN_VALUE makes MySQL Connector/J stream a day's rows into the archive instead of buffering them
+        this.streamingJdbcTemplate = new JdbcTemplate(dataSource);
+        this.streamingJdbcTemplate.setFetchSize(Integer.MIN_VALUE);
+    }
+
+    @Scheduled(cron = "${logs.lifecycle.cron:0 15 3 * * *}")
+    public void runLifecycle() {
+        if (!enabled) return;
+
+        LocalDate cutoff = LocalDate.now().minusDays(hotDays);
+        try {
+            rotate("command_log", "id,command,timestamp,song_id,user_id",
+                    "SELECT id, command, timestamp, song_id, user_id FROM command_log " +
+                    "WHERE timestamp >= ? AND timestamp < ? ORDER BY id",
+                    COMMAND_ROLLUP_SQL, cutoff);
+            rotateVolumeBlocks(LocalDate.now().minusDays(volumeRetentionDays));
+            pruneArchives();
+        } catch (Exception e) {
+            log.error("Log lifecycle run failed", e);
+        }
+    }
+
+    /**
+     * Archive, roll up and delete every day older than the cutoff, oldest first
+     */
+    private void rotate(String table, String header, String selectSql, String rollupSql, LocalDate cutoff)
+            throws IOException {
+        LocalDate day;
+        while ((day = oldestDay(table)) != null && day.isBefore(cutoff)) {
+            LocalDateTime from = day.atStartOfDay();
+            LocalDateTime to = day.plusDays(1).atStartOfDay();
+
+            // The archive is rewritten if a previous run died before the delete committed
+            Path archive = writeArchive(table, day, header, selectSql, from, to);
+
+            Integer deleted = transactionTemplate.execute(status -> {
+                jdbcTemplate.update(rollupSql, from, to);
+                return jdbcTemplate.update("DELETE FROM " + table + " WHERE timestamp >= ? AND timestamp < ?", from, to);
+            });
+            log.info("Rotated {} rows of {} for {} into {}", deleted, table, day, archive);
+        }
+    }
+
+    /**
+     * Archive and delete the full volume blocks that ended before the cutoff, one day of block end times at a time
+     */
+    private void rotateVolumeBlocks(LocalDate cutoff) throws IOException {
+        ZoneId zone = ZoneId.systemDefault();
+        long cutoffMillis = cutoff.atStartOfDay(zone).toInstant().toEpochMilli();
+        int blockSize = VolumeSeriesService.BLOCK_SIZE;
+        Long oldestEnd;
+        while ((oldestEnd = jdbcTemplate.queryForObject("SELECT MIN(end_time) FROM volume_series_blocks " +
+                "WHERE point_count = ?", Long.class, blockSize)) != null) {
+            LocalDate day = Instant.ofEpochMilli(oldestEnd).atZone(zone).toLocalDate();
+            long to = day.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+            if (to > cutoffMillis) break;
+
+            Path file = archiveFile("volume_series", day);
+            long[] times = new long[blockSize];
+            int[] values = new int[blockSize];
+            try (BufferedWriter writer = openArchive(file)) {
+                writer.write("time,volume");
+                writer.newLine();
+                streamingJdbcTemplate.query("SELECT data FROM volume_series_blocks " + EXPIRED_VOLUME_BLOCKS_WHERE +
+                        " ORDER BY start_time", rs -> {
+                    int n = VolumeBlockCodec.decode(rs.getBytes("data"), times, values);
+                    try {
+                        for (int i = 0; i < n; i++) {
+                            writer.write(times[i] + "," + values[i]);
+                            writer.newLine();
+                        }
+                    } catch (IOException e) {
+                        throw new IllegalStateException("Failed to write archive " + file, e);
+                    }
+                }, blockSize, to);
+            }
+
+            int deleted = jdbcTemplate.update("DELETE FROM volume_series_blocks " + EXPIRED_VOLUME_BLOCKS_WHERE,
+                    blockSize, to);
+            log.info("Rotated {} volume blocks ending {} into {}", deleted, day, file);
+        }
+    }
+
+    private LocalDate oldestDay(String table) {
+        LocalDateTime oldest = jdbcTemplate.queryForObject("SELECT MIN(timestamp) FROM " + table, LocalDateTime.class);
+        return oldest != null ? oldest.toLocalDate() : null;
+    }
+
+    private Path writeArchive(String table, LocalDate day, String header, String selectSql,
+                              LocalDateTime from, LocalDateTime to) throws IOException {
+        Path file = archiveFile(table, day);
+        try (BufferedWriter writer = openArchive(file)) {
+            writer.write(header);
+            writer.newLine();
+            int columns = header.split(",").length;
+            streamingJdbcTemplate.query(selectSql, rs -> {
+                try {
+                    for (int i = 1; i <= columns; i++) {
+                        if (i > 1) writer.write(',');
+                        writer.write(csv(rs.getString(i)));
+                    }
+                    writer.newLine();
+                } catch (IOException e) {
+                    throw new IllegalStateException("Failed to write archive " + file, e);
+                }
+            }, from, to);
+        }
+        return file;
+    }
+
+    private Path archiveFile(String table, LocalDate day) throws IOException {
+        Path dir = Paths.get(archiveDir);
+        Files.createDirectories(dir);
+        return dir.resolve(table + "-" + day + ".csv.gz");
+    }
+
+    private static BufferedWriter openArchive(Path file) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(
+                new GZIPOutputStream(Files.newOutputStream(file)), StandardCharsets.UTF_8));
+    }
+
+    private void pruneArchives() throws IOException {
+        Path dir = Paths.get(archiveDir);
+        if (!Files.isDirectory(dir)) return;
+
+        Instant expiry = Instant.now().minus(archiveRetentionDays, ChronoUnit.DAYS);
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : files.filter(f -> f.getFileName().toString().endsWith(".csv.gz")).toList()) {
+                if (Files.getLastModifiedTime(file).toInstant().isBefore(expiry)) {
+                    Files.delete(file);
+                    log.info("Deleted expired log archive {}", file);
+                }
+            }
+        }
+    }
+
+    private static String csv(String value) {
+        if (value == null) return "";
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) return value;
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,224 @@
+package com.example.media_controller_iot.service;
+
+import com.example.media_controller_iot.models.MediaBlob;
+import com.example.media_controller_iot.models.SongBlob;
+import com.example.media_controller_iot.repository.MediaBlobRepository;
+import com.example.media_controller_iot.repository.SongBlobRepository;
+import com.example.media_controller_iot.repository.SongsRepo;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Registry of content-addressed S3 objects, so identical uploads share one object, and reference counts
+ * of the songs that use them. Uploads only register a blob; a song takes one reference to each blob its
+ * src_url or cover_url points at when its row is inserted, and gives it back once its row is gone.
+ * Rows are locked while they change, and objects are deleted before the row lock is released,
+ * so a concurrent upload never resolves to a deleted object.
+ */
+@Service
+public class MediaBlobService {
+
+    private static final int RELEASE_BATCH_SIZE = 1000;
+
+    /**
+     * @param objectKey - Key the content is stored under
+     * @param existing - Whether the blob was already registered, i.e. the bytes need not be stored again
+     */
+    public record Reference(String objectKey, boolean existing) {
+    }
+
+    /**
+     * Outcome of {@link #discard}
+     */
+    public enum Discard { DELETED, NOT_FOUND, NOT_OWNER, IN_USE }
+
+    private final MediaBlobRepository mediaBlobRepository;
+    private final SongBlobRepository songBlobRepository;
+    private final SongsRepo songsRepo;
+    private final TransactionTemplate transactionTemplate;
+
+    public MediaBlobService(MediaBlobRepository mediaBlobRepository,
+                            SongBlobRepository songBlobRepository,
+                            SongsRepo songsRepo,
+                            TransactionTemplate transactionTemplate) {
+        this.mediaBlobRepository = mediaBlobRepository;
+        this.songBlobRepository = songBlobRepository;
+        this.songsRepo = songsRepo;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    /**
+     * Look up the blob with this hash, for a client that claims to have the same content.
+     * Read-only: the hash is not proof of owning the bytes (it is part of public object keys), so it neither
+     * shares the blob nor extends its grace period; the song created with the key takes the reference.
+     * @return its object key, or empty if there is no such blob
+     */
+    public Optional<String> findKey(byte[] sha256) {
+        return mediaBlobRepository.findBySha256(HexFormat.of().formatHex(sha256)).map(MediaBlob::getObjectKey);
+    }
+
+    public boolean isRegistered(String objectKey) {
+        return mediaBlobRepository.existsByObjectKey(objectKey);
+    }
+
+    /**
+     * Register the blob with this hash under objectKey unless it is already registered.
+     * A caller that gets a new blob must store the bytes (or forget it if that fails).
+     */
+    public Reference register(byte[] sha256, String objectKey, long size, String contentType, String userId) {
+        String hash = HexFormat.of().formatHex(sha256);
+        try {
+            return transactionTemplate.execute(status -> registerLocked(hash, objectKey, size, contentType, userId));
+        } catch (DataIntegrityViolationException e) {
+            // Another upload of the same content registered it first
+            return transactionTemplate.execute(status -> registerLocked(hash, objectKey, size, contentType, userId));
+        }
+    }
+
+    private Reference registerLocked(String hash, String objectKey, long size, String contentType, String userId) {
+        Optional<MediaBlob> blob = mediaBlobRepository.lockBySha256(hash);
+        if (blob.isPresent()) {
+            reused(blob.get(), userId);
+            return new Reference(blob.get().getObjectKey(), true);
+        }
+        mediaBlobRepository.saveAndFlush(new MediaBlob(hash, objectKey, size, contentType, userId));
+        return new Reference(objectKey, false);
+    }
+
+    // The content has been uploaded again, by someone who sent the bytes. Content uploaded by several users
+    // belongs to none of them, and the new upload may not be attached to a song for a while, so the orphan
+    // cleanup's grace period starts over.
+    private static void reused(MediaBlob blob, String userId) {
+        if (!Objects.equals(blob.getUploadedBy(), userId)) {
+            blob.setUploadedBy(null);
+        }
+        blob.setLastReferencedAt(LocalDateTime.now());
+    }
+
+    /**
+     * Take one reference per song to each registered blob among its keys; a song that already holds a
+     * reference to a blob does not take another. Joins the caller's transaction, so the references are
+     * taken together with the song rows.
+     * @param objectKeysBySong - Song ID -> keys of the objects it points at; unregistered keys are ignored
+     */
+    public void attach(Map<Long, ? extends Collection<String>> objectKeysBySong) {
+        Set<String> keys = new HashSet<>();
+        objectKeysBySong.values().forEach(keys::addAll);
+        if (keys.isEmpty()) return;
+        transactionTemplate.executeWithoutResult(status -> {
+            Map<String, MediaBlob> blobs = new HashMap<>();
+            for (MediaBlob blob : mediaBlobRepository.lockByObjectKeyIn(keys)) {
+                blobs.put(blob.getObjectKey(), blob);
+            }
+            if (blobs.isEmpty()) return;
+            Set<List<Long>> linked = new HashSet<>();
+            for (SongBlob link : songBlobRepository.findBySongIdIn(objectKeysBySong.keySet())) {
+                linked.add(List.of(link.getSongId(), link.getBlobId()));
+            }
+            List<SongBlob> links = new ArrayList<>();
+            LocalDateTime now = LocalDateTime.now();
+            objectKeysBySong.forEach((songId, songKeys) -> {
+                for (String key : songKeys) {
+                    MediaBlob blob = blobs.get(key);
+                    if (blob != null && linked.add(List.of(songId, blob.getId()))) {
+                        links.add(new SongBlob(songId, blob.getId()));
+                        blob.setRefCount(blob.getRefCount() + 1);
+                        blob.setLastReferencedAt(now);
+                    }
+                }
+            });
+            songBlobRepository.saveAll(links);
+        });
+    }
+
+    /**
+     * Give back the references of songs whose rows have been deleted, once per song.
+     * Blobs left without references stay until the orphan cleanup finds their objects unused.
+     * @return the number of references released
+     */
+    public long releaseDeletedSongs() {
+        long released = 0;
+        while (true) {
+            Integer batch = transactionTemplate.execute(status -> {
+                List<SongBlob> links = songBlobRepository.findOfDeletedSongs(PageRequest.of(0, RELEASE_BATCH_SIZE));
+                if (links.isEmpty()) return 0;
+                Map<Long, MediaBlob> blobs = new HashMap<>();
+                for (MediaBlob blob : mediaBlobRepository.lockByIdIn(links.stream().map(SongBlob::getBlobId).toList())) {
+                    blobs.put(blob.getId(), blob);
+                }
+                for (SongBlob link : links) {
+                    // Another instance may have released it since the links were read
+                    if (songBlobRepository.deleteLink(link.getId()) == 0) continue;
+                    MediaBlob blob = blobs.get(link.getBlobId());
+                    if (blob != null) blob.setRefCount(Math.max(0, blob.getRefCount() - 1));
+                }
+                return links.size();
+            });
+            if (batch == null || batch == 0) return released;
+            released += batch;
+        }
+    }
+
+    /**
+     * Delete an upload its owner no longer needs; delete runs while the row is locked.
+     * Only the user who uploaded the blob may discard it, and only while no song uses it.
+     * @param url - Public URL of the object, to check songs that were not created through {@link #attach}
+     * @return NOT_FOUND if objectKey is not a registered blob (already discarded, or uploaded before deduplication)
+     */
+    public Discard discard(String objectKey, String url, String userId, Runnable delete) {
+        return transactionTemplate.execute(status -> {
+            Optional<MediaBlob> blob = mediaBlobRepository.lockByObjectKey(objectKey);
+            if (blob.isEmpty()) return Discard.NOT_FOUND;
+            if (userId == null || !userId.equals(blob.get().getUploadedBy())) return Discard.NOT_OWNER;
+            if (blob.get().getRefCount() > 0 || songsRepo.existsByUrl(url)) return Discard.IN_USE;
+            mediaBlobRepository.delete(blob.get());
+            mediaBlobRepository.flush();
+            delete.run();
+            return Discard.DELETED;
+        });
+    }
+
+    /**
+     * Unregister the blobs stored under these keys whatever their reference count, for objects no song uses
+     * any more. delete runs while their rows are locked, so an upload of the same content waits for it
+     * and then stores the bytes again.
+     */
+    public void forget(Collection<String> objectKeys, Runnable delete) {
+        transactionTemplate.executeWithoutResult(status -> {
+            mediaBlobRepository.deleteAll(mediaBlobRepository.lockByObjectKeyIn(objectKeys));
+            mediaBlobRepository.flush();
+            delete.run();
+        });
+    }
+
+    /**
+     * Like {@link #forget}, for the orphan cleanup: keys whose blob has been registered, uploaded again
+     * or attached after cutoff are kept, since an upload may be about to attach them to a song.
+     * Keys that are not registered blobs are passed on to delete as they are.
+     * @return the keys passed to delete
+     */
+    public Set<String> forgetIdle(Collection<String> objectKeys, LocalDateTime cutoff, Consumer<Set<String>> delete) {
+        return transactionTemplate.execute(status -> {
+            Set<String> idle = new LinkedHashSet<>(objectKeys);
+            List<MediaBlob> blobs = new ArrayList<>();
+            for (MediaBlob blob : mediaBlobRepository.lockByObjectKeyIn(objectKeys)) {
+                if (blob.getLastReferencedAt() != null && blob.getLastReferencedAt().isAfter(cutoff)) {
+                    idle.remove(blob.getObjectKey());
+                } else {
+                    blobs.add(blob);
+                }
+            }
+            if (idle.isEmpty()) return idle;
+            mediaBlobRepository.deleteAll(blobs);
+            mediaBlobRepository.flush();
+            delete.accept(idle);
+            return idle;
+        });
+    }
+}
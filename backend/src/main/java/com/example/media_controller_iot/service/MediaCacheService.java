@@ -0,0 +1,315 @@
+package com.example.media_controller_iot.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Size-bounded LRU cache of S3 objects on local disk, used to serve audio streams.
+ * A miss is served with a ranged GET straight from S3 while the whole object is downloaded once in the
+ * background, however many requests ask for it at the same time. Cold fetches are limited per client,
+ * since the stream endpoint is public. Evicted files are unlinked after a delay, so a response that was
+ * handed a file's path (e.g. for sendfile) can still open it; once opened, it reads on after the unlink.
+ */
+@Service
+public class MediaCacheService {
+
+    private static final Logger log = LoggerFactory.getLogger(MediaCacheService.class);
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final long UNLINK_DELAY_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    /**
+     * A cached file, readable for at least UNLINK_DELAY after it was looked up
+     */
+    public record CachedFile(Path path, long size) {
+    }
+
+    private record Entry(Path path, long size) {
+    }
+
+    private record Evicted(Path path, long evictedAtNanos) {
+    }
+
+    private record ColdFetchWindow(long minute, AtomicInteger count) {
+    }
+
+    private final S3Service s3Service;
+    private final Path directory;
+    private final long maxBytes;
+
+    // File name -> entry, least recently used first; guarded by this
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long totalBytes;
+    // Evicted files waiting to be unlinked, oldest first; guarded by this
+    private final Deque<Evicted> evicted = new ArrayDeque<>();
+
+    // Downloads in progress, by file name
+    private final Set<String> fills = ConcurrentHashMap.newKeySet();
+    private final Semaphore fillSlots;
+    // Objects larger than the whole cache, which are never downloaded
+    private final Set<String> uncacheable = ConcurrentHashMap.newKeySet();
+    // Client address -> S3 fetches in the current minute
+    private final Map<String, ColdFetchWindow> coldFetches = new ConcurrentHashMap<>();
+
+    @Value("${stream.cold-fetch.per-minute:60}")
+    private int coldFetchesPerMinute;
+
+    private final Counter hits;
+    private final Counter misses;
+
+    public MediaCacheService(S3Service s3Service,
+                             MeterRegistry meterRegistry,
+                             @Value("${stream.cache.dir:media-cache}") String directory,
+                             @Value("${stream.cache.max-size:2GB}") DataSize maxSize,
+                             @Value("${stream.cache.max-concurrent-fills:4}") int maxConcurrentFills) {
+        this.s3Service = s3Service;
+        this.directory = Paths.get(directory);
+        this.maxBytes = maxSize.toBytes();
+        this.fillSlots = new Semaphore(Math.max(1, maxConcurrentFills));
+        this.hits = Counter.builder("media.stream.cache.requests").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("media.stream.cache.requests").tag("result", "miss").register(meterRegistry);
+        Gauge.builder("media.stream.cache.hit.ratio", this, MediaCacheService::hitRatio).register(meterRegistry);
+        Gauge.builder("media.stream.cache.size", this, MediaCacheService::totalBytes)
+                .baseUnit("bytes").register(meterRegistry);
+        Gauge.builder("media.stream.cache.entries", this, MediaCacheService::entryCount).register(meterRegistry);
+    }
+
+    /**
+     * Rebuild the index from the files already on disk, oldest first, so a restart keeps the hot set
+     */
+    @PostConstruct
+    public void loadIndex() {
+        try {
+            Files.createDirectories(directory);
+            List<Path> files = new ArrayList<>();
+            try (Stream<Path> stream = Files.list(directory)) {
+                stream.forEach(files::add);
+            }
+            List<Map.Entry<Path, BasicFileAttributes>> cached = new ArrayList<>();
+            for (Path file : files) {
+                if (file.getFileName().toString().endsWith(TEMP_SUFFIX)) {
+                    // Left over from a download that did not finish
+                    Files.deleteIfExists(file);
+                } else if (Files.isRegularFile(file)) {
+                    cached.add(Map.entry(file, Files.readAttributes(file, BasicFileAttributes.class)));
+                }
+            }
+            cached.sort(Comparator.comparing(e -> e.getValue().lastModifiedTime()));
+            synchronized (this) {
+                for (Map.Entry<Path, BasicFileAttributes> file : cached) {
+                    add(file.getKey().getFileName().toString(), new Entry(file.getKey(), file.getValue().size()));
+                }
+                evict();
+            }
+            log.info("Stream cache at {} holds {} files ({} bytes)", directory.toAbsolutePath(), entryCount(), totalBytes());
+        } catch (IOException e) {
+            log.warn("Failed to load stream cache index from {}: {}", directory, e.getMessage());
+        }
+    }
+
+    /**
+     * S3 key of a song or cover URL, or null if it is not stored in our bucket
+     */
+    public String keyForUrl(String url) {
+        return s3Service.keyForUrl(url);
+    }
+
+    /**
+     * Look an S3 object up in the cache
+     * @return the cached file, or null on a miss
+     */
+    public CachedFile lookup(String key) {
+        CachedFile file = cached(fileName(key));
+        if (file != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return file;
+    }
+
+    /**
+     * Whether the object is larger than the whole cache, so it is never cached
+     */
+    public boolean isUncacheable(String key) {
+        return uncacheable.contains(fileName(key));
+    }
+
+    /**
+     * Count an S3 fetch for a client against stream.cold-fetch.per-minute
+     * @return false if the client has used up its fetches for this minute
+     */
+    public boolean allowColdFetch(String client) {
+        long minute = TimeUnit.MILLISECONDS.toMinutes(System.currentTimeMillis());
+        ColdFetchWindow window = coldFetches.compute(client, (c, current) ->
+                current == null || current.minute() != minute ? new ColdFetchWindow(minute, new AtomicInteger()) : current);
+        return window.count().incrementAndGet() <= coldFetchesPerMinute;
+    }
+
+    @Scheduled(fixedDelay = 60_000)
+    public void pruneColdFetchWindows() {
+        long minute = TimeUnit.MILLISECONDS.toMinutes(System.currentTimeMillis());
+        coldFetches.values().removeIf(window -> window.minute() < minute);
+    }
+
+    /**
+     * Size of an uncached object, without reading it
+     * @return the size, or null if there is no such object
+     */
+    public Long objectSize(String key) {
+        HeadObjectResponse head = s3Service.headObject(key);
+        return head == null ? null : head.contentLength();
+    }
+
+    /**
+     * Read (a range of) an uncached object straight from S3, and start caching it in the background
+     * unless it is too large. The caller must close the stream.
+     * @param range - A single "bytes=" range to pass on to S3, or null for the whole object
+     */
+    public ResponseInputStream<GetObjectResponse> fetch(String key, String range) throws IOException {
+        ResponseInputStream<GetObjectResponse> in = s3Service.openObject(key, range);
+        String contentRange = in.response().contentRange();
+        long size = contentRange != null
+                ? Long.parseLong(contentRange.substring(contentRange.lastIndexOf('/') + 1))
+                : in.response().contentLength();
+        String name = fileName(key);
+        if (size > maxBytes) {
+            uncacheable.add(name);
+        } else {
+            fillInBackground(key, name);
+        }
+        return in;
+    }
+
+    private void fillInBackground(String key, String name) {
+        // Skipped while too many downloads run; a later miss starts it
+        if (!fillSlots.tryAcquire()) return;
+        if (!fills.add(name)) {
+            fillSlots.release();
+            return;
+        }
+        Thread.ofVirtual().name("stream-cache-fill").start(() -> {
+            try {
+                download(key, name);
+            } catch (IOException | RuntimeException e) {
+                log.warn("Failed to cache {}: {}", key, e.getMessage());
+            } finally {
+                fills.remove(name);
+                fillSlots.release();
+            }
+        });
+    }
+
+    public long hits() {
+        return (long) hits.count();
+    }
+
+    public long misses() {
+        return (long) misses.count();
+    }
+
+    public double hitRatio() {
+        double total = hits.count() + misses.count();
+        return total == 0 ? 0 : hits.count() / total;
+    }
+
+    public synchronized long totalBytes() {
+        return totalBytes;
+    }
+
+    public synchronized int entryCount() {
+        return entries.size();
+    }
+
+    private synchronized CachedFile cached(String name) {
+        Entry entry = entries.get(name);
+        if (entry == null) return null;
+        if (!Files.isRegularFile(entry.path())) {
+            // Removed behind our back
+            entries.remove(name);
+            totalBytes -= entry.size();
+            return null;
+        }
+        return new CachedFile(entry.path(), entry.size());
+    }
+
+    private void download(String key, String name) throws IOException {
+        Path temp = directory.resolve(name + "." + UUID.randomUUID() + TEMP_SUFFIX);
+        try {
+            s3Service.downloadToFile(key, temp);
+            long size = Files.size(temp);
+            if (size > maxBytes) {
+                uncacheable.add(name);
+                return;
+            }
+            Path target = directory.resolve(name);
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            synchronized (this) {
+                add(name, new Entry(target, size));
+                evict();
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private void add(String name, Entry entry) {
+        Entry previous = entries.put(name, entry);
+        if (previous != null) totalBytes -= previous.size();
+        totalBytes += entry.size();
+    }
+
+    // Drop least recently used files until the cache fits
+    private void evict() {
+        Iterator<Entry> iterator = entries.values().iterator();
+        long now = System.nanoTime();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            Entry entry = iterator.next();
+            iterator.remove();
+            totalBytes -= entry.size();
+            evicted.addLast(new Evicted(entry.path(), now));
+        }
+        unlinkEvicted();
+    }
+
+    @Scheduled(fixedDelay = 30_000)
+    public synchronized void unlinkEvicted() {
+        long now = System.nanoTime();
+        while (!evicted.isEmpty() && now - evicted.peekFirst().evictedAtNanos() >= UNLINK_DELAY_NANOS) {
+            Path path = evicted.pollFirst().path();
+            // Downloaded again since it was evicted
+            if (entries.containsKey(path.getFileName().toString())) continue;
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                log.warn("Failed to delete cached file {}: {}", path, e.getMessage());
+            }
+        }
+    }
+
+    // Keys can contain slashes and arbitrary characters; their hash is a safe, fixed-length file name
+    private static String fileName(String key) {
+        return HexFormat.of().formatHex(S3Service.sha256().digest(key.getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,283 @@
+package com.example.media_controller_iot.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Removes S3 objects that no song uses: files of deleted songs, uploads that were never attached to a song,
+ * staging objects left by failed uploads and thumbnails of such covers. A real run first gives back the
+ * blob references of deleted songs.
+ * The bucket is listed page by page and every key is checked against the set of keys the songs table
+ * references; unreferenced objects are deleted in DeleteObjects batches of up to 1000 keys, at a limited rate.
+ * Objects get a grace period: a registered blob counts from the last time it was registered, uploaded again
+ * or attached to a song (an upload may attach it to a song soon), any other object from its last modification.
+ * In dry-run mode it only reports what it would delete.
+ */
+@Service
+public class OrphanCleanupService {
+
+    private static final Logger log = LoggerFactory.getLogger(OrphanCleanupService.class);
+    // S3 accepts at most this many keys per DeleteObjects request
+    private static final int MAX_BATCH_SIZE = 1000;
+    private static final int SAMPLE_SIZE = 20;
+
+    /**
+     * Outcome of one run
+     */
+    public static class Report {
+        private final boolean dryRun;
+        private long scanned;
+        private long orphans;
+        private long orphanBytes;
+        private long deleted;
+        private long failed;
+        private final List<String> sample = new ArrayList<>();
+
+        Report(boolean dryRun) {
+            this.dryRun = dryRun;
+        }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new HashMap<>();
+            map.put("dryRun", dryRun);
+            map.put("scanned", scanned);
+            map.put("orphans", orphans);
+            map.put("orphanBytes", orphanBytes);
+            map.put("deleted", deleted);
+            map.put("failed", failed);
+            map.put("sample", sample);
+            return map;
+        }
+    }
+
+    private final S3Service s3Service;
+    private final MediaBlobService mediaBlobService;
+    private final ThumbnailService thumbnailService;
+    private final JdbcTemplate jdbcTemplate;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile Report lastReport;
+
+    @Value("${storage-gc.enabled:true}")
+    private boolean enabled;
+
+    @Value("${storage-gc.dry-run:true}")
+    private boolean dryRun;
+
+    @Value("${storage-gc.grace-period:7d}")
+    private Duration gracePeriod;
+
+    @Value("${storage-gc.prefixes:music/,cover/}")
+    private String[] prefixes;
+
+    @Value("${storage-gc.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${storage-gc.max-deletes-per-second:500}")
+    private int maxDeletesPerSecond;
+
+    public OrphanCleanupService(S3Service s3Service,
+                                MediaBlobService mediaBlobService,
+                                ThumbnailService thumbnailService,
+                                JdbcTemplate jdbcTemplate) {
+        this.s3Service = s3Service;
+        this.mediaBlobService = mediaBlobService;
+        this.thumbnailService = thumbnailService;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Scheduled(cron = "${storage-gc.cron:0 45 3 * * *}")
+    public void scheduledRun() {
+        if (!enabled) return;
+        try {
+            Report report = run(dryRun);
+            if (report != null) logReport(report);
+        } catch (Exception e) {
+            log.error("Orphan cleanup failed", e);
+        }
+    }
+
+    /**
+     * Scan the bucket once and delete (or, in a dry run, only count) unreferenced objects
+     * @return the report, or null if a run is already in progress
+     */
+    public Report run(boolean dryRun) throws InterruptedException {
+        if (!running.compareAndSet(false, true)) return null;
+        try {
+            return scan(dryRun);
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /**
+     * Start a run in the background, for manual triggers; its report becomes {@link #getLastReport()}
+     * @return false if a run is already in progress
+     */
+    public boolean start(boolean dryRun) {
+        if (!running.compareAndSet(false, true)) return false;
+        try {
+            Thread.ofVirtual().name("orphan-cleanup").start(() -> {
+                try {
+                    logReport(scan(dryRun));
+                } catch (InterruptedException e) {
+                    log.warn("Orphan cleanup interrupted");
+                } catch (Exception e) {
+                    log.error("Orphan cleanup failed", e);
+                } finally {
+                    running.set(false);
+                }
+            });
+            return true;
+        } catch (RuntimeException e) {
+            running.set(false);
+            throw e;
+        }
+    }
+
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    /**
+     * Report of the last finished run, or null if there was none since startup
+     */
+    public Report getLastReport() {
+        return lastReport;
+    }
+
+    private static void logReport(Report report) {
+        log.info("Orphan cleanup{}: scanned {} objects, {} orphans ({} bytes), deleted {}, failed {}",
+                report.dryRun ? " (dry run)" : "", report.scanned, report.orphans, report.orphanBytes,
+                report.deleted, report.failed);
+    }
+
+    private Report scan(boolean dryRun) throws InterruptedException {
+        Report report = new Report(dryRun);
+        if (!dryRun) {
+            long released = mediaBlobService.releaseDeletedSongs();
+            if (released > 0) log.info("Released {} blob references of deleted songs", released);
+        }
+        Set<String> referenced = new HashSet<>();
+        Set<String> variantPrefixes = new HashSet<>();
+        jdbcTemplate.query("SELECT src_url, cover_url FROM songs", rs -> {
+            addReference(rs.getString("src_url"), referenced, variantPrefixes);
+            addReference(rs.getString("cover_url"), referenced, variantPrefixes);
+        });
+
+        Instant cutoff = Instant.now().minus(gracePeriod);
+        int size = Math.max(1, Math.min(batchSize, MAX_BATCH_SIZE));
+        List<S3Object> batch = new ArrayList<>(size);
+        for (String prefix : prefixes) {
+            for (S3Object object : s3Service.listObjects(prefix)) {
+                report.scanned++;
+                if (object.lastModified().isAfter(cutoff) || isReferenced(object.key(), referenced, variantPrefixes)) {
+                    continue;
+                }
+                batch.add(object);
+                if (batch.size() == size) {
+                    delete(batch, cutoff, report);
+                    batch.clear();
+                }
+            }
+        }
+        delete(batch, cutoff, report);
+        lastReport = report;
+        return report;
+    }
+
+    private void addReference(String url, Set<String> referenced, Set<String> variantPrefixes) {
+        String key = s3Service.keyForUrl(url);
+        if (key != null) {
+            referenced.add(key);
+            variantPrefixes.add(ThumbnailService.variantPrefix(key));
+        }
+    }
+
+    private static boolean isReferenced(String key, Set<String> referenced, Set<String> variantPrefixes) {
+        if (ThumbnailService.isVariantKey(key)) {
+            // folder/thumbs/name_ext-size.format belongs to the cover with prefix folder/thumbs/name_ext-
+            int dash = key.lastIndexOf('-');
+            return dash < 0 || variantPrefixes.contains(key.substring(0, dash + 1));
+        }
+        return referenced.contains(key);
+    }
+
+    private void delete(List<S3Object> batch, Instant cutoff, Report report) throws InterruptedException {
+        if (batch.isEmpty()) return;
+        Set<String> keys = new LinkedHashSet<>();
+        for (S3Object object : batch) {
+            keys.add(object.key());
+        }
+        // Songs created since the scan started may already point at some of these
+        keys.removeAll(referencedNow(keys));
+        // Blobs uploaded again (deduplicated) or attached within the grace period, although the object itself is older
+        keys.removeAll(referencedSince(keys, cutoff));
+        if (keys.isEmpty()) return;
+        report.orphans += keys.size();
+        for (S3Object object : batch) {
+            if (keys.contains(object.key())) report.orphanBytes += object.size();
+        }
+        for (String key : keys) {
+            if (report.sample.size() >= SAMPLE_SIZE) break;
+            report.sample.add(key);
+        }
+        if (report.dryRun) return;
+
+        long started = System.nanoTime();
+        List<String> failed = new ArrayList<>();
+        // Checked again with the blob rows locked, for blobs uploaded again since they were read
+        Set<String> deleted = mediaBlobService.forgetIdle(keys, LocalDateTime.ofInstant(cutoff, ZoneId.systemDefault()),
+                idle -> failed.addAll(s3Service.deleteObjects(idle)));
+        report.deleted += deleted.size() - failed.size();
+        report.failed += failed.size();
+        thumbnailService.forget(deleted);
+
+        // Rate limit: a batch of n keys takes at least n / max-deletes-per-second seconds
+        if (maxDeletesPerSecond > 0) {
+            long minimumNanos = keys.size() * 1_000_000_000L / maxDeletesPerSecond;
+            long remaining = minimumNanos - (System.nanoTime() - started);
+            if (remaining > 0) Thread.sleep(Duration.ofNanos(remaining));
+        }
+    }
+
+    /**
+     * Those of the keys whose blob has been registered, uploaded again or attached after cutoff
+     */
+    private Set<String> referencedSince(Collection<String> keys, Instant cutoff) {
+        String placeholders = String.join(",", Collections.nCopies(keys.size(), "?"));
+        List<Object> args = new ArrayList<>(keys);
+        args.add(Timestamp.from(cutoff));
+        return new HashSet<>(jdbcTemplate.queryForList("SELECT object_key FROM media_blobs WHERE object_key IN (" +
+                placeholders + ") AND last_referenced_at > ?", String.class, args.toArray()));
+    }
+
+    /**
+     * Those of the keys that songs reference right now
+     */
+    private Set<String> referencedNow(Collection<String> keys) {
+        List<String> urls = keys.stream().map(s3Service::getPublicUrl).toList();
+        String placeholders = String.join(",", Collections.nCopies(urls.size(), "?"));
+        List<Object> args = new ArrayList<>(urls);
+        args.addAll(urls);
+        Set<String> found = new HashSet<>();
+        jdbcTemplate.query("SELECT src_url, cover_url FROM songs WHERE src_url IN (" + placeholders + ") " +
+                "OR cover_url IN (" + placeholders + ")", rs -> {
+            found.add(s3Service.keyForUrl(rs.getString("src_url")));
+            found.add(s3Service.keyForUrl(rs.getString("cover_url")));
+        }, args.toArray());
+        return found;
+    }
+}
@@ -2,32 +2,61 @@ package com.example.media_controller_iot.service;
 
 import com.example.media_controller_iot.models.PlayerCommandLog;
 import com.example.media_controller_iot.models.Songs;
-import com.example.media_controller_iot.models.VolumeLog;
 import com.example.media_controller_iot.repository.PlayerCommandLogRepo;
 import com.example.media_controller_iot.repository.SongsRepo;
-import com.example.media_controller_iot.repository.VolumeLogRepo;
+import com.example.media_controller_iot.util.QueueList;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.lang.NonNull;
 import org.springframework.stereotype.Service;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 
+/**
+ * Player state and queue. State changes happen under this object's monitor and end with a
+ * snapshot of the state; logging, play tracking and the SSE broadcast run after the monitor is
+ * released, so a slow client or database never blocks other commands.
+ */
 @Service
 public class PlayerService {
 
+    // Upcoming queue entries included in every state update
+    private static final int QUEUE_STATE_ENTRIES = 10;
+
     private final SongsRepo songsRepo;
     private final PlayerCommandLogRepo playerCommandLogRepo;
-    private final VolumeLogRepo volumeLogRepo;
+    private final VolumeSeriesService volumeSeriesService;
+    private final RecentlyPlayedService recentlyPlayedService;
+    private final ListeningAnalyticsService listeningAnalyticsService;
+    private final ChartsService chartsService;
+    private final SmartPlaylistService smartPlaylistService;
+    private final QueueSourceService queueSourceService;
+    private final int queueWindowSize;
 
     private boolean shuffleEnabled = false;
     private boolean repeatEnabled = false;
     private double playbackPosition = 0;
 
-    private final List<SseEmitter> emitters = new ArrayList<>();
+    private final List<SseEmitter> emitters = new CopyOnWriteArrayList<>();
+    // Serializes sends; snapshots older than the last one sent are dropped
+    private final Object broadcastLock = new Object();
+    private long stateVersion;
+    private long broadcastVersion;
+
+    // Playlist queue management: entries linked in play and shuffle order, with the songs of a
+    // window around the cursor loaded by one batched query
+    private QueueList queue = new QueueList();
+    private long currentEntry = QueueList.NONE;
+    // Set when the playing entry was removed from the queue; currentEntry is then the entry before it
+    private boolean currentEntryDetached = false;
+    private Map<Long, Songs> queueWindow = Map.of();
+    private Long nextShuffledSongId;
+    private final Random random = new Random();
 
-    // Playlist queue management
-    private List<Long> playlistQueue = new ArrayList<>();
-    private int currentQueueIndex = -1;
+    // Prefetch hints for the next tracks, and the state they were computed for
+    private List<Songs> upNext = List.of();
+    private List<Object> upNextKey;
 
     private boolean isPlaying = false;
     private boolean isMuted = false;
@@ -40,105 +69,219 @@ public class PlayerService {
 
     public PlayerService(SongsRepo songsRepo,
                          PlayerCommandLogRepo playerCommandLogRepo,
-                         VolumeLogRepo volumeLogRepo) {
+                         VolumeSeriesService volumeSeriesService,
+                         RecentlyPlayedService recentlyPlayedService,
+                         ListeningAnalyticsService listeningAnalyticsService,
+                         ChartsService chartsService,
+                         SmartPlaylistService smartPlaylistService,
+                         QueueSourceService queueSourceService,
+                         @Value("${player.queue.window-size:200}") int queueWindowSize) {
         this.songsRepo = songsRepo;
         this.playerCommandLogRepo = playerCommandLogRepo;
-        this.volumeLogRepo = volumeLogRepo;
+        this.volumeSeriesService = volumeSeriesService;
+        this.recentlyPlayedService = recentlyPlayedService;
+        this.listeningAnalyticsService = listeningAnalyticsService;
+        this.chartsService = chartsService;
+        this.smartPlaylistService = smartPlaylistService;
+        this.queueSourceService = queueSourceService;
+        this.queueWindowSize = Math.max(queueWindowSize, 4);
         loadInitialSong();
     }
 
     private void loadInitialSong() {
-        List<Songs> songs = songsRepo.findAll();
-        if (!songs.isEmpty()) {
-            currentSong = songs.get(0);
-        }
+        songsRepo.findFirstByOrderByIdAsc().ifPresent(song -> currentSong = song);
     }
 
     public void addEmitter(SseEmitter emitter) { emitters.add(emitter); }
     public void removeEmitter(SseEmitter emitter) { emitters.remove(emitter); }
 
-    private void broadcastState() {
-        Map<String, Object> state = getState();
-        emitters.removeIf(emitter -> {
-            try {
-                emitter.send(state);
-                return false;
-            } catch (Exception e) {
-                return true;
+    // State as of a change, numbered so out-of-order broadcasts can be recognized
+    private record StateSnapshot(Map<String, Object> state, long version) {
+    }
+
+    // Must be called while holding the monitor
+    private StateSnapshot snapshot() {
+        return new StateSnapshot(currentState(), ++stateVersion);
+    }
+
+    private void broadcast(StateSnapshot snapshot) {
+        synchronized (broadcastLock) {
+            if (snapshot.version() <= broadcastVersion) return;
+            broadcastVersion = snapshot.version();
+            for (SseEmitter emitter : emitters) {
+                try {
+                    emitter.send(snapshot.state());
+                } catch (Exception e) {
+                    emitters.remove(emitter);
+                }
             }
-        });
+        }
     }
 
     private void nextSong() {
         // If playlist queue is active, navigate within queue
-        if (!playlistQueue.isEmpty() && currentQueueIndex >= 0) {
+        if (!queue.isEmpty()) {
             if (repeatEnabled) {
                 // Stay on same song
                 playbackPosition = 0;
                 return;
             }
-            
-            if (shuffleEnabled) {
-                Random r = new Random();
-                int newIndex;
-                do {
-                    newIndex = r.nextInt(playlistQueue.size());
-                } while (newIndex == currentQueueIndex && playlistQueue.size() > 1);
-                currentQueueIndex = newIndex;
-            } else {
-                currentQueueIndex = (currentQueueIndex + 1) % playlistQueue.size();
-            }
-            
-            Long songId = playlistQueue.get(currentQueueIndex);
-            songsRepo.findById(Objects.requireNonNull(songId)).ifPresent(song -> currentSong = song);
-            playbackPosition = 0;
+            long target = stepForward(currentEntry);
+            // Wrapping around starts a new shuffle round; its first entry was already announced
+            if (shuffleEnabled && target == queue.first(true)) queue.shuffle(target, random);
+            moveToEntry(target);
             return;
         }
 
-        // Default behavior: use all songs
-        List<Songs> songs = songsRepo.findAll();
-        if (songs.isEmpty()) return;
-
+        // Default behavior: walk the whole catalog in ID order
         // If repeat is enabled (and not shuffling), just restart the current song
         if (repeatEnabled && !shuffleEnabled) {
             playbackPosition = 0;
             return;
         }
 
-        if (shuffleEnabled) {
-            Random r = new Random();
-            Songs newSong;
-            do {
-                newSong = songs.get(r.nextInt(songs.size()));
-            } while (newSong.equals(currentSong));
-            currentSong = newSong;
-        } else {
-            int idx = songs.indexOf(currentSong);
-            currentSong = songs.get((idx + 1) % songs.size());
-        }
-
+        Songs next = shuffleEnabled ? takeNextShuffledSong() : catalogSongAfter(currentSong);
+        if (next != null) currentSong = next;
         playbackPosition = 0;
     }
 
     private void prevSong() {
         // If playlist queue is active, navigate within queue
-        if (!playlistQueue.isEmpty() && currentQueueIndex >= 0) {
-            currentQueueIndex = (currentQueueIndex - 1 + playlistQueue.size()) % playlistQueue.size();
-            Long songId = playlistQueue.get(currentQueueIndex);
-            songsRepo.findById(Objects.requireNonNull(songId)).ifPresent(song -> currentSong = song);
-            playbackPosition = 0;
+        if (!queue.isEmpty()) {
+            if (!currentEntryDetached) {
+                moveToEntry(stepBack(currentEntry));
+            } else {
+                moveToEntry(currentEntry != QueueList.NONE ? currentEntry : queue.last(shuffleEnabled));
+            }
             return;
         }
 
-        // Default behavior: use all songs
-        List<Songs> songs = songsRepo.findAll();
-        if (songs.isEmpty()) return;
+        // Default behavior: walk the whole catalog in ID order
+        Songs previous = currentSong == null ? null : songsRepo.findFirstByIdLessThanOrderByIdDesc(currentSong.getId())
+                .or(songsRepo::findFirstByOrderByIdDesc)
+                .orElse(null);
+        if (previous != null) currentSong = previous;
+        playbackPosition = 0;
+    }
+
+    private Songs catalogSongAfter(Songs song) {
+        Optional<Songs> next = song == null ? Optional.empty() : songsRepo.findFirstByIdGreaterThanOrderByIdAsc(song.getId());
+        return next.or(songsRepo::findFirstByOrderByIdAsc).orElse(null);
+    }
+
+    // Without a queue the next shuffled song is picked one step early so it can be announced
+    private Songs takeNextShuffledSong() {
+        Long songId = peekNextShuffledSongId();
+        nextShuffledSongId = null;
+        return songId == null ? null : songsRepo.findById(songId).orElse(null);
+    }
+
+    private Long peekNextShuffledSongId() {
+        if (nextShuffledSongId == null) {
+            long count = songsRepo.count();
+            Long currentId = currentSong != null ? currentSong.getId() : null;
+            for (int attempt = 0; attempt < 3 && count > 0; attempt++) {
+                int offset = random.nextInt((int) Math.min(count, Integer.MAX_VALUE));
+                Optional<Long> songId = songsRepo.findIdAtOffset(offset);
+                if (songId.isPresent() && (!songId.get().equals(currentId) || count == 1)) {
+                    nextShuffledSongId = songId.get();
+                    break;
+                }
+            }
+        }
+        return nextShuffledSongId;
+    }
+
+    // Neighbours in the active order (shuffle or play order), wrapping at the ends
+    private long stepForward(long entry) {
+        long next = entry == QueueList.NONE ? QueueList.NONE : queue.next(entry, shuffleEnabled);
+        return next != QueueList.NONE ? next : queue.first(shuffleEnabled);
+    }
+
+    private long stepBack(long entry) {
+        long prev = entry == QueueList.NONE ? QueueList.NONE : queue.prev(entry, shuffleEnabled);
+        return prev != QueueList.NONE ? prev : queue.last(shuffleEnabled);
+    }
 
-        int index = songs.indexOf(currentSong);
-        currentSong = songs.get((index - 1 + songs.size()) % songs.size());
+    private void moveToEntry(long entry) {
+        currentEntry = entry;
+        currentEntryDetached = false;
+        Songs song = queuedSong(entry);
+        if (song != null) currentSong = song;
         playbackPosition = 0;
     }
 
+    // Song of a queue entry, reloading the window when it or the songs just ahead are not loaded
+    private Songs queuedSong(long entry) {
+        int margin = Math.min(queueWindowSize / 4, queue.size() - 1);
+        long ahead = entry;
+        for (int i = 0; i < margin; i++) ahead = stepForward(ahead);
+
+        long songId = queue.songId(entry);
+        if (!queueWindow.containsKey(songId) || !queueWindow.containsKey(queue.songId(ahead))) {
+            // Mostly ahead of the cursor, since playback moves forward
+            int count = Math.min(queueWindowSize, queue.size());
+            long start = entry;
+            for (int i = 0; i < Math.min(margin, count / 2); i++) start = stepBack(start);
+            List<Long> ids = new ArrayList<>(count);
+            long cursor = start;
+            for (int i = 0; i < count; i++) {
+                ids.add(queue.songId(cursor));
+                cursor = stepForward(cursor);
+            }
+            Map<Long, Songs> window = new HashMap<>();
+            ids.forEach(id -> window.put(id, null));
+            window.putAll(queueSourceService.loadSongs(ids));
+            queueWindow = window;
+        }
+        return queueWindow.get(songId);
+    }
+
+    // The next one or two tracks, so clients can start fetching audio and covers early
+    private List<Songs> computeUpNext() {
+        if (currentSong == null) return List.of();
+
+        if (!queue.isEmpty()) {
+            if (repeatEnabled) return List.of(currentSong);
+            List<Long> ids = new ArrayList<>(2);
+            long entry = currentEntry;
+            int available = currentEntryDetached ? queue.size() : queue.size() - 1;
+            for (int k = 0; k < Math.min(2, available); k++) {
+                entry = stepForward(entry);
+                ids.add(queue.songId(entry));
+            }
+            List<Songs> upcoming = new ArrayList<>(ids.size());
+            Map<Long, Songs> missing = new HashMap<>();
+            List<Long> toLoad = ids.stream().filter(id -> queueWindow.get(id) == null).toList();
+            if (!toLoad.isEmpty()) missing.putAll(queueSourceService.loadSongs(toLoad));
+            for (Long id : ids) {
+                Songs song = queueWindow.get(id) != null ? queueWindow.get(id) : missing.get(id);
+                if (song != null) upcoming.add(song);
+            }
+            return upcoming;
+        }
+
+        if (repeatEnabled && !shuffleEnabled) return List.of(currentSong);
+        if (shuffleEnabled) {
+            Long songId = peekNextShuffledSongId();
+            return songId == null ? List.of() : songsRepo.findById(songId).map(List::of).orElse(List.of());
+        }
+        Songs next = catalogSongAfter(currentSong);
+        if (next == null || next.getId().equals(currentSong.getId())) return List.of();
+        Songs afterNext = catalogSongAfter(next);
+        return afterNext == null || afterNext.getId().equals(currentSong.getId()) ? List.of(next) : List.of(next, afterNext);
+    }
+
+    // Only recomputed when something that decides the next tracks has changed
+    private void refreshUpNext() {
+        List<Object> key = Arrays.asList(currentSong != null ? currentSong.getId() : null, shuffleEnabled, repeatEnabled,
+                queue, queue.modCount(), currentEntry, currentEntryDetached, nextShuffledSongId);
+        if (!key.equals(upNextKey)) {
+            upNext = computeUpNext();
+            upNextKey = key;
+        }
+    }
+
     private void toggleMute() {
         if (!isMuted) {
             previousVolume = volume;
@@ -153,14 +296,15 @@ public class PlayerService {
         }
     }
 
-    private void handleVolume(String cmd) {
+    private boolean handleVolume(String cmd) {
         try {
             int newVolume = Integer.parseInt(cmd.split(":")[1]);
             volume = Math.max(0, Math.min(newVolume, 100));
             isMuted = (volume == 0);
-            volumeLogRepo.save(new VolumeLog(volume));
+            return true;
         } catch (Exception e) {
             System.err.println("Invalid VOLUME command: " + cmd);
+            return false;
         }
     }
 
@@ -169,6 +313,33 @@ public class PlayerService {
     }
 
     public void mediaCommands(String cmd, String userId) {
+        Long previousSongId;
+        Songs song;
+        int currentVolume;
+        boolean muted;
+        boolean volumeSet;
+        StateSnapshot snapshot;
+        synchronized (this) {
+            previousSongId = currentSong != null ? currentSong.getId() : null;
+            volumeSet = applyCommand(cmd);
+            lastCommand = cmd;
+            song = currentSong;
+            currentVolume = volume;
+            muted = isMuted;
+            snapshot = snapshot();
+        }
+
+        if (volumeSet) volumeSeriesService.append(currentVolume);
+        playerCommandLogRepo.save(new PlayerCommandLog(cmd, song, userId));
+        if (cmd.equals("PLAY") || cmd.equals("NEXT") || cmd.equals("PREV")) {
+            recordPlay(song, userId);
+        }
+        listeningAnalyticsService.recordCommand(cmd, previousSongId, song, userId, currentVolume, muted);
+        broadcast(snapshot);
+    }
+
+    // Apply a command to the player state; true if it set the volume
+    private boolean applyCommand(String cmd) {
         switch (cmd) {
             case "PLAY" -> isPlaying = true;
             case "PAUSE" -> isPlaying = false;
@@ -176,44 +347,216 @@ public class PlayerService {
             case "PREV" -> prevSong();
             case "MUTE" -> toggleMute();
             case "PLAY_PAUSE" -> isPlaying = !isPlaying;
-            case "SHUFFLE" -> shuffleEnabled = !shuffleEnabled;
+            case "SHUFFLE" -> {
+                shuffleEnabled = !shuffleEnabled;
+                nextShuffledSongId = null;
+                if (shuffleEnabled && !queue.isEmpty()) {
+                    queue.shuffle(currentEntryDetached ? QueueList.NONE : currentEntry, random);
+                }
+            }
             case "REPEAT" -> repeatEnabled = !repeatEnabled;
             case "SEEK_FORWARD" -> playbackPosition += 10;
             default -> {
-                if (cmd.startsWith("VOLUME:")) handleVolume(cmd);
+                if (cmd.startsWith("VOLUME:")) return handleVolume(cmd);
             }
         }
+        return false;
+    }
 
-        lastCommand = cmd;
-        playerCommandLogRepo.save(new PlayerCommandLog(cmd, currentSong, userId));
-        broadcastState();
+    private void recordPlay(Songs song, String userId) {
+        recentlyPlayedService.recordPlay(userId, song);
+        chartsService.recordPlay(song);
+        if (song != null) smartPlaylistService.songPlayed(song.getId());
     }
 
-    public void setPlaylistQueue(List<Long> songIds, String userId) {
-        if (songIds == null || songIds.isEmpty()) {
-            // Clear playlist queue
-            playlistQueue.clear();
-            currentQueueIndex = -1;
-        } else {
-            playlistQueue = new ArrayList<>(songIds);
-            currentQueueIndex = 0;
-            // Load first song from queue
-            Long firstSongId = playlistQueue.get(0);
-            songsRepo.findById(Objects.requireNonNull(firstSongId)).ifPresent(song -> {
-                currentSong = song;
-                isPlaying = true;
-                // Log the command so it appears in recently played
-                lastCommand = "PLAY";
-                playerCommandLogRepo.save(new PlayerCommandLog("PLAY", song, userId));
-            });
-            playbackPosition = 0;
+    /**
+     * Replace the queue and start playing at startIndex; a null or empty array clears it
+     */
+    public void setQueue(long[] songIds, int startIndex, String userId) {
+        Songs song = null;
+        Long previousSongId = null;
+        int currentVolume;
+        boolean muted;
+        StateSnapshot snapshot;
+        synchronized (this) {
+            queueWindow = Map.of();
+            currentEntryDetached = false;
+            if (songIds == null || songIds.length == 0) {
+                // Clear playlist queue
+                queue = new QueueList();
+                currentEntry = QueueList.NONE;
+            } else {
+                queue = QueueList.of(songIds);
+                currentEntry = queue.first(false);
+                for (int i = 0; i < Math.min(startIndex, songIds.length - 1); i++) {
+                    currentEntry = queue.next(currentEntry, false);
+                }
+                if (shuffleEnabled) queue.shuffle(currentEntry, random);
+                // Load first song from queue
+                song = queuedSong(currentEntry);
+                previousSongId = currentSong != null ? currentSong.getId() : null;
+                if (song != null) {
+                    currentSong = song;
+                    isPlaying = true;
+                    lastCommand = "PLAY";
+                }
+                playbackPosition = 0;
+            }
+            currentVolume = volume;
+            muted = isMuted;
+            snapshot = snapshot();
+        }
+
+        if (song != null) {
+            // Log the command so it appears in recently played
+            playerCommandLogRepo.save(new PlayerCommandLog("PLAY", song, userId));
+            recordPlay(song, userId);
+            listeningAnalyticsService.recordCommand("PLAY", previousSongId, song, userId, currentVolume, muted);
+        }
+        broadcast(snapshot);
+    }
+
+    /**
+     * Queue a song to play right after the current one
+     * @return the new queue entry, or NONE if the song does not exist
+     */
+    public long playNext(long songId) {
+        if (songsRepo.findExistingIds(List.of(songId)).isEmpty()) return QueueList.NONE;
+        long entry;
+        StateSnapshot snapshot;
+        synchronized (this) {
+            startQueueFromCurrentSong();
+            // When the playing entry was removed, currentEntry is the one before it, which is still the right spot
+            entry = queue.insertAfter(currentEntry, songId);
+            snapshot = snapshot();
+        }
+        broadcast(snapshot);
+        return entry;
+    }
+
+    /**
+     * Add songs to the end of the queue, skipping IDs that do not exist
+     * @return the new queue entries, in order
+     */
+    public List<Long> enqueue(List<Long> songIds) {
+        Set<Long> existing = new HashSet<>(songsRepo.findExistingIds(songIds));
+        List<Long> entries = new ArrayList<>();
+        StateSnapshot snapshot;
+        synchronized (this) {
+            startQueueFromCurrentSong();
+            for (Long songId : songIds) {
+                if (songId != null && existing.contains(songId)) entries.add(queue.append(songId));
+            }
+            snapshot = snapshot();
+        }
+        broadcast(snapshot);
+        return entries;
+    }
+
+    public boolean removeFromQueue(long entry) {
+        StateSnapshot snapshot;
+        synchronized (this) {
+            if (!queue.contains(entry)) return false;
+            if (entry == currentEntry) {
+                // Keep playing the song; the next NEXT continues with the entry that followed it
+                currentEntry = queue.prev(entry, shuffleEnabled);
+                currentEntryDetached = true;
+            }
+            queue.remove(entry);
+            if (queue.isEmpty()) {
+                currentEntry = QueueList.NONE;
+                currentEntryDetached = false;
+            }
+            snapshot = snapshot();
+        }
+        broadcast(snapshot);
+        return true;
+    }
+
+    /**
+     * Move an entry so it plays right after afterEntry, or first when afterEntry is NONE
+     */
+    public boolean moveInQueue(long entry, long afterEntry) {
+        StateSnapshot snapshot;
+        synchronized (this) {
+            if (entry == afterEntry) return queue.contains(entry);
+            if (currentEntryDetached && entry == currentEntry) {
+                // The anchor of a removed playing entry is moving; re-anchor on its predecessor
+                currentEntry = queue.prev(entry, shuffleEnabled);
+            }
+            if (!queue.moveAfter(entry, afterEntry)) return false;
+            snapshot = snapshot();
+        }
+        broadcast(snapshot);
+        return true;
+    }
+
+    /**
+     * Queue entries in play order (shuffle order when shuffling), starting after the given entry
+     */
+    public synchronized Map<String, Object> getQueue(long afterEntry, int limit) {
+        if (afterEntry != QueueList.NONE && !queue.contains(afterEntry)) {
+            throw new IllegalArgumentException("Unknown queue entry: " + afterEntry);
+        }
+        List<Long> entries = new ArrayList<>(limit);
+        long entry = afterEntry == QueueList.NONE ? queue.first(shuffleEnabled) : queue.next(afterEntry, shuffleEnabled);
+        while (entry != QueueList.NONE && entries.size() < limit) {
+            entries.add(entry);
+            entry = queue.next(entry, shuffleEnabled);
         }
-        broadcastState();
+
+        Map<Long, Songs> songs = queueSourceService.loadSongs(entries.stream().map(queue::songId).toList());
+        List<Map<String, Object>> items = new ArrayList<>(entries.size());
+        for (Long e : entries) {
+            Map<String, Object> item = new HashMap<>();
+            item.put("entryId", e);
+            item.put("song", songs.get(queue.songId(e)));
+            items.add(item);
+        }
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("size", queue.size());
+        response.put("currentEntryId", currentEntryDetached || currentEntry == QueueList.NONE ? null : currentEntry);
+        response.put("entries", items);
+        response.put("nextCursor", entry != QueueList.NONE && !entries.isEmpty() ? entries.get(entries.size() - 1) : null);
+        return response;
+    }
+
+    // Editing without a queue turns the current song into a one-entry queue first
+    private void startQueueFromCurrentSong() {
+        if (queue.isEmpty()) {
+            queueWindow = Map.of();
+            currentEntry = currentSong != null ? queue.append(currentSong.getId()) : QueueList.NONE;
+            currentEntryDetached = false;
+        }
+    }
+
+    // Summary of the queue for the state stream: size, current entry and the next few entries
+    private Map<String, Object> queueState() {
+        Map<String, Object> state = new HashMap<>();
+        state.put("size", queue.size());
+        state.put("currentEntryId", currentEntryDetached || currentEntry == QueueList.NONE ? null : currentEntry);
+        List<Map<String, Long>> upcoming = new ArrayList<>();
+        if (!queue.isEmpty()) {
+            long entry = currentEntry;
+            int available = currentEntryDetached ? queue.size() : queue.size() - 1;
+            for (int k = 0; k < Math.min(QUEUE_STATE_ENTRIES, available); k++) {
+                entry = stepForward(entry);
+                upcoming.add(Map.of("entryId", entry, "songId", queue.songId(entry)));
+            }
+        }
+        state.put("upcoming", upcoming);
+        return state;
+    }
+
+    public synchronized @NonNull Map<String, Object> getState() {
+        return currentState();
     }
 
     @SuppressWarnings("null")
-    public @NonNull Map<String, Object> getState() {
+    private @NonNull Map<String, Object> currentState() {
         if (currentSong == null) loadInitialSong();
+        refreshUpNext();
 
         return Map.ofEntries(
                 Map.entry("isPlaying", isPlaying),
@@ -228,7 +571,10 @@ public class PlayerService {
                 Map.entry("shuffle", shuffleEnabled),
                 Map.entry("repeat", repeatEnabled),
                 Map.entry("position", playbackPosition),
-                Map.entry("duration", 0)
+                // Seconds, like position; 0 until the song's metadata has been read
+                Map.entry("duration", currentSong.getDurationMs() == null ? 0 : currentSong.getDurationMs() / 1000.0),
+                Map.entry("upNext", upNext),
+                Map.entry("queue", queueState())
         );
     }
 }
@@ -63,4 +63,33 @@ public class PlaylistEventService {
         data.put("songId", songId);
         broadcastPlaylistEvent("SONG_REMOVED", data);
     }
+
+    public void broadcastSongMoved(Long playlistId, Long songId, Long afterSongId) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("playlistId", playlistId);
+        data.put("songId", songId);
+        data.put("afterSongId", afterSongId);
+        broadcastPlaylistEvent("SONG_MOVED", data);
+    }
+
+    public void broadcastSongsAdded(Long playlistId, List<Long> songIds) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("playlistId", playlistId);
+        data.put("songIds", songIds);
+        broadcastPlaylistEvent("SONGS_ADDED", data);
+    }
+
+    public void broadcastSongsRemoved(Long playlistId, List<Long> songIds) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("playlistId", playlistId);
+        data.put("songIds", songIds);
+        broadcastPlaylistEvent("SONGS_REMOVED", data);
+    }
+
+    public void broadcastPlaylistImported(Long playlistId, int imported) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("playlistId", playlistId);
+        data.put("imported", imported);
+        broadcastPlaylistEvent("PLAYLIST_IMPORTED", data);
+    }
 }
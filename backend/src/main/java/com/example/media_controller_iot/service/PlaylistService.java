@@ -0,0 +1,265 @@
+package com.example.media_controller_iot.service;
+
+import com.example.media_controller_iot.models.PlaylistSong;
+import com.example.media_controller_iot.repository.PlaylistRepository;
+import com.example.media_controller_iot.repository.PlaylistSongRepository;
+import com.example.media_controller_iot.repository.SongsRepo;
+import com.example.media_controller_iot.util.RankKeys;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.Function;
+
+@Service
+public class PlaylistService {
+
+    private static final Logger log = LoggerFactory.getLogger(PlaylistService.class);
+
+    // Largest IN list sent in one statement
+    private static final int IN_CHUNK_SIZE = 1_000;
+
+    private final PlaylistRepository playlistRepository;
+    private final PlaylistSongRepository playlistSongRepository;
+    private final SongsRepo songsRepo;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int maxSortKeyLength;
+
+    public PlaylistService(PlaylistRepository playlistRepository,
+                           PlaylistSongRepository playlistSongRepository,
+                           SongsRepo songsRepo,
+                           JdbcTemplate jdbcTemplate,
+                           TransactionTemplate transactionTemplate,
+                           @Value("${playlists.rank.max-key-length:16}") int maxSortKeyLength) {
+        this.playlistRepository = playlistRepository;
+        this.playlistSongRepository = playlistSongRepository;
+        this.songsRepo = songsRepo;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.maxSortKeyLength = maxSortKeyLength;
+    }
+
+    /**
+     * Repair song_count at startup where it no longer matches the playlist's entries,
+     * which also backfills the column for playlists created before it existed.
+     * Only the playlists whose count is off are rewritten.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void reconcileSongCounts() {
+        try {
+            int updated = playlistRepository.recalculateSongCounts();
+            if (updated > 0) log.info("Reconciled song counts for {} playlists", updated);
+        } catch (Exception e) {
+            log.error("Failed to reconcile playlist song counts", e);
+        }
+    }
+
+    /**
+     * Give entries created before rank keys existed a key, keeping their newest-first order
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillSortKeys() {
+        try {
+            for (Long playlistId : playlistSongRepository.findPlaylistIdsWithoutSortKeys()) {
+                rewriteSortKeys(playlistId, playlistSongRepository::findEntryIdsByAddedAtDesc);
+            }
+        } catch (Exception e) {
+            log.error("Failed to backfill playlist sort keys", e);
+        }
+    }
+
+    /**
+     * Rank key for a new entry at the top of the playlist; must be called inside the transaction
+     * that inserts the entry
+     */
+    public String nextHeadSortKey(Long playlistId) {
+        playlistRepository.lockById(playlistId);
+        Optional<PlaylistSong> first = playlistSongRepository.findFirstByPlaylistIdOrderBySortKeyAscIdAsc(playlistId);
+        if (first.isPresent() && first.get().getSortKey() == null) {
+            rewriteSortKeys(playlistId, playlistSongRepository::findEntryIdsByAddedAtDesc);
+            first = playlistSongRepository.findFirstByPlaylistIdOrderBySortKeyAscIdAsc(playlistId);
+        }
+        String key = RankKeys.between(null, first.map(PlaylistSong::getSortKey).orElse(null));
+        return key;
+    }
+
+    /**
+     * Result of a batch add: songs inserted, songs already in the playlist, and unknown song IDs
+     */
+    public record BatchAddResult(List<Long> added, List<Long> alreadyPresent, List<Long> notFound) {
+    }
+
+    /**
+     * Add many songs to the top of a playlist, keeping the given order.
+     * Existence and duplicates are checked with one IN query each and rows are inserted as one JDBC batch.
+     */
+    @Transactional
+    public BatchAddResult addSongs(Long playlistId, List<Long> songIds) {
+        return addSongs(playlistId, songIds, false);
+    }
+
+    /**
+     * Same as addSongs, but at the end of the playlist when append is true
+     */
+    @Transactional
+    public BatchAddResult addSongs(Long playlistId, List<Long> songIds, boolean append) {
+        Set<Long> requested = new LinkedHashSet<>(songIds);
+        requested.remove(null);
+        if (requested.isEmpty()) return new BatchAddResult(List.of(), List.of(), List.of());
+
+        Set<Long> existing = new HashSet<>();
+        Set<Long> present = new HashSet<>();
+        for (List<Long> chunk : chunks(requested)) {
+            existing.addAll(songsRepo.findExistingIds(chunk));
+            present.addAll(playlistSongRepository.findSongIdsInPlaylist(playlistId, chunk));
+        }
+
+        List<Long> added = new ArrayList<>();
+        List<Long> alreadyPresent = new ArrayList<>();
+        List<Long> notFound = new ArrayList<>();
+        for (Long songId : requested) {
+            if (!existing.contains(songId)) notFound.add(songId);
+            else if (present.contains(songId)) alreadyPresent.add(songId);
+            else added.add(songId);
+        }
+        if (added.isEmpty()) return new BatchAddResult(added, alreadyPresent, notFound);
+
+        playlistRepository.lockById(playlistId);
+        List<String> keys;
+        if (append) {
+            String tail = playlistSongRepository.findFirstByPlaylistIdOrderBySortKeyDescIdDesc(playlistId)
+                    .map(PlaylistSong::getSortKey).orElse(null);
+            keys = RankKeys.spread(tail, null, added.size());
+        } else {
+            String head = playlistSongRepository.findFirstByPlaylistIdOrderBySortKeyAscIdAsc(playlistId)
+                    .map(PlaylistSong::getSortKey).orElse(null);
+            keys = RankKeys.spread(null, head, added.size());
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+
+        List<Object[]> rows = new ArrayList<>(added.size());
+        for (int i = 0; i < added.size(); i++) {
+            rows.add(new Object[]{playlistId, added.get(i), now, keys.get(i)});
+        }
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO playlist_songs (playlist_id, song_id, added_at, sort_key) VALUES (?, ?, ?, ?)", rows);
+        playlistRepository.adjustSongCount(playlistId, added.size());
+
+        return new BatchAddResult(added, alreadyPresent, notFound);
+    }
+
+    /**
+     * Remove many songs from a playlist, with one DELETE per IN_CHUNK_SIZE IDs
+     * @return IDs of the songs that were in the playlist and are now removed
+     */
+    @Transactional
+    public List<Long> removeSongs(Long playlistId, Collection<Long> songIds) {
+        Set<Long> requested = new LinkedHashSet<>(songIds);
+        requested.remove(null);
+        if (requested.isEmpty()) return List.of();
+
+        playlistRepository.lockById(playlistId);
+        Set<Long> removed = new LinkedHashSet<>();
+        int deleted = 0;
+        for (List<Long> chunk : chunks(requested)) {
+            removed.addAll(playlistSongRepository.findSongIdsInPlaylist(playlistId, chunk));
+            deleted += playlistSongRepository.deleteSongsFromPlaylist(playlistId, chunk);
+        }
+        if (deleted > 0) playlistRepository.adjustSongCount(playlistId, -deleted);
+        return List.copyOf(removed);
+    }
+
+    /**
+     * Delete a playlist together with its entries
+     */
+    @Transactional
+    public void deletePlaylist(Long playlistId) {
+        playlistSongRepository.deleteByPlaylistId(playlistId);
+        playlistRepository.deleteById(playlistId);
+    }
+
+    /**
+     * Move a song so it directly follows afterSongId, or to the top when afterSongId is null.
+     * Only the moved row is written.
+     * @return The new rank key, or empty if either song is not in the playlist
+     */
+    @Transactional
+    public Optional<String> moveSong(Long playlistId, Long songId, Long afterSongId) {
+        playlistRepository.lockById(playlistId);
+        Optional<PlaylistSong> moving = playlistSongRepository.findFirstByPlaylistIdAndSongId(playlistId, songId);
+        if (moving.isEmpty()) return Optional.empty();
+        PlaylistSong entry = moving.get();
+
+        String lower = null;
+        String upper;
+        if (afterSongId == null) {
+            upper = playlistSongRepository.findFirstByPlaylistIdAndIdNotOrderBySortKeyAscIdAsc(playlistId, entry.getId())
+                    .map(PlaylistSong::getSortKey).orElse(null);
+        } else {
+            Optional<PlaylistSong> anchor = playlistSongRepository.findFirstByPlaylistIdAndSongId(playlistId, afterSongId);
+            if (anchor.isEmpty() || anchor.get().getSortKey() == null) return Optional.empty();
+            if (anchor.get().getId().equals(entry.getId())) return Optional.ofNullable(entry.getSortKey());
+            lower = anchor.get().getSortKey();
+            upper = playlistSongRepository
+                    .findFirstByPlaylistIdAndSortKeyGreaterThanAndIdNotOrderBySortKeyAscIdAsc(playlistId, lower, entry.getId())
+                    .map(PlaylistSong::getSortKey).orElse(null);
+        }
+
+        String key = RankKeys.between(lower, upper);
+        entry.setSortKey(key);
+        playlistSongRepository.save(entry);
+        return Optional.of(key);
+    }
+
+    /**
+     * Respace the keys of playlists whose rank keys grew past maxSortKeyLength.
+     * They are found from the stored keys, so a failed rewrite or a restart only delays the rebalance.
+     */
+    @Scheduled(fixedDelayString = "${playlists.rank.rebalance-interval-ms:30000}")
+    public void rebalanceLongKeys() {
+        for (Long playlistId : playlistSongRepository.findPlaylistIdsWithSortKeysLongerThan(maxSortKeyLength)) {
+            try {
+                rewriteSortKeys(playlistId, playlistSongRepository::findEntryIdsInOrder);
+                log.info("Rebalanced rank keys of playlist {}", playlistId);
+            } catch (Exception e) {
+                log.error("Failed to rebalance rank keys of playlist {}", playlistId, e);
+            }
+        }
+    }
+
+    private static List<List<Long>> chunks(Collection<Long> ids) {
+        List<Long> list = new ArrayList<>(ids);
+        List<List<Long>> chunks = new ArrayList<>();
+        for (int from = 0; from < list.size(); from += IN_CHUNK_SIZE) {
+            chunks.add(list.subList(from, Math.min(from + IN_CHUNK_SIZE, list.size())));
+        }
+        return chunks;
+    }
+
+    // Assign evenly spaced keys to the playlist's entries in the given order. The order is read
+    // under the playlist row lock, so moves and inserts cannot slip in between the read and the rewrite.
+    private void rewriteSortKeys(Long playlistId, Function<Long, List<Long>> entryOrder) {
+        transactionTemplate.executeWithoutResult(status -> {
+            playlistRepository.lockById(playlistId);
+            List<Long> entryIds = entryOrder.apply(playlistId);
+            if (entryIds.isEmpty()) return;
+            List<String> keys = RankKeys.evenlySpaced(entryIds.size());
+            List<Object[]> rows = new ArrayList<>(entryIds.size());
+            for (int i = 0; i < entryIds.size(); i++) {
+                rows.add(new Object[]{keys.get(i), entryIds.get(i)});
+            }
+            jdbcTemplate.batchUpdate("UPDATE playlist_songs SET sort_key = ? WHERE id = ?", rows);
+        });
+    }
+}
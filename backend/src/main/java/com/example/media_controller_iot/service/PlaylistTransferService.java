@@ -0,0 +1,288 @@
+package com.example.media_controller_iot.service;
+
+import com.example.media_controller_iot.models.Playlist;
+import com.example.media_controller_iot.repository.PlaylistRepository;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Streaming playlist import/export in M3U and JSON.
+ * Export streams rows from a forward-only cursor; import matches entries against an in-memory
+ * catalog index and inserts them in fixed-size chunks, each in its own transaction.
+ */
+@Service
+public class PlaylistTransferService {
+
+    public static final String FORMAT_M3U = "m3u";
+    public static final String FORMAT_JSON = "json";
+
+    private static final int IMPORT_CHUNK_SIZE = 500;
+    private static final int UNMATCHED_SAMPLE_SIZE = 20;
+
+    private static final String EXPORT_SQL =
+            "SELECT s.title, s.artist, s.src_url, s.cover_url, s.category, s.duration_ms " +
+            "FROM playlist_songs ps JOIN songs s ON s.id = ps.song_id " +
+            "WHERE ps.playlist_id = ? ORDER BY ps.sort_key, ps.id";
+
+    private final PlaylistRepository playlistRepository;
+    private final PlaylistService playlistService;
+    private final ObjectMapper objectMapper;
+    private final JdbcTemplate streamingJdbcTemplate;
+
+    public PlaylistTransferService(PlaylistRepository playlistRepository,
+                                   PlaylistService playlistService,
+                                   ObjectMapper objectMapper,
+                                   DataSource dataSource) {
+        this.playlistRepository = playlistRepository;
+        this.playlistService = playlistService;
+        this.objectMapper = objectMapper;
+        // Integer.MIN_VALUE makes MySQL Connector/J stream rows one at a time instead of buffering the result
+        this.streamingJdbcTemplate = new JdbcTemplate(dataSource);
+        this.streamingJdbcTemplate.setFetchSize(Integer.MIN_VALUE);
+    }
+
+    public static boolean isSupportedFormat(String format) {
+        return FORMAT_M3U.equals(format) || FORMAT_JSON.equals(format);
+    }
+
+    /**
+     * Write a playlist as extended M3U
+     */
+    public void exportM3u(Playlist playlist, OutputStream output) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+        writer.write("#EXTM3U\n");
+        writer.write("#PLAYLIST:" + singleLine(playlist.getName()) + "\n");
+
+        streamingJdbcTemplate.query(EXPORT_SQL, rs -> {
+            try {
+                // Whole seconds, or -1 if the song's duration is not known yet
+                long durationMs = rs.getLong("duration_ms");
+                long seconds = rs.wasNull() ? -1 : Math.round(durationMs / 1000.0);
+                writer.write("#EXTINF:" + seconds + "," + singleLine(displayName(rs.getString("artist"), rs.getString("title"))) + "\n");
+                writer.write(singleLine(rs.getString("src_url")) + "\n");
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, playlist.getId());
+        writer.flush();
+    }
+
+    /**
+     * Write a playlist as {"name": ..., "tracks": [{title, artist, src, cover, category}, ...]}
+     */
+    public void exportJson(Playlist playlist, OutputStream output) throws IOException {
+        try (JsonGenerator json = objectMapper.getFactory().createGenerator(output)) {
+            json.writeStartObject();
+            json.writeStringField("name", playlist.getName());
+            json.writeArrayFieldStart("tracks");
+
+            streamingJdbcTemplate.query(EXPORT_SQL, rs -> {
+                try {
+                    json.writeStartObject();
+                    json.writeStringField("title", rs.getString("title"));
+                    json.writeStringField("artist", rs.getString("artist"));
+                    json.writeStringField("src", rs.getString("src_url"));
+                    json.writeStringField("cover", rs.getString("cover_url"));
+                    json.writeStringField("category", rs.getString("category"));
+                    json.writeEndObject();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, playlist.getId());
+
+            json.writeEndArray();
+            json.writeEndObject();
+        }
+    }
+
+    /**
+     * Outcome of an import
+     */
+    public record ImportResult(Long playlistId, int imported, int unmatched, List<String> unmatchedSamples) {
+    }
+
+    /**
+     * Create a playlist from an M3U or JSON file. If the file cannot be read the playlist and any
+     * entries already written are deleted again, so a failed import leaves nothing behind.
+     */
+    public ImportResult importNew(String userId, String name, String format, InputStream input) throws IOException {
+        Playlist playlist = playlistRepository.save(Playlist.builder()
+                .name(name)
+                .userId(userId)
+                .build());
+        try {
+            return importInto(playlist.getId(), format, input);
+        } catch (IOException | RuntimeException e) {
+            playlistService.deletePlaylist(playlist.getId());
+            throw e;
+        }
+    }
+
+    /**
+     * Append the entries of an M3U or JSON playlist to an existing playlist
+     */
+    public ImportResult importInto(Long playlistId, String format, InputStream input) throws IOException {
+        Importer importer = new Importer(playlistId, buildCatalogIndex());
+        if (FORMAT_M3U.equals(format)) {
+            readM3u(input, importer);
+        } else {
+            readJson(input, importer);
+        }
+        importer.flush();
+        return new ImportResult(playlistId, importer.imported, importer.unmatched, importer.unmatchedSamples);
+    }
+
+    private void readM3u(InputStream input, Importer importer) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        String pendingInfo = null;
+        String line = reader.readLine();
+        // A byte order mark can only precede the first line
+        if (line != null && line.startsWith("\uFEFF")) line = line.substring(1);
+        for (; line != null; line = reader.readLine()) {
+            line = line.strip();
+            if (line.isEmpty()) continue;
+
+            if (line.startsWith("#EXTINF:")) {
+                int comma = line.indexOf(',');
+                pendingInfo = comma >= 0 ? line.substring(comma + 1).strip() : null;
+            } else if (!line.startsWith("#")) {
+                String artist = null;
+                String title = pendingInfo;
+                if (pendingInfo != null) {
+                    int dash = pendingInfo.indexOf(" - ");
+                    if (dash >= 0) {
+                        artist = pendingInfo.substring(0, dash);
+                        title = pendingInfo.substring(dash + 3);
+                    }
+                }
+                importer.accept(line, title, artist);
+                pendingInfo = null;
+            }
+        }
+    }
+
+    private void readJson(InputStream input, Importer importer) throws IOException {
+        try (JsonParser parser = objectMapper.getFactory().createParser(input)) {
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.START_OBJECT) {
+                // Skip ahead to the "tracks" array of an exported playlist
+                while ((token = parser.nextToken()) != null && token != JsonToken.END_OBJECT) {
+                    if (token == JsonToken.FIELD_NAME && "tracks".equals(parser.currentName())) {
+                        token = parser.nextToken();
+                        break;
+                    }
+                    parser.nextToken();
+                    parser.skipChildren();
+                }
+            }
+            if (token != JsonToken.START_ARRAY) {
+                throw new IOException("Expected a JSON array of tracks or an object with a \"tracks\" array");
+            }
+
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                JsonNode track = objectMapper.readTree(parser);
+                importer.accept(text(track, "src"), text(track, "title"), text(track, "artist"));
+            }
+        }
+    }
+
+    // Lookup tables over the whole catalog: src URL -> id and normalized artist/title -> id
+    private CatalogIndex buildCatalogIndex() {
+        CatalogIndex index = new CatalogIndex();
+        streamingJdbcTemplate.query("SELECT id, src_url, title, artist FROM songs", rs -> {
+            long id = rs.getLong("id");
+            String src = rs.getString("src_url");
+            if (src != null) index.bySrc.putIfAbsent(src, id);
+            String title = rs.getString("title");
+            if (title != null) {
+                index.byArtistTitle.putIfAbsent(CatalogIndex.key(rs.getString("artist"), title), id);
+                index.byTitle.putIfAbsent(CatalogIndex.key(null, title), id);
+            }
+        });
+        return index;
+    }
+
+    private static class CatalogIndex {
+        final Map<String, Long> bySrc = new HashMap<>();
+        final Map<String, Long> byArtistTitle = new HashMap<>();
+        final Map<String, Long> byTitle = new HashMap<>();
+
+        Long match(String src, String title, String artist) {
+            if (src != null) {
+                Long id = bySrc.get(src);
+                if (id != null) return id;
+            }
+            if (title == null) return null;
+            if (artist != null) {
+                Long id = byArtistTitle.get(key(artist, title));
+                if (id != null) return id;
+            }
+            return byTitle.get(key(null, title));
+        }
+
+        static String key(String artist, String title) {
+            String a = artist == null ? "" : artist.strip().toLowerCase(Locale.ROOT);
+            return a + '\u0000' + title.strip().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * Collects matched song IDs and writes them in chunks, so only one chunk is ever held in memory
+     */
+    private class Importer {
+        final Long playlistId;
+        final CatalogIndex index;
+        final List<Long> chunk = new ArrayList<>(IMPORT_CHUNK_SIZE);
+        final List<String> unmatchedSamples = new ArrayList<>();
+        int imported;
+        int unmatched;
+
+        Importer(Long playlistId, CatalogIndex index) {
+            this.playlistId = playlistId;
+            this.index = index;
+        }
+
+        void accept(String src, String title, String artist) {
+            Long songId = index.match(src, title, artist);
+            if (songId == null) {
+                unmatched++;
+                if (unmatchedSamples.size() < UNMATCHED_SAMPLE_SIZE) {
+                    unmatchedSamples.add(src != null ? src : displayName(artist, title));
+                }
+                return;
+            }
+            chunk.add(songId);
+            if (chunk.size() == IMPORT_CHUNK_SIZE) flush();
+        }
+
+        void flush() {
+            if (chunk.isEmpty()) return;
+            imported += playlistService.addSongs(playlistId, chunk, true).added().size();
+            chunk.clear();
+        }
+    }
+
+    private static String displayName(String artist, String title) {
+        if (artist == null || artist.isBlank()) return title == null ? "" : title;
+        return artist + " - " + (title == null ? "" : title);
+    }
+
+    private static String singleLine(String value) {
+        return value == null ? "" : value.replace('\r', ' ').replace('\n', ' ');
+    }
+
+    private static String text(JsonNode node, String field) {
+        JsonNode value = node.get(field);
+        return value == null || value.isNull() ? null : value.asText();
+    }
+}
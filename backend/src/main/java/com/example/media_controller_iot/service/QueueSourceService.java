@@ -0,0 +1,66 @@
+package com.example.media_controller_iot.service;
+
+import com.example.media_controller_iot.models.Songs;
+import com.example.media_controller_iot.repository.SongsRepo;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+/**
+ * Resolves player queue sources (playlist, category, search) to song IDs on the server
+ * and loads the songs of a queue window with one batched query
+ */
+@Service
+public class QueueSourceService {
+
+    public static final String SOURCE_PLAYLIST = "playlist";
+    public static final String SOURCE_CATEGORY = "category";
+    public static final String SOURCE_SEARCH = "search";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SongsRepo songsRepo;
+
+    public QueueSourceService(JdbcTemplate jdbcTemplate, SongsRepo songsRepo) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.songsRepo = songsRepo;
+    }
+
+    public long[] playlistSongIds(long playlistId) {
+        return queryIds("SELECT song_id FROM playlist_songs WHERE playlist_id = ? ORDER BY sort_key, id", playlistId);
+    }
+
+    public long[] categorySongIds(String category) {
+        return queryIds("SELECT id FROM songs WHERE category = ? ORDER BY id", category);
+    }
+
+    public long[] searchSongIds(String query) {
+        String pattern = "%" + query.toLowerCase(Locale.ROOT) + "%";
+        return queryIds("SELECT id FROM songs WHERE LOWER(title) LIKE ? OR LOWER(artist) LIKE ? ORDER BY id",
+                pattern, pattern);
+    }
+
+    /**
+     * Songs for the given IDs, keyed by ID; IDs of deleted songs are simply absent
+     */
+    public Map<Long, Songs> loadSongs(Collection<Long> ids) {
+        Map<Long, Songs> songs = new HashMap<>();
+        for (Songs song : songsRepo.findAllById(ids)) {
+            songs.put(song.getId(), song);
+        }
+        return songs;
+    }
+
+    // Reads a single ID column straight into a primitive array, without boxing every row
+    private long[] queryIds(String sql, Object... args) {
+        long[][] buffer = {new long[256]};
+        int[] size = {0};
+        jdbcTemplate.query(sql, rs -> {
+            if (size[0] == buffer[0].length) {
+                buffer[0] = Arrays.copyOf(buffer[0], buffer[0].length * 2);
+            }
+            buffer[0][size[0]++] = rs.getLong(1);
+        }, args);
+        return Arrays.copyOf(buffer[0], size[0]);
+    }
+}
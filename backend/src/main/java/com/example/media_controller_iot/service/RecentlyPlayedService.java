@@ -0,0 +1,174 @@
+package com.example.media_controller_iot.service;
+
+import com.example.media_controller_iot.models.RecentPlay;
+import com.example.media_controller_iot.models.Songs;
+import com.example.media_controller_iot.repository.RecentPlayRepository;
+import com.example.media_controller_iot.repository.SongsRepo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+
+import java.io.Serial;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Maintains a bounded, per-user LRU of recently played song IDs.
+ * The in-memory list is the read path; the recent_plays table keeps it across restarts and holds
+ * at most the same number of rows per user. Lists of the least recently active users are dropped
+ * from memory and reloaded on their next request.
+ */
+@Service
+public class RecentlyPlayedService {
+
+    private static final Logger log = LoggerFactory.getLogger(RecentlyPlayedService.class);
+
+    private final RecentPlayRepository recentPlayRepository;
+    private final SongsRepo songsRepo;
+    private final int capacity;
+
+    // Guarded by itself; access order, so the eldest entry is the least recently active user
+    private final LinkedHashMap<String, RecentSongs> recentByUser;
+
+    public RecentlyPlayedService(RecentPlayRepository recentPlayRepository,
+                                 SongsRepo songsRepo,
+                                 @Value("${player.recently-played.size:50}") int capacity,
+                                 @Value("${player.recently-played.max-users:10000}") int maxUsers) {
+        this.recentPlayRepository = recentPlayRepository;
+        this.songsRepo = songsRepo;
+        this.capacity = capacity;
+        this.recentByUser = new LinkedHashMap<>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, RecentSongs> eldest) {
+                return size() > maxUsers;
+            }
+        };
+    }
+
+    /**
+     * Seed recent_plays from command_log the first time the table is empty
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmFromCommandLog() {
+        try {
+            if (recentPlayRepository.count() == 0) {
+                int rows = recentPlayRepository.backfillFromCommandLog();
+                log.info("Backfilled {} recently played entries from command_log", rows);
+            }
+        } catch (Exception e) {
+            log.error("Failed to backfill recently played from command_log", e);
+        }
+    }
+
+    /**
+     * Record that a user started playing a song
+     */
+    public void recordPlay(String userId, Songs song) {
+        if (userId == null || song == null || song.getId() == null) return;
+
+        LocalDateTime now = LocalDateTime.now();
+        RecentSongs recent = recentFor(userId);
+        Long evicted;
+        synchronized (recent) {
+            recent.remove(song.getId());
+            recent.put(song.getId(), now);
+            evicted = recent.evicted;
+            recent.evicted = null;
+        }
+
+        try {
+            recentPlayRepository.upsert(userId, song.getId(), now);
+            // Keep the table at the same size as the list
+            if (evicted != null) recentPlayRepository.deleteByUserIdAndSongId(userId, evicted);
+        } catch (Exception e) {
+            log.error("Failed to persist recent play for user {} song {}", userId, song.getId(), e);
+        }
+    }
+
+    /**
+     * Recently played songs for a user, most recent first
+     */
+    public List<Songs> getRecentlyPlayed(String userId) {
+        RecentSongs recent = recentFor(userId);
+        List<Long> songIds;
+        synchronized (recent) {
+            songIds = new ArrayList<>(recent.keySet());
+        }
+        Collections.reverse(songIds);
+        if (songIds.isEmpty()) return List.of();
+
+        Map<Long, Songs> songsById = new HashMap<>();
+        for (Songs song : songsRepo.findAllById(songIds)) {
+            songsById.put(song.getId(), song);
+        }
+
+        List<Songs> result = new ArrayList<>(songIds.size());
+        for (Long songId : songIds) {
+            Songs song = songsById.get(songId);
+            if (song != null) result.add(song);
+        }
+        return result;
+    }
+
+    private RecentSongs recentFor(String userId) {
+        synchronized (recentByUser) {
+            RecentSongs cached = recentByUser.get(userId);
+            if (cached != null) return cached;
+        }
+
+        // Load outside the lock so one slow query doesn't block other users
+        RecentSongs loaded = loadRecent(userId);
+
+        synchronized (recentByUser) {
+            RecentSongs cached = recentByUser.get(userId);
+            if (cached != null) return cached;
+            recentByUser.put(userId, loaded);
+            return loaded;
+        }
+    }
+
+    private RecentSongs loadRecent(String userId) {
+        // Rows past the list size (e.g. from the command_log backfill) are never read again
+        try {
+            recentPlayRepository.trimToNewest(userId, capacity);
+        } catch (Exception e) {
+            log.error("Failed to trim recent plays for user {}", userId, e);
+        }
+        RecentSongs recent = new RecentSongs(capacity);
+        List<RecentPlay> rows = recentPlayRepository.findByUserIdOrderByPlayedAtDesc(userId, Limit.of(capacity));
+        // Insert oldest first so iteration order stays least -> most recent
+        for (int i = rows.size() - 1; i >= 0; i--) {
+            RecentPlay row = rows.get(i);
+            recent.put(row.getSongId(), row.getPlayedAt());
+        }
+        return recent;
+    }
+
+    /**
+     * Insertion-ordered map that drops the least recently played song once full
+     */
+    private static class RecentSongs extends LinkedHashMap<Long, LocalDateTime> {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+        // Song dropped by the last put, to be deleted from recent_plays
+        private Long evicted;
+
+        RecentSongs(int capacity) {
+            super(capacity * 2);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, LocalDateTime> eldest) {
+            if (size() <= capacity) return false;
+            evicted = eldest.getKey();
+            return true;
+        }
+    }
+}
@@ -1,20 +1,73 @@
 package com.example.media_controller_iot.service;
 
+import com.example.media_controller_iot.util.AudioMetadataReader;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
 import org.springframework.web.multipart.MultipartFile;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
 import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.core.sync.ResponseTransformer;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.*;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+import software.amazon.awssdk.services.s3.presigner.model.PresignedPutObjectRequest;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Service
 public class S3Service {
 
+    // S3 rejects multipart uploads with smaller parts (except the last one) or more parts
+    private static final long MIN_PART_SIZE = 5L * 1024 * 1024;
+    private static final int MAX_PARTS = 10_000;
+    // Multipart uploads are written here until their hash is known
+    static final String STAGING_FOLDER = "staging";
+
     private final S3Client s3Client;
+    private final S3AsyncClient s3AsyncClient;
+    private final S3Presigner s3Presigner;
+    private final ExecutorService uploadExecutor;
+    private final MediaBlobService mediaBlobService;
+
+    // Bounds the memory held by part buffers across all uploads; later uploads wait for a slot
+    private final Semaphore uploadSlots;
+    private final AtomicInteger activeUploads = new AtomicInteger();
+    private final AtomicInteger partsInFlight = new AtomicInteger();
+    private final Counter uploadedBytes;
+    private final DistributionSummary uploadThroughput;
 
     @Value("${aws.s3.bucket}")
     private String bucketName;
@@ -22,8 +75,39 @@ public class S3Service {
     @Value("${aws.region}")
     private String region;
 
-    public S3Service(S3Client s3Client) {
+    @Value("${aws.s3.endpoint:}")
+    private String endpoint;
+
+    @Value("${aws.s3.public-endpoint:}")
+    private String publicEndpoint;
+
+    @Value("${uploads.max-size:2GB}")
+    private DataSize maxUploadSize;
+
+    @Value("${uploads.part-size:8MB}")
+    private DataSize partSize;
+
+    @Value("${uploads.max-parts-in-flight:4}")
+    private int maxPartsInFlight;
+
+    public S3Service(S3Client s3Client, S3AsyncClient s3AsyncClient, S3Presigner s3Presigner,
+                     @Qualifier("s3UploadExecutor") ExecutorService uploadExecutor,
+                     MediaBlobService mediaBlobService,
+                     MeterRegistry meterRegistry,
+                     @Value("${uploads.max-concurrent:16}") int maxConcurrentUploads) {
         this.s3Client = s3Client;
+        this.s3AsyncClient = s3AsyncClient;
+        this.s3Presigner = s3Presigner;
+        this.uploadExecutor = uploadExecutor;
+        this.mediaBlobService = mediaBlobService;
+        this.uploadSlots = new Semaphore(maxConcurrentUploads, true);
+        Gauge.builder("s3.uploads.active", activeUploads, AtomicInteger::get).register(meterRegistry);
+        Gauge.builder("s3.upload.parts.in-flight", partsInFlight, AtomicInteger::get).register(meterRegistry);
+        this.uploadedBytes = Counter.builder("s3.upload.bytes").baseUnit("bytes").register(meterRegistry);
+        this.uploadThroughput = DistributionSummary.builder("s3.upload.throughput")
+                .description("Bytes per second of each finished upload")
+                .baseUnit("bytes/s")
+                .register(meterRegistry);
     }
 
     /**
@@ -34,60 +118,548 @@ public class S3Service {
      * @return The public URL of the uploaded file
      */
     public String uploadFile(MultipartFile file, String folder, String description) throws IOException {
-        String fileName = generateFileName(file.getOriginalFilename(), folder);
-        
+        return uploadFile(file, folder, description, null, null);
+    }
+
+    /**
+     * Upload a file to S3, keeping its head and tail in capture for metadata extraction
+     * @param userId - User uploading it, who may delete it again while no song uses it
+     */
+    public String uploadFile(MultipartFile file, String folder, String description, String userId,
+                             AudioMetadataReader.Capture capture) throws IOException {
+        try (InputStream in = file.getInputStream()) {
+            return uploadStream(in, file.getOriginalFilename(), file.getContentType(), folder, description, userId,
+                    null, capture);
+        }
+    }
+
+    /**
+     * Upload a file to S3 on the upload executor, so the calling request thread is released at once
+     */
+    public CompletableFuture<String> uploadFileAsync(MultipartFile file, String folder, String description,
+                                                     String userId, AudioMetadataReader.Capture capture) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return uploadFile(file, folder, description, userId, capture);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, uploadExecutor);
+    }
+
+    /**
+     * Upload a file to S3 without description (backward compatibility)
+     */
+    public String uploadFile(MultipartFile file, String folder) throws IOException {
+        return uploadFile(file, folder, null);
+    }
+
+    /**
+     * Upload a stream of unknown length to S3 without buffering it whole.
+     * Anything that fits in one part is sent with a single putObject; larger bodies become a multipart
+     * upload whose parts are read sequentially and sent in parallel through the non-blocking client,
+     * with at most uploads.max-parts-in-flight parts held in memory. At most uploads.max-concurrent uploads
+     * run at once; others wait. On any failure the multipart upload is aborted so no orphaned parts are left behind.
+     * The body is hashed (SHA-256) as it is read and stored under a content-addressed key; content that is
+     * already stored is not written again and the existing object is shared.
+     * @param userId - User uploading it, who may delete it again while no song uses it; null for none
+     * @param progress - Optional progress to update as bytes are read and uploaded
+     * @param capture - Optional capture of the body's head and tail, for reading audio metadata afterwards
+     * @return The public URL of the uploaded file
+     * @throws MaxUploadSizeExceededException if the stream is longer than uploads.max-size
+     */
+    public String uploadStream(InputStream in, String originalFileName, String contentType, String folder,
+                               String description, String userId, UploadProgressService.Progress progress,
+                               AudioMetadataReader.Capture capture) throws IOException {
         try {
-            // Build metadata to store original filename and description
-            java.util.Map<String, String> metadata = new java.util.HashMap<>();
-            if (file.getOriginalFilename() != null) {
-                metadata.put("original-filename", file.getOriginalFilename());
+            uploadSlots.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Upload interrupted", e);
+        }
+        activeUploads.incrementAndGet();
+        long started = System.nanoTime();
+        try {
+            StoredUpload upload = store(in, originalFileName, contentType, folder, description, userId, progress,
+                    capture);
+            double seconds = (System.nanoTime() - started) / 1e9;
+            if (seconds > 0) uploadThroughput.record(upload.size() / seconds);
+            return upload.url();
+        } finally {
+            activeUploads.decrementAndGet();
+            uploadSlots.release();
+        }
+    }
+
+    /**
+     * {@link #uploadStream} on the upload executor, so the calling request thread is released at once
+     * (the stream is read on the upload's virtual thread)
+     */
+    public CompletableFuture<String> uploadStreamAsync(InputStream in, String originalFileName, String contentType,
+                                                       String folder, String description, String userId,
+                                                       UploadProgressService.Progress progress,
+                                                       AudioMetadataReader.Capture capture) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return uploadStream(in, originalFileName, contentType, folder, description, userId, progress,
+                        capture);
+            } catch (IOException e) {
+                throw new CompletionException(e);
             }
-            if (description != null && !description.isBlank()) {
-                metadata.put("description", description);
+        }, uploadExecutor);
+    }
+
+    public int activeUploads() {
+        return activeUploads.get();
+    }
+
+    public int partsInFlight() {
+        return partsInFlight.get();
+    }
+
+    public long uploadedBytes() {
+        return (long) uploadedBytes.count();
+    }
+
+    /**
+     * Mean bytes per second of finished uploads
+     */
+    public double meanUploadThroughput() {
+        return uploadThroughput.mean();
+    }
+
+    private record StoredUpload(String url, long size) {
+    }
+
+    private StoredUpload store(InputStream in, String originalFileName, String contentType, String folder,
+                               String description, String userId, UploadProgressService.Progress progress,
+                               AudioMetadataReader.Capture capture) throws IOException {
+        Map<String, String> metadata = buildMetadata(originalFileName, description);
+        MessageDigest digest = sha256();
+        long maxSize = maxUploadSize.toBytes();
+        // Grow parts if needed so the largest allowed upload still fits in MAX_PARTS
+        int size = (int) Math.max(Math.max(partSize.toBytes(), MIN_PART_SIZE), (maxSize + MAX_PARTS - 1) / MAX_PARTS);
+
+        byte[] part = readPart(in, size, 0, maxSize, digest, progress, capture);
+        if (part.length < size) {
+            // The hash is known before anything is sent, so a file we already have costs no upload at all
+            byte[] body = part;
+            String key = storeBlob(digest.digest(), originalFileName, folder, body.length, contentType, userId, blobKey -> {
+                try {
+                    s3AsyncClient.putObject(PutObjectRequest.builder()
+                                    .bucket(bucketName)
+                                    .key(blobKey)
+                                    .contentType(contentType)
+                                    .metadata(metadata)
+                                    // Do NOT set ACL - bucket has "Bucket owner enforced" (ACLs disabled)
+                                    .build(),
+                            AsyncRequestBody.fromBytesUnsafe(body)).join();
+                    uploadedBytes.increment(body.length);
+                } catch (CompletionException e) {
+                    throw new IOException("Failed to upload file to S3: " + errorMessage(e.getCause()), e.getCause());
+                }
+            });
+            if (progress != null) progress.uploaded(body.length);
+            return new StoredUpload(getPublicUrl(key), body.length);
+        }
+
+        // The final key depends on the hash of the whole body, so stage it under a unique key first
+        String stagingKey = folder + "/" + STAGING_FOLDER + "/" + UUID.randomUUID();
+        String uploadId = createMultipartUpload(stagingKey, contentType, metadata);
+
+        Semaphore inFlight = new Semaphore(maxPartsInFlight);
+        AtomicBoolean failed = new AtomicBoolean();
+        List<CompletableFuture<CompletedPart>> futures = new ArrayList<>();
+        long total = 0;
+        try {
+            int partNumber = 0;
+            while (part.length > 0) {
+                inFlight.acquire();
+                if (failed.get()) break;
+                futures.add(submitPart(stagingKey, uploadId, ++partNumber, part, inFlight, failed, progress));
+                total += part.length;
+                if (part.length < size) break;
+                part = readPart(in, size, total, maxSize, digest, progress, capture);
+            }
+
+            List<CompletedPart> parts = new ArrayList<>(futures.size());
+            for (Future<CompletedPart> future : futures) {
+                parts.add(future.get());
+            }
+            completeMultipartUpload(stagingKey, uploadId, parts);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abortMultipartUpload(stagingKey, uploadId, futures);
+            throw new IOException("Upload interrupted", e);
+        } catch (ExecutionException e) {
+            abortMultipartUpload(stagingKey, uploadId, futures);
+            throw new IOException("Failed to upload part to S3: " + errorMessage(e.getCause()), e.getCause());
+        } catch (IOException | RuntimeException e) {
+            abortMultipartUpload(stagingKey, uploadId, futures);
+            throw e;
+        }
+
+        try {
+            // Server-side copy, so the bytes are not sent again
+            String key = storeBlob(digest.digest(), originalFileName, folder, total, contentType, userId, blobKey -> {
+                try {
+                    s3Client.copyObject(CopyObjectRequest.builder()
+                            .sourceBucket(bucketName)
+                            .sourceKey(stagingKey)
+                            .destinationBucket(bucketName)
+                            .destinationKey(blobKey)
+                            .build());
+                } catch (S3Exception e) {
+                    throw new IOException("Failed to store uploaded file: " + e.awsErrorDetails().errorMessage(), e);
+                }
+            });
+            return new StoredUpload(getPublicUrl(key), total);
+        } finally {
+            deleteObject(stagingKey);
+        }
+    }
+
+    private static String errorMessage(Throwable e) {
+        return e instanceof S3Exception s3 && s3.awsErrorDetails() != null ? s3.awsErrorDetails().errorMessage() : e.getMessage();
+    }
+
+    @FunctionalInterface
+    private interface BlobWriter {
+        void write(String key) throws IOException;
+    }
+
+    /**
+     * Register content with this hash and store it under its content-addressed key,
+     * unless the same content is already stored
+     * @return the key the content is stored under
+     */
+    private String storeBlob(byte[] hash, String originalFileName, String folder, long size, String contentType,
+                             String userId, BlobWriter writer) throws IOException {
+        MediaBlobService.Reference reference = mediaBlobService.register(hash,
+                contentKey(folder, hash, originalFileName), size, contentType, userId);
+        String key = reference.objectKey();
+        try {
+            // A registered blob whose object is missing (its first upload failed) is stored again
+            if (!reference.existing() || headObject(key) == null) {
+                writer.write(key);
+            }
+            return key;
+        } catch (IOException | RuntimeException e) {
+            if (!reference.existing()) {
+                mediaBlobService.forget(List.of(key), () -> deleteObject(key));
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Send a part without blocking; its buffer and in-flight permit are released when S3 answers.
+     * Cancelling the returned future cancels the SDK request as well, which a future derived with
+     * thenApply alone would not do.
+     */
+    private CompletableFuture<CompletedPart> submitPart(String key, String uploadId, int partNumber, byte[] data,
+                                                        Semaphore inFlight, AtomicBoolean failed,
+                                                        UploadProgressService.Progress progress) {
+        partsInFlight.incrementAndGet();
+        CompletableFuture<UploadPartResponse> request = s3AsyncClient.uploadPart(UploadPartRequest.builder()
+                        .bucket(bucketName)
+                        .key(key)
+                        .uploadId(uploadId)
+                        .partNumber(partNumber)
+                        .contentLength((long) data.length)
+                        .build(),
+                AsyncRequestBody.fromBytesUnsafe(data));
+        request.whenComplete((response, error) -> {
+            partsInFlight.decrementAndGet();
+            inFlight.release();
+            if (error != null) {
+                // Stop the reader from queueing more parts
+                failed.set(true);
+            } else {
+                uploadedBytes.increment(data.length);
+                if (progress != null) progress.uploaded(data.length);
             }
-            
-            PutObjectRequest putObjectRequest = PutObjectRequest.builder()
+        });
+        CompletableFuture<CompletedPart> part = request.thenApply(response ->
+                CompletedPart.builder().partNumber(partNumber).eTag(response.eTag()).build());
+        part.whenComplete((completed, error) -> {
+            if (error instanceof CancellationException) request.cancel(true);
+        });
+        return part;
+    }
+
+    private void abortMultipartUpload(String key, String uploadId, List<? extends Future<CompletedPart>> futures) {
+        for (Future<CompletedPart> future : futures) {
+            future.cancel(true);
+        }
+        abortMultipartUpload(key, uploadId);
+    }
+
+    String createMultipartUpload(String key, String contentType, Map<String, String> metadata) throws IOException {
+        try {
+            return s3Client.createMultipartUpload(CreateMultipartUploadRequest.builder()
                     .bucket(bucketName)
-                    .key(fileName)
-                    .contentType(file.getContentType())
+                    .key(key)
+                    .contentType(contentType)
                     .metadata(metadata)
-                    // Do NOT set ACL - bucket has "Bucket owner enforced" (ACLs disabled)
-                    // Use bucket policy for public access instead
-                    .build();
+                    .build()).uploadId();
+        } catch (S3Exception e) {
+            throw new IOException("Failed to start multipart upload: " + e.awsErrorDetails().errorMessage(), e);
+        }
+    }
+
+    void completeMultipartUpload(String key, String uploadId, List<CompletedPart> parts) throws IOException {
+        List<CompletedPart> sorted = new ArrayList<>(parts);
+        sorted.sort(Comparator.comparing(CompletedPart::partNumber));
+        try {
+            s3Client.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder().parts(sorted).build())
+                    .build());
+        } catch (S3Exception e) {
+            throw new IOException("Failed to complete multipart upload: " + e.awsErrorDetails().errorMessage(), e);
+        }
+    }
+
+    /**
+     * Parts S3 has received for a multipart upload, so the client does not have to report ETags back
+     */
+    List<CompletedPart> listUploadedParts(String key, String uploadId) throws IOException {
+        List<CompletedPart> parts = new ArrayList<>();
+        try {
+            Integer marker = null;
+            ListPartsResponse response;
+            do {
+                response = s3Client.listParts(ListPartsRequest.builder()
+                        .bucket(bucketName)
+                        .key(key)
+                        .uploadId(uploadId)
+                        .partNumberMarker(marker)
+                        .build());
+                for (Part part : response.parts()) {
+                    parts.add(CompletedPart.builder().partNumber(part.partNumber()).eTag(part.eTag()).build());
+                }
+                marker = response.nextPartNumberMarker();
+            } while (Boolean.TRUE.equals(response.isTruncated()));
+        } catch (S3Exception e) {
+            throw new IOException("Failed to list uploaded parts: " + e.awsErrorDetails().errorMessage(), e);
+        }
+        return parts;
+    }
+
+    void abortMultipartUpload(String key, String uploadId) {
+        try {
+            s3Client.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .build());
+        } catch (S3Exception e) {
+            // Best effort; the upload has already failed and its parts are not referenced anywhere
+        }
+    }
 
-            s3Client.putObject(putObjectRequest, 
-                    RequestBody.fromInputStream(file.getInputStream(), file.getSize()));
+    /**
+     * Read up to size bytes; a shorter result means the stream has ended
+     */
+    private static byte[] readPart(InputStream in, int size, long readSoFar, long maxSize, MessageDigest digest,
+                                   UploadProgressService.Progress progress,
+                                   AudioMetadataReader.Capture capture) throws IOException {
+        byte[] part = in.readNBytes(size);
+        if (readSoFar + part.length > maxSize) {
+            throw new MaxUploadSizeExceededException(maxSize);
+        }
+        digest.update(part);
+        if (capture != null) capture.update(part, 0, part.length);
+        if (progress != null) progress.received(part.length);
+        return part;
+    }
 
-            return getPublicUrl(fileName);
+    /**
+     * Presigned PUT for a whole object. Content type, length, SHA-256 checksum and metadata are signed,
+     * so S3 rejects a body that does not match them.
+     */
+    PresignedPutObjectRequest presignPut(String key, String contentType, long size, Map<String, String> metadata,
+                                         byte[] sha256, Duration expiry) {
+        return s3Presigner.presignPutObject(builder -> builder
+                .signatureDuration(expiry)
+                .putObjectRequest(PutObjectRequest.builder()
+                        .bucket(bucketName)
+                        .key(key)
+                        .contentType(contentType)
+                        .contentLength(size)
+                        .checksumSHA256(Base64.getEncoder().encodeToString(sha256))
+                        .metadata(metadata)
+                        .build()));
+    }
+
+    /**
+     * Presigned PUT for one part of a multipart upload, signed for exactly size bytes
+     */
+    URL presignPart(String key, String uploadId, int partNumber, long size, Duration expiry) {
+        return s3Presigner.presignUploadPart(builder -> builder
+                .signatureDuration(expiry)
+                .uploadPartRequest(UploadPartRequest.builder()
+                        .bucket(bucketName)
+                        .key(key)
+                        .uploadId(uploadId)
+                        .partNumber(partNumber)
+                        .contentLength(size)
+                        .build())).url();
+    }
+
+    /**
+     * @return the object's metadata, or null if it does not exist
+     */
+    HeadObjectResponse headObject(String key) {
+        try {
+            return s3Client.headObject(HeadObjectRequest.builder().bucket(bucketName).key(key).build());
+        } catch (NoSuchKeyException e) {
+            return null;
         } catch (S3Exception e) {
-            throw new IOException("Failed to upload file to S3: " + e.awsErrorDetails().errorMessage(), e);
+            if (e.statusCode() == 404) return null;
+            throw new RuntimeException("Failed to read object metadata: " + e.awsErrorDetails().errorMessage(), e);
+        }
+    }
+
+    void deleteObject(String key) {
+        try {
+            s3Client.deleteObject(DeleteObjectRequest.builder().bucket(bucketName).key(key).build());
+        } catch (S3Exception e) {
+            throw new RuntimeException("Failed to delete file from S3: " + e.awsErrorDetails().errorMessage(), e);
         }
     }
 
     /**
-     * Upload a file to S3 without description (backward compatibility)
+     * Delete up to 1000 objects with a single DeleteObjects request
+     * @return the keys S3 failed to delete
      */
-    public String uploadFile(MultipartFile file, String folder) throws IOException {
-        return uploadFile(file, folder, null);
+    List<String> deleteObjects(Collection<String> keys) {
+        if (keys.isEmpty()) return List.of();
+        List<ObjectIdentifier> objects = keys.stream().map(key -> ObjectIdentifier.builder().key(key).build()).toList();
+        try {
+            DeleteObjectsResponse response = s3Client.deleteObjects(DeleteObjectsRequest.builder()
+                    .bucket(bucketName)
+                    .delete(Delete.builder().objects(objects).quiet(true).build())
+                    .build());
+            return response.errors().stream().map(S3Error::key).toList();
+        } catch (S3Exception e) {
+            throw new RuntimeException("Failed to delete files from S3: " + e.awsErrorDetails().errorMessage(), e);
+        }
     }
 
     /**
-     * Delete a file from S3
-     * @param fileUrl - The full S3 URL of the file
+     * Objects under a prefix, listed a page (up to 1000 keys) at a time as the iteration goes
      */
-    public void deleteFile(String fileUrl) {
-        String key = extractKeyFromUrl(fileUrl);
-        
+    Iterable<S3Object> listObjects(String prefix) {
+        return s3Client.listObjectsV2Paginator(ListObjectsV2Request.builder()
+                .bucket(bucketName)
+                .prefix(prefix)
+                .build()).contents();
+    }
+
+    void putBytes(String key, byte[] content, String contentType) throws IOException {
         try {
-            DeleteObjectRequest deleteObjectRequest = DeleteObjectRequest.builder()
+            s3Client.putObject(PutObjectRequest.builder()
+                            .bucket(bucketName)
+                            .key(key)
+                            .contentType(contentType)
+                            .build(),
+                    RequestBody.fromBytes(content));
+        } catch (S3Exception e) {
+            throw new IOException("Failed to upload file to S3: " + e.awsErrorDetails().errorMessage(), e);
+        }
+    }
+
+    /**
+     * Read length bytes of an object starting at position (fewer at the end of the object)
+     */
+    byte[] readRange(String key, long position, int length) throws IOException {
+        try {
+            return s3Client.getObjectAsBytes(GetObjectRequest.builder()
                     .bucket(bucketName)
                     .key(key)
-                    .build();
+                    .range("bytes=" + position + "-" + (position + length - 1))
+                    .build()).asByteArray();
+        } catch (S3Exception e) {
+            throw new IOException("Failed to read file from S3: " + e.awsErrorDetails().errorMessage(), e);
+        }
+    }
 
-            s3Client.deleteObject(deleteObjectRequest);
+    /**
+     * Open (a range of) an object for reading; the caller must close the stream
+     * @param range - A "bytes=" Range header to pass on, or null for the whole object
+     */
+    ResponseInputStream<GetObjectResponse> openObject(String key, String range) throws IOException {
+        try {
+            return s3Client.getObject(GetObjectRequest.builder().bucket(bucketName).key(key).range(range).build());
         } catch (S3Exception e) {
-            throw new RuntimeException("Failed to delete file from S3: " + e.awsErrorDetails().errorMessage(), e);
+            throw new IOException("Failed to read file from S3: " + e.awsErrorDetails().errorMessage(), e);
+        }
+    }
+
+    /**
+     * Download an object to a local file, which must not exist yet
+     * @return the object's content type as stored in S3
+     */
+    String downloadToFile(String key, Path target) throws IOException {
+        try {
+            return s3Client.getObject(GetObjectRequest.builder().bucket(bucketName).key(key).build(),
+                    ResponseTransformer.toFile(target)).contentType();
+        } catch (S3Exception e) {
+            throw new IOException("Failed to download file from S3: " + e.awsErrorDetails().errorMessage(), e);
+        }
+    }
+
+    /**
+     * S3 key for a URL that points into our bucket
+     * @return the key, or null if the URL points somewhere else
+     */
+    String keyForUrl(String fileUrl) {
+        if (fileUrl == null) return null;
+        String prefix = publicUrlPrefix();
+        if (fileUrl.startsWith(prefix)) {
+            return fileUrl.substring(prefix.length());
         }
+        String legacyPrefix = "https://" + bucketName + ".s3.";
+        int keyStart = fileUrl.indexOf(".amazonaws.com/");
+        if (fileUrl.startsWith(legacyPrefix) && keyStart > 0) {
+            return fileUrl.substring(keyStart + ".amazonaws.com/".length());
+        }
+        return null;
+    }
+
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    static Map<String, String> buildMetadata(String originalFileName, String description) {
+        // Stores the original filename and description alongside the object
+        Map<String, String> metadata = new HashMap<>();
+        if (originalFileName != null) {
+            metadata.put("original-filename", originalFileName);
+        }
+        if (description != null && !description.isBlank()) {
+            metadata.put("description", description);
+        }
+        return metadata;
+    }
+
+    /**
+     * Delete an uploaded file from S3 that no song uses; only the user who uploaded it may delete it.
+     * Deleting it again is a no-op that reports NOT_FOUND. Files from before deduplication are not tracked
+     * and are left to the orphan cleanup.
+     * @param fileUrl - The full S3 URL of the file
+     */
+    public MediaBlobService.Discard deleteFile(String fileUrl, String userId) {
+        String key = extractKeyFromUrl(fileUrl);
+        return mediaBlobService.discard(key, getPublicUrl(key), userId, () -> deleteObject(key));
     }
 
     /**
@@ -108,33 +680,52 @@ public class S3Service {
     /**
      * Get the public URL for a file in S3
      */
-    private String getPublicUrl(String key) {
-        return String.format("https://%s.s3.%s.amazonaws.com/%s", bucketName, region, key);
+    String getPublicUrl(String key) {
+        return publicUrlPrefix() + key;
+    }
+
+    private String publicUrlPrefix() {
+        String base = publicEndpoint.isBlank() ? endpoint : publicEndpoint;
+        if (base.isBlank()) {
+            return String.format("https://%s.s3.%s.amazonaws.com/", bucketName, region);
+        }
+        // S3-compatible stores are addressed by path
+        return base.replaceAll("/+$", "") + "/" + bucketName + "/";
+    }
+
+    /**
+     * Content-addressed key: folder/sha256.ext, so identical files share one object and
+     * different files can never overwrite each other
+     */
+    static String contentKey(String folder, byte[] sha256, String originalFileName) {
+        return folder + "/" + HexFormat.of().formatHex(sha256) + "." + extension(originalFileName);
     }
 
     /**
-     * Generate a file name with the folder path using the original filename (sanitized)
-     * Note: This can overwrite existing files with the same name
+     * Key for a file whose hash is not known up front: folder/uploads/uuid.ext
      */
-    private String generateFileName(String originalFileName, String folder) {
-        if (originalFileName == null || originalFileName.isBlank()) {
-            // Fallback to UUID if no filename
-            return folder + "/" + UUID.randomUUID() + ".bin";
+    static String uniqueKey(String folder, String originalFileName) {
+        return folder + "/uploads/" + UUID.randomUUID() + "." + extension(originalFileName);
+    }
+
+    // Lowercase extension of the original filename if it is short and alphanumeric, else "bin"
+    private static String extension(String originalFileName) {
+        if (originalFileName != null) {
+            int dot = originalFileName.lastIndexOf('.');
+            String extension = dot >= 0 ? originalFileName.substring(dot + 1).toLowerCase() : "";
+            if (extension.matches("[a-z0-9]{1,8}")) return extension;
         }
-        
-        // Sanitize filename: remove special chars, spaces, keep only alphanumeric, dots, hyphens, underscores
-        String sanitized = originalFileName
-                .replaceAll("[^a-zA-Z0-9._-]", "-")  // Replace invalid chars with hyphen
-                .replaceAll("-+", "-")                // Collapse multiple hyphens
-                .toLowerCase();                       // Lowercase for consistency
-        
-        return folder + "/" + sanitized;
+        return "bin";
     }
 
     /**
      * Extract the S3 key from a full URL
      */
     private String extractKeyFromUrl(String fileUrl) {
+        String prefix = publicUrlPrefix();
+        if (fileUrl.startsWith(prefix)) {
+            return fileUrl.substring(prefix.length());
+        }
         // URL format: https://bucket-name.s3.region.amazonaws.com/folder/file.ext
         String[] parts = fileUrl.split(".amazonaws.com/");
         return parts.length > 1 ? parts[1] : fileUrl;
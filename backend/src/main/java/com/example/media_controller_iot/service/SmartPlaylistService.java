@@ -0,0 +1,380 @@
+package com.example.media_controller_iot.service;
+
+import com.example.media_controller_iot.dto.SmartPlaylistRules;
+import com.example.media_controller_iot.dto.SmartPlaylistRules.Condition;
+import com.example.media_controller_iot.models.Playlist;
+import com.example.media_controller_iot.models.Songs;
+import com.example.media_controller_iot.repository.PlayerCommandLogRepo;
+import com.example.media_controller_iot.repository.PlaylistRepository;
+import com.example.media_controller_iot.repository.PlaylistSongRepository;
+import com.example.media_controller_iot.repository.SongsRepo;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps smart playlist membership materialized in playlist_songs.
+ * Rules are only re-evaluated for songs touched by a play or a catalog change. Play-count
+ * conditions are monotonic (gt/gte), so aging plays can only drop members; a daily sweep
+ * re-checks current members of playlists that use them. Plays are counted for the playlist's
+ * owner only.
+ */
+@Service
+public class SmartPlaylistService {
+
+    private static final Logger log = LoggerFactory.getLogger(SmartPlaylistService.class);
+
+    private static final int EVALUATION_CHUNK_SIZE = 1_000;
+    private static final Set<String> TEXT_FIELDS = Set.of("title", "artist", "category");
+    private static final Set<String> TEXT_OPS = Set.of("eq", "ne", "in", "contains");
+    private static final Set<String> PLAY_OPS = Set.of("gt", "gte");
+
+    private final PlaylistRepository playlistRepository;
+    private final PlaylistSongRepository playlistSongRepository;
+    private final SongsRepo songsRepo;
+    private final PlayerCommandLogRepo playerCommandLogRepo;
+    private final PlaylistService playlistService;
+    private final PlaylistEventService playlistEventService;
+    private final ObjectMapper objectMapper;
+    private final JdbcTemplate streamingJdbcTemplate;
+
+    // playlistId -> owner and parsed rules for every smart playlist
+    private final Map<Long, SmartPlaylist> smartPlaylists = new ConcurrentHashMap<>();
+    // Songs whose membership must be re-evaluated on the next refresh
+    private final Set<Long> dirtySongs = ConcurrentHashMap.newKeySet();
+    // Highest song ID already evaluated, used to pick up songs inserted outside the app
+    private volatile long songWatermark;
+
+    public SmartPlaylistService(PlaylistRepository playlistRepository,
+                                PlaylistSongRepository playlistSongRepository,
+                                SongsRepo songsRepo,
+                                PlayerCommandLogRepo playerCommandLogRepo,
+                                PlaylistService playlistService,
+                                PlaylistEventService playlistEventService,
+                                ObjectMapper objectMapper,
+                                DataSource dataSource) {
+        this.playlistRepository = playlistRepository;
+        this.playlistSongRepository = playlistSongRepository;
+        this.songsRepo = songsRepo;
+        this.playerCommandLogRepo = playerCommandLogRepo;
+        this.playlistService = playlistService;
+        this.playlistEventService = playlistEventService;
+        this.objectMapper = objectMapper;
+        // Integer.MIN_VALUE makes MySQL Connector/J stream rows one at a time instead of buffering the result
+        this.streamingJdbcTemplate = new JdbcTemplate(dataSource);
+        this.streamingJdbcTemplate.setFetchSize(Integer.MIN_VALUE);
+    }
+
+    private record SmartPlaylist(String userId, SmartPlaylistRules rules) {
+    }
+
+    // The song columns rules can test
+    private record SongFields(Long id, String title, String artist, String category) {
+        static SongFields of(Songs song) {
+            return new SongFields(song.getId(), song.getTitle(), song.getArtist(), song.getCategory());
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadSmartPlaylists() {
+        try {
+            for (Playlist playlist : playlistRepository.findByRulesIsNotNull()) {
+                try {
+                    smartPlaylists.put(playlist.getId(), new SmartPlaylist(playlist.getUserId(), parse(playlist.getRules())));
+                } catch (IllegalArgumentException e) {
+                    log.warn("Ignoring invalid rules on playlist {}: {}", playlist.getId(), e.getMessage());
+                }
+            }
+            songWatermark = songsRepo.findMaxId();
+        } catch (Exception e) {
+            log.error("Failed to load smart playlists", e);
+        }
+    }
+
+    /**
+     * Parse and validate a rules document
+     * @throws IllegalArgumentException if the JSON is malformed or a condition is unsupported
+     */
+    public SmartPlaylistRules parse(String json) {
+        SmartPlaylistRules rules;
+        try {
+            rules = objectMapper.readValue(json, SmartPlaylistRules.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Rules are not valid JSON");
+        }
+        validate(rules);
+        return rules;
+    }
+
+    private void validate(SmartPlaylistRules rules) {
+        if (rules == null || rules.conditions() == null || rules.conditions().isEmpty()) {
+            throw new IllegalArgumentException("At least one condition is required");
+        }
+        if (rules.match() != null && !rules.match().equals(SmartPlaylistRules.MATCH_ALL)
+                && !rules.match().equals(SmartPlaylistRules.MATCH_ANY)) {
+            throw new IllegalArgumentException("match must be \"all\" or \"any\"");
+        }
+        for (Condition condition : rules.conditions()) {
+            if (condition == null || condition.field() == null || condition.op() == null) {
+                throw new IllegalArgumentException("Every condition needs a field and an op");
+            }
+            if (condition.field().equals("plays")) {
+                if (!PLAY_OPS.contains(condition.op()) || condition.count() == null
+                        || condition.days() == null || condition.days() <= 0) {
+                    throw new IllegalArgumentException("plays conditions need op gt/gte, a count and a positive days value");
+                }
+            } else if (TEXT_FIELDS.contains(condition.field())) {
+                if (!TEXT_OPS.contains(condition.op())) {
+                    throw new IllegalArgumentException("Unsupported op for " + condition.field() + ": " + condition.op());
+                }
+                boolean hasValue = condition.op().equals("in") ? condition.values() != null : condition.value() != null;
+                if (!hasValue) {
+                    throw new IllegalArgumentException(condition.field() + " " + condition.op() + " needs a value");
+                }
+            } else {
+                throw new IllegalArgumentException("Unsupported field: " + condition.field());
+            }
+        }
+    }
+
+    /**
+     * Turn a playlist into a smart playlist (or change its rules) and rebuild its membership
+     */
+    public synchronized Playlist setRules(Playlist playlist, SmartPlaylistRules rules) {
+        try {
+            playlist.setRules(objectMapper.writeValueAsString(rules));
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Rules could not be serialized", e);
+        }
+        Playlist saved = playlistRepository.save(playlist);
+        smartPlaylists.put(saved.getId(), new SmartPlaylist(saved.getUserId(), rules));
+        rebuild(saved.getId(), saved.getUserId(), rules);
+        return saved;
+    }
+
+    /**
+     * Turn a smart playlist back into a regular one; its current songs are kept
+     */
+    public synchronized Playlist clearRules(Playlist playlist) {
+        playlist.setRules(null);
+        smartPlaylists.remove(playlist.getId());
+        return playlistRepository.save(playlist);
+    }
+
+    public void forget(Long playlistId) {
+        smartPlaylists.remove(playlistId);
+    }
+
+    /**
+     * Called for every play; only matters when some smart playlist has a plays condition
+     */
+    public void songPlayed(Long songId) {
+        if (songId != null && usesPlayCounts()) {
+            dirtySongs.add(songId);
+        }
+    }
+
+    /**
+     * Called when songs are added to or edited in the catalog
+     */
+    public void songsChanged(Collection<Long> songIds) {
+        if (!smartPlaylists.isEmpty()) {
+            dirtySongs.addAll(songIds);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${smart-playlists.refresh-interval-ms:5000}")
+    public synchronized void refreshDirtySongs() {
+        try {
+            if (smartPlaylists.isEmpty()) {
+                dirtySongs.clear();
+                songWatermark = Math.max(songWatermark, songsRepo.findMaxId());
+                return;
+            }
+
+            Set<Long> songIds = new HashSet<>();
+            for (Iterator<Long> it = dirtySongs.iterator(); it.hasNext(); ) {
+                songIds.add(it.next());
+                it.remove();
+            }
+            List<Long> newSongs = songsRepo.findIdsAfter(songWatermark);
+            if (!newSongs.isEmpty()) {
+                songIds.addAll(newSongs);
+                songWatermark = newSongs.get(newSongs.size() - 1);
+            }
+            if (songIds.isEmpty()) return;
+
+            List<Long> ordered = new ArrayList<>(songIds);
+            Collections.sort(ordered);
+            for (int from = 0; from < ordered.size(); from += EVALUATION_CHUNK_SIZE) {
+                List<Long> chunk = ordered.subList(from, Math.min(from + EVALUATION_CHUNK_SIZE, ordered.size()));
+                evaluateSongs(chunk);
+            }
+        } catch (Exception e) {
+            log.error("Failed to refresh smart playlists", e);
+        }
+    }
+
+    /**
+     * Plays age out of the window over time; re-check current members of play-based playlists
+     */
+    @Scheduled(cron = "${smart-playlists.decay-cron:0 30 3 * * *}")
+    public void sweepPlayCountDecay() {
+        smartPlaylists.forEach((playlistId, playlist) -> {
+            if (hasPlayCondition(playlist.rules())) {
+                dirtySongs.addAll(playlistSongRepository.findSongIdsByPlaylistId(playlistId));
+            }
+        });
+    }
+
+    // Re-evaluate a bounded set of songs against every smart playlist, with one membership query
+    // and one play-count query per distinct window for all playlists together
+    private void evaluateSongs(List<Long> songIds) {
+        Map<Long, SongFields> songs = new HashMap<>();
+        for (Songs song : songsRepo.findAllById(songIds)) {
+            songs.put(song.getId(), SongFields.of(song));
+        }
+        Map<Long, SmartPlaylist> playlists = Map.copyOf(smartPlaylists);
+        if (playlists.isEmpty()) return;
+        Map<String, Map<Integer, Map<Long, Long>>> playCounts = countPlays(playlists.values(), songIds);
+
+        Map<Long, Set<Long>> members = new HashMap<>();
+        for (Object[] row : playlistSongRepository.findMemberships(playlists.keySet(), songIds)) {
+            members.computeIfAbsent(((Number) row[0]).longValue(), id -> new HashSet<>())
+                    .add(((Number) row[1]).longValue());
+        }
+
+        playlists.forEach((playlistId, playlist) -> {
+            Set<Long> current = members.getOrDefault(playlistId, Set.of());
+            Map<Integer, Map<Long, Long>> ownerPlays = playCounts.getOrDefault(playlist.userId(), Map.of());
+            List<Long> toAdd = new ArrayList<>();
+            List<Long> toRemove = new ArrayList<>();
+            for (Long songId : songIds) {
+                SongFields song = songs.get(songId);
+                boolean matches = song != null && matches(playlist.rules(), song, ownerPlays);
+                if (matches && !current.contains(songId)) toAdd.add(songId);
+                if (!matches && current.contains(songId)) toRemove.add(songId);
+            }
+            apply(playlistId, toAdd, toRemove);
+        });
+    }
+
+    // userId -> days -> songId -> plays for the owners of play-based playlists
+    private Map<String, Map<Integer, Map<Long, Long>>> countPlays(Collection<SmartPlaylist> playlists, List<Long> songIds) {
+        Map<Integer, Set<String>> ownersByWindow = new HashMap<>();
+        for (SmartPlaylist playlist : playlists) {
+            if (playlist.userId() == null) continue;
+            for (int days : playWindows(playlist.rules())) {
+                ownersByWindow.computeIfAbsent(days, d -> new HashSet<>()).add(playlist.userId());
+            }
+        }
+
+        Map<String, Map<Integer, Map<Long, Long>>> counts = new HashMap<>();
+        ownersByWindow.forEach((days, owners) -> {
+            for (Object[] row : playerCommandLogRepo.countPlaysByUserSince(LocalDateTime.now().minusDays(days), owners, songIds)) {
+                counts.computeIfAbsent((String) row[0], userId -> new HashMap<>())
+                        .computeIfAbsent(days, d -> new HashMap<>())
+                        .put(((Number) row[1]).longValue(), ((Number) row[2]).longValue());
+            }
+        });
+        return counts;
+    }
+
+    // Full evaluation against the whole catalog, used when rules are set or changed.
+    // Only the columns the rules test are streamed, not whole entities.
+    private void rebuild(Long playlistId, String userId, SmartPlaylistRules rules) {
+        Map<Integer, Map<Long, Long>> playCounts = new HashMap<>();
+        if (userId != null) {
+            for (int days : playWindows(rules)) {
+                playCounts.put(days, toCountMap(playerCommandLogRepo.countPlaysSince(LocalDateTime.now().minusDays(days), userId)));
+            }
+        }
+
+        Set<Long> members = new HashSet<>(playlistSongRepository.findSongIdsByPlaylistId(playlistId));
+        List<Long> toAdd = new ArrayList<>();
+        streamingJdbcTemplate.query("SELECT id, title, artist, category FROM songs", rs -> {
+            SongFields song = new SongFields(rs.getLong("id"), rs.getString("title"),
+                    rs.getString("artist"), rs.getString("category"));
+            if (matches(rules, song, playCounts) && !members.remove(song.id())) toAdd.add(song.id());
+        });
+        apply(playlistId, toAdd, new ArrayList<>(members));
+    }
+
+    private void apply(Long playlistId, List<Long> toAdd, List<Long> toRemove) {
+        if (!toRemove.isEmpty()) {
+            List<Long> removed = playlistService.removeSongs(playlistId, toRemove);
+            if (!removed.isEmpty()) playlistEventService.broadcastSongsRemoved(playlistId, removed);
+        }
+        if (!toAdd.isEmpty()) {
+            List<Long> added = playlistService.addSongs(playlistId, toAdd, true).added();
+            if (!added.isEmpty()) playlistEventService.broadcastSongsAdded(playlistId, added);
+        }
+    }
+
+    private static boolean matches(SmartPlaylistRules rules, SongFields song, Map<Integer, Map<Long, Long>> playCounts) {
+        boolean any = SmartPlaylistRules.MATCH_ANY.equals(rules.match());
+        for (Condition condition : rules.conditions()) {
+            boolean result = matches(condition, song, playCounts);
+            if (any && result) return true;
+            if (!any && !result) return false;
+        }
+        return !any;
+    }
+
+    private static boolean matches(Condition condition, SongFields song, Map<Integer, Map<Long, Long>> playCounts) {
+        if (condition.field().equals("plays")) {
+            long plays = playCounts.getOrDefault(condition.days(), Map.of()).getOrDefault(song.id(), 0L);
+            return condition.op().equals("gt") ? plays > condition.count() : plays >= condition.count();
+        }
+
+        String actual = switch (condition.field()) {
+            case "title" -> song.title();
+            case "artist" -> song.artist();
+            default -> song.category();
+        };
+        return switch (condition.op()) {
+            case "eq" -> actual != null && actual.equalsIgnoreCase(condition.value());
+            case "ne" -> actual == null || !actual.equalsIgnoreCase(condition.value());
+            case "in" -> actual != null && condition.values().stream().anyMatch(actual::equalsIgnoreCase);
+            default -> actual != null && actual.toLowerCase(Locale.ROOT).contains(condition.value().toLowerCase(Locale.ROOT));
+        };
+    }
+
+    private boolean usesPlayCounts() {
+        for (SmartPlaylist playlist : smartPlaylists.values()) {
+            if (hasPlayCondition(playlist.rules())) return true;
+        }
+        return false;
+    }
+
+    private static boolean hasPlayCondition(SmartPlaylistRules rules) {
+        return rules.conditions().stream().anyMatch(condition -> condition.field().equals("plays"));
+    }
+
+    private static Set<Integer> playWindows(SmartPlaylistRules rules) {
+        Set<Integer> windows = new HashSet<>();
+        for (Condition condition : rules.conditions()) {
+            if (condition.field().equals("plays")) windows.add(condition.days());
+        }
+        return windows;
+    }
+
+    private static Map<Long, Long> toCountMap(List<Object[]> rows) {
+        Map<Long, Long> counts = new HashMap<>();
+        for (Object[] row : rows) {
+            counts.put(((Number) row[0]).longValue(), ((Number) row[1]).longValue());
+        }
+        return counts;
+    }
+}
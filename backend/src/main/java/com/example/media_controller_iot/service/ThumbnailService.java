@@ -0,0 +1,371 @@
+package com.example.media_controller_iot.service;
+
+import com.example.media_controller_iot.models.CoverThumbnail;
+import com.example.media_controller_iot.repository.CoverThumbnailRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.unit.DataSize;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+
+import javax.imageio.*;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Generates fixed-size square thumbnails of cover art in the background, so lists can load small images.
+ * Each cover is streamed from S3 and decoded once (subsampled while decoding when it is much larger than the
+ * biggest thumbnail), then scaled down step by step into every size. Covers over thumbnails.max-source-size
+ * are not read at all. Variants are stored next to the
+ * cover as JPEG, plus WebP when an ImageIO WebP writer is installed.
+ * Work runs on a small bounded pool; covers that do not fit in the queue stay PENDING and are picked
+ * up by the periodic sweep, which also backfills covers uploaded before thumbnails existed.
+ */
+@Service
+public class ThumbnailService {
+
+    private static final Logger log = LoggerFactory.getLogger(ThumbnailService.class);
+    private static final String THUMBNAIL_FOLDER = "thumbs";
+    // Refuse to decode anything larger (decompression bombs); real cover art is far below this
+    private static final long MAX_SOURCE_PIXELS = 100_000_000L;
+
+    private record Variants(int[] sizes, boolean webp) {
+    }
+
+    private final S3Service s3Service;
+    private final CoverThumbnailRepository thumbnailRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final int[] sizes;
+    private final float jpegQuality;
+    private final long maxSourceBytes;
+    private final ThreadPoolExecutor executor;
+
+    // Source keys queued or being processed
+    private final Set<String> inProgress = ConcurrentHashMap.newKeySet();
+    // Ready variants by source key, so serving thumbnail URLs does not hit the database
+    private final Map<String, Variants> ready = new ConcurrentHashMap<>();
+
+    public ThumbnailService(S3Service s3Service,
+                            CoverThumbnailRepository thumbnailRepository,
+                            JdbcTemplate jdbcTemplate,
+                            @Value("${thumbnails.sizes:64,256,512}") int[] sizes,
+                            @Value("${thumbnails.jpeg-quality:0.82}") float jpegQuality,
+                            @Value("${thumbnails.threads:2}") int threads,
+                            @Value("${thumbnails.queue-capacity:100}") int queueCapacity,
+                            @Value("${thumbnails.max-source-size:32MB}") DataSize maxSourceSize) {
+        this.s3Service = s3Service;
+        this.thumbnailRepository = thumbnailRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.sizes = Arrays.stream(sizes).filter(size -> size > 0).sorted().distinct().toArray();
+        this.jpegQuality = jpegQuality;
+        this.maxSourceBytes = maxSourceSize.toBytes();
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "thumbnails-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    // Image work should not compete with request threads
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Queue thumbnail generation for an uploaded cover; covers outside our bucket are ignored
+     */
+    public void submit(String coverUrl) {
+        String key = s3Service.keyForUrl(coverUrl);
+        if (key == null || ready.containsKey(key)) return;
+        if (thumbnailRepository.findBySourceKey(key).isEmpty()) {
+            try {
+                thumbnailRepository.save(new CoverThumbnail(key));
+            } catch (DataIntegrityViolationException e) {
+                // Registered concurrently by another upload of the same cover
+            }
+        }
+        enqueue(key);
+    }
+
+    /**
+     * URL of the smallest variant at least size pixels wide (or the largest one), falling back to the
+     * original cover while thumbnails are not ready or for covers outside our bucket
+     */
+    public String thumbnailUrl(String coverUrl, int size, boolean acceptsWebp) {
+        String key = s3Service.keyForUrl(coverUrl);
+        if (key == null) return coverUrl;
+        Variants variants = ready.get(key);
+        if (variants == null) {
+            CoverThumbnail thumbnail = thumbnailRepository.findBySourceKey(key).orElse(null);
+            if (thumbnail == null || thumbnail.getStatus() != CoverThumbnail.Status.READY) return coverUrl;
+            variants = toVariants(thumbnail);
+            ready.put(key, variants);
+        }
+        int chosen = variants.sizes()[variants.sizes().length - 1];
+        for (int candidate : variants.sizes()) {
+            if (candidate >= size) {
+                chosen = candidate;
+                break;
+            }
+        }
+        String format = acceptsWebp && variants.webp() ? "webp" : "jpg";
+        return s3Service.getPublicUrl(variantKey(key, chosen, format));
+    }
+
+    /**
+     * Delete the variants of a cover whose object has been deleted
+     */
+    @Transactional
+    public void deleteVariants(String coverUrl) {
+        String key = s3Service.keyForUrl(coverUrl);
+        if (key == null) return;
+        ready.remove(key);
+        thumbnailRepository.findBySourceKey(key).ifPresent(thumbnail -> {
+            if (thumbnail.getStatus() == CoverThumbnail.Status.READY) {
+                Variants variants = toVariants(thumbnail);
+                List<String> keys = new ArrayList<>();
+                for (int size : variants.sizes()) {
+                    keys.add(variantKey(key, size, "jpg"));
+                    if (variants.webp()) keys.add(variantKey(key, size, "webp"));
+                }
+                s3Service.deleteObjects(keys);
+            }
+            thumbnailRepository.delete(thumbnail);
+        });
+    }
+
+    /**
+     * Drop the records of covers whose objects (and variants) were removed by the orphan cleanup
+     */
+    @Transactional
+    public void forget(Collection<String> sourceKeys) {
+        for (String key : sourceKeys) {
+            ready.remove(key);
+            thumbnailRepository.deleteBySourceKey(key);
+        }
+    }
+
+    /**
+     * Re-queue pending covers and register covers that have no thumbnails yet
+     */
+    @Scheduled(fixedDelayString = "${thumbnails.sweep-interval-ms:600000}", initialDelay = 60_000)
+    public void sweep() {
+        try {
+            for (CoverThumbnail thumbnail : thumbnailRepository.findByStatus(CoverThumbnail.Status.PENDING)) {
+                enqueue(thumbnail.getSourceKey());
+            }
+            Set<String> known = new HashSet<>(thumbnailRepository.findAllSourceKeys());
+            List<String> coverUrls = jdbcTemplate.queryForList(
+                    "SELECT DISTINCT cover_url FROM songs WHERE cover_url IS NOT NULL", String.class);
+            for (String coverUrl : coverUrls) {
+                if (executor.getQueue().remainingCapacity() == 0) break;
+                String key = s3Service.keyForUrl(coverUrl);
+                if (key != null && known.add(key)) {
+                    submit(coverUrl);
+                }
+            }
+        } catch (Exception e) {
+            log.error("Thumbnail sweep failed", e);
+        }
+    }
+
+    private void enqueue(String key) {
+        if (!inProgress.add(key)) return;
+        try {
+            executor.execute(() -> {
+                try {
+                    generate(key);
+                } finally {
+                    inProgress.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Queue is full; the row stays PENDING until the next sweep
+            inProgress.remove(key);
+        }
+    }
+
+    private void generate(String key) {
+        CoverThumbnail thumbnail = thumbnailRepository.findBySourceKey(key).orElse(null);
+        if (thumbnail == null || thumbnail.getStatus() != CoverThumbnail.Status.PENDING) return;
+        try {
+            BufferedImage image;
+            try (ResponseInputStream<GetObjectResponse> source = s3Service.openObject(key, null)) {
+                Long length = source.response().contentLength();
+                if (length != null && length > maxSourceBytes) {
+                    // Do not drain the rest of the body just to close the connection cleanly
+                    source.abort();
+                    throw new IOException("Cover too large: " + length + " bytes");
+                }
+                image = decode(source, sizes[sizes.length - 1]);
+            }
+            if (image == null) {
+                throw new IOException("Unsupported image format");
+            }
+            BufferedImage current = squareCrop(image);
+            ImageWriter webpWriter = firstWriter("webp");
+            boolean webp = webpWriter != null;
+            if (webpWriter != null) webpWriter.dispose();
+
+            // Largest first, each size scaled down from the previous one; never upscale small covers
+            List<Integer> generated = new ArrayList<>();
+            for (int i = sizes.length - 1; i >= 0; i--) {
+                int size = Math.min(sizes[i], current.getWidth());
+                if (generated.contains(size)) continue;
+                current = scaleDown(current, size);
+                s3Service.putBytes(variantKey(key, size, "jpg"), encode(current, "jpeg"), "image/jpeg");
+                if (webp) {
+                    s3Service.putBytes(variantKey(key, size, "webp"), encode(current, "webp"), "image/webp");
+                }
+                generated.add(size);
+            }
+
+            Collections.sort(generated);
+            thumbnail.setSizes(generated.stream().map(String::valueOf).collect(Collectors.joining(",")));
+            thumbnail.setWebp(webp);
+            thumbnail.setStatus(CoverThumbnail.Status.READY);
+            thumbnailRepository.save(thumbnail);
+            ready.put(key, toVariants(thumbnail));
+        } catch (Exception e) {
+            log.warn("Failed to generate thumbnails for {}: {}", key, e.getMessage());
+            thumbnail.setStatus(CoverThumbnail.Status.FAILED);
+            thumbnailRepository.save(thumbnail);
+        }
+    }
+
+    /**
+     * Decode an image, subsampling while reading so a huge source never has to be held at full resolution.
+     * The dimensions are read from the header first, so oversized images are refused before their raster.
+     */
+    private static BufferedImage decode(InputStream source, int largestSize) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(source)) {
+            if (in == null) return null;
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) return null;
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if ((long) width * height > MAX_SOURCE_PIXELS) {
+                    throw new IOException("Image too large: " + width + "x" + height);
+                }
+                ImageReadParam param = reader.getDefaultReadParam();
+                int subsampling = Math.max(1, Math.min(width, height) / largestSize);
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private static BufferedImage squareCrop(BufferedImage image) {
+        int edge = Math.min(image.getWidth(), image.getHeight());
+        return image.getSubimage((image.getWidth() - edge) / 2, (image.getHeight() - edge) / 2, edge, edge);
+    }
+
+    // Halve with bilinear filtering until close, then resize exactly; one big bilinear step aliases badly
+    private static BufferedImage scaleDown(BufferedImage image, int size) {
+        BufferedImage current = image;
+        int edge = image.getWidth();
+        do {
+            edge = Math.max(size, edge / 2);
+            current = resize(current, edge);
+        } while (edge > size);
+        return current;
+    }
+
+    private static BufferedImage resize(BufferedImage image, int edge) {
+        // Opaque RGB on white: JPEG has no alpha channel
+        BufferedImage resized = new BufferedImage(edge, edge, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = resized.createGraphics();
+        try {
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, edge, edge);
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(image, 0, 0, edge, edge, null);
+        } finally {
+            g.dispose();
+        }
+        return resized;
+    }
+
+    private byte[] encode(BufferedImage image, String format) throws IOException {
+        ImageWriter writer = firstWriter(format);
+        if (writer == null) throw new IOException("No ImageIO writer for " + format);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream stream = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(stream);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if (param.canWriteCompressed()) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                if (param.getCompressionType() == null && param.getCompressionTypes().length > 0) {
+                    param.setCompressionType(param.getCompressionTypes()[0]);
+                }
+                param.setCompressionQuality(jpegQuality);
+            }
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    private static ImageWriter firstWriter(String format) {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(format);
+        return writers.hasNext() ? writers.next() : null;
+    }
+
+    private static Variants toVariants(CoverThumbnail thumbnail) {
+        int[] sizes = Arrays.stream(thumbnail.getSizes().split(",")).mapToInt(Integer::parseInt).toArray();
+        return new Variants(sizes, thumbnail.isWebp());
+    }
+
+    /**
+     * folder/thumbs/name_ext-size.format next to the source, e.g. cover/thumbs/abc_jpg-256.jpg for cover/abc.jpg
+     */
+    static String variantKey(String sourceKey, int size, String format) {
+        return variantPrefix(sourceKey) + size + "." + format;
+    }
+
+    /**
+     * Start of every variant key of a source, e.g. cover/thumbs/abc_jpg- for cover/abc.jpg
+     */
+    static String variantPrefix(String sourceKey) {
+        int slash = sourceKey.lastIndexOf('/');
+        String folder = slash >= 0 ? sourceKey.substring(0, slash + 1) : "";
+        String name = sourceKey.substring(slash + 1).replace('.', '_');
+        return folder + THUMBNAIL_FOLDER + "/" + name + "-";
+    }
+
+    /**
+     * Whether a key is a thumbnail variant rather than an uploaded file
+     */
+    static boolean isVariantKey(String key) {
+        return key.contains("/" + THUMBNAIL_FOLDER + "/");
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.media_controller_iot.service;
+
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress of streaming uploads, so clients can poll while their request body is still being sent.
+ * Finished entries are kept for a while and then dropped.
+ */
+@Service
+public class UploadProgressService {
+
+    private static final long FINISHED_RETENTION_MS = 10 * 60 * 1000;
+
+    public enum Status { RECEIVING, COMPLETED, FAILED }
+
+    public static class Progress {
+        private final String uploadId;
+        private final String userId;
+        private final String fileName;
+        private final long expectedBytes;
+        private final AtomicLong receivedBytes = new AtomicLong();
+        private final AtomicLong uploadedBytes = new AtomicLong();
+        private volatile Status status = Status.RECEIVING;
+        private volatile String error;
+        private volatile long finishedAt;
+
+        Progress(String uploadId, String userId, String fileName, long expectedBytes) {
+            this.uploadId = uploadId;
+            this.userId = userId;
+            this.fileName = fileName;
+            this.expectedBytes = expectedBytes;
+        }
+
+        public String getUploadId() {
+            return uploadId;
+        }
+
+        public String getUserId() {
+            return userId;
+        }
+
+        public void received(long bytes) {
+            receivedBytes.addAndGet(bytes);
+        }
+
+        public void uploaded(long bytes) {
+            uploadedBytes.addAndGet(bytes);
+        }
+
+        public long getReceivedBytes() {
+            return receivedBytes.get();
+        }
+
+        public void completed() {
+            status = Status.COMPLETED;
+            finishedAt = System.currentTimeMillis();
+        }
+
+        public void failed(String message) {
+            error = message;
+            status = Status.FAILED;
+            finishedAt = System.currentTimeMillis();
+        }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new HashMap<>();
+            map.put("uploadId", uploadId);
+            map.put("fileName", fileName);
+            map.put("expectedBytes", expectedBytes);
+            map.put("receivedBytes", receivedBytes.get());
+            map.put("uploadedBytes", uploadedBytes.get());
+            map.put("status", status);
+            if (error != null) map.put("error", error);
+            return map;
+        }
+    }
+
+    private final Map<String, Progress> uploads = new ConcurrentHashMap<>();
+
+    /**
+     * @param expectedBytes the Content-Length, or -1 if unknown
+     * @return null if an upload with this ID is already in progress
+     */
+    public Progress start(String uploadId, String userId, String fileName, long expectedBytes) {
+        Progress progress = new Progress(uploadId, userId, fileName, expectedBytes);
+        return uploads.putIfAbsent(uploadId, progress) == null ? progress : null;
+    }
+
+    public Progress get(String uploadId) {
+        return uploads.get(uploadId);
+    }
+
+    @Scheduled(fixedDelay = 60_000)
+    public void evictFinished() {
+        long cutoff = System.currentTimeMillis() - FINISHED_RETENTION_MS;
+        uploads.values().removeIf(p -> p.status != Status.RECEIVING && p.finishedAt < cutoff);
+    }
+}
@@ -0,0 +1,272 @@
+package com.example.media_controller_iot.service;
+
+import com.example.media_controller_iot.models.VolumeSeriesBlock;
+import com.example.media_controller_iot.repository.VolumeSeriesBlockRepository;
+import com.example.media_controller_iot.util.VolumeBlockCodec;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+/**
+ * Volume history stored as compressed fixed-size blocks instead of one row per change.
+ * The newest block stays open in memory and is rewritten on each flush until it fills up.
+ * A full block whose write fails is kept in memory (and still answers queries) until a flush stores it.
+ */
+@Service
+public class VolumeSeriesService {
+
+    public static final int BLOCK_SIZE = 256;
+    // Full blocks kept for retry while the database is unavailable; about 15 minutes of readings at 4/s
+    private static final int MAX_UNSAVED_BLOCKS = 16;
+
+    private static final Logger log = LoggerFactory.getLogger(VolumeSeriesService.class);
+
+    private final VolumeSeriesBlockRepository blockRepository;
+
+    private final long[] openTimes = new long[BLOCK_SIZE];
+    private final int[] openValues = new int[BLOCK_SIZE];
+    private int openCount;
+    private Long openBlockId;
+    private boolean openDirty;
+    // Full blocks whose write failed, oldest first
+    private final List<VolumeSeriesBlock> unsaved = new ArrayList<>();
+
+    public VolumeSeriesService(VolumeSeriesBlockRepository blockRepository) {
+        this.blockRepository = blockRepository;
+    }
+
+    /**
+     * Reopen the newest block if it was persisted before it filled up
+     */
+    @PostConstruct
+    public synchronized void resumeOpenBlock() {
+        try {
+            blockRepository.findTopByOrderByStartTimeDesc()
+                    .filter(block -> block.getPointCount() < BLOCK_SIZE)
+                    .ifPresent(block -> {
+                        openCount = VolumeBlockCodec.decode(block.getData(), openTimes, openValues);
+                        openBlockId = block.getId();
+                    });
+        } catch (Exception e) {
+            log.warn("Could not resume open volume block: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Append a volume reading taken now
+     */
+    public synchronized void append(int volume) {
+        long now = System.currentTimeMillis();
+        // Keep timestamps monotonic within a block
+        if (openCount > 0 && now < openTimes[openCount - 1]) now = openTimes[openCount - 1];
+
+        openTimes[openCount] = now;
+        openValues[openCount] = volume;
+        openCount++;
+        openDirty = true;
+
+        if (openCount == BLOCK_SIZE) {
+            VolumeSeriesBlock block = openBlock();
+            if (!save(block)) {
+                if (unsaved.size() == MAX_UNSAVED_BLOCKS) {
+                    VolumeSeriesBlock dropped = unsaved.remove(0);
+                    log.error("Dropping unsaved volume block starting at {}", dropped.getStartTime());
+                }
+                unsaved.add(block);
+            }
+            openCount = 0;
+            openBlockId = null;
+            openDirty = false;
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${volume-series.flush-interval-ms:60000}")
+    @PreDestroy
+    public synchronized void flush() {
+        while (!unsaved.isEmpty() && save(unsaved.get(0))) {
+            unsaved.remove(0);
+        }
+        if (openDirty && openCount > 0) {
+            VolumeSeriesBlock block = openBlock();
+            if (save(block)) {
+                openBlockId = block.getId();
+                openDirty = false;
+            }
+        }
+    }
+
+    /**
+     * All raw points in [from, to], as {time, volume} pairs
+     */
+    public List<long[]> range(long from, long to) {
+        List<long[]> points = new ArrayList<>();
+        from = Math.max(0, from);
+        if (to < from) return points;
+        long[] times = new long[BLOCK_SIZE];
+        int[] values = new int[BLOCK_SIZE];
+
+        for (Snapshot block : blocksOverlapping(from, to)) {
+            int n = block.decode(times, values);
+            for (int i = 0; i < n; i++) {
+                if (times[i] >= from && times[i] <= to) points.add(new long[]{times[i], values[i]});
+            }
+        }
+        return points;
+    }
+
+    /**
+     * Points in [from, to] reduced to at most maxPoints buckets with avg/min/max per bucket.
+     * Blocks that fall inside a single bucket are folded in from their stored aggregates.
+     */
+    public List<Map<String, Object>> downsample(long from, long to, int maxPoints) {
+        from = Math.max(0, from);
+        if (to < from) return List.of();
+        int buckets = Math.max(1, maxPoints);
+        // Non-negative and no overflow since 0 <= from <= to; (to - from) / width < buckets
+        long width = (to - from) / buckets + 1;
+        long[] count = new long[buckets];
+        long[] sum = new long[buckets];
+        int[] min = new int[buckets];
+        int[] max = new int[buckets];
+
+        long[] times = new long[BLOCK_SIZE];
+        int[] values = new int[BLOCK_SIZE];
+
+        for (Snapshot block : blocksOverlapping(from, to)) {
+            int first = (int) ((block.startTime - from) / width);
+            int last = (int) ((block.endTime - from) / width);
+            if (block.startTime >= from && block.endTime <= to && first == last) {
+                fold(count, sum, min, max, first, block.pointCount, block.volumeSum, block.minVolume, block.maxVolume);
+                continue;
+            }
+            int n = block.decode(times, values);
+            for (int i = 0; i < n; i++) {
+                if (times[i] < from || times[i] > to) continue;
+                fold(count, sum, min, max, (int) ((times[i] - from) / width), 1, values[i], values[i], values[i]);
+            }
+        }
+
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (int b = 0; b < buckets; b++) {
+            if (count[b] == 0) continue;
+            result.add(Map.of(
+                    "time", from + b * width,
+                    "avg", (double) sum[b] / count[b],
+                    "min", min[b],
+                    "max", max[b],
+                    "samples", count[b]
+            ));
+        }
+        return result;
+    }
+
+    private static void fold(long[] count, long[] sum, int[] min, int[] max, int bucket,
+                             long n, long total, int lo, int hi) {
+        if (count[bucket] == 0) {
+            min[bucket] = lo;
+            max[bucket] = hi;
+        } else {
+            min[bucket] = Math.min(min[bucket], lo);
+            max[bucket] = Math.max(max[bucket], hi);
+        }
+        count[bucket] += n;
+        sum[bucket] += total;
+    }
+
+    private List<Snapshot> blocksOverlapping(long from, long to) {
+        Set<Long> skipIds = new HashSet<>();
+        List<Snapshot> inMemory = new ArrayList<>();
+        synchronized (this) {
+            if (openBlockId != null) skipIds.add(openBlockId);
+            for (VolumeSeriesBlock block : unsaved) {
+                if (block.getId() != null) skipIds.add(block.getId());
+                if (block.getStartTime() <= to && block.getEndTime() >= from) inMemory.add(Snapshot.of(block));
+            }
+            if (openCount > 0 && openTimes[0] <= to && openTimes[openCount - 1] >= from) {
+                inMemory.add(Snapshot.of(openTimes, openValues, openCount));
+            }
+        }
+
+        List<Snapshot> blocks = new ArrayList<>();
+        for (VolumeSeriesBlock block : blockRepository.findOverlapping(from, to)) {
+            // The in-memory copies are always at least as fresh as the stored ones
+            if (skipIds.contains(block.getId())) continue;
+            blocks.add(Snapshot.of(block));
+        }
+        blocks.addAll(inMemory);
+        return blocks;
+    }
+
+    /**
+     * The open block as an entity, with the ID of its stored copy if it has one
+     */
+    private VolumeSeriesBlock openBlock() {
+        VolumeSeriesBlock block = new VolumeSeriesBlock();
+        block.setId(openBlockId);
+        block.setStartTime(openTimes[0]);
+        block.setEndTime(openTimes[openCount - 1]);
+        block.setPointCount(openCount);
+
+        int lo = Integer.MAX_VALUE;
+        int hi = Integer.MIN_VALUE;
+        long total = 0;
+        for (int i = 0; i < openCount; i++) {
+            lo = Math.min(lo, openValues[i]);
+            hi = Math.max(hi, openValues[i]);
+            total += openValues[i];
+        }
+        block.setMinVolume(lo);
+        block.setMaxVolume(hi);
+        block.setVolumeSum(total);
+        block.setData(VolumeBlockCodec.encode(openTimes, openValues, openCount));
+        return block;
+    }
+
+    /**
+     * Insert or update a block, setting its ID
+     * @return false if the write failed
+     */
+    private boolean save(VolumeSeriesBlock block) {
+        try {
+            block.setId(blockRepository.save(block).getId());
+            return true;
+        } catch (Exception e) {
+            log.error("Failed to persist volume block starting at {}", block.getStartTime(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Immutable view of a block, either loaded from the database or copied from the open block
+     */
+    private record Snapshot(long startTime, long endTime, int pointCount, long volumeSum,
+                            int minVolume, int maxVolume, byte[] data) {
+
+        static Snapshot of(VolumeSeriesBlock block) {
+            return new Snapshot(block.getStartTime(), block.getEndTime(), block.getPointCount(),
+                    block.getVolumeSum(), block.getMinVolume(), block.getMaxVolume(), block.getData());
+        }
+
+        static Snapshot of(long[] times, int[] values, int count) {
+            long total = 0;
+            int lo = Integer.MAX_VALUE;
+            int hi = Integer.MIN_VALUE;
+            for (int i = 0; i < count; i++) {
+                total += values[i];
+                lo = Math.min(lo, values[i]);
+                hi = Math.max(hi, values[i]);
+            }
+            return new Snapshot(times[0], times[count - 1], count, total, lo, hi,
+                    VolumeBlockCodec.encode(times, values, count));
+        }
+
+        int decode(long[] times, int[] values) {
+            return VolumeBlockCodec.decode(data, times, values);
+        }
+    }
+}
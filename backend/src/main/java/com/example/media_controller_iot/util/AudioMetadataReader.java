@@ -0,0 +1,563 @@
+package com.example.media_controller_iot.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Duration, bitrate, sample rate and title/artist tags of MP3, FLAC, Ogg (Vorbis/Opus) and WAV files,
+ * read from their headers only: ID3v2/ID3v1 tags and the Xing/VBRI frame index for MP3, STREAMINFO and
+ * Vorbis comments for FLAC, the identification/comment headers and the last page's granule position for Ogg,
+ * and the fmt/data chunks for WAV. A typical file needs a few kilobytes from its start and end, so a
+ * {@link Source} can be a handful of ranged reads or the {@link Capture} of an upload passing through.
+ */
+public final class AudioMetadataReader {
+
+    /**
+     * Random-access view of a file that may only have some of its bytes available
+     */
+    public interface Source {
+        long size();
+
+        /**
+         * Read up to length bytes at position
+         * @return the number of bytes read, fewer than length (possibly 0) past the end or where bytes are not available
+         */
+        int read(long position, byte[] buffer, int offset, int length) throws IOException;
+    }
+
+    /**
+     * @param codec - mp3, mp2, mp1, flac, vorbis, opus, pcm or pcm_float
+     * @param durationMs - Null if it cannot be worked out from the headers
+     * @param bitrate - Average bitrate in kbit/s
+     */
+    public record Metadata(String codec, Long durationMs, Integer bitrate, Integer sampleRate,
+                           String title, String artist) {
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new HashMap<>();
+            map.put("codec", codec);
+            map.put("durationMs", durationMs);
+            map.put("bitrate", bitrate);
+            map.put("sampleRate", sampleRate);
+            map.put("title", title);
+            map.put("artist", artist);
+            return map;
+        }
+    }
+
+    // Bytes of a tag or header block that are parsed at most; embedded cover art usually comes after the text
+    private static final int TAG_LIMIT = 64 * 1024;
+    // Where to look for the first MPEG frame after the ID3v2 tag
+    private static final int SYNC_SEARCH = 64 * 1024;
+    // The last Ogg page starts within this many bytes of the end (a page is at most 65307 bytes)
+    private static final int OGG_TAIL = 65_536 + 512;
+    private static final int MAX_CHUNKS = 64;
+
+    private static final int[][] MPEG_BITRATES = {
+            // MPEG-1 layer I, II, III
+            {32, 64, 96, 128, 160, 192, 224, 256, 288, 320, 352, 384, 416, 448},
+            {32, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320, 384},
+            {32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320},
+            // MPEG-2/2.5 layer I, II and III
+            {32, 48, 56, 64, 80, 96, 112, 128, 144, 160, 176, 192, 224, 256},
+            {8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160},
+    };
+    private static final int[] MPEG1_SAMPLE_RATES = {44100, 48000, 32000};
+
+    private AudioMetadataReader() {
+    }
+
+    /**
+     * @return the file's metadata, or null if it is not a format we recognise (or its headers are malformed)
+     */
+    public static Metadata read(Source source) throws IOException {
+        try {
+            byte[] start = bytes(source, 0, 12);
+            if (start.length < 4) return null;
+            if (start.length == 12 && ascii(start, 0, 4).equals("RIFF") && ascii(start, 8, 4).equals("WAVE")) {
+                return readWav(source);
+            }
+            if (ascii(start, 0, 4).equals("OggS")) {
+                return readOgg(source);
+            }
+
+            String[] tags = new String[2];
+            long audioStart = 0;
+            if (ascii(start, 0, 3).equals("ID3") && start.length >= 10) {
+                int tagSize = syncSafe(start, 6);
+                boolean footer = (start[5] & 0x10) != 0;
+                readId3v2(bytes(source, 10, Math.min(tagSize, TAG_LIMIT)), start[3], start[5], tags);
+                audioStart = 10L + tagSize + (footer ? 10 : 0);
+            }
+            byte[] marker = bytes(source, audioStart, 4);
+            if (marker.length == 4 && ascii(marker, 0, 4).equals("fLaC")) {
+                return readFlac(source, audioStart + 4, tags);
+            }
+            return readMpeg(source, audioStart, tags);
+        } catch (IndexOutOfBoundsException | ArithmeticException e) {
+            // Truncated or inconsistent headers
+            return null;
+        }
+    }
+
+    private static Metadata readMpeg(Source source, long audioStart, String[] tags) throws IOException {
+        byte[] window = bytes(source, audioStart, SYNC_SEARCH);
+        int frame = -1;
+        for (int i = 0; i + 4 <= window.length; i++) {
+            int length = mpegFrameLength(window, i);
+            if (length <= 0) continue;
+            // The next frame must follow, unless it is beyond what we read; this skips false syncs in junk
+            if (i + length + 4 > window.length || mpegFrameLength(window, i + length) > 0) {
+                frame = i;
+                break;
+            }
+        }
+        if (frame < 0) return null;
+
+        int version = (window[frame + 1] >> 3) & 3;
+        int layer = 4 - ((window[frame + 1] >> 1) & 3);
+        boolean mpeg1 = version == 3;
+        int bitrate = mpegBitrate(window, frame);
+        int sampleRate = mpegSampleRate(window, frame);
+        boolean mono = ((window[frame + 3] >> 6) & 3) == 3;
+        int samplesPerFrame = layer == 1 ? 384 : layer == 3 && !mpeg1 ? 576 : 1152;
+
+        long size = source.size();
+        byte[] id3v1 = size >= 128 ? bytes(source, size - 128, 128) : new byte[0];
+        boolean hasId3v1 = id3v1.length == 128 && ascii(id3v1, 0, 3).equals("TAG");
+        if (hasId3v1) {
+            if (tags[0] == null) tags[0] = text(id3v1, 3, 30, StandardCharsets.ISO_8859_1);
+            if (tags[1] == null) tags[1] = text(id3v1, 33, 30, StandardCharsets.ISO_8859_1);
+        }
+        long audioBytes = size - audioStart - frame - (hasId3v1 ? 128 : 0);
+
+        // A VBR file's first frame carries a Xing/Info or VBRI header with the frame count
+        long frames = 0;
+        int xing = frame + 4 + (mpeg1 ? (mono ? 17 : 32) : (mono ? 9 : 17));
+        int vbri = frame + 4 + 32;
+        if (xing + 16 <= window.length && (ascii(window, xing, 4).equals("Xing") || ascii(window, xing, 4).equals("Info"))) {
+            int flags = int32(window, xing + 4);
+            int pos = xing + 8;
+            if ((flags & 1) != 0) {
+                frames = int32(window, pos) & 0xFFFFFFFFL;
+                pos += 4;
+            }
+            if ((flags & 2) != 0) {
+                long bytes = int32(window, pos) & 0xFFFFFFFFL;
+                if (bytes > 0) audioBytes = bytes;
+            }
+        } else if (vbri + 18 <= window.length && ascii(window, vbri, 4).equals("VBRI")) {
+            long bytes = int32(window, vbri + 10) & 0xFFFFFFFFL;
+            if (bytes > 0) audioBytes = bytes;
+            frames = int32(window, vbri + 14) & 0xFFFFFFFFL;
+        }
+
+        Long durationMs;
+        if (frames > 0) {
+            durationMs = frames * samplesPerFrame * 1000 / sampleRate;
+            // Bits per millisecond is kbit/s
+            if (durationMs > 0) bitrate = (int) (audioBytes * 8 / durationMs);
+        } else {
+            // Constant bitrate: every frame has the first frame's bitrate
+            durationMs = audioBytes > 0 ? audioBytes * 8 / bitrate : null;
+        }
+        return new Metadata("mp" + layer, durationMs, bitrate, sampleRate, tags[0], tags[1]);
+    }
+
+    /**
+     * @return the length of the MPEG audio frame whose header starts at i, or 0 if there is no valid header there
+     */
+    private static int mpegFrameLength(byte[] data, int i) {
+        if (i + 4 > data.length) return 0;
+        if ((data[i] & 0xFF) != 0xFF || (data[i + 1] & 0xE0) != 0xE0) return 0;
+        int version = (data[i + 1] >> 3) & 3;
+        int layerBits = (data[i + 1] >> 1) & 3;
+        int bitrateIndex = (data[i + 2] >> 4) & 15;
+        int sampleRateIndex = (data[i + 2] >> 2) & 3;
+        if (version == 1 || layerBits == 0 || bitrateIndex == 0 || bitrateIndex == 15 || sampleRateIndex == 3) {
+            return 0;
+        }
+        int layer = 4 - layerBits;
+        int bitrate = mpegBitrate(data, i) * 1000;
+        int sampleRate = mpegSampleRate(data, i);
+        int padding = (data[i + 2] >> 1) & 1;
+        if (layer == 1) return (12 * bitrate / sampleRate + padding) * 4;
+        int samplesPerFrame = layer == 3 && version != 3 ? 576 : 1152;
+        return samplesPerFrame / 8 * bitrate / sampleRate + padding;
+    }
+
+    private static int mpegBitrate(byte[] data, int i) {
+        int version = (data[i + 1] >> 3) & 3;
+        int layer = 4 - ((data[i + 1] >> 1) & 3);
+        int table = version == 3 ? layer - 1 : layer == 1 ? 3 : 4;
+        return MPEG_BITRATES[table][((data[i + 2] >> 4) & 15) - 1];
+    }
+
+    private static int mpegSampleRate(byte[] data, int i) {
+        int version = (data[i + 1] >> 3) & 3;
+        int rate = MPEG1_SAMPLE_RATES[(data[i + 2] >> 2) & 3];
+        return version == 3 ? rate : version == 2 ? rate / 2 : rate / 4;
+    }
+
+    /**
+     * Title and artist text frames of an ID3v2.2-2.4 tag (without its 10-byte header)
+     */
+    private static void readId3v2(byte[] tag, byte version, byte flags, String[] tags) {
+        if (version < 2 || version > 4) return;
+        if ((flags & 0x80) != 0 && version < 4) {
+            // Tag-wide unsynchronisation: 0xFF 0x00 stands for 0xFF
+            tag = resynchronise(tag);
+        }
+        int pos = 0;
+        if ((flags & 0x40) != 0 && version > 2 && tag.length >= 4) {
+            // Extended header: its size excludes itself in v2.3 and includes itself in v2.4
+            pos = version == 3 ? 4 + int32(tag, 0) : syncSafe(tag, 0);
+        }
+        int idLength = version == 2 ? 3 : 4;
+        int headerLength = version == 2 ? 6 : 10;
+        while (pos >= 0 && pos + headerLength <= tag.length && tag[pos] != 0) {
+            String id = ascii(tag, pos, idLength);
+            int size = version == 2 ? int24(tag, pos + 3) : version == 3 ? int32(tag, pos + 4) : syncSafe(tag, pos + 4);
+            int body = pos + headerLength;
+            if (size <= 0 || body + size > tag.length) break;
+            if (id.equals("TIT2") || id.equals("TT2")) {
+                tags[0] = id3Text(tag, body, size);
+            } else if (id.equals("TPE1") || id.equals("TP1")) {
+                tags[1] = id3Text(tag, body, size);
+            }
+            pos = body + size;
+        }
+    }
+
+    private static String id3Text(byte[] data, int offset, int length) {
+        Charset charset = switch (data[offset]) {
+            case 1 -> StandardCharsets.UTF_16;
+            case 2 -> StandardCharsets.UTF_16BE;
+            case 3 -> StandardCharsets.UTF_8;
+            default -> StandardCharsets.ISO_8859_1;
+        };
+        return text(data, offset + 1, length - 1, charset);
+    }
+
+    private static byte[] resynchronise(byte[] data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length);
+        for (int i = 0; i < data.length; i++) {
+            out.write(data[i]);
+            if ((data[i] & 0xFF) == 0xFF && i + 1 < data.length && data[i + 1] == 0) i++;
+        }
+        return out.toByteArray();
+    }
+
+    private static Metadata readFlac(Source source, long position, String[] tags) throws IOException {
+        int sampleRate = 0;
+        long totalSamples = 0;
+        boolean last = false;
+        for (int block = 0; block < MAX_CHUNKS && !last; block++) {
+            byte[] header = bytes(source, position, 4);
+            if (header.length < 4) return null;
+            last = (header[0] & 0x80) != 0;
+            int type = header[0] & 0x7F;
+            int length = int24(header, 1);
+            if (type == 0) {
+                byte[] info = bytes(source, position + 4, 34);
+                if (info.length < 18) return null;
+                sampleRate = ((info[10] & 0xFF) << 12) | ((info[11] & 0xFF) << 4) | ((info[12] & 0xF0) >> 4);
+                totalSamples = ((long) (info[13] & 0x0F) << 32) | (int32(info, 14) & 0xFFFFFFFFL);
+            } else if (type == 4) {
+                readVorbisComments(bytes(source, position + 4, Math.min(length, TAG_LIMIT)), 0, tags);
+            }
+            position += 4 + length;
+        }
+        if (sampleRate == 0) return null;
+
+        Long durationMs = totalSamples > 0 ? totalSamples * 1000 / sampleRate : null;
+        Integer bitrate = durationMs != null && durationMs > 0 ? (int) ((source.size() - position) * 8 / durationMs) : null;
+        return new Metadata("flac", durationMs, bitrate, sampleRate, tags[0], tags[1]);
+    }
+
+    private static Metadata readOgg(Source source) throws IOException {
+        byte[] head = bytes(source, 0, TAG_LIMIT);
+        byte[][] packets = new byte[2][];
+        int serial = 0;
+        ByteArrayOutputStream packet = new ByteArrayOutputStream();
+        int found = 0;
+        int page = 0;
+        // Reassemble the first two packets (identification and comment headers) of the first stream
+        while (found < 2 && page + 27 <= head.length && ascii(head, page, 4).equals("OggS")) {
+            int segments = head[page + 26] & 0xFF;
+            if (page == 0) serial = int32le(head, 14);
+            int data = page + 27 + segments;
+            boolean sameStream = int32le(head, page + 14) == serial;
+            for (int s = 0; s < segments && found < 2 && page + 27 + s < head.length; s++) {
+                int lacing = head[page + 27 + s] & 0xFF;
+                if (sameStream) {
+                    int available = Math.max(0, Math.min(lacing, head.length - data));
+                    if (available > 0) packet.write(head, data, available);
+                    if (lacing < 255) {
+                        packets[found++] = packet.toByteArray();
+                        packet.reset();
+                    }
+                }
+                data += lacing;
+            }
+            page = data;
+        }
+        if (found < 2 && packet.size() > 0) {
+            // The comment header runs past what we read (e.g. embedded cover art); parse what we have
+            packets[found++] = packet.toByteArray();
+        }
+        if (found == 0) return null;
+
+        byte[] identification = packets[0];
+        String codec;
+        int sampleRate;
+        int granuleRate;
+        long preSkip = 0;
+        Integer nominalBitrate = null;
+        if (identification.length >= 28 && identification[0] == 1 && ascii(identification, 1, 6).equals("vorbis")) {
+            codec = "vorbis";
+            sampleRate = int32le(identification, 12);
+            granuleRate = sampleRate;
+            int nominal = int32le(identification, 20);
+            if (nominal > 0) nominalBitrate = nominal / 1000;
+        } else if (identification.length >= 16 && ascii(identification, 0, 8).equals("OpusHead")) {
+            codec = "opus";
+            sampleRate = int32le(identification, 12);
+            // Opus granule positions always count 48kHz samples
+            granuleRate = 48000;
+            preSkip = (identification[10] & 0xFF) | ((identification[11] & 0xFF) << 8);
+            if (sampleRate == 0) sampleRate = granuleRate;
+        } else {
+            return null;
+        }
+        if (granuleRate <= 0) return null;
+
+        String[] tags = new String[2];
+        byte[] comments = packets[1];
+        if (comments != null) {
+            if (comments.length > 7 && comments[0] == 3 && ascii(comments, 1, 6).equals("vorbis")) {
+                readVorbisComments(comments, 7, tags);
+            } else if (comments.length > 8 && ascii(comments, 0, 8).equals("OpusTags")) {
+                readVorbisComments(comments, 8, tags);
+            }
+        }
+
+        // The last page's granule position is the stream's length in samples
+        long size = source.size();
+        long tailStart = Math.max(0, size - OGG_TAIL);
+        byte[] tail = bytes(source, tailStart, (int) (size - tailStart));
+        Long durationMs = null;
+        for (int i = tail.length - 27; i >= 0; i--) {
+            if (tail[i] == 'O' && ascii(tail, i, 4).equals("OggS") && int32le(tail, i + 14) == serial) {
+                long granule = int64le(tail, i + 6);
+                if (granule > preSkip) durationMs = (granule - preSkip) * 1000 / granuleRate;
+                break;
+            }
+        }
+        Integer bitrate = nominalBitrate;
+        if (durationMs != null && durationMs > 0) bitrate = (int) (size * 8 / durationMs);
+        return new Metadata(codec, durationMs, bitrate, sampleRate, tags[0], tags[1]);
+    }
+
+    /**
+     * Vorbis comment block: vendor string, then "KEY=value" entries, all little-endian length-prefixed
+     */
+    private static void readVorbisComments(byte[] data, int offset, String[] tags) {
+        if (offset + 8 > data.length) return;
+        int pos = offset + 4 + int32le(data, offset);
+        if (pos < 0 || pos + 4 > data.length) return;
+        int count = int32le(data, pos);
+        pos += 4;
+        for (int i = 0; i < count && pos + 4 <= data.length; i++) {
+            int length = int32le(data, pos);
+            pos += 4;
+            if (length < 0 || pos + length > data.length) return;
+            String comment = new String(data, pos, length, StandardCharsets.UTF_8);
+            int equals = comment.indexOf('=');
+            if (equals > 0) {
+                String key = comment.substring(0, equals);
+                String value = comment.substring(equals + 1).trim();
+                if (key.equalsIgnoreCase("TITLE") && tags[0] == null && !value.isEmpty()) tags[0] = value;
+                if (key.equalsIgnoreCase("ARTIST") && tags[1] == null && !value.isEmpty()) tags[1] = value;
+            }
+            pos += length;
+        }
+    }
+
+    private static Metadata readWav(Source source) throws IOException {
+        long size = source.size();
+        long position = 12;
+        String codec = null;
+        int sampleRate = 0;
+        int byteRate = 0;
+        long dataSize = -1;
+        String[] tags = new String[2];
+        for (int chunk = 0; chunk < MAX_CHUNKS && position + 8 <= size; chunk++) {
+            byte[] header = bytes(source, position, 8);
+            if (header.length < 8) break;
+            String id = ascii(header, 0, 4);
+            long length = int32le(header, 4) & 0xFFFFFFFFL;
+            if (id.equals("fmt ")) {
+                byte[] format = bytes(source, position + 8, 16);
+                if (format.length < 16) return null;
+                int formatTag = (format[0] & 0xFF) | ((format[1] & 0xFF) << 8);
+                codec = formatTag == 3 ? "pcm_float" : formatTag == 1 || formatTag == 0xFFFE ? "pcm" : "wav";
+                sampleRate = int32le(format, 4);
+                byteRate = int32le(format, 8);
+            } else if (id.equals("data")) {
+                // Streamed writers leave the size unset (0 or 0xFFFFFFFF); the data then runs to the end
+                long available = size - position - 8;
+                dataSize = length == 0 || length > available ? available : length;
+                length = dataSize;
+            } else if (id.equals("LIST") && length >= 4 && length <= TAG_LIMIT) {
+                readInfoList(bytes(source, position + 8, (int) length), tags);
+            }
+            position += 8 + length + (length & 1);
+        }
+        if (codec == null) return null;
+
+        Long durationMs = dataSize >= 0 && byteRate > 0 ? dataSize * 1000 / byteRate : null;
+        Integer bitrate = byteRate > 0 ? byteRate * 8 / 1000 : null;
+        return new Metadata(codec, durationMs, bitrate, sampleRate, tags[0], tags[1]);
+    }
+
+    /**
+     * LIST/INFO chunk: INAM is the title, IART the artist
+     */
+    private static void readInfoList(byte[] list, String[] tags) {
+        if (list.length < 4 || !ascii(list, 0, 4).equals("INFO")) return;
+        int pos = 4;
+        while (pos + 8 <= list.length) {
+            String id = ascii(list, pos, 4);
+            int length = int32le(list, pos + 4);
+            if (length < 0 || pos + 8 + length > list.length) return;
+            if (id.equals("INAM")) tags[0] = text(list, pos + 8, length, StandardCharsets.UTF_8);
+            if (id.equals("IART")) tags[1] = text(list, pos + 8, length, StandardCharsets.UTF_8);
+            pos += 8 + length + (length & 1);
+        }
+    }
+
+    /**
+     * Up to length bytes at position; shorter if the source ends or has a gap there
+     */
+    private static byte[] bytes(Source source, long position, int length) throws IOException {
+        if (position < 0 || length <= 0) return new byte[0];
+        byte[] buffer = new byte[(int) Math.max(0, Math.min(length, source.size() - position))];
+        int read = 0;
+        while (read < buffer.length) {
+            int n = source.read(position + read, buffer, read, buffer.length - read);
+            if (n <= 0) break;
+            read += n;
+        }
+        return read == buffer.length ? buffer : Arrays.copyOf(buffer, read);
+    }
+
+    // Text up to the first NUL, trimmed; null if empty
+    private static String text(byte[] data, int offset, int length, Charset charset) {
+        if (length <= 0) return null;
+        String value = new String(data, offset, length, charset);
+        int end = value.indexOf('\0');
+        value = (end >= 0 ? value.substring(0, end) : value).trim();
+        return value.isEmpty() ? null : value;
+    }
+
+    private static String ascii(byte[] data, int offset, int length) {
+        if (offset + length > data.length) return "";
+        return new String(data, offset, length, StandardCharsets.ISO_8859_1);
+    }
+
+    private static int syncSafe(byte[] data, int offset) {
+        return ((data[offset] & 0x7F) << 21) | ((data[offset + 1] & 0x7F) << 14)
+                | ((data[offset + 2] & 0x7F) << 7) | (data[offset + 3] & 0x7F);
+    }
+
+    private static int int24(byte[] data, int offset) {
+        return ((data[offset] & 0xFF) << 16) | ((data[offset + 1] & 0xFF) << 8) | (data[offset + 2] & 0xFF);
+    }
+
+    private static int int32(byte[] data, int offset) {
+        return ((data[offset] & 0xFF) << 24) | ((data[offset + 1] & 0xFF) << 16)
+                | ((data[offset + 2] & 0xFF) << 8) | (data[offset + 3] & 0xFF);
+    }
+
+    private static int int32le(byte[] data, int offset) {
+        return (data[offset] & 0xFF) | ((data[offset + 1] & 0xFF) << 8)
+                | ((data[offset + 2] & 0xFF) << 16) | ((data[offset + 3] & 0xFF) << 24);
+    }
+
+    private static long int64le(byte[] data, int offset) {
+        return (int32le(data, offset) & 0xFFFFFFFFL) | ((long) int32le(data, offset + 4) << 32);
+    }
+
+    /**
+     * Keeps the first and last bytes of a stream as it passes, so an upload can be read from
+     * without buffering it: everything in between is reported as unavailable.
+     */
+    public static final class Capture implements Source {
+
+        // Enough for ID3v2 tags with cover art in front of the first frame, and for the last Ogg page
+        private static final int HEAD_BYTES = 1024 * 1024;
+        private static final int TAIL_BYTES = 128 * 1024;
+
+        private final byte[] head = new byte[HEAD_BYTES];
+        private int headLength;
+        // Ring buffer holding the last TAIL_BYTES bytes; stream position p is at p % TAIL_BYTES
+        private final byte[] tail = new byte[TAIL_BYTES];
+        private long size;
+
+        public void update(byte[] data, int offset, int length) {
+            if (headLength < head.length) {
+                int n = Math.min(length, head.length - headLength);
+                System.arraycopy(data, offset, head, headLength, n);
+                headLength += n;
+            }
+            if (length > tail.length) {
+                int skipped = length - tail.length;
+                offset += skipped;
+                size += skipped;
+                length = tail.length;
+            }
+            while (length > 0) {
+                int ringPosition = (int) (size % tail.length);
+                int n = Math.min(length, tail.length - ringPosition);
+                System.arraycopy(data, offset, tail, ringPosition, n);
+                offset += n;
+                length -= n;
+                size += n;
+            }
+        }
+
+        @Override
+        public long size() {
+            return size;
+        }
+
+        @Override
+        public int read(long position, byte[] buffer, int offset, int length) {
+            int read = 0;
+            while (read < length) {
+                long p = position + read;
+                int n;
+                if (p >= size) {
+                    break;
+                } else if (p < headLength) {
+                    n = (int) Math.min(length - read, headLength - p);
+                    System.arraycopy(head, (int) p, buffer, offset + read, n);
+                } else if (p >= size - tail.length) {
+                    int ringPosition = (int) (p % tail.length);
+                    n = (int) Math.min(length - read, Math.min(tail.length - ringPosition, size - p));
+                    System.arraycopy(tail, ringPosition, buffer, offset + read, n);
+                } else {
+                    break;
+                }
+                read += n;
+            }
+            return read;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.media_controller_iot.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Count-min sketch over long keys. Estimates never undercount; overcount is bounded
+ * by roughly total / width with high probability. Not thread-safe.
+ */
+public class CountMinSketch {
+
+    private static final long[] SEEDS = {
+            0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L, 0xD6E8FEB86659FD93L,
+            0xFF51AFD7ED558CCDL, 0xC4CEB9FE1A85EC53L, 0x94D049BB133111EBL, 0xBF58476D1CE4E5B9L
+    };
+
+    private final int depth;
+    private final int width;
+    private final long[] table;
+
+    public CountMinSketch(int depth, int width) {
+        if (depth < 1 || depth > SEEDS.length) throw new IllegalArgumentException("depth must be 1.." + SEEDS.length);
+        if (Integer.bitCount(width) != 1) throw new IllegalArgumentException("width must be a power of two");
+        this.depth = depth;
+        this.width = width;
+        this.table = new long[depth * width];
+    }
+
+    public void add(long key, long delta) {
+        for (int row = 0; row < depth; row++) {
+            table[row * width + index(key, row)] += delta;
+        }
+    }
+
+    public long estimate(long key) {
+        long min = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            min = Math.min(min, table[row * width + index(key, row)]);
+        }
+        return min;
+    }
+
+    public void clear() {
+        java.util.Arrays.fill(table, 0);
+    }
+
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(depth);
+        out.writeInt(width);
+        for (long cell : table) out.writeLong(cell);
+    }
+
+    public void read(DataInput in) throws IOException {
+        if (in.readInt() != depth || in.readInt() != width) {
+            throw new IOException("Sketch dimensions do not match snapshot");
+        }
+        for (int i = 0; i < table.length; i++) table[i] = in.readLong();
+    }
+
+    private int index(long key, int row) {
+        long h = (key ^ SEEDS[row]) * 0xBF58476D1CE4E5B9L;
+        h ^= h >>> 31;
+        return (int) h & (width - 1);
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.media_controller_iot.util;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash table from a primitive long key to a fixed-width row of long counters.
+ * Keys and counters live in flat arrays so hot-path increments never box or allocate.
+ * Not thread-safe; callers synchronize.
+ */
+public class LongKeyedCounters {
+
+    @FunctionalInterface
+    public interface RowConsumer {
+        void accept(long key, long[] counters, int offset);
+    }
+
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private final int width;
+    private long[] keys;
+    private long[] counters;
+    private int size;
+
+    public LongKeyedCounters(int width) {
+        this(width, 64);
+    }
+
+    public LongKeyedCounters(int width, int expectedKeys) {
+        this.width = width;
+        int capacity = Integer.highestOneBit(Math.max(4, expectedKeys * 2) - 1) << 1;
+        this.keys = new long[capacity];
+        this.counters = new long[capacity * width];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    /**
+     * Add delta to one counter of the row for key, creating the row if needed.
+     * Long.MIN_VALUE is reserved and may not be used as a key.
+     */
+    public void add(long key, int field, long delta) {
+        int slot = slotFor(key);
+        counters[slot * width + field] += delta;
+    }
+
+    public long get(long key, int field) {
+        int slot = find(key);
+        return slot < 0 ? 0 : counters[slot * width + field];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void forEach(RowConsumer consumer) {
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != EMPTY) {
+                consumer.accept(keys[slot], counters, slot * width);
+            }
+        }
+    }
+
+    /**
+     * Add every row of other into this table
+     */
+    public void addAll(LongKeyedCounters other) {
+        other.forEach((key, values, offset) -> {
+            int slot = slotFor(key);
+            for (int f = 0; f < width; f++) {
+                counters[slot * width + f] += values[offset + f];
+            }
+        });
+    }
+
+    private int find(long key) {
+        int mask = keys.length - 1;
+        for (int slot = mix(key) & mask; ; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) return slot;
+            if (keys[slot] == EMPTY) return -1;
+        }
+    }
+
+    private int slotFor(long key) {
+        if (key == EMPTY) throw new IllegalArgumentException("Reserved key: " + key);
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) return slot;
+            slot = (slot + 1) & mask;
+        }
+        if ((size + 1) * 4 > keys.length * 3) {
+            grow();
+            return slotFor(key);
+        }
+        keys[slot] = key;
+        size++;
+        return slot;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        long[] oldCounters = counters;
+        keys = new long[oldKeys.length * 2];
+        counters = new long[keys.length * width];
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+
+        int mask = keys.length - 1;
+        for (int old = 0; old < oldKeys.length; old++) {
+            if (oldKeys[old] == EMPTY) continue;
+            int slot = mix(oldKeys[old]) & mask;
+            while (keys[slot] != EMPTY) slot = (slot + 1) & mask;
+            keys[slot] = oldKeys[old];
+            System.arraycopy(oldCounters, old * width, counters, slot * width, width);
+            size++;
+        }
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,261 @@
+package com.example.media_controller_iot.util;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Player queue as a doubly linked list over primitive arrays.
+ * Every entry is linked twice: in play order and in shuffle order, so both can be walked
+ * without recomputing anything. Entries are addressed by handles that stay valid until the
+ * entry is removed (a generation counter makes stale handles miss instead of hitting a reused slot).
+ * Insert, remove and move are O(1). Not thread-safe; callers synchronize.
+ */
+public class QueueList {
+
+    public static final long NONE = -1;
+
+    private static final int PLAY = 0;
+    private static final int SHUFFLE = 1;
+
+    private long[] songIds;
+    private int[] generations;
+    private boolean[] live;
+    // [order][slot]
+    private int[][] next;
+    private int[][] prev;
+    private final int[] heads = {-1, -1};
+    private final int[] tails = {-1, -1};
+
+    private int used;
+    private int freeHead = -1;
+    private int size;
+    private long modCount;
+
+    public QueueList() {
+        this(16);
+    }
+
+    public QueueList(int initialCapacity) {
+        int capacity = Math.max(initialCapacity, 4);
+        songIds = new long[capacity];
+        generations = new int[capacity];
+        live = new boolean[capacity];
+        next = new int[][]{new int[capacity], new int[capacity]};
+        prev = new int[][]{new int[capacity], new int[capacity]};
+    }
+
+    /**
+     * Build a queue from song IDs in O(n); the shuffle order starts out equal to the play order
+     */
+    public static QueueList of(long[] songIds) {
+        QueueList queue = new QueueList(songIds.length);
+        for (long songId : songIds) {
+            queue.append(songId);
+        }
+        return queue;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Incremented by every structural change
+     */
+    public long modCount() {
+        return modCount;
+    }
+
+    public boolean contains(long handle) {
+        return slotOf(handle) >= 0;
+    }
+
+    public long songId(long handle) {
+        int slot = slotOf(handle);
+        if (slot < 0) throw new IllegalArgumentException("Unknown queue entry: " + handle);
+        return songIds[slot];
+    }
+
+    /**
+     * Add a song at the end of both orders
+     */
+    public long append(long songId) {
+        int slot = allocate(songId);
+        for (int order = PLAY; order <= SHUFFLE; order++) {
+            linkAfter(order, slot, tails[order]);
+        }
+        return handle(slot);
+    }
+
+    /**
+     * Add a song directly after an entry in both orders, or at the front when after is NONE
+     */
+    public long insertAfter(long after, long songId) {
+        int afterSlot = after == NONE ? -1 : slotOf(after);
+        if (after != NONE && afterSlot < 0) throw new IllegalArgumentException("Unknown queue entry: " + after);
+        int slot = allocate(songId);
+        for (int order = PLAY; order <= SHUFFLE; order++) {
+            linkAfter(order, slot, afterSlot);
+        }
+        return handle(slot);
+    }
+
+    public boolean remove(long handle) {
+        int slot = slotOf(handle);
+        if (slot < 0) return false;
+        for (int order = PLAY; order <= SHUFFLE; order++) {
+            unlink(order, slot);
+        }
+        live[slot] = false;
+        generations[slot]++;
+        next[PLAY][slot] = freeHead;
+        freeHead = slot;
+        size--;
+        modCount++;
+        return true;
+    }
+
+    /**
+     * Move an entry directly after another one in both orders, or to the front when after is NONE
+     */
+    public boolean moveAfter(long handle, long after) {
+        int slot = slotOf(handle);
+        int afterSlot = after == NONE ? -1 : slotOf(after);
+        if (slot < 0 || (after != NONE && afterSlot < 0)) return false;
+        if (slot == afterSlot) return true;
+        for (int order = PLAY; order <= SHUFFLE; order++) {
+            unlink(order, slot);
+            linkAfter(order, slot, afterSlot);
+        }
+        modCount++;
+        return true;
+    }
+
+    public long first(boolean shuffled) {
+        int slot = heads[order(shuffled)];
+        return slot < 0 ? NONE : handle(slot);
+    }
+
+    public long last(boolean shuffled) {
+        int slot = tails[order(shuffled)];
+        return slot < 0 ? NONE : handle(slot);
+    }
+
+    /**
+     * Entry after handle, or NONE at the end
+     */
+    public long next(long handle, boolean shuffled) {
+        int slot = slotOf(handle);
+        if (slot < 0) return NONE;
+        int nextSlot = next[order(shuffled)][slot];
+        return nextSlot < 0 ? NONE : handle(nextSlot);
+    }
+
+    /**
+     * Entry before handle, or NONE at the start
+     */
+    public long prev(long handle, boolean shuffled) {
+        int slot = slotOf(handle);
+        if (slot < 0) return NONE;
+        int prevSlot = prev[order(shuffled)][slot];
+        return prevSlot < 0 ? NONE : handle(prevSlot);
+    }
+
+    /**
+     * Re-randomize the shuffle order, keeping first (if it is still queued) at its front
+     */
+    public void shuffle(long first, Random random) {
+        int[] slots = new int[size];
+        int count = 0;
+        for (int slot = heads[PLAY]; slot >= 0; slot = next[PLAY][slot]) {
+            slots[count++] = slot;
+        }
+        int firstSlot = first == NONE ? -1 : slotOf(first);
+        int start = 0;
+        if (firstSlot >= 0) {
+            for (int i = 0; i < count; i++) {
+                if (slots[i] == firstSlot) {
+                    slots[i] = slots[0];
+                    slots[0] = firstSlot;
+                    break;
+                }
+            }
+            start = 1;
+        }
+        for (int i = count - 1; i > start; i--) {
+            int j = start + random.nextInt(i - start + 1);
+            int tmp = slots[i];
+            slots[i] = slots[j];
+            slots[j] = tmp;
+        }
+
+        heads[SHUFFLE] = -1;
+        tails[SHUFFLE] = -1;
+        for (int i = 0; i < count; i++) {
+            linkAfter(SHUFFLE, slots[i], tails[SHUFFLE]);
+        }
+        modCount++;
+    }
+
+    private int allocate(long songId) {
+        int slot;
+        if (freeHead >= 0) {
+            slot = freeHead;
+            freeHead = next[PLAY][slot];
+        } else {
+            if (used == songIds.length) grow();
+            slot = used++;
+        }
+        songIds[slot] = songId;
+        live[slot] = true;
+        size++;
+        modCount++;
+        return slot;
+    }
+
+    private void grow() {
+        int capacity = songIds.length * 2;
+        songIds = Arrays.copyOf(songIds, capacity);
+        generations = Arrays.copyOf(generations, capacity);
+        live = Arrays.copyOf(live, capacity);
+        for (int order = PLAY; order <= SHUFFLE; order++) {
+            next[order] = Arrays.copyOf(next[order], capacity);
+            prev[order] = Arrays.copyOf(prev[order], capacity);
+        }
+    }
+
+    // Link slot after afterSlot, or at the head when afterSlot is -1
+    private void linkAfter(int order, int slot, int afterSlot) {
+        int nextSlot = afterSlot < 0 ? heads[order] : next[order][afterSlot];
+        prev[order][slot] = afterSlot;
+        next[order][slot] = nextSlot;
+        if (afterSlot < 0) heads[order] = slot; else next[order][afterSlot] = slot;
+        if (nextSlot < 0) tails[order] = slot; else prev[order][nextSlot] = slot;
+    }
+
+    private void unlink(int order, int slot) {
+        int prevSlot = prev[order][slot];
+        int nextSlot = next[order][slot];
+        if (prevSlot < 0) heads[order] = nextSlot; else next[order][prevSlot] = nextSlot;
+        if (nextSlot < 0) tails[order] = prevSlot; else prev[order][nextSlot] = prevSlot;
+    }
+
+    private long handle(int slot) {
+        return ((long) generations[slot] << 32) | slot;
+    }
+
+    private int slotOf(long handle) {
+        if (handle < 0) return -1;
+        int slot = (int) handle;
+        if (slot < 0 || slot >= used || !live[slot] || generations[slot] != (int) (handle >>> 32)) return -1;
+        return slot;
+    }
+
+    private static int order(boolean shuffled) {
+        return shuffled ? SHUFFLE : PLAY;
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.media_controller_iot.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lexicographic fractional rank keys. A key is read as a base-36 fraction (0-9a-z), so a new
+ * key can always be generated between two neighbours without touching any other row.
+ * Lowercase-only digits keep the order identical under case-insensitive database collations.
+ * Generated keys never end in '0', which guarantees there is always room between two keys.
+ */
+public final class RankKeys {
+
+    private static final String DIGITS = "0123456789abcdefghijklmnopqrstuvwxyz";
+    private static final int BASE = DIGITS.length();
+
+    private RankKeys() {
+    }
+
+    /**
+     * A key strictly between lower and upper; either bound may be null for open-ended
+     */
+    public static String between(String lower, String upper) {
+        if (lower == null && upper == null) return String.valueOf(DIGITS.charAt(BASE / 2));
+        if (lower == null) return before(upper);
+        if (upper == null) return after(lower);
+        if (lower.compareTo(upper) >= 0) {
+            throw new IllegalArgumentException("lower must sort before upper: " + lower + " / " + upper);
+        }
+
+        StringBuilder key = new StringBuilder();
+        boolean bounded = true;
+        for (int i = 0; ; i++) {
+            int lo = i < lower.length() ? digit(lower.charAt(i)) : 0;
+            int hi = bounded && i < upper.length() ? digit(upper.charAt(i)) : BASE;
+            if (lo == hi) {
+                key.append(DIGITS.charAt(lo));
+                continue;
+            }
+            int mid = (lo + hi) / 2;
+            if (mid > lo) {
+                return key.append(DIGITS.charAt(mid)).toString();
+            }
+            // Adjacent digits: keep lower's digit and continue with no upper bound
+            key.append(DIGITS.charAt(lo));
+            bounded = false;
+        }
+    }
+
+    /**
+     * n ascending keys strictly between lower and upper (either may be null), split by
+     * repeated midpoints so key length grows with log(n) rather than n
+     */
+    public static List<String> spread(String lower, String upper, int n) {
+        List<String> keys = new ArrayList<>(n);
+        spreadInto(lower, upper, n, keys);
+        return keys;
+    }
+
+    private static void spreadInto(String lower, String upper, int n, List<String> keys) {
+        if (n <= 0) return;
+        String mid = between(lower, upper);
+        int left = (n - 1) / 2;
+        spreadInto(lower, mid, left, keys);
+        keys.add(mid);
+        spreadInto(mid, upper, n - 1 - left, keys);
+    }
+
+    /**
+     * A short key sorting before upper, used for prepending
+     */
+    public static String before(String upper) {
+        for (int i = 0; i < upper.length(); i++) {
+            int d = digit(upper.charAt(i));
+            if (d > 1) return upper.substring(0, i) + DIGITS.charAt(d - 1);
+        }
+        return upper.substring(0, upper.length() - 1) + "0" + DIGITS.charAt(BASE - 1);
+    }
+
+    /**
+     * A short key sorting after lower, used for appending
+     */
+    public static String after(String lower) {
+        for (int i = 0; i < lower.length(); i++) {
+            int d = digit(lower.charAt(i));
+            if (d < BASE - 1) return lower.substring(0, i) + DIGITS.charAt(d + 1);
+        }
+        return lower + DIGITS.charAt(BASE / 2);
+    }
+
+    /**
+     * n keys spread evenly over the key space, in ascending order
+     */
+    public static List<String> evenlySpaced(int n) {
+        int length = 1;
+        long space = BASE;
+        // Leave a few free slots between neighbours so later inserts stay short
+        while (space < (n + 1L) * 8 && length < 12) {
+            space *= BASE;
+            length++;
+        }
+
+        List<String> keys = new ArrayList<>(n);
+        char[] buffer = new char[length];
+        for (int i = 1; i <= n; i++) {
+            long value = (long) (space * ((double) i / (n + 1)));
+            for (int pos = length - 1; pos >= 0; pos--) {
+                buffer[pos] = DIGITS.charAt((int) (value % BASE));
+                value /= BASE;
+            }
+            int end = length;
+            while (end > 1 && buffer[end - 1] == '0') end--;
+            keys.add(new String(buffer, 0, end));
+        }
+        return keys;
+    }
+
+    private static int digit(char c) {
+        int d = DIGITS.indexOf(c);
+        if (d < 0) throw new IllegalArgumentException("Invalid rank key character: " + c);
+        return d;
+    }
+}
@@ -0,0 +1,201 @@
+package com.example.media_controller_iot.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Approximate heavy hitters over a sliding time window. The window is a ring of time buckets,
+ * each holding a count-min sketch for frequencies and a bounded min-heap of the top candidates.
+ * Memory is fixed by bucket count, sketch size and heap capacity regardless of event volume.
+ * Thread-safe.
+ */
+public class SlidingWindowTopK {
+
+    private static final int SKETCH_DEPTH = 4;
+    private static final int SKETCH_WIDTH = 2048;
+
+    private final long bucketMillis;
+    private final Bucket[] ring;
+
+    /**
+     * @param bucketMillis - Width of one time bucket
+     * @param bucketCount - Number of buckets in the window
+     * @param capacity - Heavy-hitter candidates kept per bucket
+     */
+    public SlidingWindowTopK(long bucketMillis, int bucketCount, int capacity) {
+        this.bucketMillis = bucketMillis;
+        this.ring = new Bucket[bucketCount];
+        for (int i = 0; i < bucketCount; i++) ring[i] = new Bucket(capacity);
+    }
+
+    public synchronized void add(long key, long nowMillis) {
+        long epoch = nowMillis / bucketMillis;
+        Bucket bucket = ring[(int) (epoch % ring.length)];
+        if (bucket.epoch != epoch) bucket.reset(epoch);
+        bucket.sketch.add(key, 1);
+        bucket.heap.offer(key, bucket.sketch.estimate(key));
+    }
+
+    /**
+     * Top n keys by estimated count in the window ending at nowMillis
+     * @return Entries of {key, estimatedCount}, highest first
+     */
+    public synchronized List<long[]> top(int n, long nowMillis) {
+        long current = nowMillis / bucketMillis;
+        List<Bucket> live = new ArrayList<>(ring.length);
+        Set<Long> candidates = new HashSet<>();
+        for (Bucket bucket : ring) {
+            if (bucket.epoch > current - ring.length && bucket.epoch <= current) {
+                live.add(bucket);
+                bucket.heap.collectKeys(candidates);
+            }
+        }
+
+        List<long[]> scored = new ArrayList<>(candidates.size());
+        for (long key : candidates) {
+            long total = 0;
+            for (Bucket bucket : live) total += bucket.sketch.estimate(key);
+            scored.add(new long[]{key, total});
+        }
+        scored.sort((a, b) -> Long.compare(b[1], a[1]));
+        return scored.size() > n ? new ArrayList<>(scored.subList(0, n)) : scored;
+    }
+
+    /**
+     * Add every key that any bucket keeps as a candidate; keys outside this set can never be returned by top
+     */
+    public synchronized void collectCandidates(Set<Long> into) {
+        for (Bucket bucket : ring) bucket.heap.collectKeys(into);
+    }
+
+    public synchronized void write(DataOutput out) throws IOException {
+        out.writeLong(bucketMillis);
+        out.writeInt(ring.length);
+        for (Bucket bucket : ring) {
+            out.writeLong(bucket.epoch);
+            bucket.sketch.write(out);
+            bucket.heap.write(out);
+        }
+    }
+
+    public synchronized void read(DataInput in) throws IOException {
+        if (in.readLong() != bucketMillis || in.readInt() != ring.length) {
+            throw new IOException("Window layout does not match snapshot");
+        }
+        for (Bucket bucket : ring) {
+            bucket.epoch = in.readLong();
+            bucket.sketch.read(in);
+            bucket.heap.read(in);
+        }
+    }
+
+    private static class Bucket {
+        long epoch = Long.MIN_VALUE;
+        final CountMinSketch sketch = new CountMinSketch(SKETCH_DEPTH, SKETCH_WIDTH);
+        final CandidateHeap heap;
+
+        Bucket(int capacity) {
+            this.heap = new CandidateHeap(capacity);
+        }
+
+        void reset(long newEpoch) {
+            epoch = newEpoch;
+            sketch.clear();
+            heap.clear();
+        }
+    }
+
+    /**
+     * Bounded indexed min-heap: the root is the weakest candidate, so a new key only
+     * displaces it when its estimate is higher. Updates of existing keys sift in place.
+     */
+    private static class CandidateHeap {
+        private final long[] keys;
+        private final long[] counts;
+        private final Map<Long, Integer> positions;
+        private int size;
+
+        CandidateHeap(int capacity) {
+            this.keys = new long[capacity];
+            this.counts = new long[capacity];
+            this.positions = new HashMap<>(capacity * 2);
+        }
+
+        void offer(long key, long count) {
+            Integer pos = positions.get(key);
+            if (pos != null) {
+                counts[pos] = count;
+                siftDown(pos);
+                return;
+            }
+            if (size < keys.length) {
+                keys[size] = key;
+                counts[size] = count;
+                positions.put(key, size);
+                siftUp(size++);
+            } else if (count > counts[0]) {
+                positions.remove(keys[0]);
+                keys[0] = key;
+                counts[0] = count;
+                positions.put(key, 0);
+                siftDown(0);
+            }
+        }
+
+        void collectKeys(Set<Long> into) {
+            for (int i = 0; i < size; i++) into.add(keys[i]);
+        }
+
+        void clear() {
+            size = 0;
+            positions.clear();
+        }
+
+        void write(DataOutput out) throws IOException {
+            out.writeInt(size);
+            for (int i = 0; i < size; i++) {
+                out.writeLong(keys[i]);
+                out.writeLong(counts[i]);
+            }
+        }
+
+        void read(DataInput in) throws IOException {
+            clear();
+            int n = in.readInt();
+            for (int i = 0; i < n; i++) offer(in.readLong(), in.readLong());
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                if (counts[parent] <= counts[i]) break;
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int left = 2 * i + 1;
+                if (left >= size) break;
+                int smallest = left + 1 < size && counts[left + 1] < counts[left] ? left + 1 : left;
+                if (counts[i] <= counts[smallest]) break;
+                swap(i, smallest);
+                i = smallest;
+            }
+        }
+
+        private void swap(int a, int b) {
+            long k = keys[a];
+            long c = counts[a];
+            keys[a] = keys[b];
+            counts[a] = counts[b];
+            keys[b] = k;
+            counts[b] = c;
+            positions.put(keys[a], a);
+            positions.put(keys[b], b);
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.example.media_controller_iot.util;
+
+import java.util.Arrays;
+
+/**
+ * Compressed set of non-negative IDs in the style of a Roaring bitmap.
+ * IDs are split into a high part, which selects a container, and a 16-bit low part stored in it.
+ * Sparse containers are sorted char arrays (up to 4096 values), dense ones are 65536-bit bitmaps,
+ * so a user with a handful of favorites costs a few bytes and one with thousands stays compact.
+ * Not thread-safe; callers synchronize.
+ */
+public class SongIdBitmap {
+
+    // Above this many values an array container takes more room than a bitmap (4096 * 2 bytes = 8 KB)
+    private static final int ARRAY_MAX = 4096;
+    private static final int BITMAP_WORDS = 1024;
+
+    // Sorted container keys (id >>> 16), with containers at the same index
+    private int[] keys = new int[4];
+    private Object[] containers = new Object[4];
+    // Number of values in each container
+    private int[] cardinalities = new int[4];
+    private int containerCount;
+    private long cardinality;
+
+    public static SongIdBitmap of(long[] ids) {
+        long[] sorted = ids.clone();
+        Arrays.sort(sorted);
+        SongIdBitmap bitmap = new SongIdBitmap();
+        for (long id : sorted) {
+            bitmap.add(id);
+        }
+        return bitmap;
+    }
+
+    public long cardinality() {
+        return cardinality;
+    }
+
+    public boolean contains(long id) {
+        if (id < 0 || (id >>> 16) > Integer.MAX_VALUE) return false;
+        int index = Arrays.binarySearch(keys, 0, containerCount, high(id));
+        if (index < 0) return false;
+        char low = (char) id;
+        Object container = containers[index];
+        if (container instanceof long[] bits) {
+            return (bits[low >>> 6] & (1L << low)) != 0;
+        }
+        return Arrays.binarySearch((char[]) container, 0, cardinalities[index], low) >= 0;
+    }
+
+    /**
+     * @return true if the ID was not present before
+     */
+    public boolean add(long id) {
+        if (id < 0) throw new IllegalArgumentException("IDs must be non-negative: " + id);
+        int key = high(id);
+        int index = Arrays.binarySearch(keys, 0, containerCount, key);
+        if (index < 0) {
+            index = -index - 1;
+            insertContainer(index, key);
+        }
+        char low = (char) id;
+        Object container = containers[index];
+
+        if (container instanceof long[] bits) {
+            long mask = 1L << low;
+            if ((bits[low >>> 6] & mask) != 0) return false;
+            bits[low >>> 6] |= mask;
+        } else {
+            char[] values = (char[]) container;
+            int size = cardinalities[index];
+            int position = Arrays.binarySearch(values, 0, size, low);
+            if (position >= 0) return false;
+            position = -position - 1;
+            if (size == ARRAY_MAX) {
+                long[] bits = toBitmap(values, size);
+                bits[low >>> 6] |= 1L << low;
+                containers[index] = bits;
+            } else {
+                if (size == values.length) {
+                    values = Arrays.copyOf(values, Math.min(ARRAY_MAX, size * 2));
+                    containers[index] = values;
+                }
+                System.arraycopy(values, position, values, position + 1, size - position);
+                values[position] = low;
+            }
+        }
+        cardinalities[index]++;
+        cardinality++;
+        return true;
+    }
+
+    /**
+     * @return true if the ID was present
+     */
+    public boolean remove(long id) {
+        if (id < 0 || (id >>> 16) > Integer.MAX_VALUE) return false;
+        int index = Arrays.binarySearch(keys, 0, containerCount, high(id));
+        if (index < 0) return false;
+        char low = (char) id;
+        Object container = containers[index];
+
+        if (container instanceof long[] bits) {
+            long mask = 1L << low;
+            if ((bits[low >>> 6] & mask) == 0) return false;
+            bits[low >>> 6] &= ~mask;
+            if (cardinalities[index] - 1 == ARRAY_MAX) {
+                containers[index] = toArray(bits, ARRAY_MAX);
+            }
+        } else {
+            char[] values = (char[]) container;
+            int size = cardinalities[index];
+            int position = Arrays.binarySearch(values, 0, size, low);
+            if (position < 0) return false;
+            System.arraycopy(values, position + 1, values, position, size - position - 1);
+        }
+        cardinality--;
+        if (--cardinalities[index] == 0) {
+            removeContainer(index);
+        }
+        return true;
+    }
+
+    private void insertContainer(int index, int key) {
+        if (containerCount == keys.length) {
+            int capacity = keys.length * 2;
+            keys = Arrays.copyOf(keys, capacity);
+            containers = Arrays.copyOf(containers, capacity);
+            cardinalities = Arrays.copyOf(cardinalities, capacity);
+        }
+        System.arraycopy(keys, index, keys, index + 1, containerCount - index);
+        System.arraycopy(containers, index, containers, index + 1, containerCount - index);
+        System.arraycopy(cardinalities, index, cardinalities, index + 1, containerCount - index);
+        keys[index] = key;
+        containers[index] = new char[4];
+        cardinalities[index] = 0;
+        containerCount++;
+    }
+
+    private void removeContainer(int index) {
+        System.arraycopy(keys, index + 1, keys, index, containerCount - index - 1);
+        System.arraycopy(containers, index + 1, containers, index, containerCount - index - 1);
+        System.arraycopy(cardinalities, index + 1, cardinalities, index, containerCount - index - 1);
+        containerCount--;
+        containers[containerCount] = null;
+    }
+
+    private static long[] toBitmap(char[] values, int size) {
+        long[] bits = new long[BITMAP_WORDS];
+        for (int i = 0; i < size; i++) {
+            bits[values[i] >>> 6] |= 1L << values[i];
+        }
+        return bits;
+    }
+
+    private static char[] toArray(long[] bits, int size) {
+        char[] values = new char[size];
+        int n = 0;
+        for (int word = 0; word < BITMAP_WORDS; word++) {
+            long w = bits[word];
+            while (w != 0) {
+                values[n++] = (char) ((word << 6) + Long.numberOfTrailingZeros(w));
+                w &= w - 1;
+            }
+        }
+        return values;
+    }
+
+    private static int high(long id) {
+        long key = id >>> 16;
+        if (key > Integer.MAX_VALUE) throw new IllegalArgumentException("ID out of range: " + id);
+        return (int) key;
+    }
+}
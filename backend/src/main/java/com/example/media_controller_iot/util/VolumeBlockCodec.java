@@ -0,0 +1,86 @@
+package com.example.media_controller_iot.util;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Compact encoding for a block of (timestamp, volume) points.
+ * Timestamps are stored as the first value, the first delta and then delta-of-deltas;
+ * volumes as the first value and then deltas. Everything after the header is a zig-zag
+ * varint, so a steady knob stream costs about two bytes per point.
+ */
+public final class VolumeBlockCodec {
+
+    private VolumeBlockCodec() {
+    }
+
+    public static byte[] encode(long[] timestamps, int[] values, int count) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(8 + count * 3);
+        writeVarLong(out, count);
+        if (count == 0) return out.toByteArray();
+
+        writeVarLong(out, timestamps[0]);
+        writeVarLong(out, zigZag(values[0]));
+
+        long previousDelta = 0;
+        for (int i = 1; i < count; i++) {
+            long delta = timestamps[i] - timestamps[i - 1];
+            writeVarLong(out, zigZag(delta - previousDelta));
+            writeVarLong(out, zigZag(values[i] - values[i - 1]));
+            previousDelta = delta;
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Decode a block into the given arrays, which must hold at least the encoded count
+     * @return Number of points decoded
+     */
+    public static int decode(byte[] data, long[] timestamps, int[] values) {
+        int[] pos = {0};
+        int count = (int) readVarLong(data, pos);
+        if (count == 0) return 0;
+
+        timestamps[0] = readVarLong(data, pos);
+        values[0] = (int) unZigZag(readVarLong(data, pos));
+
+        long previousDelta = 0;
+        for (int i = 1; i < count; i++) {
+            long delta = previousDelta + unZigZag(readVarLong(data, pos));
+            timestamps[i] = timestamps[i - 1] + delta;
+            values[i] = values[i - 1] + (int) unZigZag(readVarLong(data, pos));
+            previousDelta = delta;
+        }
+        return count;
+    }
+
+    public static int count(byte[] data) {
+        return (int) readVarLong(data, new int[]{0});
+    }
+
+    private static long zigZag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    private static long unZigZag(long v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long v) {
+        while ((v & ~0x7FL) != 0) {
+            out.write((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.write((int) v);
+    }
+
+    private static long readVarLong(byte[] data, int[] pos) {
+        long result = 0;
+        int shift = 0;
+        while (true) {
+            byte b = data[pos[0]++];
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return result;
+            shift += 7;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.example.media_controller_iot.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3Configuration;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Direct uploads end to end against an S3-compatible store. Runs only when AWS_S3_ENDPOINT is set,
+ * e.g. with the local-s3 compose profile:
+ * docker compose --profile local-s3 up -d minio
+ * AWS_S3_ENDPOINT=http://localhost:9000 ./mvnw test -Dtest=DirectUploadMinioTest
+ */
+@EnabledIfEnvironmentVariable(named = "AWS_S3_ENDPOINT", matches = ".+")
+class DirectUploadMinioTest {
+
+    private static final String USER = "minio-test-user";
+
+    private static S3Client s3Client;
+    private static S3AsyncClient s3AsyncClient;
+    private static S3Presigner s3Presigner;
+    private static ExecutorService executor;
+    private static S3Service s3Service;
+    private static DirectUploadService directUploadService;
+    private static final HttpClient http = HttpClient.newHttpClient();
+
+    @BeforeAll
+    static void setUp() {
+        String endpoint = System.getenv("AWS_S3_ENDPOINT");
+        String bucket = Objects.requireNonNullElse(System.getenv("S3_BUCKET_NAME"), "direct-upload-test");
+        StaticCredentialsProvider credentials = StaticCredentialsProvider.create(AwsBasicCredentials.create(
+                Objects.requireNonNullElse(System.getenv("AWS_ACCESS_KEY_ID"), "minioadmin"),
+                Objects.requireNonNullElse(System.getenv("AWS_SECRET_ACCESS_KEY"), "minioadmin")));
+
+        s3Client = S3Client.builder().region(Region.US_EAST_1).credentialsProvider(credentials)
+                .endpointOverride(URI.create(endpoint)).forcePathStyle(true).build();
+        s3AsyncClient = S3AsyncClient.builder().region(Region.US_EAST_1).credentialsProvider(credentials)
+                .endpointOverride(URI.create(endpoint)).forcePathStyle(true).build();
+        s3Presigner = S3Presigner.builder().region(Region.US_EAST_1).credentialsProvider(credentials)
+                .endpointOverride(URI.create(endpoint))
+                .serviceConfiguration(S3Configuration.builder().pathStyleAccessEnabled(true).build()).build();
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+
+        MediaBlobService mediaBlobService = mock(MediaBlobService.class);
+        when(mediaBlobService.findKey(any())).thenReturn(Optional.empty());
+        when(mediaBlobService.register(any(), anyString(), anyLong(), anyString(), anyString()))
+                .thenAnswer(call -> new MediaBlobService.Reference(call.getArgument(1), false));
+
+        s3Service = new S3Service(s3Client, s3AsyncClient, s3Presigner, executor, mediaBlobService,
+                new SimpleMeterRegistry(), 4);
+        ReflectionTestUtils.setField(s3Service, "bucketName", bucket);
+        ReflectionTestUtils.setField(s3Service, "region", Region.US_EAST_1.id());
+        ReflectionTestUtils.setField(s3Service, "endpoint", endpoint);
+        ReflectionTestUtils.setField(s3Service, "publicEndpoint", "");
+        ReflectionTestUtils.setField(s3Service, "maxUploadSize", DataSize.ofGigabytes(2));
+        ReflectionTestUtils.setField(s3Service, "partSize", DataSize.ofMegabytes(5));
+        ReflectionTestUtils.setField(s3Service, "maxPartsInFlight", 4);
+        s3Service.createBucketIfNotExists();
+
+        directUploadService = new DirectUploadService(s3Service, mediaBlobService);
+        ReflectionTestUtils.setField(directUploadService, "maxUploadSize", DataSize.ofGigabytes(2));
+        ReflectionTestUtils.setField(directUploadService, "partSize", DataSize.ofMegabytes(5));
+        ReflectionTestUtils.setField(directUploadService, "multipartThreshold", DataSize.ofMegabytes(6));
+        ReflectionTestUtils.setField(directUploadService, "expiry", Duration.ofMinutes(5));
+        ReflectionTestUtils.setField(directUploadService, "maxSessionsPerUser", 10);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        s3Presigner.close();
+        s3AsyncClient.close();
+        s3Client.close();
+        executor.shutdown();
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+
+    private static byte[] sha256(byte[] data) throws Exception {
+        return MessageDigest.getInstance("SHA-256").digest(data);
+    }
+
+    private static int put(String url, Map<String, String> headers, byte[] body) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(url)).PUT(HttpRequest.BodyPublishers.ofByteArray(body));
+        headers.forEach(request::header);
+        return http.send(request.build(), HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void singlePutUploadIsVerifiedAndRegistered() throws Exception {
+        byte[] data = randomBytes(256 * 1024);
+        Map<String, Object> started = directUploadService.start(USER, "music", "song.mp3", "audio/mpeg",
+                data.length, null, sha256(data));
+        assertEquals("PUT", started.get("method"));
+
+        assertEquals(200, put((String) started.get("url"), (Map<String, String>) started.get("headers"), data));
+
+        DirectUploadService.CompletedUpload upload = directUploadService.complete((String) started.get("uploadId"), USER);
+        assertNotNull(upload);
+        assertEquals(data.length, upload.size());
+        assertTrue(upload.url().endsWith(".mp3"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void presignedPutRejectsOtherContent() throws Exception {
+        byte[] data = randomBytes(64 * 1024);
+        Map<String, Object> started = directUploadService.start(USER, "music", "other.mp3", "audio/mpeg",
+                data.length, null, sha256(data));
+
+        byte[] tampered = data.clone();
+        tampered[0] ^= 1;
+        assertNotEquals(200, put((String) started.get("url"), (Map<String, String>) started.get("headers"), tampered));
+        assertThrows(DirectUploadService.SessionStateException.class,
+                () -> directUploadService.complete((String) started.get("uploadId"), USER));
+        assertTrue(directUploadService.cancel((String) started.get("uploadId"), USER));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void multipartUploadCompletesOnlyWithAllParts() throws Exception {
+        byte[] data = randomBytes(11 * 1024 * 1024);
+        Map<String, Object> started = directUploadService.start(USER, "music", "long.mp3", "audio/mpeg",
+                data.length, null, sha256(data));
+        assertEquals("MULTIPART", started.get("method"));
+        String uploadId = (String) started.get("uploadId");
+        List<DirectUploadService.PresignedPart> parts = (List<DirectUploadService.PresignedPart>) started.get("parts");
+        long partSize = (Long) started.get("partSize");
+        assertEquals(3, parts.size());
+
+        for (int i = 0; i < parts.size() - 1; i++) {
+            int from = (int) (i * partSize);
+            byte[] part = Arrays.copyOfRange(data, from, (int) (from + parts.get(i).size()));
+            assertEquals(200, put(parts.get(i).url(), Map.of(), part));
+        }
+        assertThrows(DirectUploadService.SessionStateException.class, () -> directUploadService.complete(uploadId, USER));
+
+        DirectUploadService.PresignedPart last = parts.get(parts.size() - 1);
+        int from = (int) ((parts.size() - 1) * partSize);
+        assertEquals(200, put(last.url(), Map.of(), Arrays.copyOfRange(data, from, data.length)));
+
+        DirectUploadService.CompletedUpload upload = directUploadService.complete(uploadId, USER);
+        assertNotNull(upload);
+        assertEquals(data.length, upload.size());
+        assertNull(directUploadService.complete(uploadId, USER));
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.media_controller_iot.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+import software.amazon.awssdk.services.s3.presigner.model.PresignedPutObjectRequest;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class DirectUploadServiceTest {
+
+    private static final byte[] HASH = new byte[32];
+
+    private S3Service s3Service;
+    private DirectUploadService service;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        s3Service = mock(S3Service.class);
+        MediaBlobService mediaBlobService = mock(MediaBlobService.class);
+        when(mediaBlobService.findKey(any())).thenReturn(Optional.empty());
+        PresignedPutObjectRequest presigned = mock(PresignedPutObjectRequest.class);
+        when(presigned.url()).thenReturn(URI.create("http://localhost:9000/bucket/music/x.mp3").toURL());
+        when(presigned.signedHeaders()).thenReturn(Map.of());
+        when(s3Service.presignPut(anyString(), anyString(), anyLong(), anyMap(), any(), any())).thenReturn(presigned);
+        when(s3Service.createMultipartUpload(anyString(), anyString(), anyMap())).thenReturn("multipart-1");
+        when(s3Service.presignPart(anyString(), anyString(), anyInt(), anyLong(), any()))
+                .thenReturn(URI.create("http://localhost:9000/bucket/part").toURL());
+
+        service = new DirectUploadService(s3Service, mediaBlobService);
+        ReflectionTestUtils.setField(service, "maxUploadSize", DataSize.ofGigabytes(2));
+        ReflectionTestUtils.setField(service, "partSize", DataSize.ofMegabytes(8));
+        ReflectionTestUtils.setField(service, "multipartThreshold", DataSize.ofMegabytes(64));
+        ReflectionTestUtils.setField(service, "expiry", Duration.ofMinutes(15));
+        ReflectionTestUtils.setField(service, "maxSessionsPerUser", 3);
+    }
+
+    private Map<String, Object> start(String userId, long size) throws IOException {
+        return service.start(userId, "music", "song.mp3", "audio/mpeg", size, null, HASH);
+    }
+
+    @Test
+    void sessionsAreCappedPerUser() throws IOException {
+        for (int i = 0; i < 3; i++) start("alice", 1024);
+        assertThrows(DirectUploadService.SessionLimitException.class, () -> start("alice", 1024));
+        assertEquals(3, service.openSessions("alice"));
+
+        // Other users have their own budget
+        start("bob", 1024);
+        assertEquals(1, service.openSessions("bob"));
+    }
+
+    @Test
+    void cancellingFreesASlot() throws IOException {
+        String first = (String) start("alice", 1024).get("uploadId");
+        start("alice", 1024);
+        start("alice", 1024);
+
+        assertFalse(service.cancel(first, "bob"));
+        assertTrue(service.cancel(first, "alice"));
+        assertFalse(service.cancel(first, "alice"));
+        assertEquals(2, service.openSessions("alice"));
+        start("alice", 1024);
+    }
+
+    @Test
+    void cancellingAMultipartUploadAbortsIt() throws IOException {
+        Map<String, Object> response = start("alice", DataSize.ofMegabytes(100).toBytes());
+        assertEquals("MULTIPART", response.get("method"));
+
+        assertTrue(service.cancel((String) response.get("uploadId"), "alice"));
+        verify(s3Service).abortMultipartUpload(anyString(), eq("multipart-1"));
+        assertEquals(0, service.openSessions("alice"));
+    }
+
+    @Test
+    void failedStartDoesNotKeepTheSlot() throws IOException {
+        when(s3Service.createMultipartUpload(anyString(), anyString(), anyMap()))
+                .thenThrow(new IllegalStateException("S3 unavailable"));
+        assertThrows(IllegalStateException.class, () -> start("alice", DataSize.ofMegabytes(100).toBytes()));
+        assertEquals(0, service.openSessions("alice"));
+    }
+
+    @Test
+    void expiredSessionsAreDroppedAndFreeTheirSlots() throws IOException {
+        ReflectionTestUtils.setField(service, "expiry", Duration.ofHours(-2));
+        start("alice", 1024);
+        start("alice", DataSize.ofMegabytes(100).toBytes());
+        ReflectionTestUtils.setField(service, "expiry", Duration.ofMinutes(15));
+        start("alice", 1024);
+
+        service.expireSessions();
+        assertEquals(1, service.openSessions("alice"));
+        verify(s3Service).abortMultipartUpload(anyString(), eq("multipart-1"));
+    }
+}
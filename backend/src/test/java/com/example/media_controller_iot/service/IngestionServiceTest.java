@@ -0,0 +1,47 @@
+package com.example.media_controller_iot.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IngestionServiceTest {
+
+    @Test
+    void plainFields() {
+        assertEquals(List.of("Title", "Artist", "music/a.mp3"), IngestionService.parseCsvLine("Title,Artist,music/a.mp3"));
+    }
+
+    @Test
+    void emptyFieldsAreKept() {
+        assertEquals(List.of(""), IngestionService.parseCsvLine(""));
+        assertEquals(List.of("a", "", "c"), IngestionService.parseCsvLine("a,,c"));
+        assertEquals(List.of("", "b", ""), IngestionService.parseCsvLine(",b,"));
+    }
+
+    @Test
+    void quotedFieldsMayContainCommas() {
+        assertEquals(List.of("Hello, Goodbye", "The Beatles", "x.mp3"),
+                IngestionService.parseCsvLine("\"Hello, Goodbye\",The Beatles,x.mp3"));
+        assertEquals(List.of("a", "b,c"), IngestionService.parseCsvLine("a,\"b,c\""));
+    }
+
+    @Test
+    void doubledQuotesInQuotedFields() {
+        assertEquals(List.of("Say \"Hi\"", "b"), IngestionService.parseCsvLine("\"Say \"\"Hi\"\"\",b"));
+        assertEquals(List.of("\"", ""), IngestionService.parseCsvLine("\"\"\"\","));
+        assertEquals(List.of("", "b"), IngestionService.parseCsvLine("\"\",b"));
+    }
+
+    @Test
+    void whitespaceIsLeftToTheCaller() {
+        assertEquals(List.of(" a ", " b"), IngestionService.parseCsvLine(" a , b"));
+        assertEquals(List.of(" x, y "), IngestionService.parseCsvLine("\" x, y \""));
+    }
+
+    @Test
+    void unterminatedQuoteRunsToTheEndOfTheLine() {
+        assertEquals(List.of("a", "b,c"), IngestionService.parseCsvLine("a,\"b,c"));
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.media_controller_iot.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class S3ServiceTest {
+
+    private static final int PART_SIZE = 5 * 1024 * 1024;
+
+    private S3Client s3Client;
+    private S3AsyncClient s3AsyncClient;
+    private S3Service service;
+
+    @BeforeEach
+    void setUp() {
+        s3Client = mock(S3Client.class);
+        s3AsyncClient = mock(S3AsyncClient.class);
+        when(s3Client.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+                .thenReturn(CreateMultipartUploadResponse.builder().uploadId("multipart-1").build());
+
+        service = new S3Service(s3Client, s3AsyncClient, mock(S3Presigner.class),
+                Executors.newVirtualThreadPerTaskExecutor(), mock(MediaBlobService.class), new SimpleMeterRegistry(), 4);
+        ReflectionTestUtils.setField(service, "bucketName", "bucket");
+        ReflectionTestUtils.setField(service, "maxUploadSize", DataSize.ofGigabytes(2));
+        ReflectionTestUtils.setField(service, "partSize", DataSize.ofBytes(PART_SIZE));
+        ReflectionTestUtils.setField(service, "maxPartsInFlight", 4);
+    }
+
+    @Test
+    void failedPartCancelsTheOtherPartRequests() {
+        CompletableFuture<UploadPartResponse> first = new CompletableFuture<>();
+        CompletableFuture<UploadPartResponse> second = new CompletableFuture<>();
+        when(s3AsyncClient.uploadPart(any(UploadPartRequest.class), any(AsyncRequestBody.class)))
+                .thenReturn(first)
+                .thenAnswer(call -> {
+                    // The first part fails while the second is still being sent
+                    first.completeExceptionally(new IllegalStateException("connection reset"));
+                    return second;
+                });
+
+        byte[] body = new byte[2 * PART_SIZE + 1024];
+        assertThrows(IOException.class, () -> service.uploadStream(new ByteArrayInputStream(body), "song.mp3",
+                "audio/mpeg", "music", null, "alice", null, null));
+
+        assertTrue(second.isCancelled());
+        verify(s3Client).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+        assertEquals(0, service.partsInFlight());
+    }
+}
@@ -0,0 +1,342 @@
+package com.example.media_controller_iot.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AudioMetadataReaderTest {
+
+    // MPEG-1 layer III, 128 kbit/s, 44.1kHz, stereo: 417-byte frames
+    private static final byte[] MP3_FRAME_HEADER = {(byte) 0xFF, (byte) 0xFB, (byte) 0x90, 0x00};
+    private static final int MP3_FRAME_LENGTH = 417;
+
+    private record ByteSource(byte[] data) implements AudioMetadataReader.Source {
+        @Override
+        public long size() {
+            return data.length;
+        }
+
+        @Override
+        public int read(long position, byte[] buffer, int offset, int length) {
+            if (position >= data.length) return 0;
+            int n = (int) Math.min(length, data.length - position);
+            System.arraycopy(data, (int) position, buffer, offset, n);
+            return n;
+        }
+    }
+
+    private static AudioMetadataReader.Metadata read(byte[] data) throws IOException {
+        return AudioMetadataReader.read(new ByteSource(data));
+    }
+
+    private static ByteBuffer le(int capacity) {
+        return ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static byte[] syncSafe(int value) {
+        return new byte[]{(byte) (value >> 21 & 0x7F), (byte) (value >> 14 & 0x7F), (byte) (value >> 7 & 0x7F), (byte) (value & 0x7F)};
+    }
+
+    // --- MP3 ---
+
+    private static byte[] id3v23(String title, String artist) {
+        ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        for (String[] frame : new String[][]{{"TIT2", title}, {"TPE1", artist}}) {
+            byte[] text = frame[1].getBytes(StandardCharsets.UTF_8);
+            frames.writeBytes(ascii(frame[0]));
+            frames.writeBytes(ByteBuffer.allocate(4).putInt(text.length + 1).array());
+            frames.writeBytes(new byte[]{0, 0, 3});
+            frames.writeBytes(text);
+        }
+        ByteArrayOutputStream tag = new ByteArrayOutputStream();
+        tag.writeBytes(ascii("ID3"));
+        tag.writeBytes(new byte[]{3, 0, 0});
+        tag.writeBytes(syncSafe(frames.size()));
+        tag.writeBytes(frames.toByteArray());
+        return tag.toByteArray();
+    }
+
+    private static byte[] mp3Frames(int count) {
+        byte[] frames = new byte[count * MP3_FRAME_LENGTH];
+        for (int i = 0; i < count; i++) {
+            System.arraycopy(MP3_FRAME_HEADER, 0, frames, i * MP3_FRAME_LENGTH, 4);
+        }
+        return frames;
+    }
+
+    private static byte[] id3v1(String title, String artist) {
+        byte[] tag = new byte[128];
+        System.arraycopy(ascii("TAG"), 0, tag, 0, 3);
+        System.arraycopy(ascii(title), 0, tag, 3, title.length());
+        System.arraycopy(ascii(artist), 0, tag, 33, artist.length());
+        return tag;
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) out.writeBytes(part);
+        return out.toByteArray();
+    }
+
+    @Test
+    void constantBitrateMp3WithId3v2Tags() throws IOException {
+        AudioMetadataReader.Metadata metadata = read(concat(id3v23("Título", "Artist"), mp3Frames(100)));
+        assertEquals("mp3", metadata.codec());
+        assertEquals(44100, metadata.sampleRate());
+        assertEquals(128, metadata.bitrate());
+        assertEquals(100L * MP3_FRAME_LENGTH * 8 / 128, metadata.durationMs());
+        assertEquals("Título", metadata.title());
+        assertEquals("Artist", metadata.artist());
+    }
+
+    @Test
+    void id3v1TagsAreAFallbackAndNotCountedAsAudio() throws IOException {
+        AudioMetadataReader.Metadata metadata = read(concat(mp3Frames(100), id3v1("Old Title", "Old Artist")));
+        assertEquals("Old Title", metadata.title());
+        assertEquals("Old Artist", metadata.artist());
+        assertEquals(100L * MP3_FRAME_LENGTH * 8 / 128, metadata.durationMs());
+    }
+
+    @Test
+    void variableBitrateMp3UsesTheXingFrameCount() throws IOException {
+        byte[] frames = mp3Frames(10);
+        int xing = 4 + 32;
+        System.arraycopy(ascii("Xing"), 0, frames, xing, 4);
+        ByteBuffer.wrap(frames, xing + 4, 12).putInt(3).putInt(1000).putInt(417_000);
+
+        AudioMetadataReader.Metadata metadata = read(frames);
+        assertEquals(1000L * 1152 * 1000 / 44100, metadata.durationMs());
+        assertEquals((int) (417_000L * 8 / metadata.durationMs()), metadata.bitrate());
+    }
+
+    @Test
+    void junkBeforeTheFirstFrameIsSkipped() throws IOException {
+        // A lone sync word in the junk is not followed by a second frame, so it is not taken for the first one
+        byte[] junk = new byte[300];
+        System.arraycopy(MP3_FRAME_HEADER, 0, junk, 100, 4);
+        AudioMetadataReader.Metadata metadata = read(concat(junk, mp3Frames(50)));
+        assertEquals(50L * MP3_FRAME_LENGTH * 8 / 128, metadata.durationMs());
+    }
+
+    // --- FLAC ---
+
+    private static byte[] flac(int sampleRate, long totalSamples, String title) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes(ascii("fLaC"));
+        byte[] info = new byte[34];
+        info[10] = (byte) (sampleRate >> 12);
+        info[11] = (byte) (sampleRate >> 4);
+        // 2 channels, 16 bits per sample, then the top 4 bits of the sample count
+        info[12] = (byte) ((sampleRate & 0xF) << 4 | 1 << 1);
+        info[13] = (byte) (15 << 4 | (totalSamples >> 32 & 0xF));
+        ByteBuffer.wrap(info, 14, 4).putInt((int) totalSamples);
+        out.writeBytes(new byte[]{0, 0, 0, 34});
+        out.writeBytes(info);
+
+        byte[] comments = vorbisComments("TITLE=" + title);
+        out.writeBytes(new byte[]{(byte) 0x84, 0, (byte) (comments.length >> 8), (byte) comments.length});
+        out.writeBytes(comments);
+        out.writeBytes(new byte[40_000]);
+        return out.toByteArray();
+    }
+
+    private static byte[] vorbisComments(String... comments) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] vendor = ascii("test");
+        out.writeBytes(le(4).putInt(vendor.length).array());
+        out.writeBytes(vendor);
+        out.writeBytes(le(4).putInt(comments.length).array());
+        for (String comment : comments) {
+            byte[] bytes = comment.getBytes(StandardCharsets.UTF_8);
+            out.writeBytes(le(4).putInt(bytes.length).array());
+            out.writeBytes(bytes);
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    void flacStreamInfoAndVorbisComments() throws IOException {
+        AudioMetadataReader.Metadata metadata = read(flac(44100, 441_000, "Flac Song"));
+        assertEquals("flac", metadata.codec());
+        assertEquals(44100, metadata.sampleRate());
+        assertEquals(10_000L, metadata.durationMs());
+        assertEquals(40_000 * 8 / 10_000, metadata.bitrate());
+        assertEquals("Flac Song", metadata.title());
+        assertNull(metadata.artist());
+    }
+
+    // --- Ogg ---
+
+    private static byte[] oggPage(int headerType, long granule, int sequence, byte[] packet) {
+        ByteArrayOutputStream lacing = new ByteArrayOutputStream();
+        for (int left = packet.length; ; left -= 255) {
+            lacing.write(Math.min(left, 255));
+            if (left < 255) break;
+        }
+        ByteBuffer header = le(27);
+        header.put(ascii("OggS")).put((byte) 0).put((byte) headerType).putLong(granule)
+                .putInt(0x1234).putInt(sequence).putInt(0).put((byte) lacing.size());
+        return concat(header.array(), lacing.toByteArray(), packet);
+    }
+
+    private static byte[] opus(long samples48k, int preSkip, String artist) {
+        ByteBuffer head = le(19);
+        head.put(ascii("OpusHead")).put((byte) 1).put((byte) 2).putShort((short) preSkip).putInt(48000)
+                .putShort((short) 0).put((byte) 0);
+        byte[] tags = concat(ascii("OpusTags"), vorbisComments("ARTIST=" + artist));
+        return concat(
+                oggPage(2, 0, 0, head.array()),
+                oggPage(0, 0, 1, tags),
+                oggPage(0, 0, 2, new byte[20_000]),
+                oggPage(4, samples48k + preSkip, 3, new byte[5_000]));
+    }
+
+    @Test
+    void opusDurationComesFromTheLastGranulePosition() throws IOException {
+        byte[] file = opus(48_000L * 5, 312, "Opus Artist");
+        AudioMetadataReader.Metadata metadata = read(file);
+        assertEquals("opus", metadata.codec());
+        assertEquals(48000, metadata.sampleRate());
+        assertEquals(5_000L, metadata.durationMs());
+        assertEquals((int) (file.length * 8L / 5_000), metadata.bitrate());
+        assertEquals("Opus Artist", metadata.artist());
+    }
+
+    // --- WAV ---
+
+    private static byte[] wav(int dataLength, boolean streamed) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes(ascii("RIFF"));
+        out.writeBytes(le(4).putInt(0).array());
+        out.writeBytes(ascii("WAVE"));
+        out.writeBytes(ascii("fmt "));
+        out.writeBytes(le(20).putInt(16).putShort((short) 1).putShort((short) 2).putInt(44100).putInt(176_400)
+                .putShort((short) 4).putShort((short) 16).array());
+        byte[] title = ascii("Wave\0");
+        out.writeBytes(ascii("LIST"));
+        out.writeBytes(le(4).putInt(4 + 8 + title.length + 1).array());
+        out.writeBytes(ascii("INFO"));
+        out.writeBytes(ascii("INAM"));
+        out.writeBytes(le(4).putInt(title.length).array());
+        out.writeBytes(title);
+        out.write(0);
+        out.writeBytes(ascii("data"));
+        out.writeBytes(le(4).putInt(streamed ? 0 : dataLength).array());
+        out.writeBytes(new byte[dataLength]);
+        return out.toByteArray();
+    }
+
+    @Test
+    void wavFormatDataAndInfoChunks() throws IOException {
+        AudioMetadataReader.Metadata metadata = read(wav(176_400, false));
+        assertEquals("pcm", metadata.codec());
+        assertEquals(44100, metadata.sampleRate());
+        assertEquals(1411, metadata.bitrate());
+        assertEquals(1_000L, metadata.durationMs());
+        assertEquals("Wave", metadata.title());
+
+        // A streamed writer leaves the data size unset; the data then runs to the end of the file
+        assertEquals(500L, read(wav(88_200, true)).durationMs());
+    }
+
+    // --- Truncated and malformed input ---
+
+    @Test
+    void truncatedHeadersAreRejected() throws IOException {
+        assertNull(read(new byte[0]));
+        assertNull(read(ascii("ID3")));
+        assertNull(read(Arrays.copyOf(flac(44100, 441_000, "x"), 4 + 4 + 10)));
+        assertNull(read(Arrays.copyOf(wav(176_400, false), 12 + 8 + 8)));
+        assertNull(read(Arrays.copyOf(opus(48_000, 0, "x"), 27 + 1 + 10)));
+        assertNull(read(new byte[4096]));
+    }
+
+    @Test
+    void id3v2TagLongerThanTheFileIsNotFollowedPastTheEnd() throws IOException {
+        byte[] tag = id3v23("Title", "Artist");
+        byte[] header = Arrays.copyOf(tag, 10);
+        System.arraycopy(syncSafe(10_000_000), 0, header, 6, 4);
+        assertNull(read(concat(header, Arrays.copyOfRange(tag, 10, tag.length))));
+    }
+
+    @Test
+    void id3v2FrameSizesPastTheTagAreIgnored() throws IOException {
+        byte[] tag = id3v23("Title", "Artist");
+        // TPE1 claims far more bytes than the tag holds
+        int tpe1 = 10 + 10 + 1 + "Title".length();
+        ByteBuffer.wrap(tag, tpe1 + 4, 4).putInt(1_000_000);
+        AudioMetadataReader.Metadata metadata = read(concat(tag, mp3Frames(20)));
+        assertEquals("Title", metadata.title());
+        assertNull(metadata.artist());
+    }
+
+    // Every prefix of a valid file must be read without throwing
+    @Test
+    void everyTruncationOfValidFilesIsHandled() {
+        byte[][] files = {
+                concat(id3v23("T", "A"), mp3Frames(4), id3v1("T", "A")),
+                Arrays.copyOf(flac(44100, 441_000, "x"), 200),
+                Arrays.copyOf(wav(1000, false), 200),
+                opus(48_000, 312, "x"),
+        };
+        for (byte[] file : files) {
+            int step = Math.max(1, file.length / 2000);
+            for (int length = 0; length <= file.length; length += step) {
+                byte[] prefix = Arrays.copyOf(file, length);
+                assertDoesNotThrow(() -> read(prefix), "length " + length);
+            }
+        }
+    }
+
+    @Test
+    void randomBytesDoNotThrow() {
+        Random random = new Random(99);
+        String[] magics = {"ID3", "fLaC", "OggS", "RIFF"};
+        for (int i = 0; i < 2000; i++) {
+            byte[] data = new byte[random.nextInt(600)];
+            random.nextBytes(data);
+            String magic = magics[i % magics.length];
+            if (data.length >= 12) {
+                System.arraycopy(ascii(magic), 0, data, 0, magic.length());
+                if (magic.equals("RIFF")) System.arraycopy(ascii("WAVE"), 0, data, 8, 4);
+            }
+            assertDoesNotThrow(() -> read(data));
+        }
+    }
+
+    // --- Capture ---
+
+    @Test
+    void captureOfALargeUploadReadsLikeTheWholeFile() throws IOException {
+        byte[] file = concat(id3v23("Captured", "Artist"), mp3Frames(6000), id3v1("T", "A"));
+        assertTrue(file.length > 2 * 1024 * 1024);
+
+        AudioMetadataReader.Capture capture = new AudioMetadataReader.Capture();
+        Random random = new Random(5);
+        for (int offset = 0; offset < file.length; ) {
+            int length = Math.min(file.length - offset, 1 + random.nextInt(300_000));
+            capture.update(file, offset, length);
+            offset += length;
+        }
+        assertEquals(file.length, capture.size());
+        assertEquals(read(file), AudioMetadataReader.read(capture));
+
+        // Bytes between the head and the tail are not available
+        byte[] buffer = new byte[16];
+        assertEquals(0, capture.read(1024 * 1024 + 10, buffer, 0, buffer.length));
+        assertEquals(16, capture.read(file.length - 16, buffer, 0, buffer.length));
+        assertArrayEquals(Arrays.copyOfRange(file, file.length - 16, file.length), buffer);
+    }
+}
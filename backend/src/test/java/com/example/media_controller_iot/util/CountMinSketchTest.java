@@ -0,0 +1,79 @@
+package com.example.media_controller_iot.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CountMinSketchTest {
+
+    @Test
+    void emptySketchEstimatesZero() {
+        CountMinSketch sketch = new CountMinSketch(4, 256);
+        assertEquals(0, sketch.estimate(42));
+    }
+
+    @Test
+    void neverUndercounts() {
+        CountMinSketch sketch = new CountMinSketch(4, 64);
+        // Many more keys than cells, so rows collide
+        for (long key = 0; key < 1000; key++) {
+            sketch.add(key, key % 7 + 1);
+        }
+        for (long key = 0; key < 1000; key++) {
+            assertTrue(sketch.estimate(key) >= key % 7 + 1, "key " + key);
+        }
+    }
+
+    @Test
+    void exactWithoutCollisions() {
+        CountMinSketch sketch = new CountMinSketch(4, 2048);
+        sketch.add(1, 5);
+        sketch.add(2, 3);
+        sketch.add(1, 2);
+        assertEquals(7, sketch.estimate(1));
+        assertEquals(3, sketch.estimate(2));
+    }
+
+    @Test
+    void clearResetsCounts() {
+        CountMinSketch sketch = new CountMinSketch(2, 16);
+        sketch.add(Long.MIN_VALUE, 3);
+        sketch.add(Long.MAX_VALUE, 4);
+        sketch.clear();
+        assertEquals(0, sketch.estimate(Long.MIN_VALUE));
+        assertEquals(0, sketch.estimate(Long.MAX_VALUE));
+    }
+
+    @Test
+    void roundTripsThroughSnapshot() throws IOException {
+        CountMinSketch sketch = new CountMinSketch(4, 128);
+        for (long key = -50; key < 50; key++) sketch.add(key, 3);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        sketch.write(new DataOutputStream(bytes));
+        CountMinSketch restored = new CountMinSketch(4, 128);
+        restored.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        for (long key = -50; key < 50; key++) {
+            assertEquals(sketch.estimate(key), restored.estimate(key));
+        }
+    }
+
+    @Test
+    void rejectsSnapshotWithOtherDimensions() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new CountMinSketch(4, 128).write(new DataOutputStream(bytes));
+        CountMinSketch other = new CountMinSketch(4, 256);
+        assertThrows(IOException.class,
+                () -> other.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))));
+    }
+
+    @Test
+    void rejectsInvalidDimensions() {
+        assertThrows(IllegalArgumentException.class, () -> new CountMinSketch(0, 16));
+        assertThrows(IllegalArgumentException.class, () -> new CountMinSketch(9, 16));
+        assertThrows(IllegalArgumentException.class, () -> new CountMinSketch(4, 100));
+    }
+}
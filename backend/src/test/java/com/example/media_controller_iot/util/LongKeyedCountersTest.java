@@ -0,0 +1,82 @@
+package com.example.media_controller_iot.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LongKeyedCountersTest {
+
+    @Test
+    void emptyTable() {
+        LongKeyedCounters counters = new LongKeyedCounters(2);
+        assertTrue(counters.isEmpty());
+        assertEquals(0, counters.get(5, 0));
+        counters.forEach((key, values, offset) -> fail("no rows expected"));
+    }
+
+    @Test
+    void addsPerField() {
+        LongKeyedCounters counters = new LongKeyedCounters(3);
+        counters.add(10, 0, 1);
+        counters.add(10, 2, 5);
+        counters.add(10, 0, 2);
+        counters.add(-4, 1, 7);
+        assertEquals(2, counters.size());
+        assertEquals(3, counters.get(10, 0));
+        assertEquals(0, counters.get(10, 1));
+        assertEquals(5, counters.get(10, 2));
+        assertEquals(7, counters.get(-4, 1));
+    }
+
+    @Test
+    void keepsRowsWhenGrowing() {
+        LongKeyedCounters counters = new LongKeyedCounters(2, 1);
+        for (long key = 0; key < 10_000; key++) {
+            counters.add(key * 31, 0, key);
+            counters.add(key * 31, 1, 1);
+        }
+        assertEquals(10_000, counters.size());
+        for (long key = 0; key < 10_000; key++) {
+            assertEquals(key, counters.get(key * 31, 0));
+            assertEquals(1, counters.get(key * 31, 1));
+        }
+    }
+
+    @Test
+    void handlesExtremeKeys() {
+        LongKeyedCounters counters = new LongKeyedCounters(1);
+        counters.add(Long.MAX_VALUE, 0, 1);
+        counters.add(Long.MIN_VALUE + 1, 0, 2);
+        counters.add(0, 0, 3);
+        assertEquals(1, counters.get(Long.MAX_VALUE, 0));
+        assertEquals(2, counters.get(Long.MIN_VALUE + 1, 0));
+        assertEquals(3, counters.get(0, 0));
+    }
+
+    @Test
+    void rejectsReservedKey() {
+        LongKeyedCounters counters = new LongKeyedCounters(1);
+        assertThrows(IllegalArgumentException.class, () -> counters.add(Long.MIN_VALUE, 0, 1));
+    }
+
+    @Test
+    void addAllMergesRows() {
+        LongKeyedCounters a = new LongKeyedCounters(2);
+        LongKeyedCounters b = new LongKeyedCounters(2);
+        a.add(1, 0, 1);
+        a.add(2, 1, 2);
+        b.add(2, 1, 3);
+        b.add(3, 0, 4);
+        a.addAll(b);
+
+        Map<Long, long[]> rows = new HashMap<>();
+        a.forEach((key, values, offset) -> rows.put(key, new long[]{values[offset], values[offset + 1]}));
+        assertEquals(3, rows.size());
+        assertArrayEquals(new long[]{1, 0}, rows.get(1L));
+        assertArrayEquals(new long[]{0, 5}, rows.get(2L));
+        assertArrayEquals(new long[]{4, 0}, rows.get(3L));
+    }
+}
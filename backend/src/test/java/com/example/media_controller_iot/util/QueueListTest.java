@@ -0,0 +1,143 @@
+package com.example.media_controller_iot.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueueListTest {
+
+    private static List<Long> songsInOrder(QueueList queue, boolean shuffled) {
+        List<Long> songs = new ArrayList<>();
+        for (long e = queue.first(shuffled); e != QueueList.NONE; e = queue.next(e, shuffled)) {
+            songs.add(queue.songId(e));
+        }
+        return songs;
+    }
+
+    private static List<Long> songsInReverse(QueueList queue, boolean shuffled) {
+        List<Long> songs = new ArrayList<>();
+        for (long e = queue.last(shuffled); e != QueueList.NONE; e = queue.prev(e, shuffled)) {
+            songs.add(0, queue.songId(e));
+        }
+        return songs;
+    }
+
+    @Test
+    void emptyQueue() {
+        QueueList queue = new QueueList();
+        assertTrue(queue.isEmpty());
+        assertEquals(QueueList.NONE, queue.first(false));
+        assertEquals(QueueList.NONE, queue.last(true));
+        assertFalse(queue.contains(0));
+        assertFalse(queue.remove(0));
+        assertThrows(IllegalArgumentException.class, () -> queue.songId(0));
+    }
+
+    @Test
+    void ofKeepsOrderInBothDirections() {
+        QueueList queue = QueueList.of(new long[]{5, 3, 9, 3});
+        assertEquals(4, queue.size());
+        assertEquals(List.of(5L, 3L, 9L, 3L), songsInOrder(queue, false));
+        assertEquals(List.of(5L, 3L, 9L, 3L), songsInOrder(queue, true));
+        assertEquals(songsInOrder(queue, false), songsInReverse(queue, false));
+    }
+
+    @Test
+    void insertRemoveAndMove() {
+        QueueList queue = new QueueList(1);
+        long a = queue.append(1);
+        long c = queue.append(3);
+        queue.insertAfter(a, 2);
+        long zero = queue.insertAfter(QueueList.NONE, 0);
+        assertEquals(List.of(0L, 1L, 2L, 3L), songsInOrder(queue, false));
+
+        assertTrue(queue.moveAfter(zero, c));
+        assertEquals(List.of(1L, 2L, 3L, 0L), songsInOrder(queue, false));
+        assertTrue(queue.moveAfter(c, QueueList.NONE));
+        assertEquals(List.of(3L, 1L, 2L, 0L), songsInOrder(queue, false));
+        assertTrue(queue.moveAfter(c, c));
+
+        assertTrue(queue.remove(a));
+        assertEquals(List.of(3L, 2L, 0L), songsInOrder(queue, false));
+        assertEquals(songsInOrder(queue, false), songsInReverse(queue, false));
+        assertEquals(List.of(3L, 2L, 0L), songsInOrder(queue, true));
+        assertEquals(3, queue.size());
+
+        assertFalse(queue.moveAfter(a, c));
+        assertThrows(IllegalArgumentException.class, () -> queue.insertAfter(a, 7));
+    }
+
+    @Test
+    void removedHandlesStayInvalidWhenSlotsAreReused() {
+        QueueList queue = new QueueList();
+        long removed = queue.append(1);
+        queue.remove(removed);
+        long reused = queue.append(2);
+
+        assertNotEquals(removed, reused);
+        assertFalse(queue.contains(removed));
+        assertEquals(QueueList.NONE, queue.next(removed, false));
+        assertEquals(2, queue.songId(reused));
+    }
+
+    @Test
+    void modCountChangesOnStructuralChanges() {
+        QueueList queue = new QueueList();
+        long before = queue.modCount();
+        long a = queue.append(1);
+        long b = queue.append(2);
+        long afterAppend = queue.modCount();
+        assertTrue(afterAppend > before);
+        queue.moveAfter(a, b);
+        assertTrue(queue.modCount() > afterAppend);
+    }
+
+    @Test
+    void shuffleIsAPermutationThatKeepsTheFirstEntry() {
+        long[] ids = new long[200];
+        for (int i = 0; i < ids.length; i++) ids[i] = i;
+        QueueList queue = QueueList.of(ids);
+
+        long start = queue.next(queue.first(false), false);
+        queue.shuffle(start, new Random(42));
+
+        List<Long> shuffled = songsInOrder(queue, true);
+        assertEquals(ids.length, shuffled.size());
+        assertEquals(ids.length, new HashSet<>(shuffled).size());
+        assertEquals(queue.songId(start), shuffled.get(0));
+        assertNotEquals(songsInOrder(queue, false), shuffled);
+        assertEquals(shuffled, songsInReverse(queue, true));
+
+        // Play order is untouched, and later inserts land after their anchor in both orders
+        assertEquals(0L, songsInOrder(queue, false).get(0));
+        long inserted = queue.insertAfter(start, 1000);
+        assertEquals(inserted, queue.next(start, true));
+        assertEquals(inserted, queue.next(start, false));
+    }
+
+    @Test
+    void shuffleWithoutAnchorOrAfterRemovalStillCoversEveryEntry() {
+        QueueList queue = QueueList.of(new long[]{1, 2, 3, 4, 5});
+        long removed = queue.first(false);
+        queue.remove(removed);
+        queue.shuffle(removed, new Random(7));
+        assertEquals(4, new HashSet<>(songsInOrder(queue, true)).size());
+
+        queue.shuffle(QueueList.NONE, new Random(7));
+        assertEquals(new HashSet<>(List.of(2L, 3L, 4L, 5L)), new HashSet<>(songsInOrder(queue, true)));
+    }
+
+    @Test
+    void growsPastInitialCapacity() {
+        QueueList queue = new QueueList(4);
+        for (long i = 0; i < 1000; i++) queue.append(i);
+        assertEquals(1000, queue.size());
+        assertEquals(999L, queue.songId(queue.last(false)));
+        assertEquals(999L, queue.songId(queue.last(true)));
+    }
+}
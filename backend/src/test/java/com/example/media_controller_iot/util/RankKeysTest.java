@@ -0,0 +1,102 @@
+package com.example.media_controller_iot.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RankKeysTest {
+
+    private static void assertStrictlyAscending(List<String> keys, String lower, String upper) {
+        for (int i = 0; i < keys.size(); i++) {
+            String key = keys.get(i);
+            if (i > 0) assertTrue(keys.get(i - 1).compareTo(key) < 0, keys.get(i - 1) + " / " + key);
+            if (lower != null) assertTrue(lower.compareTo(key) < 0, lower + " / " + key);
+            if (upper != null) assertTrue(key.compareTo(upper) < 0, key + " / " + upper);
+            assertFalse(key.endsWith("0"), key);
+        }
+    }
+
+    private static int maxLength(List<String> keys) {
+        return keys.stream().mapToInt(String::length).max().orElse(0);
+    }
+
+    @Test
+    void betweenOpenBoundsIsTheMiddleDigit() {
+        assertEquals("i", RankKeys.between(null, null));
+    }
+
+    @Test
+    void betweenNeighbours() {
+        String[][] pairs = {{"a", "b"}, {"a", "a1"}, {"az", "b"}, {"0z", "1"}, {"i", "iz"}, {"1", "z"}};
+        for (String[] pair : pairs) {
+            String key = RankKeys.between(pair[0], pair[1]);
+            assertStrictlyAscending(List.of(key), pair[0], pair[1]);
+        }
+    }
+
+    @Test
+    void betweenRejectsUnorderedBounds() {
+        assertThrows(IllegalArgumentException.class, () -> RankKeys.between("b", "a"));
+        assertThrows(IllegalArgumentException.class, () -> RankKeys.between("a", "a"));
+        assertThrows(IllegalArgumentException.class, () -> RankKeys.between("A", "b"));
+    }
+
+    @Test
+    void repeatedPrependAndAppendStayOrdered() {
+        String head = RankKeys.between(null, null);
+        String tail = head;
+        for (int i = 0; i < 200; i++) {
+            String before = RankKeys.between(null, head);
+            assertTrue(before.compareTo(head) < 0);
+            head = before;
+            String after = RankKeys.between(tail, null);
+            assertTrue(after.compareTo(tail) > 0);
+            tail = after;
+        }
+    }
+
+    @Test
+    void repeatedInsertIntoTheSameGapNeverRunsOutOfRoom() {
+        String lower = "a";
+        String upper = "b";
+        for (int i = 0; i < 100; i++) {
+            String key = RankKeys.between(lower, upper);
+            assertStrictlyAscending(List.of(key), lower, upper);
+            upper = key;
+        }
+    }
+
+    @Test
+    void spreadKeysAreOrderedWithinBounds() {
+        assertStrictlyAscending(RankKeys.spread("b", "c", 500), "b", "c");
+        assertStrictlyAscending(RankKeys.spread("m", null, 500), "m", null);
+        assertTrue(RankKeys.spread(null, "i", 0).isEmpty());
+    }
+
+    // A batch insert at the head must not grow key length linearly with the batch size
+    @Test
+    void spreadBeforeHeadGrowsKeyLengthLogarithmically() {
+        for (String head : new String[]{null, "i", "1", "01", "0001", "zzz"}) {
+            int headLength = head == null ? 1 : head.length();
+            for (int n : new int[]{1, 10, 100, 1000, 10_000}) {
+                List<String> keys = RankKeys.spread(null, head, n);
+                assertEquals(n, keys.size());
+                assertStrictlyAscending(keys, null, head);
+                int bound = headLength + (int) Math.ceil(Math.log(n + 1) / Math.log(36)) + 1;
+                assertTrue(maxLength(keys) <= bound, "head " + head + ", n " + n + ": " + maxLength(keys));
+            }
+        }
+    }
+
+    @Test
+    void evenlySpacedKeysAreShortAndOrdered() {
+        assertTrue(RankKeys.evenlySpaced(0).isEmpty());
+        List<String> keys = RankKeys.evenlySpaced(10_000);
+        assertEquals(10_000, keys.size());
+        assertStrictlyAscending(keys, null, null);
+        assertTrue(maxLength(keys) <= 4);
+        assertTrue(RankKeys.between(keys.get(0), keys.get(1)).length() <= 4);
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.media_controller_iot.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SlidingWindowTopKTest {
+
+    private static final long BUCKET = 1000;
+
+    @Test
+    void emptyWindowHasNoTop() {
+        SlidingWindowTopK window = new SlidingWindowTopK(BUCKET, 10, 5);
+        assertTrue(window.top(3, 0).isEmpty());
+    }
+
+    @Test
+    void ranksByCountAcrossBuckets() {
+        SlidingWindowTopK window = new SlidingWindowTopK(BUCKET, 10, 5);
+        for (int i = 0; i < 3; i++) window.add(1, 100);
+        for (int i = 0; i < 2; i++) window.add(1, 2_500);
+        for (int i = 0; i < 4; i++) window.add(2, 2_600);
+        window.add(3, 5_000);
+
+        List<long[]> top = window.top(2, 5_000);
+        assertEquals(2, top.size());
+        assertArrayEquals(new long[]{1, 5}, top.get(0));
+        assertArrayEquals(new long[]{2, 4}, top.get(1));
+    }
+
+    @Test
+    void bucketsLeaveTheWindow() {
+        SlidingWindowTopK window = new SlidingWindowTopK(BUCKET, 3, 5);
+        window.add(1, 0);
+        window.add(2, 2_999);
+        // The window at 3000 covers buckets 1..3, so the play at 0 is gone
+        List<long[]> top = window.top(5, 3_000);
+        assertEquals(1, top.size());
+        assertEquals(2, top.get(0)[0]);
+    }
+
+    @Test
+    void reusedBucketStartsEmpty() {
+        SlidingWindowTopK window = new SlidingWindowTopK(BUCKET, 2, 5);
+        window.add(1, 0);
+        // Same ring slot, two buckets later
+        window.add(2, 2_000);
+        List<long[]> top = window.top(5, 2_000);
+        assertEquals(1, top.size());
+        assertArrayEquals(new long[]{2, 1}, top.get(0));
+    }
+
+    @Test
+    void heavyHitterDisplacesWeakestCandidate() {
+        SlidingWindowTopK window = new SlidingWindowTopK(BUCKET, 1, 2);
+        window.add(1, 0);
+        window.add(2, 0);
+        for (int i = 0; i < 3; i++) window.add(3, 0);
+
+        Set<Long> candidates = new HashSet<>();
+        window.collectCandidates(candidates);
+        assertEquals(2, candidates.size());
+        assertTrue(candidates.contains(3L));
+        assertEquals(3, window.top(1, 0).get(0)[0]);
+    }
+
+    @Test
+    void roundTripsThroughSnapshot() throws IOException {
+        SlidingWindowTopK window = new SlidingWindowTopK(BUCKET, 4, 5);
+        for (int i = 0; i < 5; i++) window.add(7, i * 700L);
+        window.add(8, 1_000);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        window.write(new DataOutputStream(bytes));
+        SlidingWindowTopK restored = new SlidingWindowTopK(BUCKET, 4, 5);
+        restored.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        List<long[]> expected = window.top(5, 3_000);
+        List<long[]> actual = restored.top(5, 3_000);
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals(expected.get(i), actual.get(i));
+        }
+    }
+
+    @Test
+    void rejectsSnapshotWithOtherLayout() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new SlidingWindowTopK(BUCKET, 4, 5).write(new DataOutputStream(bytes));
+        SlidingWindowTopK other = new SlidingWindowTopK(BUCKET, 5, 5);
+        assertThrows(IOException.class,
+                () -> other.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))));
+    }
+}
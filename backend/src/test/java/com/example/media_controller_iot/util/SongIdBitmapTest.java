@@ -0,0 +1,112 @@
+package com.example.media_controller_iot.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SongIdBitmapTest {
+
+    @Test
+    void emptyBitmap() {
+        SongIdBitmap bitmap = new SongIdBitmap();
+        assertEquals(0, bitmap.cardinality());
+        assertFalse(bitmap.contains(0));
+        assertFalse(bitmap.remove(0));
+    }
+
+    @Test
+    void addContainsRemove() {
+        SongIdBitmap bitmap = SongIdBitmap.of(new long[]{42, 7, 70_000, 7});
+        assertEquals(3, bitmap.cardinality());
+        assertTrue(bitmap.contains(7));
+        assertTrue(bitmap.contains(42));
+        assertTrue(bitmap.contains(70_000));
+        assertFalse(bitmap.contains(8));
+        assertFalse(bitmap.contains(70_000 - 65_536));
+
+        assertFalse(bitmap.add(42));
+        assertTrue(bitmap.remove(42));
+        assertFalse(bitmap.remove(42));
+        assertFalse(bitmap.contains(42));
+        assertEquals(2, bitmap.cardinality());
+    }
+
+    @Test
+    void negativeAndOutOfRangeIds() {
+        SongIdBitmap bitmap = new SongIdBitmap();
+        assertThrows(IllegalArgumentException.class, () -> bitmap.add(-1));
+        assertThrows(IllegalArgumentException.class, () -> bitmap.add(Long.MAX_VALUE));
+        assertFalse(bitmap.contains(-1));
+        assertFalse(bitmap.contains(Long.MAX_VALUE));
+        assertFalse(bitmap.remove(-1));
+
+        long largest = ((long) Integer.MAX_VALUE << 16) | 0xFFFF;
+        assertTrue(bitmap.add(largest));
+        assertTrue(bitmap.contains(largest));
+        assertTrue(bitmap.add(0));
+        assertTrue(bitmap.contains(0));
+    }
+
+    // A container turns into a bitmap past 4096 values and back into an array when it shrinks
+    @Test
+    void denseContainerRoundTrip() {
+        SongIdBitmap bitmap = new SongIdBitmap();
+        for (long id = 0; id < 10_000; id += 2) bitmap.add(id);
+        assertEquals(5_000, bitmap.cardinality());
+        for (long id = 0; id < 10_000; id++) {
+            assertEquals(id % 2 == 0, bitmap.contains(id), "id " + id);
+        }
+
+        for (long id = 0; id < 10_000; id += 4) bitmap.remove(id);
+        assertEquals(2_500, bitmap.cardinality());
+        for (long id = 0; id < 10_000; id++) {
+            assertEquals(id % 4 == 2, bitmap.contains(id), "id " + id);
+        }
+        assertTrue(bitmap.add(1));
+        assertTrue(bitmap.contains(1));
+    }
+
+    @Test
+    void emptiedContainersAreDropped() {
+        SongIdBitmap bitmap = new SongIdBitmap();
+        for (int container = 0; container < 20; container++) {
+            bitmap.add(container * 65_536L + 5);
+        }
+        for (int container = 0; container < 20; container += 2) {
+            assertTrue(bitmap.remove(container * 65_536L + 5));
+        }
+        assertEquals(10, bitmap.cardinality());
+        for (int container = 0; container < 20; container++) {
+            assertEquals(container % 2 == 1, bitmap.contains(container * 65_536L + 5));
+        }
+        assertTrue(bitmap.add(5));
+        assertTrue(bitmap.contains(5));
+    }
+
+    @Test
+    void matchesAHashSetUnderRandomOperations() {
+        Random random = new Random(1234);
+        SongIdBitmap bitmap = new SongIdBitmap();
+        Set<Long> reference = new HashSet<>();
+        for (int i = 0; i < 200_000; i++) {
+            // Mostly one dense container plus a sparse tail across many containers
+            long id = random.nextInt(4) == 0 ? random.nextInt(5_000_000) : random.nextInt(9_000);
+            if (random.nextInt(3) == 0) {
+                assertEquals(reference.remove(id), bitmap.remove(id), "remove " + id);
+            } else {
+                assertEquals(reference.add(id), bitmap.add(id), "add " + id);
+            }
+        }
+        assertEquals(reference.size(), bitmap.cardinality());
+        for (long id = 0; id < 9_000; id++) {
+            assertEquals(reference.contains(id), bitmap.contains(id), "id " + id);
+        }
+        for (Long id : reference) {
+            assertTrue(bitmap.contains(id));
+        }
+    }
+}
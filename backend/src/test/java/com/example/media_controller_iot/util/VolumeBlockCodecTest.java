@@ -0,0 +1,78 @@
+package com.example.media_controller_iot.util;
+
+import com.example.media_controller_iot.service.VolumeSeriesService;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VolumeBlockCodecTest {
+
+    private static void assertRoundTrip(long[] times, int[] values) {
+        byte[] data = VolumeBlockCodec.encode(times, values, times.length);
+        assertEquals(times.length, VolumeBlockCodec.count(data));
+
+        long[] decodedTimes = new long[Math.max(1, times.length)];
+        int[] decodedValues = new int[Math.max(1, times.length)];
+        assertEquals(times.length, VolumeBlockCodec.decode(data, decodedTimes, decodedValues));
+        for (int i = 0; i < times.length; i++) {
+            assertEquals(times[i], decodedTimes[i], "time " + i);
+            assertEquals(values[i], decodedValues[i], "value " + i);
+        }
+    }
+
+    @Test
+    void emptyBlock() {
+        byte[] data = VolumeBlockCodec.encode(new long[0], new int[0], 0);
+        assertEquals(1, data.length);
+        assertEquals(0, VolumeBlockCodec.decode(data, new long[0], new int[0]));
+    }
+
+    @Test
+    void singlePoint() {
+        assertRoundTrip(new long[]{1_700_000_000_000L}, new int[]{42});
+    }
+
+    @Test
+    void fullBlockOfSteadyReadingsIsCompact() {
+        int n = VolumeSeriesService.BLOCK_SIZE;
+        long[] times = new long[n];
+        int[] values = new int[n];
+        for (int i = 0; i < n; i++) {
+            times[i] = 1_700_000_000_000L + i * 250L;
+            values[i] = 50 + (i % 3) - 1;
+        }
+        assertRoundTrip(times, values);
+        assertTrue(VolumeBlockCodec.encode(times, values, n).length <= 2 * n + 16);
+    }
+
+    @Test
+    void encodesOnlyTheGivenCount() {
+        long[] times = {10, 20, 30, 40};
+        int[] values = {1, 2, 3, 4};
+        byte[] data = VolumeBlockCodec.encode(times, values, 2);
+        long[] decodedTimes = new long[4];
+        int[] decodedValues = new int[4];
+        assertEquals(2, VolumeBlockCodec.decode(data, decodedTimes, decodedValues));
+        assertArrayEquals(new long[]{10, 20, 0, 0}, decodedTimes);
+    }
+
+    @Test
+    void irregularAndRepeatedTimestamps() {
+        assertRoundTrip(new long[]{1000, 1000, 1001, 5000, 5000, 5001, 90_000},
+                new int[]{0, 100, 0, 100, 100, 99, 1});
+    }
+
+    @Test
+    void extremeValuesWrapAround() {
+        assertRoundTrip(new long[]{0, Long.MAX_VALUE, Long.MAX_VALUE, 1, Long.MIN_VALUE},
+                new int[]{Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE, -1, 0});
+    }
+
+    @Test
+    void truncatedDataFails() {
+        byte[] data = VolumeBlockCodec.encode(new long[]{1000, 2000, 3000}, new int[]{1, 2, 3}, 3);
+        byte[] truncated = java.util.Arrays.copyOf(data, data.length - 1);
+        assertThrows(ArrayIndexOutOfBoundsException.class,
+                () -> VolumeBlockCodec.decode(truncated, new long[3], new int[3]));
+    }
+}
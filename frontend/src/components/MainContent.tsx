@@ -1,7 +1,8 @@
 import React, { useState, useEffect } from 'react';
 import './MainContent.css';
-import { loadSongsByCategory, getRecentlyPlayed, searchSongs, getPlaylistSongs, setPlaylistQueue, playSpecificSong, loadSongs } from '../services/playerService';
+import { loadSongsByCategory, getRecentlyPlayed, searchSongs, getPlaylistSongs, setPlaylistQueue, setPlaylistQueueFromPlaylist, playSpecificSong, loadSongs } from '../services/playerService';
 import { Song } from '../types/music.types';
+import { coverThumbnailUrl } from '../utils/helpers';
 import { FontAwesomeIcon } from '@fortawesome/react-fontawesome';
 import { faArrowLeft, faCompass, faPlay, faMusic } from '@fortawesome/free-solid-svg-icons';
 import { faClock } from '@fortawesome/free-regular-svg-icons';
@@ -126,11 +127,10 @@ const MainContent: React.FC<MainContentProps> = ({
   const handlePlayAll = async () => {
     if (playlistSongs.length === 0) return;
     
-    // Get song IDs from playlist songs
-    const songIds = playlistSongs.map(song => song.id);
-    
-    // Set the playlist queue on the backend
-    const success = await setPlaylistQueue(songIds);
+    // Set the playlist queue on the backend, resolved from the playlist ID when we have one
+    const success = selectedPlaylistId
+      ? await setPlaylistQueueFromPlaylist(selectedPlaylistId)
+      : await setPlaylistQueue(playlistSongs.map(song => song.id));
     if (success) {
       console.log('Playlist queue set, now playing playlist songs only');
     }
@@ -211,7 +211,7 @@ const MainContent: React.FC<MainContentProps> = ({
                   style={{ position: 'relative', cursor: 'pointer' }}
                 >
                   <div className="card-image" onClick={() => handleSongClick(song, playlistSongs)}>
-                    <img src={song.coverUrl} alt={song.title} style={{ width: '100%', height: '100%', objectFit: 'cover', borderRadius: '8px' }} />
+                    <img src={coverThumbnailUrl(song, 256)} alt={song.title} style={{ width: '100%', height: '100%', objectFit: 'cover', borderRadius: '8px' }} />
                     {hoveredCardId === song.id && (
                       <div style={{
                         position: 'absolute',
@@ -324,7 +324,7 @@ const MainContent: React.FC<MainContentProps> = ({
                   style={{ position: 'relative', cursor: 'pointer' }}
                 >
                   <div className="card-image" onClick={() => handleSongClick(song, searchResults)}>
-                    <img src={song.coverUrl} alt={song.title} style={{ width: '100%', height: '100%', objectFit: 'cover', borderRadius: '8px' }} />
+                    <img src={coverThumbnailUrl(song, 256)} alt={song.title} style={{ width: '100%', height: '100%', objectFit: 'cover', borderRadius: '8px' }} />
                     {hoveredCardId === song.id && (
                       <div style={{
                         position: 'absolute',
@@ -408,7 +408,7 @@ const MainContent: React.FC<MainContentProps> = ({
                   style={{ position: 'relative', cursor: 'pointer' }}
                 >
                   <div className="card-image" onClick={() => handleSongClick(song, categorySongs)}>
-                    <img src={song.coverUrl} alt={song.title} style={{ width: '100%', height: '100%', objectFit: 'cover', borderRadius: '8px' }} />
+                    <img src={coverThumbnailUrl(song, 256)} alt={song.title} style={{ width: '100%', height: '100%', objectFit: 'cover', borderRadius: '8px' }} />
                     {hoveredCardId === song.id && (
                       <div style={{
                         position: 'absolute',
@@ -494,7 +494,7 @@ const MainContent: React.FC<MainContentProps> = ({
                   style={{ position: 'relative', cursor: 'pointer' }}
                 >
                   <div className="card-image" onClick={() => handleSongClick(song, allSongs)}>
-                    <img src={song.coverUrl} alt={song.title} style={{ width: '100%', height: '100%', objectFit: 'cover', borderRadius: '8px' }} />
+                    <img src={coverThumbnailUrl(song, 256)} alt={song.title} style={{ width: '100%', height: '100%', objectFit: 'cover', borderRadius: '8px' }} />
                     {hoveredCardId === song.id && (
                       <div style={{
                         position: 'absolute',
@@ -565,7 +565,7 @@ const MainContent: React.FC<MainContentProps> = ({
                 style={{ position: 'relative', cursor: 'pointer' }}
               >
                 <div className="card-image" onClick={() => handleSongClick(song, recentlyPlayed)}>
-                  <img src={song.coverUrl} alt={song.title} style={{ width: '100%', height: '100%', objectFit: 'cover', borderRadius: '8px' }} />
+                  <img src={coverThumbnailUrl(song, 256)} alt={song.title} style={{ width: '100%', height: '100%', objectFit: 'cover', borderRadius: '8px' }} />
                   {hoveredCardId === song.id && (
                     <div style={{
                       position: 'absolute',
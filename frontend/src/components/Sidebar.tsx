@@ -7,6 +7,7 @@ import logo from '../assets/logo.png';
 import { FontAwesomeIcon } from '@fortawesome/react-fontawesome';
 import { faMusic, faHome, faSearch, faPlus, faHeart, faSignOutAlt, faUser, faTrash, faPlay } from '@fortawesome/free-solid-svg-icons';
 import { Song } from '../types/music.types';
+import { coverThumbnailUrl } from '../utils/helpers';
 import { playSpecificSong } from '../services/playerService';
 
 interface SidebarProps {
@@ -161,7 +162,7 @@ const Sidebar: React.FC<SidebarProps> = ({ onNavigate, currentView, onPlaylistCl
                 {song.coverUrl && (
                   <div style={{ position: 'relative', flexShrink: 0, width: '40px', height: '40px', lineHeight: 0 }}>
                     <img 
-                      src={song.coverUrl} 
+                      src={coverThumbnailUrl(song, 64)} 
                       alt={song.title}
                       className="favorite-cover"
                       style={{
@@ -3,6 +3,14 @@ import { Song, ServerState } from '../types/music.types';
 import { API_BASE } from '../utils/constants';
 import { loadSongs as fetchSongs } from '../services/playerService';
 
+// Remote audio goes through the backend's caching stream endpoint; relative paths are served by the backend directly
+const audioUrl = (song: Song) =>
+  song.srcUrl.startsWith('http') ? `${API_BASE}/api/stream/${song.id}` : `${API_BASE}${song.srcUrl}`;
+
+// Remote covers are shown as a player-sized thumbnail instead of the original upload
+const playerCoverUrl = (song: Song) =>
+  song.coverUrl.startsWith('http') ? `${API_BASE}/api/covers/${song.id}?size=512` : `${API_BASE}${song.coverUrl}`;
+
 export const useMusicPlayer = () => {
   const [songs, setSongs] = useState<Song[]>([]);
   const [currentSong, setCurrentSong] = useState<Song | null>(null);
@@ -22,6 +30,7 @@ export const useMusicPlayer = () => {
   const userIsAdjustingVolume = useRef<boolean>(false);
   const volumeUpdateTimeout = useRef<NodeJS.Timeout | null>(null);
   const lastSongIdRef = useRef<number | null>(null);
+  const preloadRef = useRef<Map<string, HTMLAudioElement>>(new Map());
 
   // Load songs
   const loadSongs = useCallback(async () => {
@@ -39,9 +48,7 @@ export const useMusicPlayer = () => {
       
       // Set cover URL with backend base
       if (firstSong.coverUrl) {
-        const fullCoverUrl = firstSong.coverUrl.startsWith('http') 
-          ? firstSong.coverUrl 
-          : `${API_BASE}${firstSong.coverUrl}`;
+        const fullCoverUrl = playerCoverUrl(firstSong);
         setCoverUrl(fullCoverUrl);
       }
     }
@@ -54,6 +61,28 @@ export const useMusicPlayer = () => {
     });
   }, []);
 
+  // Start fetching the upcoming tracks and covers so the next song starts without a gap
+  const preloadUpNext = useCallback((upNext: Song[] = []) => {
+    const preloaded = new Map<string, HTMLAudioElement>();
+
+    upNext.forEach(song => {
+      if (!song.srcUrl) return;
+      const src = audioUrl(song);
+      let audio = preloadRef.current.get(src);
+      if (!audio) {
+        audio = new Audio();
+        audio.preload = 'auto';
+        audio.src = src;
+        if (song.coverUrl) {
+          new Image().src = playerCoverUrl(song);
+        }
+      }
+      preloaded.set(src, audio);
+    });
+
+    preloadRef.current = preloaded;
+  }, []);
+
   // Update state from server
   const updateStateFromServer = useCallback((data: ServerState) => {
     console.log('Server state update:', data);
@@ -62,6 +91,7 @@ export const useMusicPlayer = () => {
     setSongArtist(data.artist);
     setShuffleEnabled(data.shuffle);
     setRepeatEnabled(data.repeat);
+    preloadUpNext(data.upNext);
     
     // Only update volume from server if user is not actively adjusting it
     if (!userIsAdjustingVolume.current) {
@@ -96,9 +126,7 @@ export const useMusicPlayer = () => {
       
       // Update cover URL with fallback
       if (song.coverUrl) {
-        const fullCoverUrl = song.coverUrl.startsWith('http') 
-          ? song.coverUrl 
-          : `${API_BASE}${song.coverUrl}`;
+        const fullCoverUrl = playerCoverUrl(song);
         setCoverUrl(fullCoverUrl);
       } else {
         setCoverUrl(`${API_BASE}/cover/better-day.jpg`);
@@ -107,12 +135,15 @@ export const useMusicPlayer = () => {
       // Update audio source if different
       if (audioRef.current && song.srcUrl) {
         const currentSrc = audioRef.current.src;
-        const newSrc = song.srcUrl.startsWith('http') ? song.srcUrl : `${API_BASE}${song.srcUrl}`;
+        const newSrc = audioUrl(song);
         
         if (currentSrc !== newSrc) {
           const wasPlaying = !audioRef.current.paused;
           audioRef.current.src = newSrc;
           
+          // Show the length from the file's headers until the audio element has loaded its own
+          setDuration(data.duration || 0);
+          
           if (data.isPlaying || wasPlaying) {
             audioRef.current.load();
             safePlay();
@@ -137,7 +168,7 @@ export const useMusicPlayer = () => {
         audioRef.current.duration
       );
     }
-  }, [safePlay]);
+  }, [safePlay, preloadUpNext]);
 
   // SSE Connection
   const connectSSE = useCallback(() => {
@@ -266,6 +266,22 @@ export const setPlaylistQueue = async (songIds: number[]): Promise<boolean> => {
   }
 };
 
+// Let the backend build the queue from a playlist, so large playlists don't need to send every song ID
+export const setPlaylistQueueFromPlaylist = async (playlistId: number, startSongId?: number): Promise<boolean> => {
+  try {
+    const headers = await getHeaders();
+    const res = await fetch(`${API_BASE}/api/player/queue`, {
+      method: 'POST',
+      headers,
+      body: JSON.stringify({ source: 'playlist', playlistId, startSongId })
+    });
+    return res.ok;
+  } catch (error) {
+    console.error('Failed to set playlist queue:', error);
+    return false;
+  }
+};
+
 export const playSpecificSong = async (songId: number, queueSongIds: number[]): Promise<boolean> => {
   try {
     const headers = await getHeaders();
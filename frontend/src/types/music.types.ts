@@ -5,6 +5,10 @@ export interface Song {
   srcUrl: string;
   coverUrl: string;
   category?: string;
+  durationMs?: number | null;
+  bitrate?: number | null;
+  sampleRate?: number | null;
+  codec?: string | null;
 }
 
 export interface ServerState {
@@ -16,7 +20,15 @@ export interface ServerState {
   isMuted: boolean;
   currentSongId: number;
   isPlaying: boolean;
+  // Seconds, read from the file's headers; 0 if not known yet
+  duration?: number;
   lastCommand?: string;
+  upNext?: Song[];
+  queue?: {
+    size: number;
+    currentEntryId: number | null;
+    upcoming: { entryId: number; songId: number }[];
+  };
 }
 
 export interface PlayerState {
@@ -1,3 +1,5 @@
+import { API_BASE } from './constants';
+
 export const formatTime = (seconds: number): string => {
   if (isNaN(seconds)) return '0:00';
   const min = Math.floor(seconds / 60);
@@ -15,3 +17,7 @@ export const updateSliderBackground = (
   const percentage = ((value - min) / (max - min)) * 100;
   slider.style.background = `linear-gradient(to right, hotpink 0%, hotpink ${percentage}%, white ${percentage}%, white 100%)`;
 };
+
+// Size-selecting cover URL: the backend redirects to the smallest thumbnail at least `size` pixels wide
+export const coverThumbnailUrl = (song: { id: number; coverUrl?: string }, size: number): string | undefined =>
+  song.coverUrl ? `${API_BASE}/api/covers/${song.id}?size=${size}` : song.coverUrl;